@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.ArtistCanonicalizer;
+import org.gravidence.gravifon.db.ArtistGraphIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonical artist lookup benchmarks: flattened {@link ArtistCanonicalizer#canonicalId(long)} vs. hop by hop
+ * {@link ArtistGraphIndex#getPrincipal(long)}, in lookups per second.<p>
+ * Artist graph is seeded straight into the index: every fifth artist is a variation of the previous one,
+ * every tenth one is an alias of an artist a hundred IDs below (so alias chains run up to the hop limit).
+ * Looked up artists are picked at random.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArtistCanonicalizerBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    /**
+     * Number of seeded artists.
+     */
+    @Param("1000000")
+    private int artists;
+
+    private ConfigurableApplicationContext context;
+
+    private ArtistCanonicalizer artistCanonicalizer;
+
+    private ArtistGraphIndex artistGraphIndex;
+
+    private long[] lookups;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN");
+        artistCanonicalizer = context.getBean(ArtistCanonicalizer.class);
+        artistGraphIndex = context.getBean(ArtistGraphIndex.class);
+
+        for (long id = 1000L; id < 1000L + artists; id++) {
+            if (id % 5L == 4L) {
+                artistGraphIndex.artistWritten(id, id - 1L);
+            }
+            else if (id % 10L == 0L) {
+                artistGraphIndex.aliasAdded(id - 100L, id);
+            }
+        }
+
+        Random random = new Random(42L);
+        lookups = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = 1000L + random.nextInt(artists);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long canonicalId() {
+        long sum = 0L;
+        for (long id : lookups) {
+            sum += artistCanonicalizer.canonicalId(id);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long getPrincipal() {
+        long sum = 0L;
+        for (long id : lookups) {
+            sum += artistGraphIndex.getPrincipal(id);
+        }
+
+        return sum;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravidat.model.tables.records.GArtistRecord;
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.jooq.DSLContext;
+import org.jooq.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+
+/**
+ * {@link ArtistDao} benchmarks.<p>
+ * Application context is started against H2 in-memory database which is seeded with configured number of artists,
+ * every tenth artist is an alias of the previous one, the one before that master is its variation.
+ * Index seek versus table scan of title lookups shows on large catalogues, e.g. <code>-p artists=1000000</code>.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArtistDaoBenchmark {
+
+    /**
+     * Number of artists inserted by a single {@link #addArtists()} call.
+     */
+    private static final int BULK_SIZE = 1000;
+
+    /**
+     * Number of seeded artists.
+     */
+    @Param("10000")
+    private int artists;
+
+    private ConfigurableApplicationContext context;
+
+    private ArtistDao artistDao;
+
+    private DSLContext dslContext;
+
+    private List<ArtistBean> seeded;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN");
+        artistDao = context.getBean(ArtistDao.class);
+        dslContext = context.getBean(DSLContext.class);
+
+        seeded = new ArrayList<>(artists);
+        for (int i = 0; i < artists; i++) {
+            seeded.add(new ArtistBean(null, "Artist #" + i, "Seeded artist", null));
+        }
+        for (int i = 8; i + 1 < artists; i += 10) {
+            seeded.get(i).setMaster(seeded.get(i + 1));
+        }
+        artistDao.addArtists(seeded);
+        for (int i = 10; i < artists; i += 10) {
+            artistDao.addArtistAlias(seeded.get(i - 1).getId(), seeded.get(i).getId());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ArtistBean getArtistById() {
+        return artistDao.getArtist(randomArtist().getId());
+    }
+
+    @Benchmark
+    public ArtistBean getArtistByTitle() {
+        return artistDao.getArtist(randomArtist().getTitle());
+    }
+
+    /**
+     * Title lookup that bypasses the cache, so it seeks normalized title index.
+     */
+    @Benchmark
+    public List<ArtistBean> getArtistsByTitle() {
+        return artistDao.getArtists(randomArtist().getTitle().toLowerCase());
+    }
+
+    /**
+     * Case insensitive title lookup by table scan, baseline of {@link #getArtistsByTitle()}.
+     */
+    @Benchmark
+    public Result<GArtistRecord> getArtistsByTitleScan() {
+        return dslContext.selectFrom(G_ARTIST)
+                .where(G_ARTIST.TITLE.equalIgnoreCase(randomArtist().getTitle().toLowerCase()))
+                .orderBy(G_ARTIST.ID)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<ArtistBean> getArtistAliases() {
+        return artistDao.getArtistAliases(randomMaster().getId());
+    }
+
+    /**
+     * Artist with master, aliases and variations fetched by a single query.
+     */
+    @Benchmark
+    public ArtistBean getArtistExpanded() {
+        return artistDao.getArtist(randomMaster().getId(), EnumSet.allOf(ArtistDao.Relation.class));
+    }
+
+    /**
+     * Same neighbourhood as {@link #getArtistExpanded()} assembled by a client calling DAO per relation.
+     */
+    @Benchmark
+    public ArtistBean getArtistExpandedByCalls() {
+        ArtistBean artist = artistDao.getArtist(randomMaster().getId());
+        if (artist.getMaster() != null) {
+            artist.setMaster(artistDao.getArtist(artist.getMaster().getId()));
+        }
+        artist.setAliases(artistDao.getArtistAliases(artist.getId()));
+        artist.setVariations(artistDao.getArtistVariations(artist.getId()));
+
+        return artist;
+    }
+
+    @Benchmark
+    public ArtistBean addArtist() {
+        return artistDao.addArtist(new ArtistBean(null, "Added artist", "Benchmark", null));
+    }
+
+    /**
+     * Bulk insert, measured per artist, so it's comparable with {@link #addArtist()}.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public int addArtists() {
+        List<ArtistBean> added = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            added.add(new ArtistBean(null, "Added artist #" + i, "Benchmark", null));
+        }
+
+        return artistDao.addArtists(added).size();
+    }
+
+    @Benchmark
+    public void updateArtist() {
+        ArtistBean artist = randomArtist();
+        artistDao.updateArtist(new ArtistBean(artist.getId(), artist.getTitle(),
+                "Updated at " + System.nanoTime(), null));
+    }
+
+    /**
+     * @return Seeded artist having both alias and variation.
+     */
+    private ArtistBean randomMaster() {
+        return seeded.get(9 + 10 * ThreadLocalRandom.current().nextInt(artists / 10 - 1));
+    }
+
+    private ArtistBean randomArtist() {
+        return seeded.get(ThreadLocalRandom.current().nextInt(artists));
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.ArtistSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ArtistSearchIndex} lookup latency benchmarks.<p>
+ * Index is fed straight with configured number of pronounceable random names (1-3 words, 1-3 syllables each).
+ * Prefix queries are 2-5 leading characters of indexed titles, fuzzy queries are indexed titles
+ * with one character deleted.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArtistSearchBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    /**
+     * Number of indexed artists.
+     */
+    @Param("1000000")
+    private int artists;
+
+    private ConfigurableApplicationContext context;
+
+    private ArtistSearchIndex artistSearchIndex;
+
+    private String[] prefixQueries;
+
+    private String[] fuzzyQueries;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN");
+        artistSearchIndex = context.getBean(ArtistSearchIndex.class);
+
+        Random random = new Random(42L);
+        String[] titles = new String[artists];
+        for (int i = 0; i < artists; i++) {
+            titles[i] = randomName(random);
+            artistSearchIndex.artistWritten(1000L + i, titles[i]);
+        }
+
+        prefixQueries = new String[QUERIES];
+        fuzzyQueries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String title = titles[random.nextInt(artists)];
+            prefixQueries[i] = title.substring(0, Math.min(title.length(), 2 + random.nextInt(4)));
+
+            StringBuilder typo = new StringBuilder(titles[random.nextInt(artists)]);
+            typo.deleteCharAt(random.nextInt(typo.length()));
+            fuzzyQueries[i] = typo.toString();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long[] prefix() {
+        return artistSearchIndex.prefix(prefixQueries[ThreadLocalRandom.current().nextInt(QUERIES)], 10);
+    }
+
+    @Benchmark
+    public long[] fuzzy() {
+        return artistSearchIndex.fuzzy(fuzzyQueries[ThreadLocalRandom.current().nextInt(QUERIES)], 10);
+    }
+
+    private static String randomName(Random random) {
+        String consonants = "bcdfghjklmnprstvwz";
+        String vowels = "aeiouy";
+        StringBuilder name = new StringBuilder();
+        int words = 1 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                name.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                name.append(consonants.charAt(random.nextInt(consonants.length())));
+                name.append(vowels.charAt(random.nextInt(vowels.length())));
+                if (random.nextInt(3) == 0) {
+                    name.append(consonants.charAt(random.nextInt(consonants.length())));
+                }
+            }
+        }
+
+        return name.toString();
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.db.CachedQueries;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CachedQueries} benchmarks: fixed {@link ArtistDao} queries executed with and without statement cache.<p>
+ * Artist cache is disabled, so every lookup hits H2 in-memory database (seeded with configured number of artists).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachedQueryBenchmark {
+
+    /**
+     * Number of seeded artists.
+     */
+    @Param("10000")
+    private int artists;
+
+    /**
+     * Whether fixed queries are cached.
+     */
+    @Param({"true", "false"})
+    private boolean statementCache;
+
+    private ConfigurableApplicationContext context;
+
+    private ArtistDao artistDao;
+
+    private List<ArtistBean> seeded;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN",
+                        "--org.gravidence.gravifon.cache.artist.max-size=0",
+                        "--org.gravidence.gravifon.db.statement-cache=" + statementCache);
+        artistDao = context.getBean(ArtistDao.class);
+
+        seeded = new ArrayList<>(artists);
+        for (int i = 0; i < artists; i++) {
+            seeded.add(new ArtistBean(null, "Artist #" + i, "Seeded artist", null));
+        }
+        artistDao.addArtists(seeded);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ArtistBean getArtistById() {
+        return artistDao.getArtist(seeded.get(ThreadLocalRandom.current().nextInt(artists)).getId());
+    }
+
+    @Benchmark
+    public ArtistBean addArtist() {
+        return artistDao.addArtist(new ArtistBean(null, "Added artist", "Benchmark", null));
+    }
+
+}
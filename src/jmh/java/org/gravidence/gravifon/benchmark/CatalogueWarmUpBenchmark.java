@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.ArtistCatalogue;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.db.ArtistGraphIndex;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup benchmarks: {@link ArtistCatalogue} and {@link ArtistGraphIndex} warm-up from the database
+ * vs. from memory-mapped snapshot file.<p>
+ * H2 in-memory database is seeded with configured number of artists, every tenth one is a variation.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogueWarmUpBenchmark {
+
+    /**
+     * Number of seeded artists.
+     */
+    @Param("100000")
+    private int artists;
+
+    /**
+     * Catalogue source: <code>database</code> or <code>snapshot</code>.
+     */
+    @Param({"database", "snapshot"})
+    private String source;
+
+    private Path snapshotFile;
+
+    private ConfigurableApplicationContext context;
+
+    private ArtistCatalogue artistCatalogue;
+
+    private ArtistGraphIndex artistGraphIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        snapshotFile = Files.createTempFile("artist-catalogue", ".bin");
+        Files.delete(snapshotFile);
+
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN",
+                        "--org.gravidence.gravifon.catalogue.snapshot.path=" + snapshotFile,
+                        "--org.gravidence.gravifon.catalogue.snapshot.interval=0");
+        artistCatalogue = context.getBean(ArtistCatalogue.class);
+        artistGraphIndex = context.getBean(ArtistGraphIndex.class);
+
+        List<ArtistBean> seeded = new ArrayList<>(artists);
+        for (int i = 0; i < artists; i++) {
+            ArtistBean artist = new ArtistBean(null, "Artist #" + i, "Seeded artist", null);
+            if (i % 10 == 9) {
+                artist.setMaster(seeded.get(i - 1));
+            }
+            seeded.add(artist);
+        }
+        context.getBean(ArtistDao.class).addArtists(seeded);
+
+        artistCatalogue.writeSnapshot();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Benchmark
+    public int warmUp() {
+        if ("snapshot".equals(source)) {
+            artistCatalogue.warmUp();
+            artistGraphIndex.init();
+        }
+        else {
+            artistCatalogue.load();
+            artistGraphIndex.init();
+        }
+
+        return artistCatalogue.size();
+    }
+
+}
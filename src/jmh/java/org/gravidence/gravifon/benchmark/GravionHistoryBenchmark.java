@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravidat.model.tables.records.GGravionRecord;
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.db.GravionPartitions;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.gravidence.gravidat.model.Tables.G_GRAVION;
+import static org.gravidence.gravidat.model.Tables.G_USER;
+
+/**
+ * Listening history range query benchmarks: monthly partitions ({@link GravionPartitions}) vs. single
+ * <code>G_GRAVION</code> table, both indexed by user and listening start time.<p>
+ * Temporary H2 file database is seeded with configured number of gravions spread evenly over configured number
+ * of months and users (file database keeps tens of millions of rows off the heap). Every query reads history
+ * of a random user over a random time range of configured length.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GravionHistoryBenchmark {
+
+    /**
+     * Number of seeded gravions.
+     */
+    @Param("10000000")
+    private int rows;
+
+    /**
+     * Number of seeded users.
+     */
+    @Param("10000")
+    private int users;
+
+    /**
+     * Number of seeded months.
+     */
+    @Param("24")
+    private int months;
+
+    /**
+     * Length of queried time range, in days.
+     */
+    @Param("30")
+    private int days;
+
+    /**
+     * Storage layout: <code>partitioned</code> or <code>single</code>.
+     */
+    @Param({"partitioned", "single"})
+    private String layout;
+
+    private static final YearMonth FIRST_MONTH = YearMonth.of(2016, 1);
+
+    private static final int CHUNK = 500_000;
+
+    private Path dbDir;
+
+    private ConfigurableApplicationContext context;
+
+    private DSLContext dslContext;
+
+    private GravionDao gravionDao;
+
+    private long firstUserId;
+
+    private long start;
+
+    private long span;
+
+    @Setup
+    public void setUp() throws IOException {
+        dbDir = Files.createTempDirectory("gravidat");
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN",
+                        "--spring.datasource.url=jdbc:h2:" + dbDir.resolve("gravidat") + ";CACHE_SIZE=262144",
+                        "--org.gravidence.gravifon.gravion.archive.retention=0");
+        dslContext = context.getBean(DSLContext.class);
+        gravionDao = context.getBean(GravionDao.class);
+
+        firstUserId = dslContext.select(DSL.max(G_USER.ID)).from(G_USER).fetchOne().value1() + 1L;
+        dslContext.execute("INSERT INTO G_USER(USERNAME, EMAIL, CREATED, LAST_ACTIVITY) "
+                + "SELECT 'user' || X, 'user' || X || '@gravifon.org', CURRENT_TIMESTAMP(), CURRENT_TIMESTAMP() "
+                + "FROM SYSTEM_RANGE(1, {0})", DSL.inline(users));
+
+        int perMonth = rows / months;
+        for (int m = 0; m < months; m++) {
+            YearMonth month = FIRST_MONTH.plusMonths(m);
+            Timestamp monthStart = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+            int step = (int) (month.lengthOfMonth() * 86_400L / perMonth);
+
+            String table;
+            if ("partitioned".equals(layout)) {
+                // creates the partition
+                gravionDao.addGravions(Collections.singletonList(new GravionBean(firstUserId, 1L,
+                        monthStart, new Date(monthStart.getTime() + 1000L), 1)));
+                table = "G_GRAVION_" + month.getYear() + String.format("%02d", month.getMonthValue());
+            }
+            else {
+                table = G_GRAVION.getName();
+            }
+
+            for (int from = 1; from <= perMonth; from += CHUNK) {
+                dslContext.execute("INSERT INTO {0}(USER_ID, TRACK_ID, \"BEGIN\", \"END\", DURATION) "
+                                + "SELECT {1} + MOD(X, {2}), 1 + MOD(X, 3), "
+                                + "DATEADD('SECOND', X * {3}, {4}), DATEADD('SECOND', X * {3} + 200, {4}), 200 "
+                                + "FROM SYSTEM_RANGE({5}, {6})",
+                        DSL.name(table), DSL.inline(firstUserId), DSL.inline(users), DSL.inline(step),
+                        DSL.inline(monthStart), DSL.inline(from), DSL.inline(Math.min(from + CHUNK - 1, perMonth)));
+            }
+        }
+
+        start = Timestamp.valueOf(FIRST_MONTH.atDay(1).atStartOfDay()).getTime();
+        span = Timestamp.valueOf(FIRST_MONTH.plusMonths(months).atDay(1).atStartOfDay()).getTime() - start
+                - days * 86_400_000L;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(dbDir.toFile());
+    }
+
+    @Benchmark
+    public int history() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = firstUserId + random.nextInt(users);
+        Date from = new Date(start + (long) (random.nextDouble() * span));
+        Date to = new Date(from.getTime() + days * 86_400_000L);
+
+        List<GravionBean> gravions;
+        if ("partitioned".equals(layout)) {
+            gravions = gravionDao.getGravions(userId, from, to);
+        }
+        else {
+            gravions = new ArrayList<>();
+            for (GGravionRecord r : dslContext.selectFrom(G_GRAVION)
+                    .where(G_GRAVION.USER_ID.eq(userId))
+                    .and(G_GRAVION.BEGIN.ge(new Timestamp(from.getTime())))
+                    .and(G_GRAVION.BEGIN.lt(new Timestamp(to.getTime())))
+                    .orderBy(G_GRAVION.BEGIN, G_GRAVION.ID)
+                    .fetch()) {
+                gravions.add(new GravionBean(r.getId(), r.getUserId(), r.getTrackId(),
+                        r.getBegin(), r.getEnd(), r.getDuration()));
+            }
+        }
+
+        return gravions == null ? 0 : gravions.size();
+    }
+
+}
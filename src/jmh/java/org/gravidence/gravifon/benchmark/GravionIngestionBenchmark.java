@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.ingest.GravionIngestion;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sustained gravion ingestion rate of {@link GravionIngestion}, in gravions per second.<p>
+ * Concurrent producers submit distinct gravions of two users and back off on rejection, so the rate is bounded
+ * by the flusher once the queue is full. Submissions still pending at the end of an iteration are awaited
+ * outside of measurement.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class GravionIngestionBenchmark {
+
+    private static final int SUBMISSION_SIZE = 100;
+
+    /**
+     * Submission acknowledgement mode, see {@link GravionIngestion.Durability}.
+     */
+    @Param({"SYNC", "ASYNC"})
+    private String durability;
+
+    private ConfigurableApplicationContext context;
+
+    private GravionIngestion gravionIngestion;
+
+    /**
+     * Next gravion offset, keeps gravions of all producers distinct.
+     */
+    private final AtomicLong offset = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN",
+                        "--org.gravidence.gravifon.ingest.durability=" + durability,
+                        "--org.gravidence.gravifon.ingest.queue-capacity=20000");
+        gravionIngestion = context.getBean(GravionIngestion.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Producer state, keeps submissions of the current iteration.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+
+        private final List<CompletableFuture<Void>> persisted = new ArrayList<>();
+
+        @TearDown(Level.Iteration)
+        public void awaitPersisted() throws InterruptedException, ExecutionException {
+            for (CompletableFuture<Void> future : persisted) {
+                future.get();
+            }
+            persisted.clear();
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBMISSION_SIZE)
+    public void submit(Producer producer) throws InterruptedException {
+        long first = offset.getAndAdd(SUBMISSION_SIZE);
+        List<GravionBean> gravions = new ArrayList<>(SUBMISSION_SIZE);
+        for (int i = 0; i < SUBMISSION_SIZE; i++) {
+            long begin = 1_500_000_000_000L + (first + i) * 1000L;
+            gravions.add(new GravionBean(1L + first / SUBMISSION_SIZE % 2, 1L + i % 3,
+                    new Date(begin), new Date(begin + 1000L), 1));
+        }
+
+        CompletableFuture<Void> future;
+        while ((future = gravionIngestion.submit(gravions)) == null) {
+            Thread.sleep(1L);
+        }
+        producer.persisted.add(future);
+    }
+
+}
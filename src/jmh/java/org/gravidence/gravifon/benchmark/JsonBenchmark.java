@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gravidence.gravifon.web.EncodedPayload;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization benchmarks of web model.<p>
+ * Object mapper is configured the same way Spring Boot configures it by default.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private StatusBean<ArtistBean> plain;
+
+    private StatusBean<ArtistBean> related;
+
+    private EncodedPayload encodedRelated;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        plain = new StatusBean<>(new ArtistBean(4L, "Vidna Obmana", "Dirk Serries"));
+
+        ArtistBean artist = new ArtistBean(6L, "Funckarma", "Don & Roel Funcken", 42L);
+        artist.setAliases(Arrays.asList(
+                new ArtistBean(3L, "Quench", "Don & Roel Funcken"),
+                new ArtistBean(7L, "Cane", "Don & Roel Funcken")));
+        related = new StatusBean<>(artist);
+        encodedRelated = EncodedPayload.json(objectMapper, related);
+    }
+
+    @Benchmark
+    public byte[] serializeArtist() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(plain);
+    }
+
+    @Benchmark
+    public byte[] serializeArtistWithRelations() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(related);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> serveEncodedArtistWithRelations() {
+        return encodedRelated.toResponse(null, "gzip, deflate");
+    }
+
+}
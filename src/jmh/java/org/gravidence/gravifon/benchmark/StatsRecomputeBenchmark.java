@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.stats.StatsRecompute;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.gravidence.gravidat.model.Tables.G_USER;
+
+/**
+ * Scaling of {@link StatsRecompute#recompute(int)} over number of threads.<p>
+ * Temporary H2 file database is seeded with configured number of gravions spread evenly over configured number
+ * of months and users, user ID range is split into configured number of shards.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class StatsRecomputeBenchmark {
+
+    /**
+     * Number of seeded gravions.
+     */
+    @Param("2000000")
+    private int rows;
+
+    /**
+     * Number of seeded users.
+     */
+    @Param("10000")
+    private int users;
+
+    /**
+     * Number of seeded months.
+     */
+    @Param("12")
+    private int months;
+
+    /**
+     * Number of shards.
+     */
+    @Param("64")
+    private int shards;
+
+    /**
+     * Number of recompute threads.
+     */
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private static final YearMonth FIRST_MONTH = YearMonth.of(2016, 1);
+
+    private static final int CHUNK = 500_000;
+
+    private Path dir;
+
+    private ConfigurableApplicationContext context;
+
+    private StatsRecompute statsRecompute;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gravidat");
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN",
+                        "--spring.datasource.url=jdbc:h2:" + dir.resolve("gravidat") + ";CACHE_SIZE=262144"
+                                + ";INIT=CREATE SCHEMA IF NOT EXISTS GRAVIDAT\\;SET SCHEMA GRAVIDAT",
+                        "--spring.datasource.hikari.maximum-pool-size=" + (threads + 2),
+                        "--org.gravidence.gravifon.stats.recompute.shard-size=" + Math.max(1, users / shards));
+        DSLContext dslContext = context.getBean(DSLContext.class);
+        statsRecompute = context.getBean(StatsRecompute.class);
+        GravionDao gravionDao = context.getBean(GravionDao.class);
+
+        long firstUserId = dslContext.select(DSL.max(G_USER.ID)).from(G_USER).fetchOne().value1() + 1L;
+        dslContext.execute("INSERT INTO G_USER(USERNAME, EMAIL, CREATED, LAST_ACTIVITY) "
+                + "SELECT 'user' || X, 'user' || X || '@gravifon.org', CURRENT_TIMESTAMP(), CURRENT_TIMESTAMP() "
+                + "FROM SYSTEM_RANGE(1, {0})", DSL.inline(users));
+
+        int perMonth = rows / months;
+        for (int m = 0; m < months; m++) {
+            YearMonth month = FIRST_MONTH.plusMonths(m);
+            Timestamp monthStart = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+            int step = (int) (month.lengthOfMonth() * 86_400L / perMonth);
+
+            // creates the partition
+            gravionDao.addGravions(Collections.singletonList(new GravionBean(firstUserId, 1L,
+                    monthStart, new Date(monthStart.getTime() + 1000L), 1)));
+            String table = "G_GRAVION_" + month.getYear() + String.format("%02d", month.getMonthValue());
+
+            for (int start = 1; start <= perMonth; start += CHUNK) {
+                dslContext.execute("INSERT INTO {0}(USER_ID, TRACK_ID, \"BEGIN\", \"END\", DURATION) "
+                                + "SELECT {1} + MOD(X, {2}), 1 + MOD(X, 3), "
+                                + "DATEADD('SECOND', X * {3}, {4}), DATEADD('SECOND', X * {3} + 200, {4}), "
+                                + "CASEWHEN(MOD(X, 5) = 0, NULL, 190) "
+                                + "FROM SYSTEM_RANGE({5}, {6})",
+                        DSL.name(table), DSL.inline(firstUserId), DSL.inline(users), DSL.inline(step),
+                        DSL.inline(monthStart), DSL.inline(start), DSL.inline(Math.min(start + CHUNK - 1, perMonth)));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(dir.toFile());
+    }
+
+    @Benchmark
+    public StatsRecompute.Report recompute() {
+        return statsRecompute.recompute(threads);
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.benchmark;
+
+import org.gravidence.gravifon.Gravifon;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.db.StatsDao;
+import org.gravidence.gravifon.web.model.ArtistStatsBean;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * User top artists benchmarks: statistics rollups ({@link StatsDao#getTopArtists(Long, LocalDate, LocalDate, int)})
+ * vs. aggregation over raw gravions of monthly partitions.<p>
+ * Two users listen to configured number of gravions a day (three tracks in turn) over configured number of days,
+ * top artists of the first user are queried over the whole period.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsRollupBenchmark {
+
+    private static final int USERS = 2;
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2017, 1, 1);
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * Number of days of listening history.
+     */
+    @Param("90")
+    private int days;
+
+    /**
+     * Number of gravions a day, of both users.
+     */
+    @Param("400")
+    private int perDay;
+
+    private ConfigurableApplicationContext context;
+
+    private DSLContext dslContext;
+
+    private StatsDao statsDao;
+
+    private LocalDate lastDay;
+
+    private Select<Record1<Integer>> scan;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Gravifon.class)
+                .web(false)
+                .run("--spring.main.banner-mode=off", "--logging.level.root=WARN");
+        dslContext = context.getBean(DSLContext.class);
+        statsDao = context.getBean(StatsDao.class);
+        GravionDao gravionDao = context.getBean(GravionDao.class);
+
+        long start = Timestamp.valueOf(FIRST_DAY.atStartOfDay()).getTime();
+        for (int day = 0; day < days; day++) {
+            List<GravionBean> gravions = new ArrayList<>(perDay);
+            for (int i = 0; i < perDay; i++) {
+                long begin = start + day * 86_400_000L + i * 1000L;
+                gravions.add(new GravionBean(1L + i % USERS, 1L + i % 3, new Date(begin), new Date(begin + 1000L), 1));
+            }
+            gravionDao.addGravions(gravions);
+        }
+        lastDay = FIRST_DAY.plusDays(days - 1);
+
+        Timestamp begin = Timestamp.valueOf(FIRST_DAY.atStartOfDay());
+        Timestamp end = Timestamp.valueOf(lastDay.plusDays(1).atStartOfDay());
+        Select<Record1<Long>> raw = null;
+        for (YearMonth month = YearMonth.from(FIRST_DAY); !month.isAfter(YearMonth.from(lastDay));
+                month = month.plusMonths(1)) {
+            String partition = "G_GRAVION_" + month.format(SUFFIX);
+            Field<Timestamp> gravionBegin = DSL.field(DSL.name(partition, "BEGIN"), Timestamp.class);
+            Select<Record1<Long>> partial = dslContext
+                    .select(DSL.field(DSL.name(partition, "TRACK_ID"), Long.class).as("TRACK_ID"))
+                    .from(DSL.table(DSL.name(partition)))
+                    .where(DSL.field(DSL.name(partition, "USER_ID"), Long.class).eq(1L))
+                    .and(gravionBegin.ge(begin))
+                    .and(gravionBegin.lt(end));
+            raw = raw == null ? partial : raw.unionAll(partial);
+        }
+        Table<Record1<Long>> gravions = raw.asTable("G");
+        Field<Integer> plays = DSL.count();
+        scan = dslContext.select(plays)
+                .from(gravions)
+                .join(G_TRACK_ARTIST).on(G_TRACK_ARTIST.TRACK_ID.eq(gravions.field("TRACK_ID", Long.class)))
+                .groupBy(G_TRACK_ARTIST.ARTIST_ID)
+                .orderBy(plays.desc())
+                .limit(10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ArtistStatsBean> rollup() {
+        return statsDao.getTopArtists(1L, FIRST_DAY, lastDay, 10);
+    }
+
+    @Benchmark
+    public List<Integer> scan() {
+        return scan.fetch().getValues(0, Integer.class);
+    }
+
+}
@@ -24,8 +24,19 @@
 
 package org.gravidence.gravifon;
 
+import org.gravidence.gravifon.ingest.DumpImportRunner;
+import org.gravidence.gravifon.stats.SessionBackfillRunner;
+import org.gravidence.gravifon.stats.StatsRebuildRunner;
+import org.gravidence.gravifon.stats.StatsRecomputeRunner;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.DefaultApplicationArguments;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Gravifon boot application.
@@ -34,12 +45,64 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class Gravifon {
 
     /**
-     * Entry point to Gravifon boot application.
+     * Profile of command line jobs.
+     */
+    static final String JOB_PROFILE = "job";
+
+    /**
+     * Command line options triggering jobs.
+     */
+    static final List<String> JOB_OPTIONS = Arrays.asList(DumpImportRunner.OPTION, StatsRebuildRunner.OPTION,
+            SessionBackfillRunner.OPTION, StatsRecomputeRunner.OPTION);
+
+    /**
+     * Entry point to Gravifon boot application.<p>
+     * If any of {@link #JOB_OPTIONS} is present, application runs as a command line job: non-web context is
+     * started with {@link #JOB_PROFILE} profile active, and process exits once job is completed.
      *
      * @param args command line arguments
      */
     public static void main(String[] args) {
+        if (isJob(args)) {
+            System.exit(runJob(args));
+        }
+
         SpringApplication.run(Gravifon.class, args);
     }
 
+    /**
+     * @param args command line arguments
+     * @return <code>true</code> if command line arguments trigger a job, <code>false</code> otherwise.
+     */
+    static boolean isJob(String[] args) {
+        ApplicationArguments arguments = new DefaultApplicationArguments(args);
+        for (String option : JOB_OPTIONS) {
+            if (arguments.containsOption(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs command line job in non-web context. Job failure is reported by Spring Boot already.
+     *
+     * @param args command line arguments
+     * @return Exit code, <code>0</code> if job succeeded.
+     */
+    static int runJob(String[] args) {
+        ConfigurableApplicationContext context;
+        try {
+            context = new SpringApplicationBuilder(Gravifon.class)
+                    .web(false)
+                    .profiles(JOB_PROFILE)
+                    .run(args);
+        }
+        catch (RuntimeException e) {
+            return 1;
+        }
+
+        return SpringApplication.exit(context);
+    }
+
 }
@@ -0,0 +1,269 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.gravidence.gravifon.web.EncodedPayload;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-process cache of artist records, sits in front of {@link ArtistDao} lookups.<p>
+ * Artists are cached by ID, title lookups are cached as normalized title (see {@link ArtistTitles}) to artist ID
+ * mappings and validated against cached artist on every hit. Cached beans are never exposed, copies are returned
+ * instead. Encoded responses are cached alongside artists and dropped whenever artist is refreshed or invalidated.<p>
+ * Hit, miss and eviction counters are exposed via JMX.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+@ManagedResource(objectName = "org.gravidence.gravifon:type=Cache,name=ArtistCache")
+public class ArtistCache {
+
+    /**
+     * Maximum number of cached artists (and title mappings).
+     */
+    @Value("${org.gravidence.gravifon.cache.artist.max-size:100000}")
+    private long maxSize;
+
+    /**
+     * Time to live of cached entries, in seconds.
+     */
+    @Value("${org.gravidence.gravifon.cache.artist.ttl:3600}")
+    private long ttl;
+
+    /**
+     * Artist ID to artist bean cache.
+     */
+    private Cache<Long, ArtistBean> byId;
+
+    /**
+     * Normalized artist title to artist ID cache.
+     */
+    private Cache<String, Long> byTitle;
+
+    /**
+     * Artist ID to encoded artist response cache.
+     */
+    private Cache<Long, EncodedPayload> encodedById;
+
+    /**
+     * Instantiates underlying caches using configured limits.
+     */
+    @PostConstruct
+    private void setUp() {
+        byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        byTitle = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        encodedById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Looks up an artist by ID, loads it if not cached yet.
+     *
+     * @param id artist ID
+     * @param loader artist loader, invoked on cache miss
+     * @return Copy of cached artist bean or <code>null</code> if not found.
+     */
+    public ArtistBean get(Long id, Function<Long, ArtistBean> loader) {
+        return copyOf(byId.get(id, loader));
+    }
+
+    /**
+     * Looks up a cached artist by ID, never loads it.
+     *
+     * @param id artist ID
+     * @return Copy of cached artist bean or <code>null</code> if not cached.
+     */
+    public ArtistBean getIfPresent(Long id) {
+        return copyOf(byId.getIfPresent(id));
+    }
+
+    /**
+     * Caches an artist just loaded from the database, unless it's cached already.<p>
+     * Unlike {@link #put(ArtistBean)}, cached entries (possibly refreshed by a concurrent write) are left intact.
+     *
+     * @param artist artist bean
+     */
+    public void putIfAbsent(ArtistBean artist) {
+        byId.asMap().putIfAbsent(artist.getId(), copyOf(artist));
+    }
+
+    /**
+     * Looks up an encoded artist response by ID, encodes (and loads artist) if not cached yet.
+     *
+     * @param id artist ID
+     * @param loader artist loader, invoked on artist cache miss
+     * @param encoder artist response encoder, invoked on encoded response cache miss
+     * @return Cached encoded response or <code>null</code> if artist not found.
+     */
+    public EncodedPayload getEncoded(Long id, Function<Long, ArtistBean> loader,
+                                     Function<ArtistBean, EncodedPayload> encoder) {
+        return encodedById.get(id, key -> {
+            ArtistBean artist = byId.get(key, loader);
+            return artist == null ? null : encoder.apply(artist);
+        });
+    }
+
+    /**
+     * Looks up an artist by title, loads it if not cached yet.<p>
+     * Title mapping is dropped if cached artist title doesn't match anymore (e.g. artist was renamed).
+     *
+     * @param title artist title
+     * @param loader artist loader, invoked on cache miss
+     * @return Copy of cached artist bean or <code>null</code> if not found.
+     */
+    public ArtistBean get(String title, Supplier<ArtistBean> loader) {
+        String key = ArtistTitles.normalize(title);
+
+        Long id = byTitle.getIfPresent(key);
+        if (id != null) {
+            ArtistBean artist = byId.getIfPresent(id);
+            if (artist != null && key.equals(ArtistTitles.normalize(artist.getTitle()))) {
+                return copyOf(artist);
+            }
+            byTitle.invalidate(key);
+        }
+
+        ArtistBean artist = loader.get();
+        if (artist != null) {
+            put(artist);
+            byTitle.put(key, artist.getId());
+        }
+
+        return copyOf(artist);
+    }
+
+    /**
+     * Caches an actual state of an artist, i.e. refreshes cached one.<p>
+     * Title mapping that could start to point to supplied artist is dropped.
+     *
+     * @param artist artist bean
+     */
+    public void put(ArtistBean artist) {
+        byId.put(artist.getId(), copyOf(artist));
+        encodedById.invalidate(artist.getId());
+        if (artist.getTitle() != null) {
+            byTitle.invalidate(ArtistTitles.normalize(artist.getTitle()));
+        }
+    }
+
+    /**
+     * Drops cached artist.
+     *
+     * @param id artist ID
+     */
+    public void invalidate(Long id) {
+        byId.invalidate(id);
+        encodedById.invalidate(id);
+    }
+
+    /**
+     * @return Number of artist by ID lookups served from cache.
+     */
+    @ManagedAttribute(description = "Number of artist by ID lookups served from cache")
+    public long getIdHitCount() {
+        return byId.stats().hitCount();
+    }
+
+    /**
+     * @return Number of artist by ID lookups missed cache.
+     */
+    @ManagedAttribute(description = "Number of artist by ID lookups missed cache")
+    public long getIdMissCount() {
+        return byId.stats().missCount();
+    }
+
+    /**
+     * @return Number of artist by title lookups served from cache.
+     */
+    @ManagedAttribute(description = "Number of artist by title lookups served from cache")
+    public long getTitleHitCount() {
+        return byTitle.stats().hitCount();
+    }
+
+    /**
+     * @return Number of artist by title lookups missed cache.
+     */
+    @ManagedAttribute(description = "Number of artist by title lookups missed cache")
+    public long getTitleMissCount() {
+        return byTitle.stats().missCount();
+    }
+
+    /**
+     * @return Number of cache entries evicted due to size or time limits.
+     */
+    @ManagedAttribute(description = "Number of entries evicted due to size or time limits")
+    public long getEvictionCount() {
+        return byId.stats().evictionCount() + byTitle.stats().evictionCount();
+    }
+
+    /**
+     * @return Approximate number of cached artists.
+     */
+    @ManagedAttribute(description = "Approximate number of cached artists")
+    public long getSize() {
+        return byId.estimatedSize();
+    }
+
+    /**
+     * @return Maximum number of cached artists.
+     */
+    @ManagedAttribute(description = "Maximum number of cached artists")
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Null-safe artist bean copier (aliases are not copied, they're not part of artist record).
+     *
+     * @param artist artist bean
+     * @return Copy of supplied artist bean.
+     */
+    private static ArtistBean copyOf(ArtistBean artist) {
+        return artist == null ? null : new ArtistBean(artist.getId(), artist.getTitle(), artist.getDescription(),
+                artist.getMaster() == null ? null : artist.getMaster().getId());
+    }
+
+}
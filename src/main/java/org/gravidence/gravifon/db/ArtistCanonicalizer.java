@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.util.Hashing;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Resolves artists to their canonical (principal) artists on hot paths.<p>
+ * Canonical artist is the one {@link ArtistGraphIndex#getPrincipal(long)} finds, but instead of following
+ * variation and alias relations hop by hop, mapping is kept flattened: every variation or alias artist is mapped
+ * straight to its canonical artist, artists that are not mapped are canonical themselves.
+ * Mapping is held in a single open addressing table of interleaved key and value slots, so lookup is a couple
+ * of array reads that allocate nothing. Readers don't lock unless a write overlaps the lookup
+ * (optimistic read of {@link StampedLock}).<p>
+ * Table is owned by {@link ArtistGraphIndex}, which rebuilds it on load and updates entries affected by every
+ * relation change.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class ArtistCanonicalizer {
+
+    /**
+     * Key that marks free slots. Artist IDs are never zero (see {@link ArtistGraphIndex#NO_ARTIST}).
+     */
+    private static final long FREE_KEY = ArtistGraphIndex.NO_ARTIST;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Interleaved slots: artist ID at even index, canonical artist ID at the following odd one.
+     */
+    private long[] slots = new long[MIN_CAPACITY << 1];
+
+    private int size;
+
+    /**
+     * @param artistId artist ID
+     * @return Canonical artist ID, supplied one if artist is neither variation nor alias.
+     */
+    public long canonicalId(long artistId) {
+        long stamp = lock.tryOptimisticRead();
+        long canonicalId = find(slots, artistId);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                canonicalId = find(slots, artistId);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return canonicalId;
+    }
+
+    /**
+     * @return Number of mapped (non-canonical) artists.
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Replaces the whole mapping. New table is built aside, so readers are blocked only while it's swapped in.
+     *
+     * @param canonicalIds artist ID to canonical artist ID mapping
+     */
+    void rebuild(LongLongHashMap canonicalIds) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < canonicalIds.size()) {
+            capacity <<= 1;
+        }
+        long[] rebuilt = new long[capacity << 1];
+        int[] count = {0};
+        canonicalIds.forEach((artistId, canonicalId) -> {
+            if (artistId != canonicalId && artistId != FREE_KEY) {
+                int slot = slotOf(rebuilt, artistId);
+                rebuilt[slot] = artistId;
+                rebuilt[slot + 1] = canonicalId;
+                count[0]++;
+            }
+        });
+
+        long stamp = lock.writeLock();
+        try {
+            slots = rebuilt;
+            size = count[0];
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Maps an artist to its canonical artist, removes the mapping if artist is canonical itself.
+     *
+     * @param artistId artist ID
+     * @param canonicalId canonical artist ID
+     */
+    void update(long artistId, long canonicalId) {
+        if (artistId == FREE_KEY) {
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(slots, artistId);
+            boolean mapped = slots[slot] == artistId;
+            if (artistId == canonicalId) {
+                if (mapped) {
+                    shiftBack(slot);
+                    size--;
+                }
+            }
+            else if (mapped) {
+                slots[slot + 1] = canonicalId;
+            }
+            else if ((size + 1) > (slots.length >>> 1) * LOAD_FACTOR) {
+                slots = grown(slots);
+                slot = slotOf(slots, artistId);
+                slots[slot + 1] = canonicalId;
+                slots[slot] = artistId;
+                size++;
+            }
+            else {
+                slots[slot + 1] = canonicalId;
+                slots[slot] = artistId;
+                size++;
+            }
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Looks an artist up. Probing is bounded by table capacity, so that a lookup overlapping a write
+     * (which is to be retried anyway) always terminates.
+     */
+    private static long find(long[] table, long artistId) {
+        int mask = (table.length >>> 1) - 1;
+        int index = Hashing.mix(artistId) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long key = table[index << 1];
+            if (key == artistId) {
+                return table[(index << 1) + 1];
+            }
+            if (key == FREE_KEY) {
+                break;
+            }
+            index = (index + 1) & mask;
+        }
+
+        return artistId;
+    }
+
+    /**
+     * Finds a key slot (even index) that either holds supplied artist or is free.
+     */
+    private static int slotOf(long[] table, long artistId) {
+        int mask = (table.length >>> 1) - 1;
+        int index = Hashing.mix(artistId) & mask;
+        while (table[index << 1] != artistId && table[index << 1] != FREE_KEY) {
+            index = (index + 1) & mask;
+        }
+
+        return index << 1;
+    }
+
+    /**
+     * Frees a slot shifting back subsequent entries of the same probe sequence.
+     */
+    private void shiftBack(int slot) {
+        int mask = (slots.length >>> 1) - 1;
+        int gap = slot >>> 1;
+        int next = (gap + 1) & mask;
+        while (slots[next << 1] != FREE_KEY) {
+            int ideal = Hashing.mix(slots[next << 1]) & mask;
+            // move entry to the gap unless its ideal slot lies cyclically within (gap, next]
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                slots[gap << 1] = slots[next << 1];
+                slots[(gap << 1) + 1] = slots[(next << 1) + 1];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[gap << 1] = FREE_KEY;
+    }
+
+    private static long[] grown(long[] table) {
+        long[] grown = new long[table.length << 1];
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != FREE_KEY) {
+                int slot = slotOf(grown, table[i]);
+                grown[slot] = table[i];
+                grown[slot + 1] = table[i + 1];
+            }
+        }
+
+        return grown;
+    }
+
+}
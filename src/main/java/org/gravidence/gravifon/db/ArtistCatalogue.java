@@ -0,0 +1,1144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.Select;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+import static org.gravidence.gravidat.model.Tables.G_ARTIST_ALIAS;
+
+/**
+ * Compact in-memory artist catalogue (ID, title and master ID of every artist, alias relations),
+ * read-optimized for matching.<p>
+ * Catalogue is a snapshot held in parallel primitive buffers: sorted artist IDs, master IDs and offsets of titles,
+ * plus alias edges sorted by master ID. Titles are stored once per distinct value as length-prefixed UTF-8 bytes
+ * in a shared pool. That takes <code>20</code> bytes per artist plus title bytes, while
+ * {@link org.gravidence.gravifon.web.model.ArtistBean} holds boxed ID, UTF-16 <code>String</code> title and a whole
+ * bean for master ID. Both footprints are reported on load and by <code>gravifon.catalogue.artist.bytes</code>
+ * gauge.<p>
+ * Snapshot is either built from the database by a streaming pass or, if snapshot file is configured, memory-mapped
+ * from the file written periodically (see {@link ArtistCatalogueFile}), so catalogue is usable right after startup
+ * without reading <code>G_ARTIST</code>. {@link ArtistDao} write methods record IDs of changed artists
+ * in change log (see {@link ArtistChangeDao}), which is replayed to catch the snapshot up with the database.<p>
+ * Artists written after the snapshot is built are registered by {@link ArtistDao} write methods and change log
+ * replay: new artists (with IDs above all known ones) are appended to a compact tail of the same layout,
+ * updates of older artists and new alias relations are kept aside until next snapshot.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class ArtistCatalogue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArtistCatalogue.class);
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    @Autowired
+    private ArtistChangeDao artistChangeDao;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Number of rows fetched from the database at once while streaming.
+     */
+    @Value("${org.gravidence.gravifon.db.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Snapshot file path, snapshot is not persisted if empty.
+     */
+    @Value("${org.gravidence.gravifon.catalogue.snapshot.path:}")
+    private String snapshotPath;
+
+    /**
+     * Interval between snapshot file writes, in seconds.
+     */
+    @Value("${org.gravidence.gravifon.catalogue.snapshot.interval:3600}")
+    private long snapshotInterval;
+
+    /**
+     * Change log retention, in seconds. Older snapshot files are not used as they can't be caught up.
+     */
+    @Value("${org.gravidence.gravifon.catalogue.snapshot.retention:604800}")
+    private long changeRetention;
+
+    /**
+     * Change log overlap re-read by every replay, in seconds. Change IDs are assigned on insert, but become visible
+     * on commit, so a change could show up after greater IDs are applied already. Changes recorded within
+     * the overlap before the last applied one are re-read, which is harmless as replay is idempotent.
+     */
+    @Value("${org.gravidence.gravifon.catalogue.change.overlap:60}")
+    private long changeOverlap;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Snapshot snapshot = new Builder().build(0L);
+
+    /**
+     * New artists written after snapshot is built.
+     */
+    private Builder appended = new Builder();
+
+    /**
+     * Updates of older artists written after snapshot is built.
+     */
+    private final LongObjectHashMap<Written> written = new LongObjectHashMap<>();
+
+    /**
+     * Alias relations added after snapshot is built, master and alias IDs pairwise.
+     */
+    private final LongArrayList addedAliasMasterIds = new LongArrayList();
+
+    private final LongArrayList addedAliasIds = new LongArrayList();
+
+    /**
+     * ID of the last change log record applied to catalogue.
+     */
+    private long changeId;
+
+    /**
+     * Number of catalogue modifications, tells whether catalogue changed while snapshot was written.
+     */
+    private long version;
+
+    private ScheduledExecutorService snapshotWriter;
+
+    @PostConstruct
+    public void init() {
+        warmUp();
+
+        Gauge.builder("gravifon.catalogue.artist.bytes", this, c -> c.snapshot.bytes)
+                .description("Artist catalogue memory footprint")
+                .tag("representation", "compact")
+                .register(registry);
+        Gauge.builder("gravifon.catalogue.artist.bytes", this, c -> c.snapshot.beanBytes)
+                .description("Artist catalogue memory footprint")
+                .tag("representation", "bean")
+                .register(registry);
+
+        if (getSnapshotFile() != null && snapshotInterval > 0) {
+            snapshotWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "catalogue-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotWriter.scheduleWithFixedDelay(this::refreshSnapshot, snapshotInterval, snapshotInterval,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void tearDown() {
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdownNow();
+        }
+    }
+
+    /**
+     * Warms catalogue up: snapshot file is memory-mapped if there's a usable one, otherwise catalogue is loaded
+     * from the database. Catalogue is caught up with change log afterwards.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+
+        Snapshot mapped = openSnapshot();
+        if (mapped == null) {
+            load();
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            swap(mapped);
+            changeId = mapped.changeId;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Artist catalogue mapped in {} ms: {} artists, {} alias relations, as of change {}",
+                System.currentTimeMillis() - start, mapped.size(), mapped.aliasCount(), mapped.changeId);
+
+        catchUp();
+    }
+
+    /**
+     * (Re)builds catalogue snapshot from the database.<p>
+     * Snapshot is built aside, so catalogue stays available meanwhile. Changes logged since the build started are
+     * replayed before the new snapshot is exposed.
+     */
+    public void load() {
+        long start = System.currentTimeMillis();
+
+        long since = getLastChangeId();
+        Builder builder = new Builder();
+        try (Cursor<Record3<Long, String, Long>> cursor = dslContext
+                .select(G_ARTIST.ID, G_ARTIST.TITLE, G_ARTIST.MASTER_ID)
+                .from(G_ARTIST)
+                .orderBy(G_ARTIST.ID)
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            while (cursor.hasNext()) {
+                Record3<Long, String, Long> r = cursor.fetchOne();
+                builder.add(r.value1(), r.value2(), r.value3() == null ? ArtistGraphIndex.NO_ARTIST : r.value3());
+            }
+        }
+        try (Cursor<Record2<Long, Long>> cursor = dslContext
+                .select(G_ARTIST_ALIAS.MASTER_ID, G_ARTIST_ALIAS.ALIAS_ID)
+                .from(G_ARTIST_ALIAS)
+                .orderBy(G_ARTIST_ALIAS.MASTER_ID, G_ARTIST_ALIAS.ALIAS_ID)
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            while (cursor.hasNext()) {
+                Record2<Long, Long> r = cursor.fetchOne();
+                builder.addAlias(r.value1(), r.value2());
+            }
+        }
+        Snapshot s = builder.build(since);
+
+        lock.writeLock().lock();
+        try {
+            swap(s);
+            changeId = since;
+            replay();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        LOG.info("Artist catalogue loaded in {} ms: {} artists, {} bytes ({} per artist), bean-based estimate {} bytes ({} per artist)",
+                System.currentTimeMillis() - start, s.size(), s.bytes, s.bytesPerArtist(s.bytes),
+                s.beanBytes, s.bytesPerArtist(s.beanBytes));
+    }
+
+    /**
+     * Applies changes logged since the last applied one, i.e. catches catalogue up with the database.<p>
+     * Catalogue is locked for the time of replay, which is expected to be short.
+     */
+    public void catchUp() {
+        lock.writeLock().lock();
+        try {
+            replay();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Catches catalogue up with change log and writes its state to snapshot file. Catalogue is switched
+     * to the written (memory-mapped) snapshot then, unless it was modified meanwhile.
+     *
+     * @throws IOException if snapshot file couldn't be written
+     * @throws IllegalStateException if snapshot file is not configured
+     */
+    public void writeSnapshot() throws IOException {
+        Path path = getSnapshotFile();
+        if (path == null) {
+            throw new IllegalStateException("Artist catalogue snapshot file is not configured.");
+        }
+
+        long start = System.currentTimeMillis();
+
+        catchUp();
+
+        Snapshot compacted;
+        long compactedVersion;
+        lock.readLock().lock();
+        try {
+            compacted = compact();
+            compactedVersion = version;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        ArtistCatalogueFile.write(compacted, path);
+        Snapshot mapped = ArtistCatalogueFile.open(path);
+
+        lock.writeLock().lock();
+        try {
+            if (version == compactedVersion) {
+                swap(mapped);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        LOG.info("Artist catalogue snapshot written in {} ms: {} artists, {} alias relations, as of change {}",
+                System.currentTimeMillis() - start, compacted.size(), compacted.aliasCount(), compacted.changeId);
+    }
+
+    /**
+     * @return Snapshot file path or <code>null</code> if snapshot is not persisted.
+     */
+    public Path getSnapshotFile() {
+        return snapshotPath == null || snapshotPath.isEmpty() ? null : Paths.get(snapshotPath);
+    }
+
+    /**
+     * @return <code>true</code> if catalogue snapshot is memory-mapped from snapshot file.
+     */
+    public boolean isMapped() {
+        return snapshot.mapped;
+    }
+
+    /**
+     * @return Number of artists in catalogue.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int[] size = {snapshot.size() + appended.size};
+            written.forEach((id, artist) -> {
+                if (snapshot.indexOf(id) < 0 && appended.indexOf(id) < 0) {
+                    size[0]++;
+                }
+            });
+
+            return size[0];
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param artistId artist ID
+     * @return <code>true</code> if artist exists.
+     */
+    public boolean contains(long artistId) {
+        lock.readLock().lock();
+        try {
+            return written.get(artistId) != null || snapshot.indexOf(artistId) >= 0 || appended.indexOf(artistId) >= 0;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param artistId artist ID
+     * @return Artist title or <code>null</code> if artist doesn't exist.
+     */
+    public String getTitle(long artistId) {
+        lock.readLock().lock();
+        try {
+            Written w = written.get(artistId);
+            if (w != null) {
+                return w.title;
+            }
+
+            int index = snapshot.indexOf(artistId);
+            if (index >= 0) {
+                return snapshot.title(index);
+            }
+
+            index = appended.indexOf(artistId);
+            return index < 0 ? null : appended.title(index);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param artistId artist ID
+     * @return Master artist ID or {@link ArtistGraphIndex#NO_ARTIST} if artist is not a variation (or doesn't exist).
+     */
+    public long getMaster(long artistId) {
+        lock.readLock().lock();
+        try {
+            Written w = written.get(artistId);
+            if (w != null) {
+                return w.masterId;
+            }
+
+            int index = snapshot.indexOf(artistId);
+            if (index >= 0) {
+                return snapshot.masterIds.get(index);
+            }
+
+            index = appended.indexOf(artistId);
+            return index < 0 ? ArtistGraphIndex.NO_ARTIST : appended.masterIds[index];
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every variation relation.
+     *
+     * @param visitor visitor accepting variation artist ID and master artist ID
+     */
+    public void forEachVariation(LongLongHashMap.Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            Snapshot s = snapshot;
+            for (int i = 0; i < s.size(); i++) {
+                long id = s.ids.get(i);
+                long masterId = s.masterIds.get(i);
+                if (masterId != ArtistGraphIndex.NO_ARTIST && written.get(id) == null) {
+                    visitor.visit(id, masterId);
+                }
+            }
+            for (int i = 0; i < appended.size; i++) {
+                long id = appended.ids[i];
+                long masterId = appended.masterIds[i];
+                if (masterId != ArtistGraphIndex.NO_ARTIST && written.get(id) == null) {
+                    visitor.visit(id, masterId);
+                }
+            }
+            written.forEach((id, artist) -> {
+                if (artist.masterId != ArtistGraphIndex.NO_ARTIST) {
+                    visitor.visit(id, artist.masterId);
+                }
+            });
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every alias relation.
+     *
+     * @param visitor visitor accepting master artist ID and alias artist ID
+     */
+    public void forEachAlias(LongLongHashMap.Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            Snapshot s = snapshot;
+            for (int i = 0; i < s.aliasCount(); i++) {
+                visitor.visit(s.aliasMasterIds.get(i), s.aliasIds.get(i));
+            }
+            for (int i = 0; i < addedAliasIds.size(); i++) {
+                visitor.visit(addedAliasMasterIds.get(i), addedAliasIds.get(i));
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Memory footprint of catalogue snapshot, in bytes.
+     */
+    public long getBytes() {
+        return snapshot.bytes;
+    }
+
+    /**
+     * @return Estimated memory footprint of the same artists held as beans, in bytes.
+     */
+    public long getBeanBytes() {
+        return snapshot.beanBytes;
+    }
+
+    /**
+     * Registers an artist record write (insert or update).
+     *
+     * @param artistId artist ID
+     * @param title artist title
+     * @param masterId master artist ID, <code>null</code> if artist is not a variation
+     */
+    public void artistWritten(long artistId, String title, Long masterId) {
+        lock.writeLock().lock();
+        try {
+            write(artistId, title, masterId == null ? ArtistGraphIndex.NO_ARTIST : masterId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers an alias relation.
+     *
+     * @param masterId master artist ID
+     * @param aliasId alias artist ID
+     */
+    public void aliasAdded(long masterId, long aliasId) {
+        lock.writeLock().lock();
+        try {
+            addAlias(masterId, aliasId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes snapshot file and removes change log records beyond retention.
+     * Runs periodically if snapshot file is configured.
+     */
+    private void refreshSnapshot() {
+        try {
+            writeSnapshot();
+            artistChangeDao.removeChanges(
+                    new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(changeRetention)));
+        }
+        catch (Exception e) {
+            LOG.error("Failed to refresh artist catalogue snapshot", e);
+        }
+    }
+
+    /**
+     * @return Snapshot mapped from snapshot file or <code>null</code> if there's no usable snapshot file.
+     */
+    private Snapshot openSnapshot() {
+        Path path = getSnapshotFile();
+        if (path == null || !Files.exists(path)) {
+            return null;
+        }
+
+        try {
+            Snapshot mapped = ArtistCatalogueFile.open(path);
+            if (mapped.created < System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(changeRetention)) {
+                LOG.warn("Artist catalogue snapshot {} is older than change log retention, ignoring it", path);
+                return null;
+            }
+            if (mapped.changeId > getLastChangeId()) {
+                LOG.warn("Artist catalogue snapshot {} is ahead of change log (i.e. taken from another database), ignoring it",
+                        path);
+                return null;
+            }
+
+            return mapped;
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to open artist catalogue snapshot {}, ignoring it", path, e);
+            return null;
+        }
+    }
+
+    private long getLastChangeId() {
+        Long id = artistChangeDao.getLastChangeId();
+
+        return id == null ? 0L : id;
+    }
+
+    /**
+     * Applies changes logged after {@link #changeId}, along with changes recorded within {@link #changeOverlap}
+     * before it: changed artists (and alias relations of them as masters) are re-read from the database.
+     * Caller must hold write lock.
+     */
+    private void replay() {
+        long last = getLastChangeId();
+        Timestamp applied = dslContext.select(ArtistChangeDao.CHANGE_CHANGED)
+                .from(ArtistChangeDao.G_ARTIST_CHANGE)
+                .where(ArtistChangeDao.CHANGE_ID.eq(changeId))
+                .fetchOne(ArtistChangeDao.CHANGE_CHANGED);
+        if (last <= changeId && applied == null) {
+            return;
+        }
+
+        Condition window = ArtistChangeDao.CHANGE_ID.gt(changeId);
+        if (applied != null) {
+            window = window.or(ArtistChangeDao.CHANGE_CHANGED.ge(
+                    new Timestamp(applied.getTime() - TimeUnit.SECONDS.toMillis(changeOverlap))));
+        }
+        Select<Record1<Long>> changed = dslContext.selectDistinct(ArtistChangeDao.CHANGE_ARTIST_ID)
+                .from(ArtistChangeDao.G_ARTIST_CHANGE)
+                .where(window)
+                .and(ArtistChangeDao.CHANGE_ID.le(last));
+
+        int artists = 0;
+        try (Cursor<Record3<Long, String, Long>> cursor = dslContext
+                .select(G_ARTIST.ID, G_ARTIST.TITLE, G_ARTIST.MASTER_ID)
+                .from(G_ARTIST)
+                .where(G_ARTIST.ID.in(changed))
+                .orderBy(G_ARTIST.ID)
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            while (cursor.hasNext()) {
+                Record3<Long, String, Long> r = cursor.fetchOne();
+                write(r.value1(), r.value2(), r.value3() == null ? ArtistGraphIndex.NO_ARTIST : r.value3());
+                artists++;
+            }
+        }
+        try (Cursor<Record2<Long, Long>> cursor = dslContext
+                .select(G_ARTIST_ALIAS.MASTER_ID, G_ARTIST_ALIAS.ALIAS_ID)
+                .from(G_ARTIST_ALIAS)
+                .where(G_ARTIST_ALIAS.MASTER_ID.in(changed))
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            while (cursor.hasNext()) {
+                Record2<Long, Long> r = cursor.fetchOne();
+                addAlias(r.value1(), r.value2());
+            }
+        }
+
+        LOG.debug("Artist catalogue caught up with changes up to {}: {} artists re-read", last, artists);
+        changeId = Math.max(changeId, last);
+    }
+
+    /**
+     * Exposes supplied snapshot, drops catalogue modifications. Caller must hold write lock.
+     */
+    private void swap(Snapshot s) {
+        snapshot = s;
+        appended = new Builder();
+        written.clear();
+        addedAliasMasterIds.clear();
+        addedAliasIds.clear();
+        version++;
+    }
+
+    /**
+     * Caller must hold write lock.
+     */
+    private void write(long artistId, String title, long masterId) {
+        Snapshot s = snapshot;
+        boolean isNew = (s.size() == 0 || artistId > s.ids.get(s.size() - 1))
+                && (appended.size == 0 || artistId > appended.ids[appended.size - 1]);
+        if (isNew) {
+            appended.add(artistId, title, masterId);
+        }
+        else {
+            written.put(artistId, new Written(title, masterId));
+        }
+        version++;
+    }
+
+    /**
+     * Caller must hold write lock.
+     */
+    private void addAlias(long masterId, long aliasId) {
+        addedAliasMasterIds.add(masterId);
+        addedAliasIds.add(aliasId);
+        version++;
+    }
+
+    /**
+     * Merges snapshot and catalogue modifications into a new snapshot. Caller must hold (at least) read lock.
+     *
+     * @return Up to date snapshot, held on heap.
+     */
+    private Snapshot compact() {
+        Snapshot s = snapshot;
+        Builder builder = new Builder();
+
+        // artists written aside that are new to both snapshot and tail (e.g. replayed out of ID order)
+        LongArrayList extraIds = new LongArrayList();
+        written.forEach((id, artist) -> {
+            if (s.indexOf(id) < 0 && appended.indexOf(id) < 0) {
+                extraIds.add(id);
+            }
+        });
+        long[] extra = extraIds.toArray();
+        Arrays.sort(extra);
+
+        int baseSize = s.size() + appended.size;
+        int i = 0;
+        int k = 0;
+        while (i < baseSize || k < extra.length) {
+            long baseId = i >= baseSize ? Long.MAX_VALUE : i < s.size() ? s.ids.get(i) : appended.ids[i - s.size()];
+            if (k < extra.length && extra[k] < baseId) {
+                Written w = written.get(extra[k]);
+                builder.add(extra[k++], w.title, w.masterId);
+                continue;
+            }
+
+            Written w = written.get(baseId);
+            if (w != null) {
+                builder.add(baseId, w.title, w.masterId);
+            }
+            else if (i < s.size()) {
+                builder.add(baseId, s.title(i), s.masterIds.get(i));
+            }
+            else {
+                builder.add(baseId, appended.title(i - s.size()), appended.masterIds[i - s.size()]);
+            }
+            i++;
+        }
+
+        Integer[] added = new Integer[addedAliasIds.size()];
+        for (int a = 0; a < added.length; a++) {
+            added[a] = a;
+        }
+        Arrays.sort(added, (a, b) -> {
+            int result = Long.compare(addedAliasMasterIds.get(a), addedAliasMasterIds.get(b));
+            return result != 0 ? result : Long.compare(addedAliasIds.get(a), addedAliasIds.get(b));
+        });
+        int j = 0;
+        k = 0;
+        while (j < s.aliasCount() || k < added.length) {
+            boolean fromSnapshot = k >= added.length || (j < s.aliasCount()
+                    && compareEdges(s.aliasMasterIds.get(j), s.aliasIds.get(j),
+                            addedAliasMasterIds.get(added[k]), addedAliasIds.get(added[k])) <= 0);
+            if (fromSnapshot) {
+                builder.addAlias(s.aliasMasterIds.get(j), s.aliasIds.get(j));
+                j++;
+            }
+            else {
+                builder.addAlias(addedAliasMasterIds.get(added[k]), addedAliasIds.get(added[k]));
+                k++;
+            }
+        }
+
+        return builder.build(changeId);
+    }
+
+    private static int compareEdges(long masterId, long aliasId, long otherMasterId, long otherAliasId) {
+        int result = Long.compare(masterId, otherMasterId);
+
+        return result != 0 ? result : Long.compare(aliasId, otherAliasId);
+    }
+
+    /**
+     * Artist written after snapshot is built.
+     */
+    private static class Written {
+
+        final String title;
+
+        final long masterId;
+
+        Written(String title, long masterId) {
+            this.title = title;
+            this.masterId = masterId;
+        }
+
+    }
+
+    /**
+     * Immutable catalogue snapshot. Buffers either wrap heap arrays or are views of memory-mapped snapshot file,
+     * they are accessed by absolute index only, so snapshot is safe to be read concurrently.
+     */
+    static class Snapshot {
+
+        /**
+         * Artist IDs, ascending.
+         */
+        final LongBuffer ids;
+
+        /**
+         * Master artist IDs, {@link ArtistGraphIndex#NO_ARTIST} if none.
+         */
+        final LongBuffer masterIds;
+
+        /**
+         * Offsets of artist titles in title pool, <code>-1</code> if title is <code>null</code>.
+         */
+        final IntBuffer titles;
+
+        /**
+         * Distinct titles, every one is UTF-8 bytes prefixed by their length (varint).
+         */
+        final ByteBuffer pool;
+
+        /**
+         * Alias relations sorted by master ID then alias ID: master artist IDs.
+         */
+        final LongBuffer aliasMasterIds;
+
+        /**
+         * Alias relations sorted by master ID then alias ID: alias artist IDs.
+         */
+        final LongBuffer aliasIds;
+
+        /**
+         * ID of the last change log record reflected by snapshot.
+         */
+        final long changeId;
+
+        /**
+         * Snapshot creation time, in milliseconds.
+         */
+        final long created;
+
+        final long bytes;
+
+        final long beanBytes;
+
+        final boolean mapped;
+
+        Snapshot(LongBuffer ids, LongBuffer masterIds, IntBuffer titles, ByteBuffer pool,
+                 LongBuffer aliasMasterIds, LongBuffer aliasIds, long changeId, long created, long beanBytes,
+                 boolean mapped) {
+            this.ids = ids;
+            this.masterIds = masterIds;
+            this.titles = titles;
+            this.pool = pool;
+            this.aliasMasterIds = aliasMasterIds;
+            this.aliasIds = aliasIds;
+            this.changeId = changeId;
+            this.created = created;
+            this.bytes = arrayBytes(8L, ids.limit()) + arrayBytes(8L, masterIds.limit())
+                    + arrayBytes(4L, titles.limit()) + arrayBytes(1L, pool.limit())
+                    + arrayBytes(8L, aliasMasterIds.limit()) + arrayBytes(8L, aliasIds.limit());
+            this.beanBytes = beanBytes;
+            this.mapped = mapped;
+        }
+
+        int size() {
+            return ids.limit();
+        }
+
+        int aliasCount() {
+            return aliasIds.limit();
+        }
+
+        int indexOf(long id) {
+            int low = 0;
+            int high = ids.limit() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = ids.get(mid);
+                if (midId < id) {
+                    low = mid + 1;
+                }
+                else if (midId > id) {
+                    high = mid - 1;
+                }
+                else {
+                    return mid;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        String title(int index) {
+            return titleOf(pool, titles.get(index));
+        }
+
+        long bytesPerArtist(long total) {
+            return size() == 0 ? 0L : total / size();
+        }
+
+    }
+
+    /**
+     * Builds a snapshot from artists supplied in ascending ID order and alias relations supplied in ascending
+     * master ID then alias ID order.<p>
+     * Titles are deduplicated by an open addressing table of pool offsets, which is dropped once snapshot is built.
+     */
+    static class Builder {
+
+        private long[] ids = new long[1024];
+
+        private long[] masterIds = new long[1024];
+
+        private int[] titles = new int[1024];
+
+        private int size;
+
+        private byte[] pool = new byte[16 * 1024];
+
+        private int poolSize;
+
+        /**
+         * Pool offsets of distinct titles plus one, zero marks free slots.
+         */
+        private int[] distinct = new int[1024];
+
+        private int distinctSize;
+
+        private long[] aliasMasterIds = new long[16];
+
+        private long[] aliasIds = new long[16];
+
+        private int aliasCount;
+
+        private long beanBytes;
+
+        void add(long id, String title, long masterId) {
+            if (size > 0 && id <= ids[size - 1]) {
+                throw new IllegalArgumentException("Artists must be supplied in ascending ID order.");
+            }
+            if (size == ids.length) {
+                int capacity = size + (size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                masterIds = Arrays.copyOf(masterIds, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+            }
+
+            ids[size] = id;
+            masterIds[size] = masterId;
+            titles[size] = title == null ? -1 : intern(title.getBytes(StandardCharsets.UTF_8));
+            size++;
+
+            beanBytes += beanBytes(title, masterId != ArtistGraphIndex.NO_ARTIST);
+        }
+
+        /**
+         * Adds alias relation, repeated relation is ignored.
+         */
+        void addAlias(long masterId, long aliasId) {
+            if (aliasCount > 0) {
+                int order = compareEdges(masterId, aliasId, aliasMasterIds[aliasCount - 1], aliasIds[aliasCount - 1]);
+                if (order == 0) {
+                    return;
+                }
+                if (order < 0) {
+                    throw new IllegalArgumentException("Alias relations must be supplied in ascending order.");
+                }
+            }
+            if (aliasCount == aliasIds.length) {
+                int capacity = aliasCount + (aliasCount >> 1);
+                aliasMasterIds = Arrays.copyOf(aliasMasterIds, capacity);
+                aliasIds = Arrays.copyOf(aliasIds, capacity);
+            }
+
+            aliasMasterIds[aliasCount] = masterId;
+            aliasIds[aliasCount] = aliasId;
+            aliasCount++;
+        }
+
+        int indexOf(long id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        String title(int index) {
+            return titleOf(ByteBuffer.wrap(pool, 0, poolSize), titles[index]);
+        }
+
+        /**
+         * @param changeId ID of the last change log record reflected by snapshot
+         */
+        Snapshot build(long changeId) {
+            return new Snapshot(LongBuffer.wrap(Arrays.copyOf(ids, size)), LongBuffer.wrap(Arrays.copyOf(masterIds, size)),
+                    IntBuffer.wrap(Arrays.copyOf(titles, size)), ByteBuffer.wrap(Arrays.copyOf(pool, poolSize)),
+                    LongBuffer.wrap(Arrays.copyOf(aliasMasterIds, aliasCount)),
+                    LongBuffer.wrap(Arrays.copyOf(aliasIds, aliasCount)),
+                    changeId, System.currentTimeMillis(), beanBytes, false);
+        }
+
+        /**
+         * @return Pool offset of supplied title, title is appended to pool if it's not there yet.
+         */
+        private int intern(byte[] title) {
+            int mask = distinct.length - 1;
+            for (int slot = Arrays.hashCode(title) & mask; ; slot = (slot + 1) & mask) {
+                int entry = distinct[slot];
+                if (entry == 0) {
+                    break;
+                }
+                if (pooled(entry - 1, title)) {
+                    return entry - 1;
+                }
+            }
+
+            int offset = append(title);
+            if (++distinctSize * 2 > distinct.length) {
+                rehash();
+            }
+            put(offset);
+
+            return offset;
+        }
+
+        private boolean pooled(int offset, byte[] title) {
+            if (lengthOf(pool, offset) != title.length) {
+                return false;
+            }
+            int payload = payloadOf(pool, offset);
+            for (int i = 0; i < title.length; i++) {
+                if (pool[payload + i] != title[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private int append(byte[] title) {
+            if (poolSize + title.length + 5 > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length + (pool.length >> 1), poolSize + title.length + 5));
+            }
+
+            int offset = poolSize;
+            int length = title.length;
+            while ((length & ~0x7F) != 0) {
+                pool[poolSize++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            pool[poolSize++] = (byte) length;
+            System.arraycopy(title, 0, pool, poolSize, title.length);
+            poolSize += title.length;
+
+            return offset;
+        }
+
+        private void put(int offset) {
+            int mask = distinct.length - 1;
+            int slot = hashOf(offset) & mask;
+            while (distinct[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            distinct[slot] = offset + 1;
+        }
+
+        private void rehash() {
+            int[] old = distinct;
+            distinct = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) {
+                    put(entry - 1);
+                }
+            }
+        }
+
+        /**
+         * @return Hash of pooled title, consistent with {@link Arrays#hashCode(byte[])}.
+         */
+        private int hashOf(int offset) {
+            int length = lengthOf(pool, offset);
+            int payload = payloadOf(pool, offset);
+
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + pool[payload + i];
+            }
+
+            return hash;
+        }
+    }
+
+    /**
+     * @param pool title pool
+     * @param offset title offset, <code>-1</code> for <code>null</code> title
+     * @return Decoded title.
+     */
+    static String titleOf(ByteBuffer pool, int offset) {
+        if (offset < 0) {
+            return null;
+        }
+
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = pool.get(offset++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        if (pool.hasArray()) {
+            return new String(pool.array(), pool.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = pool.get(offset + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param pool title pool
+     * @param offset title offset
+     * @return Title length, in bytes.
+     */
+    private static int lengthOf(byte[] pool, int offset) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = pool[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return length;
+    }
+
+    /**
+     * @param pool title pool
+     * @param offset title offset
+     * @return Offset of title bytes, i.e. the one following title length.
+     */
+    private static int payloadOf(byte[] pool, int offset) {
+        while (pool[offset++] < 0) {
+            // skip length bytes
+        }
+
+        return offset;
+    }
+
+    /**
+     * Estimates heap footprint of an artist bean holding ID, title and master (64-bit JVM, compressed oops):
+     * bean of six reference fields, boxed ID, title string with its char array and master bean with its boxed ID.
+     */
+    static long beanBytes(String title, boolean hasMaster) {
+        long bean = align(12L + 6 * 4L) + align(12L + 8L);
+        long string = title == null ? 0L : align(12L + 4L + 4L + 4L) + arrayBytes(2L, title.length());
+
+        return bean + string + (hasMaster ? bean : 0L);
+    }
+
+    private static long arrayBytes(long elementBytes, long length) {
+        return align(16L + elementBytes * length);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7L) & ~7L;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format of {@link ArtistCatalogue} snapshot.<p>
+ * File is a fixed size header followed by snapshot buffers as is (big-endian), so it's opened by memory mapping
+ * without any parsing:
+ * <pre>
+ * int magic, int version, long change ID, long creation time, long bean-based footprint estimate,
+ * int artist count (N), int alias relation count (A), int title pool size (P), int reserved,
+ * long[N] artist IDs, long[N] master IDs, long[A] alias master IDs, long[A] alias IDs,
+ * int[N] title offsets, byte[P] title pool
+ * </pre>
+ * File is written aside and moved over the previous one atomically, mappings of the previous file stay valid.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+final class ArtistCatalogueFile {
+
+    /**
+     * "GCAT" in ASCII.
+     */
+    static final int MAGIC = 0x47434154;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 48;
+
+    private ArtistCatalogueFile() {
+    }
+
+    /**
+     * Writes snapshot to file.
+     *
+     * @param snapshot catalogue snapshot
+     * @param path snapshot file path
+     * @throws IOException if file couldn't be written or snapshot is too large to be mapped
+     */
+    static void write(ArtistCatalogue.Snapshot snapshot, Path path) throws IOException {
+        int artists = snapshot.size();
+        int aliases = snapshot.aliasCount();
+        int poolSize = snapshot.pool.limit();
+        long fileSize = fileSize(artists, aliases, poolSize);
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Artist catalogue snapshot is too large to be mapped: " + fileSize + " bytes.");
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.changeId);
+            out.writeLong(snapshot.created);
+            out.writeLong(snapshot.beanBytes);
+            out.writeInt(artists);
+            out.writeInt(aliases);
+            out.writeInt(poolSize);
+            out.writeInt(0);
+
+            writeLongs(out, snapshot.ids);
+            writeLongs(out, snapshot.masterIds);
+            writeLongs(out, snapshot.aliasMasterIds);
+            writeLongs(out, snapshot.aliasIds);
+            for (int i = 0; i < artists; i++) {
+                out.writeInt(snapshot.titles.get(i));
+            }
+            byte[] chunk = new byte[64 * 1024];
+            ByteBuffer pool = snapshot.pool.duplicate();
+            pool.rewind();
+            while (pool.hasRemaining()) {
+                int length = Math.min(chunk.length, pool.remaining());
+                pool.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens snapshot file by memory mapping.
+     *
+     * @param path snapshot file path
+     * @return Memory-mapped snapshot.
+     * @throws IOException if file couldn't be read or is not a valid snapshot file
+     */
+    static ArtistCatalogue.Snapshot open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected artist catalogue snapshot size: " + size + " bytes.");
+            }
+            // mapping stays valid after channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an artist catalogue snapshot of version " + VERSION + ".");
+        }
+        long changeId = buffer.getLong(8);
+        long created = buffer.getLong(16);
+        long beanBytes = buffer.getLong(24);
+        int artists = buffer.getInt(32);
+        int aliases = buffer.getInt(36);
+        int poolSize = buffer.getInt(40);
+        if (artists < 0 || aliases < 0 || poolSize < 0 || fileSize(artists, aliases, poolSize) != buffer.capacity()) {
+            throw new IOException("Artist catalogue snapshot is truncated or corrupted.");
+        }
+
+        int offset = HEADER_BYTES;
+        LongBuffer ids = slice(buffer, offset, artists * 8).asLongBuffer();
+        offset += artists * 8;
+        LongBuffer masterIds = slice(buffer, offset, artists * 8).asLongBuffer();
+        offset += artists * 8;
+        LongBuffer aliasMasterIds = slice(buffer, offset, aliases * 8).asLongBuffer();
+        offset += aliases * 8;
+        LongBuffer aliasIds = slice(buffer, offset, aliases * 8).asLongBuffer();
+        offset += aliases * 8;
+        IntBuffer titles = slice(buffer, offset, artists * 4).asIntBuffer();
+        offset += artists * 4;
+        ByteBuffer pool = slice(buffer, offset, poolSize);
+
+        return new ArtistCatalogue.Snapshot(ids, masterIds, titles, pool, aliasMasterIds, aliasIds,
+                changeId, created, beanBytes, true);
+    }
+
+    private static long fileSize(int artists, int aliases, int poolSize) {
+        return HEADER_BYTES + 20L * artists + 16L * aliases + poolSize;
+    }
+
+    private static void writeLongs(DataOutputStream out, LongBuffer values) throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeLong(values.get(i));
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+
+        return view.slice();
+    }
+
+}
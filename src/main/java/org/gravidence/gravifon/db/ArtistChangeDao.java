@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep1;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * DAO for artist change log (<code>G_ARTIST_CHANGE</code> table).<p>
+ * Change log records IDs of written artists, so in-memory artist structures of any application instance
+ * (see {@link ArtistCatalogue}) catch up with the database by replaying it.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class ArtistChangeDao {
+
+    static final Table<Record> G_ARTIST_CHANGE = DSL.table(DSL.name("G_ARTIST_CHANGE"));
+
+    static final Field<Long> CHANGE_ID = DSL.field(DSL.name("G_ARTIST_CHANGE", "ID"), Long.class);
+
+    static final Field<Long> CHANGE_ARTIST_ID = DSL.field(DSL.name("G_ARTIST_CHANGE", "ARTIST_ID"), Long.class);
+
+    static final Field<Timestamp> CHANGE_CHANGED = DSL.field(DSL.name("G_ARTIST_CHANGE", "CHANGED"), Timestamp.class);
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Records artist changes with a single multi-row insert.<p>
+     * Expected to be called within the transaction that writes artists, so change log never misses a write.
+     *
+     * @param artistIds IDs of written artists (or masters of added alias relations)
+     */
+    public void addChanges(long... artistIds) {
+        if (artistIds.length == 0) {
+            return;
+        }
+
+        InsertValuesStep1<Record, Long> insert = dslContext.insertInto(G_ARTIST_CHANGE, CHANGE_ARTIST_ID);
+        for (long artistId : artistIds) {
+            insert = insert.values(artistId);
+        }
+        insert.execute();
+    }
+
+    /**
+     * @return ID of the last recorded change or <code>null</code> if change log is empty.
+     */
+    public Long getLastChangeId() {
+        return dslContext.select(DSL.max(CHANGE_ID)).from(G_ARTIST_CHANGE).fetchOne().value1();
+    }
+
+    /**
+     * Removes changes recorded before supplied time.
+     *
+     * @param before change log retention boundary
+     * @return Number of removed changes.
+     */
+    public int removeChanges(Date before) {
+        return dslContext.deleteFrom(G_ARTIST_CHANGE)
+                .where(CHANGE_CHANGED.lt(new Timestamp(before.getTime())))
+                .execute();
+    }
+
+}
@@ -25,18 +25,45 @@
 package org.gravidence.gravifon.db;
 
 import org.gravidence.gravidat.model.tables.records.GArtistRecord;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.web.EncodedPayload;
 import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.ArtistPageBean;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
-import org.jooq.Record1;
+import org.jooq.Field;
+import org.jooq.InsertSetMoreStep;
+import org.jooq.InsertValuesStep3;
+import org.jooq.Query;
+import org.jooq.Record4;
 import org.jooq.Result;
+import org.jooq.SelectConditionStep;
+import org.jooq.SelectSeekStep1;
+import org.jooq.impl.DSL;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static org.gravidence.gravidat.model.Tables.G_ARTIST;
 import static org.gravidence.gravidat.model.Tables.G_ARTIST_ALIAS;
@@ -49,12 +76,122 @@ import static org.gravidence.gravidat.model.Tables.G_ARTIST_ALIAS;
 @Component
 public class ArtistDao {
 
+    /**
+     * Artist relations that could be expanded (hydrated) along with an artist.
+     */
+    public enum Relation {
+        /**
+         * Master artist of a variation.
+         */
+        MASTER,
+        /**
+         * Alias artists of a master one.
+         */
+        ALIASES,
+        /**
+         * Variation artists of a master one.
+         */
+        VARIATIONS
+    }
+
+    /**
+     * Normalized artist title (computed and indexed column, not part of generated model).
+     */
+    static final Field<String> TITLE_NORM = DSL.field(DSL.name(G_ARTIST.getName(), "TITLE_NORM"), String.class);
+
+    /**
+     * Relations hydrated by bulk lookups.
+     */
+    private static final Set<Relation> BULK_EXPAND = Collections.unmodifiableSet(
+            EnumSet.of(Relation.MASTER, Relation.ALIASES));
+
     /**
      * jOOQ instance bean.
      */
     @Autowired
     private DSLContext dslContext;
 
+    /**
+     * Artist records cache.
+     */
+    @Autowired
+    private ArtistCache artistCache;
+
+    /**
+     * Artist relations index.
+     */
+    @Autowired
+    private ArtistGraphIndex artistGraphIndex;
+
+    /**
+     * Artist titles search index.
+     */
+    @Autowired
+    private ArtistSearchIndex artistSearchIndex;
+
+    /**
+     * Compact artist catalogue.
+     */
+    @Autowired
+    private ArtistCatalogue artistCatalogue;
+
+    /**
+     * Artist change log, records every artist write for catalogue replay.
+     */
+    @Autowired
+    private ArtistChangeDao artistChangeDao;
+
+    /**
+     * Maximum number of rows written by a single bulk statement (and committed by a single transaction).
+     */
+    @Value("${org.gravidence.gravifon.db.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Number of rows fetched from the database at once while streaming.
+     */
+    @Value("${org.gravidence.gravifon.db.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Whether fixed queries are rendered once and executed as {@link CachedQueries.CachedQuery cached queries}.
+     */
+    @Value("${org.gravidence.gravifon.db.statement-cache:true}")
+    private boolean statementCache;
+
+    /**
+     * Factory of cached queries.
+     */
+    @Autowired
+    private CachedQueries cachedQueries;
+
+    /**
+     * Cached {@link #selectArtistById(Long)} query, <code>null</code> if statement cache is disabled.
+     */
+    private CachedQueries.CachedQuery selectArtistById;
+
+    /**
+     * Cached {@link #insertArtist(ArtistBean)} query, <code>null</code> if statement cache is disabled.
+     */
+    private CachedQueries.CachedQuery insertArtist;
+
+    /**
+     * Cached {@link #mergeArtist(ArtistBean)} query, <code>null</code> if statement cache is disabled.
+     */
+    private CachedQueries.CachedQuery mergeArtist;
+
+    /**
+     * Prepares cached queries, unless statement cache is disabled.
+     */
+    @PostConstruct
+    private void prepareQueries() {
+        if (statementCache) {
+            selectArtistById = cachedQueries.prepare(selectArtistById(null));
+            insertArtist = cachedQueries.prepare(insertArtist(new ArtistBean()));
+            mergeArtist = cachedQueries.prepare(mergeArtist(new ArtistBean()));
+        }
+    }
+
     /**
      * Adds a new artist record.
      *
@@ -68,18 +205,87 @@ public class ArtistDao {
             throw new IllegalArgumentException("Artist must have no ID at that stage.");
         }
 
-        GArtistRecord rs = dslContext.insertInto(G_ARTIST)
-                .set(G_ARTIST.TITLE, artist.getTitle())
-                .set(G_ARTIST.DESCRIPTION, artist.getDescription())
-                .set(G_ARTIST.MASTER_ID, getMasterId(artist))
-                .returning(G_ARTIST.ID)
-                .fetchOne();
+        try {
+            dslContext.transaction(configuration -> {
+                if (insertArtist != null) {
+                    artist.setId(insertArtist.insert(G_ARTIST.ID.getName(),
+                            artist.getTitle(), artist.getDescription(), getMasterId(artist)));
+                }
+                else {
+                    artist.setId(insertArtist(artist).returning(G_ARTIST.ID).fetchOne().getId());
+                }
+                artistChangeDao.addChanges(artist.getId());
+            });
+        }
+        catch (RuntimeException e) {
+            // ID assigned within rolled back transaction is not valid anymore
+            artist.setId(null);
+            throw e;
+        }
 
-        artist.setId(rs.getId());
+        artistCache.put(artist);
+        artistGraphIndex.artistWritten(artist.getId(), getMasterId(artist));
+        artistSearchIndex.artistWritten(artist.getId(), artist.getTitle());
+        artistCatalogue.artistWritten(artist.getId(), artist.getTitle(), getMasterId(artist));
 
         return artist;
     }
 
+    /**
+     * Adds new artist records in bulk.<p>
+     * Artists are written in chunks of configured batch size, every chunk is a multi-row insert
+     * committed in its own transaction. Variation artists may refer to master artists from the same list,
+     * such masters must be supplied before (or within the same chunk as) their variations. If a chunk fails,
+     * chunks written before it stay committed.
+     *
+     * @param artists list of artist beans
+     * @return Supplied artist beans updated with IDs.
+     *
+     * @throws IllegalArgumentException if artist ID is specified or master artist is neither persisted nor supplied
+     *
+     * @see #addArtists(Iterator)
+     */
+    public List<ArtistBean> addArtists(List<ArtistBean> artists) {
+        addArtists(artists.iterator());
+
+        return artists;
+    }
+
+    /**
+     * Adds new artist records in bulk, streaming variant.<p>
+     * Only a single chunk of artists is held at a time, so the source could be arbitrary large.
+     * Master artists must be supplied before (or within the same chunk as) their variations.
+     *
+     * @param artists artist beans source
+     * @return Number of added artists. Supplied artist beans are updated with IDs.
+     *
+     * @throws IllegalArgumentException if artist ID is specified or master artist is neither persisted nor supplied
+     *
+     * @see #addArtists(List)
+     */
+    public int addArtists(Iterator<ArtistBean> artists) {
+        int count = 0;
+
+        List<ArtistBean> chunk = new ArrayList<>(batchSize);
+        while (artists.hasNext()) {
+            ArtistBean artist = artists.next();
+            if (artist.getId() != null) {
+                throw new IllegalArgumentException("Artist must have no ID at that stage.");
+            }
+
+            chunk.add(artist);
+            if (chunk.size() == batchSize) {
+                count += addArtistChunk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            count += addArtistChunk(chunk);
+        }
+
+        return count;
+    }
+
     /**
      * Fetches an artist by ID.
      *
@@ -87,16 +293,81 @@ public class ArtistDao {
      * @return The artist bean or <code>null</code> if not found.
      */
     public ArtistBean getArtist(Long id) {
-        GArtistRecord rs = dslContext.selectFrom(G_ARTIST)
-                .where(G_ARTIST.ID.eq(id))
-                .fetchOne();
+        return artistCache.get(id, this::fetchArtist);
+    }
 
-        return toWebModel(rs);
+    /**
+     * Fetches an artist by ID along with requested relations.<p>
+     * Related artist IDs are resolved via {@link ArtistGraphIndex}, so the whole neighbourhood is loaded at once:
+     * from cache if possible, the rest by a single <code>IN</code> query. Related artists are attached as plain
+     * records, relation lists are set only if there are related artists.
+     *
+     * @param id artist ID
+     * @param expand relations to expand, artist is looked up as by {@link #getArtist(Long)} if none
+     * @return The artist bean or <code>null</code> if not found.
+     */
+    public ArtistBean getArtist(Long id, Set<Relation> expand) {
+        if (id == null || CollectionUtils.isEmpty(expand)) {
+            return getArtist(id);
+        }
+
+        LongArrayList requested = new LongArrayList(1);
+        requested.add(id);
+        LongLongHashMap wanted = new LongLongHashMap();
+        wanted.put(id, 1L);
+        LongArrayList toLoad = new LongArrayList();
+        toLoad.add(id);
+        addRelatedIds(id, artistGraphIndex.getMaster(id), expand, wanted, toLoad);
+
+        LongObjectHashMap<ArtistBean> loaded = new LongObjectHashMap<>(toLoad.size());
+        loadArtists(toLoad, loaded);
+        List<ArtistBean> artists = hydrate(requested, loaded, expand);
+
+        return artists == null ? null : artists.get(0);
+    }
+
+    /**
+     * Fetches an artist by ID in encoded form.<p>
+     * Encoded form is cached along with the artist, so repeated lookups cost neither query nor encoding.
+     *
+     * @param id artist ID
+     * @param encoder artist encoder, must not modify supplied artist
+     * @return Encoded artist or <code>null</code> if not found.
+     */
+    public EncodedPayload getEncodedArtist(Long id, Function<ArtistBean, EncodedPayload> encoder) {
+        return artistCache.getEncoded(id, this::fetchArtist, encoder);
+    }
+
+    /**
+     * Fetches an artist by ID from the database.
+     *
+     * @param id artist ID
+     * @return The artist bean or <code>null</code> if not found.
+     */
+    private ArtistBean fetchArtist(Long id) {
+        if (selectArtistById != null) {
+            return selectArtistById.fetchOne(ArtistDao::toWebModel, id);
+        }
+
+        return toWebModel(selectArtistById(id).fetchOne());
+    }
+
+    /**
+     * Builds a query selecting an artist record by ID.
+     *
+     * @param id artist ID (<code>null</code> when rendered as a cached query template)
+     * @return Select query.
+     */
+    private SelectConditionStep<GArtistRecord> selectArtistById(Long id) {
+        return dslContext.selectFrom(G_ARTIST)
+                .where(G_ARTIST.ID.eq(id));
     }
 
     /**
      * Fetches an artist by title.<p>
-     * Only first matching record is fetched. For complete result set use {@link #getArtists(String)}.
+     * Lookup is case and diacritics insensitive, see {@link ArtistTitles#normalize(String)}.
+     * Only first matching record (the one with the lowest ID) is fetched.
+     * For complete result set use {@link #getArtists(String)}.
      *
      * @param title artist title
      * @return The artist bean or <code>null</code> if not found.
@@ -104,40 +375,232 @@ public class ArtistDao {
      * @see #getArtists(String)
      */
     public ArtistBean getArtist(String title) {
+        return title == null ? fetchArtist(title) : artistCache.get(title, () -> fetchArtist(title));
+    }
+
+    /**
+     * Fetches an artist by title from the database.
+     *
+     * @param title artist title
+     * @return The artist bean or <code>null</code> if not found.
+     */
+    private ArtistBean fetchArtist(String title) {
         GArtistRecord rs = dslContext.selectFrom(G_ARTIST)
-                .where(G_ARTIST.TITLE.equalIgnoreCase(title))
+                .where(TITLE_NORM.eq(ArtistTitles.normalize(title)))
+                .orderBy(G_ARTIST.ID)
+                .limit(1)
                 .fetchOne();
 
         return toWebModel(rs);
     }
 
     /**
-     * Fetches all artists with particular title.
+     * Fetches all artists with particular title.<p>
+     * Lookup is case and diacritics insensitive, see {@link ArtistTitles#normalize(String)}.
      *
      * @param title artist title
      * @return List of artist beans or <code>null</code> if none found.
      */
     public List<ArtistBean> getArtists(String title) {
         Result<GArtistRecord> rs = dslContext.selectFrom(G_ARTIST)
-                .where(G_ARTIST.TITLE.eq(title))
+                .where(TITLE_NORM.eq(ArtistTitles.normalize(title)))
+                .orderBy(G_ARTIST.ID)
                 .fetch();
 
         return toWebModel(rs);
     }
 
+    /**
+     * Fetches artists by IDs in bulk.<p>
+     * Master artist and aliases of every artist are hydrated (aliases resolved via {@link ArtistGraphIndex}).
+     * Cached artists are taken from cache, the rest (including related ones) is fetched by a single
+     * <code>IN</code> query per chunk of configured batch size, so number of queries doesn't depend on number
+     * of relations.
+     *
+     * @param ids artist IDs
+     * @return List of artist beans in order of supplied IDs (duplicates and unknown IDs skipped)
+     * or <code>null</code> if none found.
+     */
+    public List<ArtistBean> getArtists(Collection<Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return null;
+        }
+
+        LongArrayList requested = new LongArrayList(ids.size());
+        LongLongHashMap wanted = new LongLongHashMap(ids.size());
+        for (Long id : ids) {
+            if (id != null && !wanted.containsKey(id)) {
+                wanted.put(id, 1L);
+                requested.add(id);
+            }
+        }
+
+        LongArrayList toLoad = new LongArrayList(requested.size());
+        for (int i = 0; i < requested.size(); i++) {
+            toLoad.add(requested.get(i));
+        }
+        for (int i = 0; i < requested.size(); i++) {
+            addRelatedIds(requested.get(i), artistGraphIndex.getMaster(requested.get(i)), BULK_EXPAND, wanted,
+                    toLoad);
+        }
+
+        LongObjectHashMap<ArtistBean> loaded = new LongObjectHashMap<>(toLoad.size());
+        loadArtists(toLoad, loaded);
+
+        return hydrate(requested, loaded, BULK_EXPAND);
+    }
+
+    /**
+     * Fetches artists by titles in bulk.<p>
+     * Lookup is case and diacritics insensitive, see {@link ArtistTitles#normalize(String)}. Only first matching
+     * artist (the one with the lowest ID) is fetched per title, same as {@link #getArtist(String)} does.
+     * Master artist and aliases of every artist are hydrated. Titles are matched by a single <code>IN</code>
+     * query per chunk of configured batch size, related artists are fetched the same way as by
+     * {@link #getArtists(Collection)}.
+     *
+     * @param titles artist titles
+     * @return List of artist beans in order of supplied titles (duplicates and unknown titles skipped)
+     * or <code>null</code> if none found.
+     */
+    public List<ArtistBean> getArtistsByTitles(Collection<String> titles) {
+        if (CollectionUtils.isEmpty(titles)) {
+            return null;
+        }
+
+        List<String> keys = new ArrayList<>(titles.size());
+        Map<String, ArtistBean> byKey = new HashMap<>(titles.size() * 2);
+        for (String title : titles) {
+            if (title != null) {
+                String key = ArtistTitles.normalize(title);
+                if (!byKey.containsKey(key)) {
+                    byKey.put(key, null);
+                    keys.add(key);
+                }
+            }
+        }
+
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<String> chunk = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            Result<GArtistRecord> rs = dslContext.selectFrom(G_ARTIST)
+                    .where(TITLE_NORM.in(chunk))
+                    .orderBy(G_ARTIST.ID)
+                    .fetch();
+            for (GArtistRecord r : rs) {
+                byKey.putIfAbsent(ArtistTitles.normalize(r.getTitle()), toWebModel(r));
+            }
+        }
+
+        LongArrayList requested = new LongArrayList(keys.size());
+        LongLongHashMap wanted = new LongLongHashMap(keys.size());
+        LongObjectHashMap<ArtistBean> loaded = new LongObjectHashMap<>(keys.size());
+        for (String key : keys) {
+            ArtistBean artist = byKey.get(key);
+            if (artist != null && !wanted.containsKey(artist.getId())) {
+                wanted.put(artist.getId(), 1L);
+                requested.add(artist.getId());
+                loaded.put(artist.getId(), artist);
+                artistCache.putIfAbsent(artist);
+            }
+        }
+
+        LongArrayList toLoad = new LongArrayList();
+        for (int i = 0; i < requested.size(); i++) {
+            ArtistBean artist = loaded.get(requested.get(i));
+            long masterId = artist.getMaster() == null ? ArtistGraphIndex.NO_ARTIST : artist.getMaster().getId();
+            addRelatedIds(artist.getId(), masterId, BULK_EXPAND, wanted, toLoad);
+        }
+        loadArtists(toLoad, loaded);
+
+        return hydrate(requested, loaded, BULK_EXPAND);
+    }
+
+    /**
+     * Fetches a page of artists ordered by ID, optionally filtered by title
+     * (case and diacritics insensitive, see {@link ArtistTitles#normalize(String)}).<p>
+     * Keyset (seek) pagination is used, so every page costs the same no matter how deep it is.
+     * One extra record is fetched to detect whether there are more artists.
+     *
+     * @param title artist title, <code>null</code> for all artists
+     * @param after ID of the last artist of previous page, <code>null</code> for the first page
+     * @param limit maximum number of artists per page
+     * @return The artist page bean. ID to continue listing after is set if there are more artists.
+     */
+    public ArtistPageBean getArtistPage(String title, Long after, int limit) {
+        SelectSeekStep1<GArtistRecord, Long> query = dslContext.selectFrom(G_ARTIST)
+                .where(title == null ? DSL.trueCondition() : TITLE_NORM.eq(ArtistTitles.normalize(title)))
+                .orderBy(G_ARTIST.ID.asc());
+
+        Result<GArtistRecord> rs = after == null
+                ? query.limit(limit + 1).fetch()
+                : query.seek(after).limit(limit + 1).fetch();
+
+        Long next = null;
+        if (rs.size() > limit) {
+            rs.remove(limit);
+            next = rs.get(limit - 1).getId();
+        }
+
+        return new ArtistPageBean(toWebModel(rs), next);
+    }
+
+    /**
+     * Streams artists ordered by ID, optionally filtered by title
+     * (case and diacritics insensitive, see {@link ArtistTitles#normalize(String)}).<p>
+     * Records are fetched lazily in chunks of configured fetch size, so a complete export runs in constant heap.
+     *
+     * @param title artist title, <code>null</code> for all artists
+     * @param consumer artist bean consumer
+     * @return Number of streamed artists.
+     */
+    public long exportArtists(String title, Consumer<ArtistBean> consumer) {
+        long count = 0;
+
+        try (Cursor<GArtistRecord> cursor = dslContext.selectFrom(G_ARTIST)
+                .where(title == null ? DSL.trueCondition() : TITLE_NORM.eq(ArtistTitles.normalize(title)))
+                .orderBy(G_ARTIST.ID.asc())
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            while (cursor.hasNext()) {
+                consumer.accept(toWebModel(cursor.fetchOne()));
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Searches artists by title, see {@link ArtistSearchIndex} for matching and ranking rules.
+     *
+     * @param query search query
+     * @param mode search mode
+     * @param limit maximum number of artists
+     * @return List of artist beans, best matches first, or <code>null</code> if none found.
+     */
+    public List<ArtistBean> searchArtists(String query, ArtistSearchIndex.Mode mode, int limit) {
+        long[] ids = artistSearchIndex.search(query, mode, limit);
+
+        List<ArtistBean> artists = fetchArtists(ids);
+        if (artists != null) {
+            LongLongHashMap rank = new LongLongHashMap(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                rank.put(ids[i], i);
+            }
+            artists.sort(Comparator.comparingLong(artist -> rank.get(artist.getId(), ids.length)));
+        }
+
+        return artists;
+    }
+
     /**
      * Fetches artist variations for a master artist.<p>
-     * Master artist is NOT part of resulting list.
+     * Master artist is NOT part of resulting list. Variations are resolved via {@link ArtistGraphIndex}.
      *
      * @param masterId master artist ID
      * @return List of artist beans or <code>null</code> if none found.
      */
     public List<ArtistBean> getArtistVariations(Long masterId) {
-        Result<GArtistRecord> rs = dslContext.selectFrom(G_ARTIST)
-                .where(G_ARTIST.MASTER_ID.eq(masterId))
-                .fetch();
-
-        return toWebModel(rs);
+        return masterId == null ? null : fetchArtists(artistGraphIndex.getVariations(masterId));
     }
 
     /**
@@ -155,10 +618,18 @@ public class ArtistDao {
      */
     public void addArtistAlias(Long masterId, Long aliasId) {
         try {
-            dslContext.insertInto(G_ARTIST_ALIAS)
-                    .set(G_ARTIST_ALIAS.MASTER_ID, masterId)
-                    .set(G_ARTIST_ALIAS.ALIAS_ID, aliasId)
-                    .execute();
+            dslContext.transaction(configuration -> {
+                DSL.using(configuration).insertInto(G_ARTIST_ALIAS)
+                        .set(G_ARTIST_ALIAS.MASTER_ID, masterId)
+                        .set(G_ARTIST_ALIAS.ALIAS_ID, aliasId)
+                        .execute();
+                artistChangeDao.addChanges(masterId);
+            });
+
+            artistCache.invalidate(masterId);
+            artistCache.invalidate(aliasId);
+            artistGraphIndex.aliasAdded(masterId, aliasId);
+            artistCatalogue.aliasAdded(masterId, aliasId);
         }
         catch (DataIntegrityViolationException e) {
             // Ignore duplicate case
@@ -173,23 +644,13 @@ public class ArtistDao {
 
     /**
      * Fetches alias artists of master one.<p>
-     * Master artist is NOT part of resulting list.
+     * Master artist is NOT part of resulting list. Aliases are resolved via {@link ArtistGraphIndex}.
      *
      * @param masterId master artist ID
      * @return List of artist bean or <code>null</code> if none found.
      */
-    // TODO add TX test
-    @Transactional
     public List<ArtistBean> getArtistAliases(Long masterId) {
-        Result<Record1<Long>> aliases = dslContext.select(G_ARTIST_ALIAS.ALIAS_ID).from(G_ARTIST_ALIAS)
-                .where(G_ARTIST_ALIAS.MASTER_ID.eq(masterId))
-                .fetch();
-
-        Result<GArtistRecord> rs = dslContext.selectFrom(G_ARTIST)
-                .where(G_ARTIST.ID.in(aliases))
-                .fetch();
-
-        return toWebModel(rs);
+        return masterId == null ? null : fetchArtists(artistGraphIndex.getAliases(masterId));
     }
 
     /**
@@ -205,11 +666,346 @@ public class ArtistDao {
             throw new IllegalArgumentException("Artist must have an ID.");
         }
 
-        dslContext.mergeInto(G_ARTIST)
+        dslContext.transaction(configuration -> {
+            if (mergeArtist != null) {
+                mergeArtist.execute(artist.getId(), artist.getTitle(), artist.getDescription(), getMasterId(artist));
+            }
+            else {
+                mergeArtist(artist).execute();
+            }
+            artistChangeDao.addChanges(artist.getId());
+        });
+
+        artistCache.put(artist);
+        artistGraphIndex.artistWritten(artist.getId(), getMasterId(artist));
+        artistSearchIndex.artistWritten(artist.getId(), artist.getTitle());
+        artistCatalogue.artistWritten(artist.getId(), artist.getTitle(), getMasterId(artist));
+    }
+
+    /**
+     * Builds a query inserting a new artist record.
+     *
+     * @param artist artist bean
+     * @return Insert query.
+     */
+    private InsertSetMoreStep<GArtistRecord> insertArtist(ArtistBean artist) {
+        return dslContext.insertInto(G_ARTIST)
+                .set(G_ARTIST.TITLE, artist.getTitle())
+                .set(G_ARTIST.DESCRIPTION, artist.getDescription())
+                .set(G_ARTIST.MASTER_ID, getMasterId(artist));
+    }
+
+    /**
+     * Builds a query inserting or updating an artist record by ID.
+     *
+     * @param artist artist bean
+     * @return Merge query.
+     */
+    private Query mergeArtist(ArtistBean artist) {
+        return dslContext.mergeInto(G_ARTIST)
                 .columns(G_ARTIST.ID, G_ARTIST.TITLE, G_ARTIST.DESCRIPTION, G_ARTIST.MASTER_ID)
                 .key(G_ARTIST.ID)
-                .values(artist.getId(), artist.getTitle(), artist.getDescription(), getMasterId(artist))
-                .execute();
+                .values(artist.getId(), artist.getTitle(), artist.getDescription(), getMasterId(artist));
+    }
+
+    /**
+     * Fetches artists by IDs.
+     *
+     * @param ids artist IDs
+     * @return List of artist beans or <code>null</code> if none found.
+     */
+    private List<ArtistBean> fetchArtists(long[] ids) {
+        if (ids.length == 0) {
+            return null;
+        }
+
+        Long[] boxedIds = new Long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            boxedIds[i] = ids[i];
+        }
+        Result<GArtistRecord> rs = dslContext.selectFrom(G_ARTIST)
+                .where(G_ARTIST.ID.in(boxedIds))
+                .fetch();
+
+        return toWebModel(rs);
+    }
+
+    /**
+     * Collects IDs of artists related to supplied one, that are not wanted yet.
+     *
+     * @param artistId artist ID
+     * @param masterId master artist ID or {@link ArtistGraphIndex#NO_ARTIST}
+     * @param expand relations to collect
+     * @param wanted IDs of artists already wanted, updated
+     * @param toLoad list of IDs to load, updated
+     */
+    private void addRelatedIds(long artistId, long masterId, Set<Relation> expand, LongLongHashMap wanted,
+                               LongArrayList toLoad) {
+        if (expand.contains(Relation.MASTER) && masterId != ArtistGraphIndex.NO_ARTIST) {
+            addWantedId(masterId, wanted, toLoad);
+        }
+        if (expand.contains(Relation.ALIASES)) {
+            for (long aliasId : artistGraphIndex.getAliases(artistId)) {
+                addWantedId(aliasId, wanted, toLoad);
+            }
+        }
+        if (expand.contains(Relation.VARIATIONS)) {
+            for (long variationId : artistGraphIndex.getVariations(artistId)) {
+                addWantedId(variationId, wanted, toLoad);
+            }
+        }
+    }
+
+    private static void addWantedId(long id, LongLongHashMap wanted, LongArrayList toLoad) {
+        if (!wanted.containsKey(id)) {
+            wanted.put(id, 1L);
+            toLoad.add(id);
+        }
+    }
+
+    /**
+     * Loads artists by IDs, from cache if possible. Cache misses are fetched in chunks of configured batch size
+     * and cached.
+     *
+     * @param ids artist IDs
+     * @param loaded loaded artists by ID, updated
+     */
+    private void loadArtists(LongArrayList ids, LongObjectHashMap<ArtistBean> loaded) {
+        List<Long> misses = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            ArtistBean artist = artistCache.getIfPresent(ids.get(i));
+            if (artist == null) {
+                misses.add(ids.get(i));
+            }
+            else {
+                loaded.put(artist.getId(), artist);
+            }
+        }
+
+        for (int from = 0; from < misses.size(); from += batchSize) {
+            Result<GArtistRecord> rs = dslContext.selectFrom(G_ARTIST)
+                    .where(G_ARTIST.ID.in(misses.subList(from, Math.min(from + batchSize, misses.size()))))
+                    .fetch();
+            for (GArtistRecord r : rs) {
+                ArtistBean artist = toWebModel(r);
+                loaded.put(artist.getId(), artist);
+                artistCache.putIfAbsent(artist);
+            }
+        }
+    }
+
+    /**
+     * Assembles requested artists with their related artists.<p>
+     * Related artists are attached as plain records (their own relations are not hydrated), relation lists are set
+     * only if there are related artists.
+     *
+     * @param requested IDs of requested artists
+     * @param loaded loaded artists (requested and related ones) by ID
+     * @param expand relations to attach
+     * @return List of hydrated artist beans or <code>null</code> if none loaded.
+     */
+    private List<ArtistBean> hydrate(LongArrayList requested, LongObjectHashMap<ArtistBean> loaded,
+                                     Set<Relation> expand) {
+        List<ArtistBean> artists = new ArrayList<>(requested.size());
+        for (int i = 0; i < requested.size(); i++) {
+            ArtistBean artist = loaded.get(requested.get(i));
+            if (artist == null) {
+                continue;
+            }
+
+            ArtistBean hydrated = plainCopyOf(artist);
+            if (expand.contains(Relation.MASTER) && artist.getMaster() != null) {
+                ArtistBean master = loaded.get(artist.getMaster().getId());
+                if (master != null) {
+                    hydrated.setMaster(plainCopyOf(master));
+                }
+            }
+            if (expand.contains(Relation.ALIASES)) {
+                hydrated.setAliases(relatedOf(artistGraphIndex.getAliases(artist.getId()), loaded));
+            }
+            if (expand.contains(Relation.VARIATIONS)) {
+                hydrated.setVariations(relatedOf(artistGraphIndex.getVariations(artist.getId()), loaded));
+            }
+
+            artists.add(hydrated);
+        }
+
+        return artists.isEmpty() ? null : artists;
+    }
+
+    /**
+     * @param ids related artist IDs
+     * @param loaded loaded artists by ID
+     * @return List of plain copies of loaded related artists or <code>null</code> if none loaded.
+     */
+    private static List<ArtistBean> relatedOf(long[] ids, LongObjectHashMap<ArtistBean> loaded) {
+        List<ArtistBean> related = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            ArtistBean artist = loaded.get(id);
+            if (artist != null) {
+                related.add(plainCopyOf(artist));
+            }
+        }
+
+        return related.isEmpty() ? null : related;
+    }
+
+    /**
+     * Copies artist record fields, relations are not copied (master is kept as ID only).
+     *
+     * @param artist artist bean
+     * @return Copy of supplied artist bean.
+     */
+    private static ArtistBean plainCopyOf(ArtistBean artist) {
+        return new ArtistBean(artist.getId(), artist.getTitle(), artist.getDescription(), getMasterId(artist));
+    }
+
+    /**
+     * Adds a chunk of artists in a single transaction.<p>
+     * Falls back to row by row insert if generated IDs of a multi-row insert couldn't be verified.
+     *
+     * @param chunk list of artist beans
+     * @return Number of added artists.
+     */
+    private int addArtistChunk(List<ArtistBean> chunk) {
+        try {
+            try {
+                dslContext.transaction(configuration -> insertLoggedArtistChunk(DSL.using(configuration), chunk, true));
+            }
+            catch (IdentityMismatchException e) {
+                resetIds(chunk);
+                dslContext.transaction(configuration -> insertLoggedArtistChunk(DSL.using(configuration), chunk, false));
+            }
+        }
+        catch (RuntimeException e) {
+            // IDs assigned within rolled back transaction are not valid anymore
+            resetIds(chunk);
+            throw e;
+        }
+
+        for (ArtistBean artist : chunk) {
+            artistCache.put(artist);
+            artistGraphIndex.artistWritten(artist.getId(), getMasterId(artist));
+            artistSearchIndex.artistWritten(artist.getId(), artist.getTitle());
+            artistCatalogue.artistWritten(artist.getId(), artist.getTitle(), getMasterId(artist));
+        }
+
+        return chunk.size();
+    }
+
+    /**
+     * Resets IDs of supplied artists.
+     *
+     * @param artists list of artist beans
+     */
+    private static void resetIds(List<ArtistBean> artists) {
+        for (ArtistBean artist : artists) {
+            artist.setId(null);
+        }
+    }
+
+    /**
+     * Inserts a chunk of artists and records them in artist change log.
+     *
+     * @param ctx transactional jOOQ context
+     * @param chunk list of artist beans
+     * @param multiRow whether multi-row inserts should be used
+     */
+    private void insertLoggedArtistChunk(DSLContext ctx, List<ArtistBean> chunk, boolean multiRow) {
+        insertArtistChunk(ctx, chunk, multiRow);
+        artistChangeDao.addChanges(chunk.stream().mapToLong(ArtistBean::getId).toArray());
+    }
+
+    /**
+     * Inserts a chunk of artists. Artists are written in passes, every pass includes artists which masters
+     * are already persisted (i.e. have an ID).<p>
+     * H2 reports the last generated ID only, so IDs of a multi-row insert are derived from it
+     * and verified against the database afterwards.
+     *
+     * @param ctx transactional jOOQ context
+     * @param chunk list of artist beans
+     * @param multiRow whether multi-row inserts should be used
+     *
+     * @throws IllegalArgumentException if master artist is neither persisted nor supplied
+     * @throws IdentityMismatchException if derived IDs don't match inserted records
+     */
+    private static void insertArtistChunk(DSLContext ctx, List<ArtistBean> chunk, boolean multiRow) {
+        List<ArtistBean> pending = new ArrayList<>(chunk);
+        while (!pending.isEmpty()) {
+            List<ArtistBean> ready = new ArrayList<>(pending.size());
+            List<ArtistBean> blocked = new ArrayList<>();
+            for (ArtistBean artist : pending) {
+                if (artist.getMaster() == null || artist.getMaster().getId() != null) {
+                    ready.add(artist);
+                }
+                else {
+                    blocked.add(artist);
+                }
+            }
+            if (ready.isEmpty()) {
+                throw new IllegalArgumentException("Master artist must be added before or along with its variations.");
+            }
+
+            if (multiRow) {
+                insertArtistsMultiRow(ctx, ready);
+            }
+            else {
+                for (ArtistBean artist : ready) {
+                    GArtistRecord rs = ctx.insertInto(G_ARTIST)
+                            .set(G_ARTIST.TITLE, artist.getTitle())
+                            .set(G_ARTIST.DESCRIPTION, artist.getDescription())
+                            .set(G_ARTIST.MASTER_ID, getMasterId(artist))
+                            .returning(G_ARTIST.ID)
+                            .fetchOne();
+                    artist.setId(rs.getId());
+                }
+            }
+
+            pending = blocked;
+        }
+    }
+
+    /**
+     * Inserts artists using a single multi-row statement and assigns generated IDs back to artist beans.
+     *
+     * @param ctx transactional jOOQ context
+     * @param artists list of artist beans, masters are expected to be persisted
+     *
+     * @throws IdentityMismatchException if derived IDs don't match inserted records
+     */
+    private static void insertArtistsMultiRow(DSLContext ctx, List<ArtistBean> artists) {
+        InsertValuesStep3<GArtistRecord, String, String, Long> insert =
+                ctx.insertInto(G_ARTIST, G_ARTIST.TITLE, G_ARTIST.DESCRIPTION, G_ARTIST.MASTER_ID);
+        for (ArtistBean artist : artists) {
+            insert = insert.values(artist.getTitle(), artist.getDescription(), getMasterId(artist));
+        }
+        Result<GArtistRecord> keys = insert.returning(G_ARTIST.ID).fetch();
+
+        long lastId = keys.get(keys.size() - 1).getId();
+        long firstId = lastId - artists.size() + 1;
+
+        Result<Record4<Long, String, String, Long>> rs = ctx
+                .select(G_ARTIST.ID, G_ARTIST.TITLE, G_ARTIST.DESCRIPTION, G_ARTIST.MASTER_ID)
+                .from(G_ARTIST)
+                .where(G_ARTIST.ID.between(firstId, lastId))
+                .orderBy(G_ARTIST.ID)
+                .fetch();
+        if (rs.size() != artists.size()) {
+            throw new IdentityMismatchException();
+        }
+        for (int i = 0; i < artists.size(); i++) {
+            ArtistBean artist = artists.get(i);
+            Record4<Long, String, String, Long> r = rs.get(i);
+            if (!Objects.equals(artist.getTitle(), r.value2())
+                    || !Objects.equals(artist.getDescription(), r.value3())
+                    || !Objects.equals(getMasterId(artist), r.value4())) {
+                throw new IdentityMismatchException();
+            }
+        }
+
+        for (int i = 0; i < artists.size(); i++) {
+            artists.get(i).setId(rs.get(i).value1());
+        }
     }
 
     /**
@@ -232,6 +1028,22 @@ public class ArtistDao {
         return rs == null ? null : new ArtistBean(rs.getId(), rs.getTitle(), rs.getDescription(), rs.getMasterId());
     }
 
+    /**
+     * Database to web model converter (JDBC row of <code>G_ARTIST</code> columns).
+     *
+     * @param rs result set positioned at the row
+     * @param rowNum row number
+     * @return Corresponding web model entity.
+     * @throws SQLException if row can't be read
+     */
+    private static ArtistBean toWebModel(ResultSet rs, int rowNum) throws SQLException {
+        long masterId = rs.getLong(G_ARTIST.MASTER_ID.getName());
+        boolean noMaster = rs.wasNull();
+
+        return new ArtistBean(rs.getLong(G_ARTIST.ID.getName()), rs.getString(G_ARTIST.TITLE.getName()),
+                rs.getString(G_ARTIST.DESCRIPTION.getName()), noMaster ? null : masterId);
+    }
+
     /**
      * Database to web model converter (multiple entities).
      *
@@ -253,4 +1065,18 @@ public class ArtistDao {
         return artists;
     }
 
+    /**
+     * Signals that IDs generated by a multi-row insert couldn't be matched to inserted artists
+     * (e.g. due to concurrent inserts). Rolls back the chunk transaction.
+     */
+    private static class IdentityMismatchException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        IdentityMismatchException() {
+            super(null, null, false, false);
+        }
+
+    }
+
 }
@@ -0,0 +1,449 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of relations between artists:
+ * <ul>
+ *     <li>master to variation artists (<code>G_ARTIST.MASTER_ID</code>);</li>
+ *     <li>master to alias artists (<code>G_ARTIST_ALIAS</code> table).</li>
+ * </ul>
+ * Relations are held in primitive long-keyed maps, adjacency lists are immutable arrays replaced on change.
+ * Index is loaded on startup from {@link ArtistCatalogue} (so it needs no database pass when catalogue snapshot
+ * file is used) and kept up to date by {@link ArtistDao} write methods,
+ * so artist relations are expected to be modified via DAO only.<p>
+ * Flattened artist to principal artist mapping of {@link ArtistCanonicalizer} is maintained along:
+ * rebuilt on load and updated for the changed artist and every artist that rolls up through it on relation change.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class ArtistGraphIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArtistGraphIndex.class);
+
+    /**
+     * Value denoting missing artist.
+     */
+    public static final long NO_ARTIST = 0L;
+
+    /**
+     * Empty adjacency list.
+     */
+    private static final long[] NO_ARTISTS = new long[0];
+
+    /**
+     * Number of hops principal lookup makes before it starts tracking visited artists. Most chains are short,
+     * so they are followed with no allocation.
+     */
+    private static final int UNTRACKED_HOPS = 8;
+
+    /**
+     * Compact artist catalogue, relations are loaded from it.
+     */
+    @Autowired
+    private ArtistCatalogue artistCatalogue;
+
+    /**
+     * Flattened artist to principal artist mapping, maintained along with relations.
+     */
+    @Autowired
+    private ArtistCanonicalizer artistCanonicalizer;
+
+    /**
+     * Guards relation maps, held exclusively by load and relation changes.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Variation artist ID to master artist ID.
+     */
+    private final LongLongHashMap masterOf = new LongLongHashMap();
+
+    /**
+     * Master artist ID to variation artist IDs.
+     */
+    private final LongObjectHashMap<long[]> variations = new LongObjectHashMap<>();
+
+    /**
+     * Master artist ID to alias artist IDs.
+     */
+    private final LongObjectHashMap<long[]> aliases = new LongObjectHashMap<>();
+
+    /**
+     * Alias artist ID to master artist IDs.
+     */
+    private final LongObjectHashMap<long[]> aliasOf = new LongObjectHashMap<>();
+
+    /**
+     * Loads artist relations from {@link ArtistCatalogue}, which is warmed up by then.
+     */
+    @PostConstruct
+    public void init() {
+        lock.writeLock().lock();
+        try {
+            clear();
+
+            artistCatalogue.forEachVariation(this::linkVariation);
+            artistCatalogue.forEachAlias(this::linkAlias);
+
+            canonicalize();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param variationId variation artist ID
+     * @return Master artist ID or {@link #NO_ARTIST} if supplied artist is not a variation.
+     */
+    public long getMaster(long variationId) {
+        lock.readLock().lock();
+        try {
+            return masterOf.get(variationId, NO_ARTIST);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param masterId master artist ID
+     * @return IDs of variation artists (master artist is NOT included), empty array if none.
+     */
+    public long[] getVariations(long masterId) {
+        return adjacent(variations, masterId);
+    }
+
+    /**
+     * @param masterId master artist ID
+     * @return IDs of alias artists (master artist is NOT included), empty array if none.
+     */
+    public long[] getAliases(long masterId) {
+        return adjacent(aliases, masterId);
+    }
+
+    /**
+     * @param aliasId alias artist ID
+     * @return IDs of master artists the supplied artist is an alias of, empty array if none.
+     */
+    public long[] getAliasMasters(long aliasId) {
+        return adjacent(aliasOf, aliasId);
+    }
+
+    /**
+     * Finds principal artist an artist rolls up to: master of a variation or master of an alias
+     * (the one with the lowest ID if artist is an alias of several masters), followed transitively.
+     * Chains are followed to the end however long they are. Relation cycles are reported,
+     * artist that leads to a cycle rolls up to the lowest artist ID of the cycle.
+     *
+     * @param artistId artist ID
+     * @return Principal artist ID, supplied one if artist is neither variation nor alias.
+     */
+    public long getPrincipal(long artistId) {
+        lock.readLock().lock();
+        try {
+            return principalOf(artistId);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds all identities of an artist, i.e. artists reachable via variation or alias relations
+     * in any direction (transitively).
+     *
+     * @param artistId artist ID
+     * @return IDs of artist identities, supplied artist is always the first one.
+     */
+    public long[] getIdentities(long artistId) {
+        LongLongHashMap visited = new LongLongHashMap();
+        LongArrayList identities = new LongArrayList();
+        visited.put(artistId, 1L);
+        identities.add(artistId);
+
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < identities.size(); i++) {
+                long id = identities.get(i);
+                long master = masterOf.get(id, NO_ARTIST);
+                if (master != NO_ARTIST) {
+                    visit(master, visited, identities);
+                }
+                visitAll(variations.get(id), visited, identities);
+                visitAll(aliases.get(id), visited, identities);
+                visitAll(aliasOf.get(id), visited, identities);
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        return identities.toArray();
+    }
+
+    /**
+     * Registers an artist record write (insert or update), i.e. its relation to master artist.
+     *
+     * @param artistId artist ID
+     * @param masterId master artist ID, <code>null</code> if artist is not a variation
+     */
+    public void artistWritten(long artistId, Long masterId) {
+        lock.writeLock().lock();
+        try {
+            long previous = masterOf.get(artistId, NO_ARTIST);
+            long actual = masterId == null ? NO_ARTIST : masterId;
+            if (previous != actual) {
+                if (previous != NO_ARTIST) {
+                    unlinkVariation(artistId, previous);
+                }
+                if (actual != NO_ARTIST) {
+                    linkVariation(artistId, actual);
+                }
+                recanonicalize(artistId);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers an alias relation.
+     *
+     * @param masterId master artist ID
+     * @param aliasId alias artist ID
+     */
+    public void aliasAdded(long masterId, long aliasId) {
+        lock.writeLock().lock();
+        try {
+            linkAlias(masterId, aliasId);
+            recanonicalize(aliasId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long[] adjacent(LongObjectHashMap<long[]> relation, long id) {
+        long[] ids;
+        lock.readLock().lock();
+        try {
+            ids = relation.get(id);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        // adjacency arrays are never modified in place, so copying is safe outside of lock
+        return ids == null ? NO_ARTISTS : ids.clone();
+    }
+
+    private long principalOf(long artistId) {
+        long id = artistId;
+        LongLongHashMap visited = null;
+        LongArrayList path = null;
+        for (int hop = 0; ; hop++) {
+            long master = nextOf(id);
+            if (master == NO_ARTIST) {
+                return id;
+            }
+
+            if (hop >= UNTRACKED_HOPS) {
+                if (visited == null) {
+                    visited = new LongLongHashMap();
+                    path = new LongArrayList();
+                }
+                long position = visited.get(id, -1L);
+                if (position >= 0L) {
+                    return cycleRoot(artistId, path, (int) position);
+                }
+                visited.put(id, path.size());
+                path.add(id);
+            }
+            id = master;
+        }
+    }
+
+    /**
+     * @return Next artist on the way to principal: master of a variation or master of an alias (the lowest ID),
+     * {@link #NO_ARTIST} if artist is principal.
+     */
+    private long nextOf(long id) {
+        long master = masterOf.get(id, NO_ARTIST);
+        if (master == NO_ARTIST) {
+            long[] aliasMasters = aliasOf.get(id);
+            if (aliasMasters == null || aliasMasters.length == 0) {
+                return NO_ARTIST;
+            }
+            master = aliasMasters[0];
+            for (long aliasMaster : aliasMasters) {
+                master = Math.min(master, aliasMaster);
+            }
+        }
+
+        return master;
+    }
+
+    /**
+     * Reports a relation cycle and picks its lowest artist ID as principal.
+     *
+     * @param artistId artist ID the lookup started from
+     * @param path visited artists
+     * @param from position of the first cycle artist in the path
+     * @return The lowest artist ID of the cycle.
+     */
+    private static long cycleRoot(long artistId, LongArrayList path, int from) {
+        long[] cycle = new long[path.size() - from];
+        long root = path.get(from);
+        for (int i = from; i < path.size(); i++) {
+            cycle[i - from] = path.get(i);
+            root = Math.min(root, path.get(i));
+        }
+        LOG.warn("Artist relation cycle {} reached from artist {}, rolled up to artist {}",
+                Arrays.toString(cycle), artistId, root);
+
+        return root;
+    }
+
+    /**
+     * Rebuilds canonical mapping of every variation and alias artist.
+     */
+    private void canonicalize() {
+        LongLongHashMap canonicalIds = new LongLongHashMap(masterOf.size() + aliasOf.size());
+        masterOf.forEach((variationId, masterId) -> canonicalIds.put(variationId, principalOf(variationId)));
+        aliasOf.forEach((aliasId, masterIds) -> canonicalIds.put(aliasId, principalOf(aliasId)));
+
+        artistCanonicalizer.rebuild(canonicalIds);
+    }
+
+    /**
+     * Updates canonical mapping of an artist, whose relations to masters changed, and of all artists
+     * that roll up through it (its variations and aliases, transitively).
+     */
+    private void recanonicalize(long artistId) {
+        LongLongHashMap visited = new LongLongHashMap();
+        LongArrayList affected = new LongArrayList();
+        visited.put(artistId, 1L);
+        affected.add(artistId);
+
+        for (int i = 0; i < affected.size(); i++) {
+            long id = affected.get(i);
+            artistCanonicalizer.update(id, principalOf(id));
+            visitAll(variations.get(id), visited, affected);
+            visitAll(aliases.get(id), visited, affected);
+        }
+    }
+
+    private void clear() {
+        masterOf.clear();
+        variations.clear();
+        aliases.clear();
+        aliasOf.clear();
+    }
+
+    private void linkVariation(long variationId, long masterId) {
+        masterOf.put(variationId, masterId);
+        append(variations, masterId, variationId);
+    }
+
+    private void unlinkVariation(long variationId, long masterId) {
+        masterOf.remove(variationId);
+        exclude(variations, masterId, variationId);
+    }
+
+    private void linkAlias(long masterId, long aliasId) {
+        append(aliases, masterId, aliasId);
+        append(aliasOf, aliasId, masterId);
+    }
+
+    private static void append(LongObjectHashMap<long[]> relation, long from, long to) {
+        long[] ids = relation.get(from);
+        if (ids == null) {
+            relation.put(from, new long[] {to});
+        }
+        else {
+            for (long id : ids) {
+                if (id == to) {
+                    return;
+                }
+            }
+            long[] extended = Arrays.copyOf(ids, ids.length + 1);
+            extended[ids.length] = to;
+            relation.put(from, extended);
+        }
+    }
+
+    private static void exclude(LongObjectHashMap<long[]> relation, long from, long to) {
+        long[] ids = relation.get(from);
+        if (ids == null) {
+            return;
+        }
+
+        LongArrayList remaining = new LongArrayList(ids.length);
+        for (long id : ids) {
+            if (id != to) {
+                remaining.add(id);
+            }
+        }
+        if (remaining.isEmpty()) {
+            relation.remove(from);
+        }
+        else {
+            relation.put(from, remaining.toArray());
+        }
+    }
+
+    private static void visitAll(long[] ids, LongLongHashMap visited, LongArrayList identities) {
+        if (ids != null) {
+            for (long id : ids) {
+                visit(id, visited, identities);
+            }
+        }
+    }
+
+    private static void visit(long id, LongLongHashMap visited, LongArrayList identities) {
+        if (!visited.containsKey(id)) {
+            visited.put(id, 1L);
+            identities.add(id);
+        }
+    }
+
+}
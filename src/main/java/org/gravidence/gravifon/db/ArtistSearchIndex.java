@@ -0,0 +1,699 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+
+/**
+ * In-memory artist search index over artist titles:
+ * <ul>
+ *     <li>prefix trie (path compressed) for autocomplete, both title and every word of title are completed;</li>
+ *     <li>trigram index for fuzzy lookups ranked by trigram (Jaccard) similarity.</li>
+ * </ul>
+ * Titles are indexed in {@link ArtistTitles#normalize(String) normalized} form with everything but letters
+ * and digits removed, so <code>Vidna Obmana</code>, <code>vidnaObmana</code> and <code>VIDNA-OBMANA</code>
+ * share the same key. Index is loaded on startup and kept up to date by {@link ArtistDao} write methods.
+ * Loading builds a new index aside and swaps it in, so searches are served by the previous one meanwhile.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class ArtistSearchIndex {
+
+    /**
+     * Search modes.
+     */
+    public enum Mode {
+        /**
+         * Title (or title word) starts with query, shorter titles rank higher.
+         */
+        PREFIX,
+        /**
+         * Title is similar to query, more similar titles rank higher.
+         */
+        FUZZY,
+        /**
+         * Prefix matches followed by fuzzy ones.
+         */
+        AUTO
+    }
+
+    private static final long[] NO_ARTISTS = new long[0];
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Minimal trigram similarity of fuzzy matches, <code>0..1</code>.
+     */
+    @Value("${org.gravidence.gravifon.search.artist.similarity:0.3}")
+    private double similarity;
+
+    /**
+     * Number of rows fetched from the database at once while loading.
+     */
+    @Value("${org.gravidence.gravifon.db.fetch-size:1000}")
+    private int fetchSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Prefix trie root.
+     */
+    private Node trie = new Node("");
+
+    /**
+     * Trigram to IDs (sorted) of artists which keys contain that trigram.
+     */
+    private LongObjectHashMap<LongArrayList> postings = new LongObjectHashMap<>();
+
+    /**
+     * Artist ID to indexed (normalized) title.
+     */
+    private LongObjectHashMap<String> titles = new LongObjectHashMap<>();
+
+    /**
+     * Artist ID to number of distinct trigrams of its key.
+     */
+    private LongLongHashMap gramCounts = new LongLongHashMap();
+
+    /**
+     * Artist ID to (normalized) title written while index is loading, replayed on the loaded index.
+     * <code>null</code> unless loading.
+     */
+    private LongObjectHashMap<String> pending;
+
+    /**
+     * Loads artist titles from the database.<p>
+     * New index is built aside, writes made meanwhile are replayed on it once it's swapped in.
+     * Index stays intact if loading fails.
+     */
+    @PostConstruct
+    public synchronized void load() {
+        lock.writeLock().lock();
+        try {
+            pending = new LongObjectHashMap<>();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        ArtistSearchIndex loaded = new ArtistSearchIndex();
+        try (Cursor<Record2<Long, String>> cursor = dslContext.select(G_ARTIST.ID, G_ARTIST.TITLE)
+                .from(G_ARTIST)
+                .fetchSize(fetchSize)
+                .fetchLazy()) {
+            for (Record2<Long, String> r : cursor) {
+                loaded.index(r.value1(), ArtistTitles.normalize(r.value2()));
+            }
+        }
+        catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            trie = loaded.trie;
+            postings = loaded.postings;
+            titles = loaded.titles;
+            gramCounts = loaded.gramCounts;
+            pending.forEach(this::apply);
+            pending = null;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up artists using supplied search mode.
+     *
+     * @param query search query
+     * @param mode search mode
+     * @param limit maximum number of artists
+     * @return IDs of matching artists, best matches first.
+     */
+    public long[] search(String query, Mode mode, int limit) {
+        switch (mode) {
+            case PREFIX:
+                return prefix(query, limit);
+            case FUZZY:
+                return fuzzy(query, limit);
+            default:
+                long[] prefixed = prefix(query, limit);
+                if (prefixed.length == limit) {
+                    return prefixed;
+                }
+
+                LongArrayList ids = new LongArrayList(Math.min(limit, 16));
+                for (long id : prefixed) {
+                    ids.add(id);
+                }
+                for (long id : fuzzy(query, limit)) {
+                    if (ids.size() < limit && !ids.contains(id)) {
+                        ids.add(id);
+                    }
+                }
+
+                return ids.toArray();
+        }
+    }
+
+    /**
+     * Looks up artists which title (or any title word) starts with supplied query.<p>
+     * Exact matches come first, then shorter titles, i.e. the trie is walked breadth first by key length.
+     *
+     * @param query search query
+     * @param limit maximum number of artists
+     * @return IDs of matching artists, best matches first.
+     */
+    public long[] prefix(String query, int limit) {
+        String key = keyOf(ArtistTitles.normalize(query));
+        if (key == null || limit < 1) {
+            return NO_ARTISTS;
+        }
+
+        LongArrayList ids = new LongArrayList(Math.min(limit, 16));
+        LongLongHashMap found = new LongLongHashMap();
+        lock.readLock().lock();
+        try {
+            Node node = trie;
+            int depth = 0;
+            while (depth < key.length()) {
+                int index = node.indexOf(key.charAt(depth));
+                if (index < 0) {
+                    return NO_ARTISTS;
+                }
+
+                Node child = node.children[index];
+                int common = commonPrefix(child.label, key, depth);
+                if (depth + common < key.length() && common < child.label.length()) {
+                    return NO_ARTISTS;
+                }
+                node = child;
+                depth += child.label.length();
+            }
+
+            PriorityQueue<Visit> queue = new PriorityQueue<>();
+            int order = 0;
+            queue.add(new Visit(node, depth, order++));
+            while (!queue.isEmpty() && ids.size() < limit) {
+                Visit visit = queue.poll();
+                for (long id : visit.node.ids) {
+                    if (ids.size() < limit && !found.containsKey(id)) {
+                        found.put(id, 1L);
+                        ids.add(id);
+                    }
+                }
+                for (Node child : visit.node.children) {
+                    queue.add(new Visit(child, visit.depth + child.label.length(), order++));
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        return ids.toArray();
+    }
+
+    /**
+     * Looks up artists which title is similar to supplied query.<p>
+     * Similarity is Jaccard index of title and query trigram sets. A title reaching configured similarity
+     * shares at least <code>minShared = ceil(similarity * queryTrigrams)</code> trigrams with the query,
+     * so candidates are collected from <code>queryTrigrams - minShared + 1</code> rarest posting lists only
+     * (prefix filtering). Candidates passing length filter are then probed against the longest lists
+     * via binary search (posting lists are kept sorted).
+     *
+     * @param query search query
+     * @param limit maximum number of artists
+     * @return IDs of matching artists, best matches first.
+     */
+    public long[] fuzzy(String query, int limit) {
+        String key = keyOf(ArtistTitles.normalize(query));
+        if (key == null || limit < 1) {
+            return NO_ARTISTS;
+        }
+
+        long[] grams = trigramsOf(key);
+        int minShared = Math.max(1, (int) Math.ceil(similarity * grams.length));
+        long minGrams = (long) Math.ceil(similarity * grams.length);
+        long maxGrams = (long) Math.floor(grams.length / similarity);
+
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            LongArrayList[] lists = new LongArrayList[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list == null ? 0 : list.size()));
+
+            int probed = grams.length - minShared + 1;
+            int postingCount = 0;
+            for (int i = 0; i < probed; i++) {
+                postingCount += lists[i] == null ? 0 : lists[i].size();
+            }
+            LongLongHashMap shared = new LongLongHashMap(postingCount);
+            for (int i = 0; i < probed; i++) {
+                LongArrayList list = lists[i];
+                for (int j = 0; list != null && j < list.size(); j++) {
+                    shared.addTo(list.get(j), 1L);
+                }
+            }
+
+            shared.forEach((id, count) -> {
+                long otherGrams = gramCounts.get(id, 0L);
+                if (otherGrams < minGrams || otherGrams > maxGrams) {
+                    return;
+                }
+                long total = count;
+                for (int i = probed; i < lists.length; i++) {
+                    if (lists[i] != null && lists[i].binarySearch(id) >= 0) {
+                        total++;
+                    }
+                }
+
+                double score = total / (double) (grams.length + otherGrams - total);
+                if (score >= similarity) {
+                    matches.add(new Match(id, score));
+                }
+            });
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(null);
+        long[] ids = new long[Math.min(limit, matches.size())];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = matches.get(i).id;
+        }
+
+        return ids;
+    }
+
+    /**
+     * Updates index on artist insert or update.
+     *
+     * @param artistId artist ID
+     * @param title actual artist title
+     */
+    public void artistWritten(long artistId, String title) {
+        String actual = ArtistTitles.normalize(title);
+
+        lock.writeLock().lock();
+        try {
+            apply(artistId, actual);
+            if (pending != null) {
+                pending.put(artistId, actual);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes artist unless its title is indexed already. Caller holds the write lock.
+     *
+     * @param artistId artist ID
+     * @param actual actual (normalized) artist title
+     */
+    private void apply(long artistId, String actual) {
+        String previous = titles.get(artistId);
+        if (previous == null || !previous.equals(actual)) {
+            if (previous != null) {
+                unindex(artistId, previous);
+            }
+            index(artistId, actual);
+        }
+    }
+
+    private void index(long artistId, String title) {
+        String key = keyOf(title);
+        if (key == null) {
+            return;
+        }
+
+        titles.put(artistId, title);
+        for (String prefixKey : prefixKeysOf(title)) {
+            insert(prefixKey, artistId);
+        }
+        long[] grams = trigramsOf(key);
+        gramCounts.put(artistId, grams.length);
+        for (long gram : grams) {
+            LongArrayList list = postings.get(gram);
+            if (list == null) {
+                list = new LongArrayList(1);
+                postings.put(gram, list);
+            }
+            int index = list.binarySearch(artistId);
+            if (index < 0) {
+                list.insert(-index - 1, artistId);
+            }
+        }
+    }
+
+    private void unindex(long artistId, String title) {
+        titles.remove(artistId);
+        gramCounts.remove(artistId);
+        for (String prefixKey : prefixKeysOf(title)) {
+            remove(prefixKey, artistId);
+        }
+        for (long gram : trigramsOf(keyOf(title))) {
+            LongArrayList list = postings.get(gram);
+            if (list != null) {
+                int index = list.binarySearch(artistId);
+                if (index >= 0) {
+                    list.remove(index);
+                }
+                if (list.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private void insert(String key, long artistId) {
+        Node node = trie;
+        int depth = 0;
+        while (depth < key.length()) {
+            int index = node.indexOf(key.charAt(depth));
+            if (index < 0) {
+                Node leaf = new Node(key.substring(depth));
+                node.insert(-index - 1, leaf);
+                node = leaf;
+                break;
+            }
+
+            Node child = node.children[index];
+            int common = commonPrefix(child.label, key, depth);
+            if (common < child.label.length()) {
+                // split edge at mismatch point
+                Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.children = new Node[] {child};
+                node.children[index] = split;
+                child = split;
+            }
+            node = child;
+            depth += common;
+        }
+
+        for (long id : node.ids) {
+            if (id == artistId) {
+                return;
+            }
+        }
+        node.ids = Arrays.copyOf(node.ids, node.ids.length + 1);
+        node.ids[node.ids.length - 1] = artistId;
+    }
+
+    private void remove(String key, long artistId) {
+        List<Node> path = new ArrayList<>();
+        Node node = trie;
+        int depth = 0;
+        while (depth < key.length()) {
+            int index = node.indexOf(key.charAt(depth));
+            if (index < 0 || !key.startsWith(node.children[index].label, depth)) {
+                return;
+            }
+            path.add(node);
+            node = node.children[index];
+            depth += node.label.length();
+        }
+
+        LongArrayList remaining = new LongArrayList(node.ids.length);
+        for (long id : node.ids) {
+            if (id != artistId) {
+                remaining.add(id);
+            }
+        }
+        node.ids = remaining.isEmpty() ? NO_ARTISTS : remaining.toArray();
+
+        // drop emptied leaves and merge pass-through nodes
+        while (node != trie && node.ids.length == 0) {
+            Node parent = path.remove(path.size() - 1);
+            int index = parent.indexOf(node.label.charAt(0));
+            if (node.children.length == 0) {
+                parent.delete(index);
+                node = parent;
+            }
+            else {
+                if (node.children.length == 1) {
+                    Node child = node.children[0];
+                    child.label = node.label + child.label;
+                    parent.children[index] = child;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param title normalized artist title
+     * @return Trie keys of artist: key of the whole title and keys of title suffixes starting at every word.
+     */
+    private static List<String> prefixKeysOf(String title) {
+        List<String> keys = new ArrayList<>(2);
+        String key = keyOf(title);
+        if (key != null) {
+            keys.add(key);
+            for (int i = title.indexOf(' '); i >= 0; i = title.indexOf(' ', i + 1)) {
+                String suffixKey = keyOf(title.substring(i + 1));
+                if (suffixKey != null && !keys.contains(suffixKey)) {
+                    keys.add(suffixKey);
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * @param title normalized artist title
+     * @return Index key, i.e. letters and digits of title (title as is if it has none),
+     * or <code>null</code> if title is empty.
+     */
+    private static String keyOf(String title) {
+        if (title == null || title.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(title.length());
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+            }
+        }
+
+        return key.length() == 0 ? title : key.toString();
+    }
+
+    /**
+     * @param key index key
+     * @return Sorted distinct trigrams of key padded with two leading and one trailing space,
+     * every trigram is packed into a long.
+     */
+    private static long[] trigramsOf(String key) {
+        String padded = "  " + key + " ";
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    private static int intersection(long[] a, long[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            }
+            else if (a[i] > b[j]) {
+                j++;
+            }
+            else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+
+        return shared;
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Trie node, children are sorted by first character of their edge labels.
+     */
+    private static class Node {
+
+        static final Node[] NO_NODES = new Node[0];
+
+        String label;
+
+        Node[] children = NO_NODES;
+
+        long[] ids = NO_ARTISTS;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        int indexOf(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label.charAt(0);
+                if (midChar < c) {
+                    low = mid + 1;
+                }
+                else if (midChar > c) {
+                    high = mid - 1;
+                }
+                else {
+                    return mid;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        void insert(int index, Node child) {
+            Node[] extended = new Node[children.length + 1];
+            System.arraycopy(children, 0, extended, 0, index);
+            extended[index] = child;
+            System.arraycopy(children, index, extended, index + 1, children.length - index);
+            children = extended;
+        }
+
+        void delete(int index) {
+            Node[] reduced = new Node[children.length - 1];
+            System.arraycopy(children, 0, reduced, 0, index);
+            System.arraycopy(children, index + 1, reduced, index, children.length - index - 1);
+            children = reduced;
+        }
+
+    }
+
+    /**
+     * Trie node pending visit, nodes with shorter keys are visited first.
+     */
+    private static class Visit implements Comparable<Visit> {
+
+        final Node node;
+
+        final int depth;
+
+        final int order;
+
+        Visit(Node node, int depth, int order) {
+            this.node = node;
+            this.depth = depth;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Visit other) {
+            int result = Integer.compare(depth, other.depth);
+            return result != 0 ? result : Integer.compare(order, other.order);
+        }
+
+    }
+
+    /**
+     * Fuzzy match, more similar and then older artists first.
+     */
+    private static class Match implements Comparable<Match> {
+
+        final long id;
+
+        final double score;
+
+        Match(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int result = Double.compare(other.score, score);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Artist title normalization rules.<p>
+ * Normalized title backs case (and diacritics) insensitive lookups. It is persisted in <code>G_ARTIST.TITLE_NORM</code>
+ * column, computed by the database via <code>NORMALIZE_TITLE</code> function alias to {@link #normalize(String)},
+ * so the column and lookup keys are always produced by the same code.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public final class ArtistTitles {
+
+    /**
+     * Combining marks left by canonical decomposition (i.e. diacritics).
+     */
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Whitespace sequences.
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private ArtistTitles() {
+        // utility class
+    }
+
+    /**
+     * Normalizes artist title:
+     * <ul>
+     *     <li>compatibility decomposition (NFKD), i.e. ligatures, full-width forms etc. are unified;</li>
+     *     <li>diacritics are stripped;</li>
+     *     <li>case is folded (e.g. <code>Straße</code> and <code>STRASSE</code> match);</li>
+     *     <li>whitespace is trimmed and collapsed.</li>
+     * </ul>
+     *
+     * @param title artist title
+     * @return Normalized artist title or <code>null</code> if no value supplied.
+     */
+    public static String normalize(String title) {
+        if (title == null) {
+            return null;
+        }
+
+        String result = Normalizer.normalize(title, Normalizer.Form.NFKD);
+        result = MARKS.matcher(result).replaceAll("");
+        result = result.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        result = WHITESPACE.matcher(result.trim()).replaceAll(" ");
+
+        return result;
+    }
+
+}
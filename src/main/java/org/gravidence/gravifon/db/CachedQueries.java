@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.metrics.Operation;
+import org.gravidence.gravifon.metrics.QueryMetricsListener;
+import org.jooq.ConnectionProvider;
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Factory of {@link CachedQuery cached queries}.<p>
+ * Fixed DAO queries are rendered by jOOQ once and executed by plain JDBC with bind values only,
+ * so repeated calls cost neither query building nor rendering. Identical SQL lets the database reuse parsed
+ * statements of pooled connections (see <code>QUERY_CACHE_SIZE</code> for H2).
+ * Connections are taken from jOOQ connection provider, so cached queries take part in Spring transactions,
+ * errors are translated and metrics are recorded the same way as for jOOQ queries.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class CachedQueries {
+
+    /**
+     * jOOQ instance bean, renders queries.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Data source, defines error codes of the exception translator.
+     */
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Query metrics recorder, shared with jOOQ queries.
+     */
+    @Autowired
+    private QueryMetricsListener queryMetrics;
+
+    /**
+     * jOOQ connection provider, hands out the connection of the current Spring transaction.
+     */
+    private ConnectionProvider connectionProvider;
+
+    /**
+     * Translates JDBC exceptions to Spring data access exceptions.
+     */
+    private SQLExceptionTranslator exceptionTranslator;
+
+    /**
+     * Sets up connection provider and exception translator.
+     */
+    @PostConstruct
+    private void init() {
+        connectionProvider = dslContext.configuration().connectionProvider();
+        exceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+    }
+
+    /**
+     * Renders a query to be executed repeatedly.
+     *
+     * @param query query, bind values are placeholders only (e.g. <code>null</code>)
+     * @return Cached query.
+     */
+    public CachedQuery prepare(Query query) {
+        return new CachedQuery(dslContext.render(query));
+    }
+
+    /**
+     * Query rendered once, see {@link CachedQueries}.
+     */
+    public final class CachedQuery {
+
+        /**
+         * Rendered SQL.
+         */
+        private final String sql;
+
+        private CachedQuery(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+         * Fetches at most one record.
+         *
+         * @param mapper row mapper
+         * @param bindValues bind values, in order of appearance
+         * @param <T> result type
+         * @return Mapped record or <code>null</code> if not found.
+         */
+        public <T> T fetchOne(RowMapper<T> mapper, Object... bindValues) {
+            long start = System.nanoTime();
+            Connection connection = connectionProvider.acquire();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, bindValues);
+                try (ResultSet rs = statement.executeQuery()) {
+                    T result = rs.next() ? mapper.mapRow(rs, 0) : null;
+                    recorded(start, result == null ? 0 : 1);
+
+                    return result;
+                }
+            }
+            catch (SQLException e) {
+                throw failed(e);
+            }
+            finally {
+                connectionProvider.release(connection);
+            }
+        }
+
+        /**
+         * Executes an insert of a single record.
+         *
+         * @param idColumn name of identity column
+         * @param bindValues bind values, in order of appearance
+         * @return Generated identity.
+         */
+        public long insert(String idColumn, Object... bindValues) {
+            long start = System.nanoTime();
+            Connection connection = connectionProvider.acquire();
+            try (PreparedStatement statement = connection.prepareStatement(sql, new String[] {idColumn})) {
+                bind(statement, bindValues);
+                int rows = statement.executeUpdate();
+                try (ResultSet rs = statement.getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        throw new SQLException("No identity generated.");
+                    }
+                    recorded(start, rows);
+
+                    return rs.getLong(1);
+                }
+            }
+            catch (SQLException e) {
+                throw failed(e);
+            }
+            finally {
+                connectionProvider.release(connection);
+            }
+        }
+
+        /**
+         * Executes a statement.
+         *
+         * @param bindValues bind values, in order of appearance
+         * @return Number of affected rows.
+         */
+        public int execute(Object... bindValues) {
+            long start = System.nanoTime();
+            Connection connection = connectionProvider.acquire();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bind(statement, bindValues);
+                int rows = statement.executeUpdate();
+                recorded(start, rows);
+
+                return rows;
+            }
+            catch (SQLException e) {
+                throw failed(e);
+            }
+            finally {
+                connectionProvider.release(connection);
+            }
+        }
+
+        private void recorded(long start, long rows) {
+            queryMetrics.record(Operation.current(), start, rows, false);
+        }
+
+        private RuntimeException failed(SQLException e) {
+            queryMetrics.record(Operation.current(), 0L, 0L, true);
+
+            return exceptionTranslator.translate("Cached query", sql, e);
+        }
+
+        @Override
+        public String toString() {
+            return sql;
+        }
+
+    }
+
+    private static void bind(PreparedStatement statement, Object[] bindValues) throws SQLException {
+        for (int i = 0; i < bindValues.length; i++) {
+            statement.setObject(i + 1, bindValues[i]);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor of database calls, keeps blocking JDBC work off request threads.<p>
+ * Fixed number of threads (should not exceed connection pool size) picks tasks from a bounded queue.
+ * Tasks that don't fit the queue are rejected right away, so overload turns into fast failures
+ * instead of connection pile-ups. Tasks cancelled while queued (e.g. their request timed out) are skipped.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class DbExecutor {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Number of threads executing database calls.
+     */
+    @Value("${org.gravidence.gravifon.db.executor.threads:10}")
+    private int threads;
+
+    /**
+     * Maximum number of database calls waiting for a thread.
+     */
+    @Value("${org.gravidence.gravifon.db.executor.queue-capacity:100}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private Counter rejected;
+
+    /**
+     * Starts executor threads.
+     */
+    @PostConstruct
+    private void setUp() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "db-executor-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("gravifon.db.executor.queued", executor, e -> e.getQueue().size())
+                .description("Database calls waiting for a thread")
+                .register(registry);
+        Gauge.builder("gravifon.db.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Database calls in progress")
+                .register(registry);
+        rejected = Counter.builder("gravifon.db.executor.rejected")
+                .description("Database calls rejected due to full queue")
+                .register(registry);
+    }
+
+    /**
+     * Stops executor, queued calls are completed before that.
+     *
+     * @throws InterruptedException if interrupted while waiting for queued calls to complete
+     */
+    @PreDestroy
+    private void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Submits a database call.<p>
+     * Call is skipped if returned future is completed (e.g. cancelled) before call is started.
+     *
+     * @param call database call
+     * @param <T> call result type
+     * @return Future completed with call result,
+     * or <code>null</code> if call is rejected due to lack of queue capacity.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(call.get());
+                }
+                catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            rejected.increment();
+            return null;
+        }
+
+        return result;
+    }
+
+}
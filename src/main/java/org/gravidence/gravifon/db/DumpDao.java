@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.jooq.BatchBindStep;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStepN;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+import static org.gravidence.gravidat.model.Tables.G_RELEASE_TYPE;
+
+/**
+ * DAO for bulk dump import, see {@link org.gravidence.gravifon.ingest.DumpImport}.<p>
+ * Rows are written by prepared statements bound in batches, IDs are assigned by the caller.
+ * Artist writes are recorded to the artist change log within the same transaction.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class DumpDao {
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    @Autowired
+    private ArtistChangeDao artistChangeDao;
+
+    /**
+     * Maximum number of rows written by a single bulk statement.
+     */
+    @Value("${org.gravidence.gravifon.db.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * @param table table to examine
+     * @param id table ID field
+     * @return Maximum ID in the table or <code>null</code> if table is empty.
+     */
+    public Long getMaxId(Table<?> table, Field<Long> id) {
+        return dslContext.select(DSL.max(id)).from(table).fetchOne().value1();
+    }
+
+    /**
+     * @return IDs of known release types or <code>null</code> if there are none.
+     */
+    public List<Byte> getReleaseTypeIds() {
+        List<Byte> result = dslContext.select(G_RELEASE_TYPE.ID)
+                .from(G_RELEASE_TYPE)
+                .fetch(G_RELEASE_TYPE.ID, Byte.class);
+
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Writes rows within a single transaction.<p>
+     * Rows are inserted by multi-row statements unless key fields are supplied, in which case they're merged
+     * one by one (by a batch of bound statements), so rows written already (say, by an interrupted import)
+     * are overwritten instead of duplicated.
+     *
+     * @param table table to write to
+     * @param fields fields to write, in row values order
+     * @param keys merge key fields or <code>null</code> to insert
+     * @param rows row values
+     * @param changedArtistIds IDs of written artists to record to the change log or <code>null</code>
+     * @param <R> table record type
+     */
+    public <R extends Record> void writeRows(Table<R> table, List<Field<?>> fields, List<Field<?>> keys,
+            List<Object[]> rows, long[] changedArtistIds) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        dslContext.transaction(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            if (keys == null) {
+                for (int from = 0; from < rows.size(); from += batchSize) {
+                    InsertValuesStepN<R> insert = ctx.insertInto(table, fields);
+                    for (Object[] row : rows.subList(from, Math.min(from + batchSize, rows.size()))) {
+                        insert = insert.values(row);
+                    }
+                    insert.execute();
+                }
+            }
+            else {
+                BatchBindStep batch = ctx.batch(ctx.mergeInto(table, fields)
+                        .key(keys)
+                        .values(new Object[fields.size()]));
+                for (Object[] row : rows) {
+                    batch = batch.bind(row);
+                }
+                batch.execute();
+            }
+
+            if (changedArtistIds != null) {
+                artistChangeDao.addChanges(changedArtistIds);
+            }
+        });
+    }
+
+    /**
+     * Sets master references within a single transaction.
+     *
+     * @param table table to update
+     * @param id table ID field
+     * @param master table master ID field
+     * @param ids IDs of updated rows
+     * @param masterIds master IDs, in <code>ids</code> order
+     * @param count number of leading elements of <code>ids</code> to process
+     * @param artists whether updated rows are artists, which are recorded to the change log then
+     */
+    public void updateMasters(Table<?> table, Field<Long> id, Field<Long> master, long[] ids, long[] masterIds,
+            int count, boolean artists) {
+        if (count == 0) {
+            return;
+        }
+
+        dslContext.transaction(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            BatchBindStep batch = ctx.batch(ctx.update(table)
+                    .set(master, DSL.param(master.getName(), Long.class))
+                    .where(id.eq(DSL.param(id.getName(), Long.class))));
+            for (int i = 0; i < count; i++) {
+                batch = batch.bind(masterIds[i], ids[i]);
+            }
+            batch.execute();
+
+            if (artists) {
+                long[] changed = new long[count];
+                System.arraycopy(ids, 0, changed, 0, count);
+                artistChangeDao.addChanges(changed);
+            }
+        });
+    }
+
+    /**
+     * Restarts table identity right after the maximum ID (or supplied ID, if it's greater), so IDs assigned
+     * by the database later on don't collide with the imported ones.<p>
+     * Reserving imported IDs beforehand also spares the identity sequence adjustment on every written row.
+     *
+     * @param table table to adjust
+     * @param id table identity field
+     * @param reserved ID to reserve, <code>0</code> to restart after the maximum ID
+     */
+    public void restartIdentity(Table<?> table, Field<Long> id, long reserved) {
+        Long max = getMaxId(table, id);
+        long last = max == null ? reserved : Math.max(max, reserved);
+        dslContext.execute("ALTER TABLE {0} ALTER COLUMN {1} RESTART WITH {2}",
+                table, DSL.name(id.getName()), DSL.inline(last + 1));
+    }
+
+}
@@ -0,0 +1,487 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.db.GravionArchiveFile.Mapped;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Query engine over archived gravions (columnar archive files, see {@link GravionArchiveFile}).<p>
+ * Scans touch archive files of requested months only, blocks are skipped by their zone maps. Columns of matching
+ * blocks are decoded off memory-mapped files into reusable primitive arrays, filter is evaluated into a selection
+ * vector and aggregations consume it, so no row objects are materialized.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class GravionArchive {
+
+    private static final Field<java.sql.Date> ARCHIVE_PERIOD = DSL.field(DSL.name("PERIOD"), java.sql.Date.class);
+
+    private static final Field<String> ARCHIVE_PATH = DSL.field(DSL.name("PATH"), String.class);
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    @Autowired
+    private StatsDao statsDao;
+
+    /**
+     * Opened archive files by path.
+     */
+    private final ConcurrentMap<String, Mapped> files = new ConcurrentHashMap<>();
+
+    /**
+     * Aggregates number of plays per artist over archived gravions.
+     *
+     * @param userId user ID, <code>null</code> for all users
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @return Artist ID to number of plays map.
+     */
+    public LongLongHashMap getArtistPlays(Long userId, Date from, Date to) {
+        LongLongHashMap trackPlays = new LongLongHashMap();
+        for (Mapped file : plan(from, to)) {
+            long[] plays = new long[file.tracks()];
+            scan(file, userId, from, to, batch -> {
+                int[] tracks = batch.tracks();
+                for (int i = 0; i < batch.selected; i++) {
+                    plays[tracks[batch.selection[i]]]++;
+                }
+            });
+            for (int code = 0; code < plays.length; code++) {
+                if (plays[code] > 0L) {
+                    trackPlays.addTo(file.trackId(code), plays[code]);
+                }
+            }
+        }
+
+        LongLongHashMap artistPlays = new LongLongHashMap();
+        if (trackPlays.isEmpty()) {
+            return artistPlays;
+        }
+
+        List<Long> trackIds = new ArrayList<>(trackPlays.size());
+        for (long trackId : trackPlays.keys()) {
+            trackIds.add(trackId);
+        }
+        LongObjectHashMap<long[]> trackArtists = statsDao.getTrackArtists(trackIds);
+        trackPlays.forEach((trackId, plays) -> {
+            long[] artists = trackArtists.get(trackId);
+            if (artists != null) {
+                for (long artistId : artists) {
+                    artistPlays.addTo(artistId, plays);
+                }
+            }
+        });
+
+        return artistPlays;
+    }
+
+    /**
+     * Aggregates listening duration per user over archived gravions. Gravion time span is taken for gravions
+     * of unspecified duration.
+     *
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @return User ID to total listening duration (in seconds) map.
+     */
+    public LongLongHashMap getUserDurations(Date from, Date to) {
+        LongLongHashMap durations = new LongLongHashMap();
+        for (Mapped file : plan(from, to)) {
+            scan(file, null, from, to, batch -> {
+                long[] users = batch.users;
+                int[] values = batch.durations();
+                long[] ends = null;
+                long user = 0L;
+                long total = 0L;
+                boolean run = false;
+                for (int i = 0; i < batch.selected; i++) {
+                    int row = batch.selection[i];
+                    long duration = values[row];
+                    if (duration < 0L) {
+                        if (ends == null) {
+                            ends = batch.ends();
+                        }
+                        duration = (ends[row] - batch.begins[row]) / 1000L;
+                    }
+                    // rows are sorted by user, so totals are accumulated per run of a user
+                    if (!run || users[row] != user) {
+                        if (run) {
+                            durations.addTo(user, total);
+                        }
+                        user = users[row];
+                        total = 0L;
+                        run = true;
+                    }
+                    total += duration;
+                }
+                if (run) {
+                    durations.addTo(user, total);
+                }
+            });
+        }
+
+        return durations;
+    }
+
+    /**
+     * Looks gravions up in archive files. Gravion is identified by user, track and listening start time.
+     *
+     * @param gravions list of gravion beans
+     * @return Gravions of the list that are archived already, empty list if none.
+     */
+    public List<GravionBean> getArchived(List<GravionBean> gravions) {
+        Map<YearMonth, List<GravionBean>> byMonth = new LinkedHashMap<>();
+        for (GravionBean gravion : gravions) {
+            byMonth.computeIfAbsent(GravionPartitions.monthOf(gravion.getBegin()), m -> new ArrayList<>())
+                    .add(gravion);
+        }
+
+        List<GravionBean> archived = new ArrayList<>();
+        for (Map.Entry<YearMonth, List<GravionBean>> month : byMonth.entrySet()) {
+            List<Mapped> files = plan(GravionPartitions.startOf(month.getKey()),
+                    GravionPartitions.startOf(month.getKey().plusMonths(1)));
+            for (GravionBean gravion : month.getValue()) {
+                long begin = gravion.getBegin().getTime();
+                boolean[] found = {false};
+                for (int i = 0; i < files.size() && !found[0]; i++) {
+                    Mapped file = files.get(i);
+                    scan(file, gravion.getUserId(), gravion.getUserId(), begin, begin + 1L, batch -> {
+                        int[] tracks = batch.tracks();
+                        for (int j = 0; j < batch.selected; j++) {
+                            if (file.trackId(tracks[batch.selection[j]]) == gravion.getTrackId()) {
+                                found[0] = true;
+                            }
+                        }
+                    });
+                }
+                if (found[0]) {
+                    archived.add(gravion);
+                }
+            }
+        }
+
+        return archived;
+    }
+
+    /**
+     * Scans all archived gravions of users within ID range. Gravion time span is taken for gravions
+     * of unspecified duration.
+     *
+     * @param userFrom lowest user ID, inclusive
+     * @param userTo highest user ID, inclusive
+     * @param consumer play consumer
+     * @return Number of scanned gravions.
+     */
+    public long scanPlays(long userFrom, long userTo, PlayConsumer consumer) {
+        long[] scanned = {0L};
+        for (Mapped file : plan()) {
+            scan(file, userFrom, userTo, Long.MIN_VALUE, Long.MAX_VALUE, batch -> {
+                int[] tracks = batch.tracks();
+                int[] durations = batch.durations();
+                long[] ends = null;
+                for (int i = 0; i < batch.selected; i++) {
+                    int row = batch.selection[i];
+                    long duration = durations[row];
+                    if (duration < 0L) {
+                        if (ends == null) {
+                            ends = batch.ends();
+                        }
+                        duration = (ends[row] - batch.begins[row]) / 1000L;
+                    }
+                    consumer.play(batch.users[row], file.trackId(tracks[row]), duration);
+                }
+                scanned[0] += batch.selected;
+            });
+        }
+
+        return scanned[0];
+    }
+
+    /**
+     * Picks archive files of months overlapping supplied time range.
+     *
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @return List of opened archive files.
+     */
+    List<Mapped> plan(Date from, Date to) {
+        List<Mapped> result = new ArrayList<>();
+        if (!from.before(to)) {
+            return result;
+        }
+
+        for (String path : dslContext.select(ARCHIVE_PATH)
+                .from(GravionPartitions.ARCHIVE)
+                .where(ARCHIVE_PERIOD.between(
+                        java.sql.Date.valueOf(GravionPartitions.monthOf(from).atDay(1)),
+                        java.sql.Date.valueOf(GravionPartitions.monthOf(new Date(to.getTime() - 1L)).atDay(1))))
+                .orderBy(ARCHIVE_PERIOD, ARCHIVE_PATH)
+                .fetch(ARCHIVE_PATH)) {
+            result.add(open(path));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return List of all opened archive files, in chronological order.
+     */
+    List<Mapped> plan() {
+        List<Mapped> result = new ArrayList<>();
+        for (String path : dslContext.select(ARCHIVE_PATH)
+                .from(GravionPartitions.ARCHIVE)
+                .orderBy(ARCHIVE_PERIOD, ARCHIVE_PATH)
+                .fetch(ARCHIVE_PATH)) {
+            result.add(open(path));
+        }
+
+        return result;
+    }
+
+    private Mapped open(String path) {
+        return files.computeIfAbsent(path, p -> {
+            try {
+                return GravionArchiveFile.open(Paths.get(p));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to open gravion archive " + p, e);
+            }
+        });
+    }
+
+    /**
+     * Scans an archive file: blocks are checked against zone maps, filter columns of remaining blocks are decoded
+     * and evaluated into selection vector, which is passed to consumer along with decoded columns.
+     *
+     * @param file archive file
+     * @param userId user ID, <code>null</code> for all users
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @param consumer batch consumer
+     */
+    static void scan(Mapped file, Long userId, Date from, Date to, BatchConsumer consumer) {
+        scan(file, userId == null ? Long.MIN_VALUE : userId, userId == null ? Long.MAX_VALUE : userId,
+                from.getTime(), to.getTime(), consumer);
+    }
+
+    /**
+     * Scans an archive file, see {@link #scan(Mapped, Long, Date, Date, BatchConsumer)}.
+     *
+     * @param file archive file
+     * @param userFrom lowest user ID, inclusive
+     * @param userTo highest user ID, inclusive
+     * @param begin beginning of time range (in milliseconds), inclusive
+     * @param end end of time range (in milliseconds), exclusive
+     * @param consumer batch consumer
+     */
+    static void scan(Mapped file, long userFrom, long userTo, long begin, long end, BatchConsumer consumer) {
+        Batch batch = new Batch(file);
+        for (int block = 0; block < file.blocks(); block++) {
+            if (!file.mayContain(block, userFrom, userTo, begin, end)) {
+                continue;
+            }
+
+            batch.load(block);
+            int selected = 0;
+            for (int i = 0; i < batch.count; i++) {
+                long user = batch.users[i];
+                long time = batch.begins[i];
+                if (user >= userFrom && user <= userTo && time >= begin && time < end) {
+                    batch.selection[selected++] = i;
+                }
+            }
+            batch.selected = selected;
+            if (selected > 0) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Consumer of scanned gravions.
+     */
+    @FunctionalInterface
+    public interface PlayConsumer {
+
+        /**
+         * @param userId user ID
+         * @param trackId track ID
+         * @param duration listening duration, in seconds
+         */
+        void play(long userId, long trackId, long duration);
+
+    }
+
+    /**
+     * Consumer of scanned blocks.
+     */
+    @FunctionalInterface
+    interface BatchConsumer {
+
+        /**
+         * @param batch decoded block and its selection vector
+         */
+        void accept(Batch batch);
+
+    }
+
+    /**
+     * Decoded block of an archive file. User IDs and listening start times are always decoded,
+     * other columns are decoded on demand. Arrays are reused from block to block.
+     */
+    static final class Batch {
+
+        private final Mapped file;
+
+        private int block;
+
+        /**
+         * Number of rows in the block.
+         */
+        int count;
+
+        final long[] users;
+
+        final long[] begins;
+
+        /**
+         * Indexes of rows matching the filter.
+         */
+        final int[] selection;
+
+        /**
+         * Number of rows matching the filter.
+         */
+        int selected;
+
+        private final long[] ends;
+
+        private final int[] durations;
+
+        private final int[] tracks;
+
+        private final long[] ids;
+
+        private boolean endsDecoded;
+
+        private boolean durationsDecoded;
+
+        private boolean tracksDecoded;
+
+        private boolean idsDecoded;
+
+        Batch(Mapped file) {
+            this.file = file;
+            int size = file.blockSize();
+            this.users = new long[size];
+            this.begins = new long[size];
+            this.selection = new int[size];
+            this.ends = new long[size];
+            this.durations = new int[size];
+            this.tracks = new int[size];
+            this.ids = new long[size];
+        }
+
+        void load(int block) {
+            this.block = block;
+            count = file.decodeLongs(block, GravionArchiveFile.USER, users);
+            file.decodeLongs(block, GravionArchiveFile.BEGIN, begins);
+            endsDecoded = false;
+            durationsDecoded = false;
+            tracksDecoded = false;
+            idsDecoded = false;
+        }
+
+        /**
+         * @return Listening end times, in milliseconds.
+         */
+        long[] ends() {
+            if (!endsDecoded) {
+                file.decodeEnds(block, begins, ends);
+                endsDecoded = true;
+            }
+            return ends;
+        }
+
+        /**
+         * @return Durations, in seconds (<code>-1</code> if not specified).
+         */
+        int[] durations() {
+            if (!durationsDecoded) {
+                file.decodeInts(block, GravionArchiveFile.DURATION, durations);
+                durationsDecoded = true;
+            }
+            return durations;
+        }
+
+        /**
+         * @return Track dictionary codes (see {@link Mapped#trackId(int)}).
+         */
+        int[] tracks() {
+            if (!tracksDecoded) {
+                file.decodeInts(block, GravionArchiveFile.TRACK, tracks);
+                tracksDecoded = true;
+            }
+            return tracks;
+        }
+
+        /**
+         * @return Gravion IDs.
+         */
+        long[] ids() {
+            if (!idsDecoded) {
+                file.decodeLongs(block, GravionArchiveFile.ID, ids);
+                idsDecoded = true;
+            }
+            return ids;
+        }
+
+    }
+
+}
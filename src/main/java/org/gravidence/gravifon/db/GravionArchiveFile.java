@@ -0,0 +1,568 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Columnar binary file format of archived gravions (see {@link GravionPartitions}).<p>
+ * Gravions are sorted by user and listening start time and split into blocks of fixed number of rows.
+ * Every column of a block is encoded separately:
+ * <ul>
+ *     <li>user ID: varint of difference with previous row (first row: varint of value)</li>
+ *     <li>listening start time: zigzag varint of delta-of-delta (first row: value, second row: delta)</li>
+ *     <li>listening end time: zigzag varint of difference with start time</li>
+ *     <li>duration: varint of duration plus one, zero stands for <code>null</code></li>
+ *     <li>track ID: varint of code in file's track dictionary</li>
+ *     <li>gravion ID: zigzag varint of difference with previous row (first row: value)</li>
+ * </ul>
+ * Every block has a zone map: minimum and maximum of user ID and of listening start time, so scans skip blocks
+ * that can't match without decoding them. File layout (big-endian):
+ * <pre>
+ * int magic, int version, long row count, int block size, int block count, int dictionary size (D),
+ * int block directory offset, byte[] blocks, long[D] sorted track IDs (dictionary),
+ * block directory: for every block
+ *     int row count, int[6] column offsets (user, begin, end, duration, track, ID), int end offset,
+ *     long min user ID, long max user ID, long min begin, long max begin
+ * </pre>
+ * Files are opened by memory mapping, columns are decoded straight off the mapping into primitive arrays.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+final class GravionArchiveFile {
+
+    /**
+     * "GRVA" in ASCII.
+     */
+    static final int MAGIC = 0x47525641;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 32;
+
+    static final int DIRECTORY_ENTRY_BYTES = 64;
+
+    static final int USER = 0;
+
+    static final int BEGIN = 1;
+
+    static final int END = 2;
+
+    static final int DURATION = 3;
+
+    static final int TRACK = 4;
+
+    static final int ID = 5;
+
+    private static final int COLUMNS = 6;
+
+    private GravionArchiveFile() {
+    }
+
+    /**
+     * Opens archive file by memory mapping.
+     *
+     * @param path archive file path
+     * @return Memory-mapped archive file.
+     * @throws IOException if file couldn't be read or is not a valid archive file
+     */
+    static Mapped open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected gravion archive size: " + size + " bytes.");
+            }
+            // mapping stays valid after channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a gravion archive of version " + VERSION + ".");
+        }
+        long rows = buffer.getLong(8);
+        int blockSize = buffer.getInt(16);
+        int blocks = buffer.getInt(20);
+        int dictionarySize = buffer.getInt(24);
+        int directory = buffer.getInt(28);
+        if (rows < 0L || blockSize <= 0 || blocks < 0 || dictionarySize < 0
+                || directory - 8L * dictionarySize < HEADER_BYTES
+                || (long) directory + (long) blocks * DIRECTORY_ENTRY_BYTES != buffer.capacity()) {
+            throw new IOException("Gravion archive is truncated or corrupted.");
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(directory - 8 * dictionarySize);
+        view.limit(directory);
+        LongBuffer dictionary = view.slice().asLongBuffer();
+
+        return new Mapped(buffer, rows, blockSize, blocks, dictionary, directory);
+    }
+
+    /**
+     * Memory-mapped archive file. Thread-safe, as decoding uses absolute reads only.
+     */
+    static final class Mapped {
+
+        private final ByteBuffer buffer;
+
+        private final long rows;
+
+        private final int blockSize;
+
+        private final int blocks;
+
+        private final LongBuffer dictionary;
+
+        private final int directory;
+
+        Mapped(ByteBuffer buffer, long rows, int blockSize, int blocks, LongBuffer dictionary, int directory) {
+            this.buffer = buffer;
+            this.rows = rows;
+            this.blockSize = blockSize;
+            this.blocks = blocks;
+            this.dictionary = dictionary;
+            this.directory = directory;
+        }
+
+        long rows() {
+            return rows;
+        }
+
+        /**
+         * @return Maximum number of rows in a block.
+         */
+        int blockSize() {
+            return blockSize;
+        }
+
+        int blocks() {
+            return blocks;
+        }
+
+        /**
+         * @return Size of track dictionary.
+         */
+        int tracks() {
+            return dictionary.limit();
+        }
+
+        /**
+         * @param code track dictionary code
+         * @return Track ID.
+         */
+        long trackId(int code) {
+            return dictionary.get(code);
+        }
+
+        int size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * @param block block index
+         * @return Number of rows in the block.
+         */
+        int rows(int block) {
+            return buffer.getInt(entry(block));
+        }
+
+        /**
+         * Checks block's zone map.
+         *
+         * @param block block index
+         * @param userFrom lowest user ID, inclusive
+         * @param userTo highest user ID, inclusive
+         * @param from beginning of time range in milliseconds, inclusive
+         * @param to end of time range in milliseconds, exclusive
+         * @return <code>false</code> if block has no rows of supplied users and time range for sure.
+         */
+        boolean mayContain(int block, long userFrom, long userTo, long from, long to) {
+            int entry = entry(block);
+            return buffer.getLong(entry + 32) <= userTo && buffer.getLong(entry + 40) >= userFrom
+                    && buffer.getLong(entry + 48) < to && buffer.getLong(entry + 56) >= from;
+        }
+
+        /**
+         * Decodes a <code>long</code> column of a block.
+         *
+         * @param block block index
+         * @param column {@link #USER}, {@link #BEGIN} or {@link #ID}
+         * @param values target array
+         * @return Number of decoded values.
+         */
+        int decodeLongs(int block, int column, long[] values) {
+            int entry = entry(block);
+            int count = buffer.getInt(entry);
+            int position = buffer.getInt(entry + 4 + 4 * column);
+            long previous = 0L;
+            long delta = 0L;
+            for (int i = 0; i < count; i++) {
+                long raw = 0L;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    raw |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+
+                long value;
+                if (column == USER) {
+                    value = previous + raw;
+                }
+                else if (column == BEGIN) {
+                    delta = i == 0 ? 0L : (i == 1 ? unzigzag(raw) : delta + unzigzag(raw));
+                    value = i == 0 ? unzigzag(raw) : previous + delta;
+                }
+                else {
+                    value = previous + unzigzag(raw);
+                }
+                values[i] = value;
+                previous = value;
+            }
+
+            return count;
+        }
+
+        /**
+         * Decodes listening end times of a block.
+         *
+         * @param block block index
+         * @param begins decoded listening start times of the block
+         * @param values target array
+         * @return Number of decoded values.
+         */
+        int decodeEnds(int block, long[] begins, long[] values) {
+            int entry = entry(block);
+            int count = buffer.getInt(entry);
+            int position = buffer.getInt(entry + 4 + 4 * END);
+            for (int i = 0; i < count; i++) {
+                long raw = 0L;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    raw |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                values[i] = begins[i] + unzigzag(raw);
+            }
+
+            return count;
+        }
+
+        /**
+         * Decodes an <code>int</code> column of a block.
+         *
+         * @param block block index
+         * @param column {@link #DURATION} (<code>-1</code> stands for <code>null</code>) or {@link #TRACK}
+         * @param values target array
+         * @return Number of decoded values.
+         */
+        int decodeInts(int block, int column, int[] values) {
+            int entry = entry(block);
+            int count = buffer.getInt(entry);
+            int position = buffer.getInt(entry + 4 + 4 * column);
+            int shift = column == DURATION ? -1 : 0;
+            for (int i = 0; i < count; i++) {
+                int value = 0;
+                int bits = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    value |= (b & 0x7F) << bits;
+                    bits += 7;
+                } while (b < 0);
+                values[i] = value + shift;
+            }
+
+            return count;
+        }
+
+        private int entry(int block) {
+            return directory + block * DIRECTORY_ENTRY_BYTES;
+        }
+
+    }
+
+    /**
+     * Archive file writer. Rows are to be added in user and listening start time order.
+     * File is written aside and moved in place by {@link #finish()}, it's discarded if writer is closed unfinished.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path path;
+
+        private final Path temporary;
+
+        private final FileChannel channel;
+
+        private final long[] dictionary;
+
+        private final int blockSize;
+
+        private final long[] users;
+
+        private final long[] begins;
+
+        private final long[] ends;
+
+        private final int[] durations;
+
+        private final int[] tracks;
+
+        private final long[] ids;
+
+        private int size;
+
+        private long rows;
+
+        private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+
+        private ByteBuffer entries = ByteBuffer.allocate(16 * DIRECTORY_ENTRY_BYTES);
+
+        private int blocks;
+
+        private long offset = HEADER_BYTES;
+
+        private boolean finished;
+
+        /**
+         * @param path archive file path
+         * @param dictionary distinct track IDs of all rows to be written
+         * @param blockSize number of rows in a block
+         * @throws IOException if file couldn't be created
+         */
+        Writer(Path path, long[] dictionary, int blockSize) throws IOException {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.dictionary = dictionary.clone();
+            Arrays.sort(this.dictionary);
+            this.blockSize = blockSize;
+            this.users = new long[blockSize];
+            this.begins = new long[blockSize];
+            this.ends = new long[blockSize];
+            this.durations = new int[blockSize];
+            this.tracks = new int[blockSize];
+            this.ids = new long[blockSize];
+        }
+
+        /**
+         * Adds a row.
+         *
+         * @param id gravion ID
+         * @param userId user ID
+         * @param trackId track ID, must be in dictionary
+         * @param begin listening start time in milliseconds
+         * @param end listening end time in milliseconds
+         * @param duration listening duration in seconds or <code>null</code>
+         * @throws IOException if block couldn't be written
+         */
+        void add(long id, long userId, long trackId, long begin, long end, Integer duration) throws IOException {
+            int code = Arrays.binarySearch(dictionary, trackId);
+            if (code < 0) {
+                throw new IllegalArgumentException("Track " + trackId + " is not in dictionary.");
+            }
+            if (size > 0 && (userId < users[size - 1] || userId == users[size - 1] && begin < begins[size - 1])) {
+                throw new IllegalArgumentException("Rows are not sorted by user and listening start time.");
+            }
+            if (duration != null && duration < 0) {
+                throw new IllegalArgumentException("Negative duration: " + duration);
+            }
+
+            users[size] = userId;
+            begins[size] = begin;
+            ends[size] = end;
+            durations[size] = duration == null ? 0 : duration + 1;
+            tracks[size] = code;
+            ids[size] = id;
+            size++;
+            rows++;
+            if (size == blockSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes the last block, dictionary, directory and header, moves file in place.
+         *
+         * @throws IOException if file couldn't be written or is too large to be mapped
+         */
+        void finish() throws IOException {
+            try {
+                flush();
+
+                ByteBuffer tail = ByteBuffer.allocate(8 * dictionary.length + entries.position());
+                for (long trackId : dictionary) {
+                    tail.putLong(trackId);
+                }
+                long directory = offset + 8L * dictionary.length;
+                entries.flip();
+                tail.put(entries);
+                tail.flip();
+                if (directory + entries.limit() > Integer.MAX_VALUE) {
+                    throw new IOException("Gravion archive is too large to be mapped: "
+                            + (directory + entries.limit()) + " bytes.");
+                }
+                write(tail, offset);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(rows).putInt(blockSize).putInt(blocks)
+                        .putInt(dictionary.length).putInt((int) directory);
+                header.flip();
+                write(header, 0L);
+                channel.force(true);
+            }
+            finally {
+                channel.close();
+            }
+
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        /**
+         * Discards the file unless it's finished.
+         *
+         * @throws IOException if file couldn't be deleted
+         */
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        /**
+         * Encodes and writes buffered rows as a block.
+         */
+        private void flush() throws IOException {
+            if (size == 0) {
+                return;
+            }
+
+            out.clear();
+            int[] columns = new int[COLUMNS + 1];
+            long minBegin = Long.MAX_VALUE;
+            long maxBegin = Long.MIN_VALUE;
+
+            columns[USER] = out.position();
+            for (int i = 0; i < size; i++) {
+                putVarint(i == 0 ? users[i] : users[i] - users[i - 1]);
+            }
+            columns[BEGIN] = out.position();
+            for (int i = 0; i < size; i++) {
+                long value = begins[i];
+                if (i == 0) {
+                    putVarint(zigzag(value));
+                }
+                else if (i == 1) {
+                    putVarint(zigzag(value - begins[0]));
+                }
+                else {
+                    putVarint(zigzag((value - begins[i - 1]) - (begins[i - 1] - begins[i - 2])));
+                }
+                minBegin = Math.min(minBegin, value);
+                maxBegin = Math.max(maxBegin, value);
+            }
+            columns[END] = out.position();
+            for (int i = 0; i < size; i++) {
+                putVarint(zigzag(ends[i] - begins[i]));
+            }
+            columns[DURATION] = out.position();
+            for (int i = 0; i < size; i++) {
+                putVarint(durations[i]);
+            }
+            columns[TRACK] = out.position();
+            for (int i = 0; i < size; i++) {
+                putVarint(tracks[i]);
+            }
+            columns[ID] = out.position();
+            for (int i = 0; i < size; i++) {
+                putVarint(zigzag(i == 0 ? ids[i] : ids[i] - ids[i - 1]));
+            }
+            columns[COLUMNS] = out.position();
+
+            if (offset + out.position() > Integer.MAX_VALUE) {
+                throw new IOException("Gravion archive is too large to be mapped.");
+            }
+            if (entries.remaining() < DIRECTORY_ENTRY_BYTES) {
+                entries = ByteBuffer.allocate(entries.capacity() * 2).put((ByteBuffer) entries.flip());
+            }
+            entries.putInt(size);
+            for (int column : columns) {
+                entries.putInt((int) offset + column);
+            }
+            entries.putLong(users[0]).putLong(users[size - 1]).putLong(minBegin).putLong(maxBegin);
+
+            out.flip();
+            write(out, offset);
+            offset += out.limit();
+            blocks++;
+            size = 0;
+        }
+
+        private void write(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        private void putVarint(long value) {
+            if (out.remaining() < 10) {
+                out = ByteBuffer.allocate(out.capacity() * 2).put((ByteBuffer) out.flip());
+            }
+            while ((value & ~0x7FL) != 0L) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+}
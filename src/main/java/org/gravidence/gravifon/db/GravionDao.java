@@ -0,0 +1,515 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.db.GravionPartitions.Partition;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep5;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Record3;
+import org.jooq.Result;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.gravidence.gravidat.model.Tables.G_USER;
+
+/**
+ * DAO for Gravion domain (monthly <code>G_GRAVION_YYYYMM</code> partitions, see {@link GravionPartitions}).<p>
+ * Gravion writes are idempotent, a gravion is stored once no matter how many times it's submitted.
+ * Reads touch only the partitions overlapping requested time range.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class GravionDao {
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    @Autowired
+    private GravionPartitions gravionPartitions;
+
+    /**
+     * Archived gravions, looked up for gravions of archived months.
+     */
+    @Autowired
+    private GravionArchive gravionArchive;
+
+    /**
+     * Maximum number of rows written by a single bulk statement.
+     */
+    @Value("${org.gravidence.gravifon.db.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Number of rows fetched from database per round trip when streaming gravions.
+     */
+    @Value("${org.gravidence.gravifon.db.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Gravion write listeners.
+     */
+    @Autowired(required = false)
+    private List<GravionListener> listeners = Collections.emptyList();
+
+    /**
+     * Adds new gravion records in bulk, idempotently.<p>
+     * Same as {@link #addGravions(List, Collection)} with no suspected duplicates.
+     *
+     * @param gravions list of gravion beans
+     * @return Number of added gravions.
+     */
+    public int addGravions(List<GravionBean> gravions) {
+        return addGravions(gravions, Collections.emptyList());
+    }
+
+    /**
+     * Adds new gravion records in bulk, idempotently.<p>
+     * A gravion is identified by user, track and listening start time. Gravions that are stored already
+     * or repeated within the list are skipped. Gravions are inserted optimistically, if a stored duplicate turns up
+     * (unique key is violated), write is retried with duplicates looked up and skipped. Suspected duplicates are
+     * looked up upfront, which spares the failed attempt.<p>
+     * All gravions are written within a single transaction using multi-row inserts of configured batch size,
+     * missing partitions are created upfront. Partitions written to are not archived until write is completed
+     * (see {@link GravionPartitions#acquire(Collection)}). Gravions of archived months are looked up in archive
+     * files, archived ones are skipped as stored.
+     * Generated IDs are NOT assigned back to gravion beans. {@link GravionListener}s are notified of added gravions
+     * within the same transaction.
+     *
+     * @param gravions list of gravion beans
+     * @param suspects gravions of the list that are likely stored already
+     * @return Number of added gravions (skipped duplicates are not counted).
+     */
+    public int addGravions(List<GravionBean> gravions, Collection<GravionBean> suspects) {
+        if (gravions.isEmpty()) {
+            return 0;
+        }
+
+        List<GravionBean> distinct = distinct(gravions);
+        Set<YearMonth> months = new HashSet<>();
+        for (GravionBean gravion : distinct) {
+            months.add(GravionPartitions.monthOf(gravion.getBegin()));
+        }
+        NavigableMap<YearMonth, Partition> partitions = gravionPartitions.acquire(months);
+        try {
+            List<GravionBean> unarchived = unarchived(distinct);
+            if (unarchived.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                return insert(partitions, unarchived, suspects);
+            }
+            catch (DuplicateKeyException e) {
+                return insert(partitions, unarchived, unarchived);
+            }
+        }
+        finally {
+            gravionPartitions.release(partitions.values());
+        }
+    }
+
+    /**
+     * Fetches listening history of a user, ordered by listening start time.
+     *
+     * @param userId user ID
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @return List of gravion beans or <code>null</code> if none found.
+     */
+    public List<GravionBean> getGravions(Long userId, Date from, Date to) {
+        List<GravionBean> gravions = null;
+        for (Partition partition : gravionPartitions.plan(from, to)) {
+            Result<? extends Record> rs = dslContext.select(partition.id, partition.userId, partition.trackId,
+                    partition.begin, partition.end, partition.duration)
+                    .from(partition.table)
+                    .where(partition.userId.eq(userId))
+                    .and(partition.begin.ge(partition.clampFrom(from)))
+                    .and(partition.begin.lt(partition.clampTo(to)))
+                    .orderBy(partition.begin, partition.id)
+                    .fetch();
+
+            List<GravionBean> partial = toWebModel(partition, rs);
+            if (gravions == null) {
+                gravions = partial;
+            }
+            else if (partial != null) {
+                gravions.addAll(partial);
+            }
+        }
+
+        return gravions;
+    }
+
+    /**
+     * @return Lowest and highest user IDs or <code>null</code> if there are no users.
+     */
+    public long[] getUserIdRange() {
+        Record2<Long, Long> range = dslContext.select(DSL.min(G_USER.ID), DSL.max(G_USER.ID))
+                .from(G_USER)
+                .fetchOne();
+
+        return range.value1() == null ? null : new long[] {range.value1(), range.value2()};
+    }
+
+    /**
+     * Streams listening history of users within supplied ID range, partition by partition (oldest first),
+     * so every user's gravions come in listening start time order. Gravions are fetched lazily
+     * and handed over in chunks of fetch size. Archived partitions are not scanned.
+     *
+     * @param userFrom lowest user ID, inclusive
+     * @param userTo highest user ID, inclusive
+     * @param consumer gravion chunk consumer
+     * @return Number of streamed gravions.
+     */
+    public long scanGravions(long userFrom, long userTo, Consumer<List<GravionBean>> consumer) {
+        long scanned = 0L;
+        for (Partition partition : gravionPartitions.getPartitions()) {
+            try (Cursor<? extends Record> cursor = dslContext.select(partition.id, partition.userId,
+                    partition.trackId, partition.begin, partition.end, partition.duration)
+                    .from(partition.table)
+                    .where(partition.userId.between(userFrom, userTo))
+                    .orderBy(partition.userId, partition.begin, partition.id)
+                    .fetchSize(fetchSize)
+                    .fetchLazy()) {
+                List<GravionBean> chunk = new ArrayList<>(fetchSize);
+                while (cursor.hasNext()) {
+                    Record r = cursor.fetchOne();
+                    chunk.add(new GravionBean(r.get(partition.id), r.get(partition.userId),
+                            r.get(partition.trackId), toDate(r.get(partition.begin)),
+                            toDate(r.get(partition.end)), r.get(partition.duration)));
+                    if (chunk.size() == fetchSize) {
+                        consumer.accept(chunk);
+                        scanned += chunk.size();
+                        chunk = new ArrayList<>(fetchSize);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    consumer.accept(chunk);
+                    scanned += chunk.size();
+                }
+            }
+        }
+
+        return scanned;
+    }
+
+    /**
+     * Filters out gravions of archived months that are archived already.
+     *
+     * @param gravions list of gravion beans
+     * @return List of gravion beans that are not archived, supplied one if none are.
+     */
+    private List<GravionBean> unarchived(List<GravionBean> gravions) {
+        List<GravionBean> late = new ArrayList<>();
+        for (GravionBean gravion : gravions) {
+            if (gravionPartitions.isArchived(GravionPartitions.monthOf(gravion.getBegin()))) {
+                late.add(gravion);
+            }
+        }
+        if (late.isEmpty()) {
+            return gravions;
+        }
+
+        Set<GravionBean> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+        archived.addAll(gravionArchive.getArchived(late));
+        if (archived.isEmpty()) {
+            return gravions;
+        }
+
+        List<GravionBean> result = new ArrayList<>(gravions.size() - archived.size());
+        for (GravionBean gravion : gravions) {
+            if (!archived.contains(gravion)) {
+                result.add(gravion);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inserts gravions within a single transaction, skipping stored ones.
+     *
+     * @param partitions locked partitions of gravion months
+     * @param gravions list of distinct gravion beans
+     * @param lookedUp gravions to look up and skip if stored
+     * @return Number of inserted gravions.
+     */
+    private int insert(Map<YearMonth, Partition> partitions, List<GravionBean> gravions,
+            Collection<GravionBean> lookedUp) {
+        return dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            List<GravionBean> added = lookedUp.isEmpty() ? gravions : absent(ctx, gravions, lookedUp);
+            if (added.isEmpty()) {
+                return 0;
+            }
+
+            Map<YearMonth, List<GravionBean>> byMonth = new LinkedHashMap<>();
+            for (GravionBean gravion : added) {
+                byMonth.computeIfAbsent(GravionPartitions.monthOf(gravion.getBegin()), m -> new ArrayList<>())
+                        .add(gravion);
+            }
+
+            for (Map.Entry<YearMonth, List<GravionBean>> month : byMonth.entrySet()) {
+                Partition partition = partitions.get(month.getKey());
+                if (partition == null) {
+                    throw new IllegalStateException("Gravion partition of " + month.getKey() + " is not locked");
+                }
+                List<GravionBean> monthly = month.getValue();
+                for (int from = 0; from < monthly.size(); from += batchSize) {
+                    List<GravionBean> chunk = monthly.subList(from, Math.min(from + batchSize, monthly.size()));
+
+                    InsertValuesStep5<Record, Long, Long, Timestamp, Timestamp, Integer> insert =
+                            ctx.insertInto(partition.table, partition.userId, partition.trackId,
+                                    partition.begin, partition.end, partition.duration);
+                    for (GravionBean gravion : chunk) {
+                        insert = insert.values(gravion.getUserId(), gravion.getTrackId(),
+                                toTimestamp(gravion.getBegin()), toTimestamp(gravion.getEnd()), gravion.getDuration());
+                    }
+                    insert.execute();
+                }
+            }
+
+            for (GravionListener listener : listeners) {
+                listener.gravionsAdded(added);
+            }
+
+            return added.size();
+        });
+    }
+
+    /**
+     * Filters out gravions that are stored already. Stored gravions are looked up by a single query per partition,
+     * which scans listening time range of every user of looked up gravions.
+     *
+     * @param ctx transactional jOOQ context
+     * @param gravions list of gravion beans
+     * @param lookedUp gravions to look up
+     * @return List of gravion beans that are not stored.
+     */
+    private List<GravionBean> absent(DSLContext ctx, List<GravionBean> gravions, Collection<GravionBean> lookedUp) {
+        Date first = null;
+        Date last = null;
+        Map<Long, Date[]> ranges = new HashMap<>();
+        for (GravionBean gravion : lookedUp) {
+            if (first == null || gravion.getBegin().before(first)) {
+                first = gravion.getBegin();
+            }
+            if (last == null || gravion.getBegin().after(last)) {
+                last = gravion.getBegin();
+            }
+
+            Date[] range = ranges.get(gravion.getUserId());
+            if (range == null) {
+                ranges.put(gravion.getUserId(), new Date[] {gravion.getBegin(), gravion.getBegin()});
+            }
+            else if (gravion.getBegin().before(range[0])) {
+                range[0] = gravion.getBegin();
+            }
+            else if (gravion.getBegin().after(range[1])) {
+                range[1] = gravion.getBegin();
+            }
+        }
+
+        Set<Key> stored = new HashSet<>();
+        for (Partition partition : gravionPartitions.plan(first, new Date(last.getTime() + 1L))) {
+            Condition condition = DSL.falseCondition();
+            for (Map.Entry<Long, Date[]> range : ranges.entrySet()) {
+                condition = condition.or(partition.userId.eq(range.getKey())
+                        .and(partition.begin.between(toTimestamp(range.getValue()[0]),
+                                toTimestamp(range.getValue()[1]))));
+            }
+
+            for (Record3<Long, Long, Timestamp> r : ctx.select(partition.userId, partition.trackId, partition.begin)
+                    .from(partition.table)
+                    .where(condition)
+                    .fetch()) {
+                stored.add(new Key(r.value1(), r.value2(), r.value3()));
+            }
+        }
+        if (stored.isEmpty()) {
+            return gravions;
+        }
+
+        List<GravionBean> result = new ArrayList<>(gravions.size());
+        for (GravionBean gravion : gravions) {
+            if (!stored.contains(new Key(gravion))) {
+                result.add(gravion);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param gravions list of gravion beans
+     * @return Supplied list if it has no repeated gravions, otherwise list of first occurrences.
+     */
+    private static List<GravionBean> distinct(List<GravionBean> gravions) {
+        Set<Key> keys = new HashSet<>();
+        List<GravionBean> result = null;
+        for (int i = 0; i < gravions.size(); i++) {
+            GravionBean gravion = gravions.get(i);
+            if (keys.add(new Key(gravion))) {
+                if (result != null) {
+                    result.add(gravion);
+                }
+            }
+            else if (result == null) {
+                result = new ArrayList<>(gravions.subList(0, i));
+            }
+        }
+
+        return result == null ? gravions : result;
+    }
+
+    /**
+     * Null-safe date to timestamp converter.
+     *
+     * @param date date
+     * @return Corresponding timestamp.
+     */
+    static Timestamp toTimestamp(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    /**
+     * Null-safe timestamp to date converter.
+     *
+     * @param timestamp timestamp
+     * @return Corresponding date.
+     */
+    static Date toDate(Timestamp timestamp) {
+        return timestamp == null ? null : new Date(timestamp.getTime());
+    }
+
+    /**
+     * Database to web model converter (single entity).
+     *
+     * @param partition partition the entity is read from
+     * @param rs database model entity
+     * @return Corresponding web model entity or <code>null</code> if no value supplied.
+     */
+    private static GravionBean toWebModel(Partition partition, Record rs) {
+        return rs == null ? null : new GravionBean(rs.get(partition.id), rs.get(partition.userId),
+                rs.get(partition.trackId), toDate(rs.get(partition.begin)), toDate(rs.get(partition.end)),
+                rs.get(partition.duration));
+    }
+
+    /**
+     * Database to web model converter (multiple entities).
+     *
+     * @param partition partition the entities are read from
+     * @param rs list of database model entities
+     * @return List of corresponding web model entities or <code>null</code> if no value supplied.
+     */
+    private static List<GravionBean> toWebModel(Partition partition, Result<? extends Record> rs) {
+        List<GravionBean> gravions;
+        if (CollectionUtils.isEmpty(rs)) {
+            gravions = null;
+        }
+        else {
+            gravions = new ArrayList<>();
+            for (Record r : rs) {
+                gravions.add(toWebModel(partition, r));
+            }
+        }
+
+        return gravions;
+    }
+
+    /**
+     * Gravion identity: user, track and listening start time.
+     */
+    private static final class Key {
+
+        private final Long userId;
+
+        private final Long trackId;
+
+        /**
+         * Listening start time, in milliseconds (as dates and timestamps are not comparable).
+         */
+        private final Long begin;
+
+        Key(GravionBean gravion) {
+            this(gravion.getUserId(), gravion.getTrackId(), gravion.getBegin());
+        }
+
+        Key(Long userId, Long trackId, Date begin) {
+            this.userId = userId;
+            this.trackId = trackId;
+            this.begin = begin == null ? null : begin.getTime();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(userId, key.userId) && Objects.equals(trackId, key.trackId)
+                    && Objects.equals(begin, key.begin);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, trackId, begin);
+        }
+
+    }
+
+}
@@ -0,0 +1,657 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record6;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.gravidence.gravidat.model.Tables.G_GRAVION;
+
+/**
+ * Time-partitioned gravion storage.<p>
+ * Gravions are stored in monthly partition tables (<code>G_GRAVION_YYYYMM</code>) of the same columns as
+ * <code>G_GRAVION</code>, IDs are drawn from shared <code>G_GRAVION_SEQ</code> sequence. Partition holds gravions
+ * started within its month only (enforced by a check constraint) and is indexed by user, listening start time
+ * and track. Partitions are created on demand, gravions of legacy <code>G_GRAVION</code> table are moved
+ * to partitions on startup.<p>
+ * Time range queries are planned by {@link #plan(Date, Date)}, which picks existing partitions overlapping the range,
+ * so a query touches only the partitions holding the months it asks for.<p>
+ * Partitions older than configured retention are archived: written to a columnar archive file
+ * (see {@link GravionArchiveFile}), registered in <code>G_GRAVION_ARCHIVE</code> and dropped. Archived gravions
+ * are queryable by {@link GravionArchive} scans only, rollups built from them are kept. Every partition has its own
+ * lock: gravion writers hold locks of the partitions they write to (see {@link #acquire(Collection)}), archiving
+ * holds the lock of the partition being archived, so writes to other months go on meanwhile.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class GravionPartitions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GravionPartitions.class);
+
+    /**
+     * Partition table name prefix.
+     */
+    static final String PREFIX = "G_GRAVION_";
+
+    /**
+     * Partition table name, captures partition month suffix.
+     */
+    private static final Pattern PARTITION_NAME = Pattern.compile(PREFIX + "(\\d{6})");
+
+    /**
+     * Partition month suffix format.
+     */
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * Sequence of gravion IDs, shared by all partitions.
+     */
+    private static final String SEQUENCE = "G_GRAVION_SEQ";
+
+    /**
+     * Archived partitions registry.
+     */
+    static final Table<Record> ARCHIVE = DSL.table(DSL.name("G_GRAVION_ARCHIVE"));
+
+    /**
+     * Archived month (its first day).
+     */
+    private static final Field<java.sql.Date> ARCHIVE_PERIOD = DSL.field(DSL.name("PERIOD"), java.sql.Date.class);
+
+    /**
+     * Archive file path.
+     */
+    private static final Field<String> ARCHIVE_PATH = DSL.field(DSL.name("PATH"), String.class);
+
+    /**
+     * Number of gravions in archive file.
+     */
+    private static final Field<Long> ARCHIVE_GRAVIONS = DSL.field(DSL.name("GRAVIONS"), Long.class);
+
+    /**
+     * Time archive file is registered.
+     */
+    private static final Field<Timestamp> ARCHIVE_ARCHIVED = DSL.field(DSL.name("ARCHIVED"), Timestamp.class);
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Number of rows fetched at once by streaming reads.
+     */
+    @Value("${org.gravidence.gravifon.db.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Archive directory, partitions are not archived if empty.
+     */
+    @Value("${org.gravidence.gravifon.gravion.archive.path:}")
+    private String archivePath;
+
+    /**
+     * Number of recent months kept in the database (current one included), partitions are not archived if not positive.
+     */
+    @Value("${org.gravidence.gravifon.gravion.archive.retention:0}")
+    private int retention;
+
+    /**
+     * Number of rows in an archive file block.
+     */
+    @Value("${org.gravidence.gravifon.gravion.archive.block-size:4096}")
+    private int archiveBlockSize;
+
+    /**
+     * Interval between archive runs, in seconds.
+     */
+    @Value("${org.gravidence.gravifon.gravion.archive.interval:86400}")
+    private long archiveInterval;
+
+    /**
+     * Existing partitions by month.
+     */
+    private final NavigableMap<YearMonth, Partition> partitions = new ConcurrentSkipListMap<>();
+
+    /**
+     * Months that have archive files.
+     */
+    private final Set<YearMonth> archivedMonths = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Runs scheduled archiving, <code>null</code> if archiving is disabled.
+     */
+    private ScheduledExecutorService archiver;
+
+    /**
+     * Discovers existing partitions and archived months, migrates legacy gravions
+     * and schedules archiving (if enabled).
+     */
+    @PostConstruct
+    public void init() {
+        for (String name : dslContext.select(DSL.field(DSL.name("TABLE_NAME"), String.class))
+                .from(DSL.table(DSL.name("INFORMATION_SCHEMA", "TABLES")))
+                .where(DSL.field(DSL.name("TABLE_SCHEMA")).eq(DSL.field("SCHEMA()")))
+                .fetch().getValues(0, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.parse(matcher.group(1), SUFFIX);
+                partitions.put(month, new Partition(month));
+            }
+        }
+
+        for (java.sql.Date period : dslContext.selectDistinct(ARCHIVE_PERIOD).from(ARCHIVE).fetch(ARCHIVE_PERIOD)) {
+            archivedMonths.add(YearMonth.from(period.toLocalDate()));
+        }
+
+        migrate();
+
+        if (!archivePath.isEmpty() && retention > 0 && archiveInterval > 0) {
+            archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "gravion-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            archiver.scheduleWithFixedDelay(this::archive, 0L, archiveInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops scheduled archiving.
+     */
+    @PreDestroy
+    public void tearDown() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+    }
+
+    /**
+     * Plans a time range query: picks existing partitions overlapping the range.
+     *
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @return List of partitions, in chronological order.
+     */
+    List<Partition> plan(Date from, Date to) {
+        if (!from.before(to)) {
+            return new ArrayList<>();
+        }
+
+        return new ArrayList<>(partitions.subMap(monthOf(from), true, monthOf(new Date(to.getTime() - 1L)), true)
+                .values());
+    }
+
+    /**
+     * @return List of all existing partitions, in chronological order.
+     */
+    List<Partition> getPartitions() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    /**
+     * Makes sure partitions of supplied months exist, missing ones are created.<p>
+     * Partitions are created by DDL statements, which commit current transaction, so this method is NOT to be called
+     * within a transaction.
+     *
+     * @param months months of partitions
+     */
+    void ensure(Collection<YearMonth> months) {
+        for (YearMonth month : months) {
+            if (!partitions.containsKey(month)) {
+                create(month);
+            }
+        }
+    }
+
+    /**
+     * Makes sure partitions of supplied months exist and locks them against archiving. Partitions are locked
+     * in chronological order, a partition archived while being waited for is replaced by a new one.<p>
+     * Partitions are created by DDL statements, which commit current transaction, so this method is NOT to be called
+     * within a transaction.
+     *
+     * @param months months of partitions
+     * @return Locked partitions by month, to be released by {@link #release(Collection)}.
+     */
+    NavigableMap<YearMonth, Partition> acquire(Collection<YearMonth> months) {
+        NavigableMap<YearMonth, Partition> locked = new TreeMap<>();
+        for (YearMonth month : new TreeSet<>(months)) {
+            while (true) {
+                ensure(Collections.singleton(month));
+                Partition partition = partitions.get(month);
+                if (partition == null) {
+                    continue;
+                }
+                partition.lock.readLock().lock();
+                if (partitions.get(month) == partition) {
+                    locked.put(month, partition);
+                    break;
+                }
+                partition.lock.readLock().unlock();
+            }
+        }
+
+        return locked;
+    }
+
+    /**
+     * Releases partitions locked by {@link #acquire(Collection)}.
+     *
+     * @param locked locked partitions
+     */
+    void release(Collection<Partition> locked) {
+        for (Partition partition : locked) {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks an existing partition up.
+     *
+     * @param month partition month
+     * @return Partition or <code>null</code> if not exists.
+     */
+    Partition get(YearMonth month) {
+        return partitions.get(month);
+    }
+
+    /**
+     * Checks whether any gravions of supplied month were archived.
+     *
+     * @param month month
+     * @return <code>true</code> if month has archive files.
+     */
+    boolean isArchived(YearMonth month) {
+        return archivedMonths.contains(month);
+    }
+
+    /**
+     * Archives partitions older than configured retention. Failures are logged.
+     */
+    public void archive() {
+        try {
+            archive(YearMonth.now().minusMonths(retention - 1));
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.error("Failed to archive gravion partitions", e);
+        }
+    }
+
+    /**
+     * Archives partitions older than supplied month.<p>
+     * Every partition is written to a columnar archive file, registered in <code>G_GRAVION_ARCHIVE</code>
+     * and dropped, while partition lock is held exclusively. Gravions added later for an archived month go to
+     * a new partition (unless they are archived already, see {@link GravionDao#addGravions(List, Collection)}),
+     * which is archived to a separate file.<p>
+     * Archive file is named after partition and its lowest gravion ID, which identifies partition table instance
+     * (IDs are drawn from shared sequence). If a previous run registered a file of the same partition but failed
+     * to drop it, that registration is replaced by the new one, so partition is never archived twice.
+     *
+     * @param before first month to keep
+     * @return Number of archived partitions.
+     * @throws IOException in case archive file can't be written
+     */
+    public int archive(YearMonth before) throws IOException {
+        if (archivePath.isEmpty()) {
+            throw new IllegalStateException("Gravion archive path is not configured");
+        }
+
+        Path dir = Paths.get(archivePath);
+        Files.createDirectories(dir);
+
+        int archived = 0;
+        for (Partition partition : new ArrayList<>(partitions.headMap(before, false).values())) {
+            partition.lock.writeLock().lock();
+            try {
+                // partition could have been archived by a concurrent run
+                if (partitions.get(partition.month) == partition) {
+                    archive(partition, dir);
+                    archived++;
+                }
+            }
+            finally {
+                partition.lock.writeLock().unlock();
+            }
+        }
+
+        return archived;
+    }
+
+    /**
+     * Archives a partition, replacing registered files of failed previous runs.
+     *
+     * @param partition partition
+     * @param dir archive directory
+     * @throws IOException in case archive file can't be written
+     */
+    private void archive(Partition partition, Path dir) throws IOException {
+        long started = System.currentTimeMillis();
+        Long firstId = dslContext.select(DSL.min(partition.id)).from(partition.table).fetchOne().value1();
+        String prefix = partition.name + "-" + (firstId == null ? 0L : firstId) + "-";
+        Path file = dir.resolve(prefix + started + ".gra");
+        long gravions = write(partition, file);
+
+        java.sql.Date period = java.sql.Date.valueOf(partition.month.atDay(1));
+        List<String> superseded = dslContext.transactionResult(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            List<String> paths = new ArrayList<>();
+            for (String path : ctx.select(ARCHIVE_PATH).from(ARCHIVE).where(ARCHIVE_PERIOD.eq(period))
+                    .fetch(ARCHIVE_PATH)) {
+                if (Paths.get(path).getFileName().toString().startsWith(prefix)) {
+                    paths.add(path);
+                }
+            }
+            if (!paths.isEmpty()) {
+                ctx.deleteFrom(ARCHIVE).where(ARCHIVE_PERIOD.eq(period)).and(ARCHIVE_PATH.in(paths)).execute();
+            }
+            ctx.insertInto(ARCHIVE, ARCHIVE_PERIOD, ARCHIVE_PATH, ARCHIVE_GRAVIONS, ARCHIVE_ARCHIVED)
+                    .values(period, file.toAbsolutePath().toString(), gravions, new Timestamp(started))
+                    .execute();
+            return paths;
+        });
+        archivedMonths.add(partition.month);
+        partitions.remove(partition.month);
+        dslContext.dropTable(partition.table).execute();
+
+        for (String path : superseded) {
+            try {
+                Files.deleteIfExists(Paths.get(path));
+            }
+            catch (IOException e) {
+                LOG.warn("Failed to delete superseded gravion archive {}", path, e);
+            }
+        }
+
+        LOG.info("Archived {} gravions of {} to {} in {} ms{}", gravions, partition.month, file,
+                System.currentTimeMillis() - started,
+                superseded.isEmpty() ? "" : ", superseded " + superseded);
+    }
+
+    /**
+     * Writes partition to an archive file, in user and listening start time order.
+     *
+     * @param partition partition
+     * @param file archive file
+     * @return Number of written gravions.
+     * @throws IOException in case file can't be written
+     */
+    private long write(Partition partition, Path file) throws IOException {
+        long[] tracks = dslContext.selectDistinct(partition.trackId)
+                .from(partition.table)
+                .fetch(partition.trackId).stream().mapToLong(Long::longValue).toArray();
+
+        long gravions = 0L;
+        try (GravionArchiveFile.Writer writer = new GravionArchiveFile.Writer(file, tracks, archiveBlockSize);
+                Cursor<Record6<Long, Long, Long, Timestamp, Timestamp, Integer>> cursor = dslContext
+                        .select(partition.id, partition.userId, partition.trackId,
+                                partition.begin, partition.end, partition.duration)
+                        .from(partition.table)
+                        .orderBy(partition.userId, partition.begin, partition.trackId)
+                        .fetchSize(fetchSize)
+                        .fetchLazy()) {
+            for (Record6<Long, Long, Long, Timestamp, Timestamp, Integer> r : cursor) {
+                writer.add(r.value1(), r.value2(), r.value3(), r.value4().getTime(), r.value5().getTime(),
+                        r.value6());
+                gravions++;
+            }
+            writer.finish();
+        }
+
+        return gravions;
+    }
+
+    /**
+     * Creates partition table, its check constraint and index.
+     *
+     * @param month partition month
+     */
+    private synchronized void create(YearMonth month) {
+        if (partitions.containsKey(month)) {
+            return;
+        }
+
+        Partition partition = new Partition(month);
+        dslContext.execute("CREATE TABLE IF NOT EXISTS {0} ("
+                        + "ID BIGINT DEFAULT NEXT VALUE FOR {1} NOT NULL PRIMARY KEY, "
+                        + "USER_ID BIGINT NOT NULL, "
+                        + "TRACK_ID BIGINT NOT NULL, "
+                        + "\"BEGIN\" TIMESTAMP NOT NULL, "
+                        + "\"END\" TIMESTAMP NOT NULL, "
+                        + "DURATION INTEGER, "
+                        + "CHECK (\"BEGIN\" >= {2} AND \"BEGIN\" < {3}), "
+                        + "FOREIGN KEY (USER_ID) REFERENCES G_USER(ID), "
+                        + "FOREIGN KEY (TRACK_ID) REFERENCES G_TRACK(ID))",
+                partition.table, DSL.name(SEQUENCE), DSL.inline(partition.from), DSL.inline(partition.to));
+        dslContext.execute("CREATE UNIQUE INDEX IF NOT EXISTS {0} ON {1}(USER_ID, \"BEGIN\", TRACK_ID)",
+                DSL.name(partition.name + "_IDX"), partition.table);
+        partitions.put(month, partition);
+
+        LOG.info("Created gravion partition {}", partition.name);
+    }
+
+    /**
+     * Moves gravions of legacy <code>G_GRAVION</code> table to partitions, month by month. Gravion IDs are kept,
+     * sequence is advanced past them.
+     */
+    private void migrate() {
+        Long maxId = dslContext.select(DSL.max(G_GRAVION.ID)).from(G_GRAVION).fetchOne().value1();
+        if (maxId == null) {
+            return;
+        }
+
+        Field<Integer> year = DSL.year(G_GRAVION.BEGIN);
+        Field<Integer> month = DSL.month(G_GRAVION.BEGIN);
+        List<YearMonth> months = new ArrayList<>();
+        for (Record r : dslContext.selectDistinct(year, month).from(G_GRAVION).fetch()) {
+            months.add(YearMonth.of(r.get(year), r.get(month)));
+        }
+        ensure(months);
+
+        Long next = dslContext.select(DSL.field(DSL.name("CURRENT_VALUE"), Long.class))
+                .from(DSL.table(DSL.name("INFORMATION_SCHEMA", "SEQUENCES")))
+                .where(DSL.field(DSL.name("SEQUENCE_NAME")).eq(SEQUENCE))
+                .fetchOne().value1() + 1L;
+        if (maxId >= next) {
+            dslContext.execute("ALTER SEQUENCE {0} RESTART WITH {1}", DSL.name(SEQUENCE), DSL.inline(maxId + 1L));
+        }
+
+        for (YearMonth m : months) {
+            Partition partition = partitions.get(m);
+            int moved = dslContext.transactionResult(configuration -> {
+                DSLContext ctx = DSL.using(configuration);
+                int inserted = ctx.insertInto(partition.table, partition.id, partition.userId, partition.trackId,
+                        partition.begin, partition.end, partition.duration)
+                        .select(DSL.select(G_GRAVION.ID, G_GRAVION.USER_ID, G_GRAVION.TRACK_ID,
+                                G_GRAVION.BEGIN, G_GRAVION.END, G_GRAVION.DURATION)
+                                .from(G_GRAVION)
+                                .where(G_GRAVION.BEGIN.ge(partition.from))
+                                .and(G_GRAVION.BEGIN.lt(partition.to)))
+                        .execute();
+                ctx.deleteFrom(G_GRAVION)
+                        .where(G_GRAVION.BEGIN.ge(partition.from))
+                        .and(G_GRAVION.BEGIN.lt(partition.to))
+                        .execute();
+                return inserted;
+            });
+
+            LOG.info("Moved {} gravions of {} to partition {}", moved, m, partition.name);
+        }
+    }
+
+    /**
+     * @param date date
+     * @return Month of supplied date (in system time zone, same as database timestamps).
+     */
+    static YearMonth monthOf(Date date) {
+        return YearMonth.from(new Timestamp(date.getTime()).toLocalDateTime());
+    }
+
+    /**
+     * @param month month
+     * @return Supplied month's first moment.
+     */
+    static Timestamp startOf(YearMonth month) {
+        return Timestamp.valueOf(LocalDateTime.of(month.getYear(), month.getMonth(), 1, 0, 0));
+    }
+
+    /**
+     * Monthly partition table and its (qualified) columns.
+     */
+    static final class Partition {
+
+        /**
+         * Partition month.
+         */
+        final YearMonth month;
+
+        /**
+         * Partition table name.
+         */
+        final String name;
+
+        /**
+         * Partition table.
+         */
+        final Table<Record> table;
+
+        /**
+         * Gravion ID column.
+         */
+        final Field<Long> id;
+
+        /**
+         * User ID column.
+         */
+        final Field<Long> userId;
+
+        /**
+         * Track ID column.
+         */
+        final Field<Long> trackId;
+
+        /**
+         * Listening start time column.
+         */
+        final Field<Timestamp> begin;
+
+        /**
+         * Listening end time column.
+         */
+        final Field<Timestamp> end;
+
+        /**
+         * Listening duration column.
+         */
+        final Field<Integer> duration;
+
+        /**
+         * First moment of partition month, inclusive.
+         */
+        final Timestamp from;
+
+        /**
+         * First moment of next month, exclusive.
+         */
+        final Timestamp to;
+
+        /**
+         * Held shared by gravion writers and exclusively by archiving.
+         */
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Partition(YearMonth month) {
+            this.month = month;
+            this.name = PREFIX + month.format(SUFFIX);
+            this.table = DSL.table(DSL.name(name));
+            this.id = DSL.field(DSL.name(name, "ID"), Long.class);
+            this.userId = DSL.field(DSL.name(name, "USER_ID"), Long.class);
+            this.trackId = DSL.field(DSL.name(name, "TRACK_ID"), Long.class);
+            this.begin = DSL.field(DSL.name(name, "BEGIN"), Timestamp.class);
+            this.end = DSL.field(DSL.name(name, "END"), Timestamp.class);
+            this.duration = DSL.field(DSL.name(name, "DURATION"), Integer.class);
+            this.from = startOf(month);
+            this.to = startOf(month.plusMonths(1));
+        }
+
+        /**
+         * @param from beginning of time range, inclusive
+         * @return Later of supplied time and partition's first moment.
+         */
+        Timestamp clampFrom(Date from) {
+            return from.getTime() > this.from.getTime() ? new Timestamp(from.getTime()) : this.from;
+        }
+
+        /**
+         * @param to end of time range, exclusive
+         * @return Earlier of supplied time and partition's end.
+         */
+        Timestamp clampTo(Date to) {
+            return to.getTime() < this.to.getTime() ? new Timestamp(to.getTime()) : this.to;
+        }
+
+    }
+
+}
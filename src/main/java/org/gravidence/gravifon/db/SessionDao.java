@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.web.model.SessionBean;
+import org.jooq.BatchBindStep;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStep4;
+import org.jooq.Record;
+import org.jooq.Record3;
+import org.jooq.Result;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.gravidence.gravidat.model.Tables.G_TRACK;
+
+/**
+ * DAO for listening sessions (<code>G_LISTENING_SESSION</code> and <code>G_LISTENING_SESSION_ALBUM</code> tables).<p>
+ * Session is identified by user and listening start time of its first gravion, albums played start to finish
+ * within a session are kept in play order.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class SessionDao {
+
+    private static final Table<Record> SESSION = DSL.table(DSL.name("G_LISTENING_SESSION"));
+
+    private static final Field<Long> SESSION_USER_ID = DSL.field(DSL.name("G_LISTENING_SESSION", "USER_ID"), Long.class);
+
+    private static final Field<Timestamp> SESSION_BEGIN =
+            DSL.field(DSL.name("G_LISTENING_SESSION", "BEGIN"), Timestamp.class);
+
+    private static final Field<Timestamp> SESSION_END =
+            DSL.field(DSL.name("G_LISTENING_SESSION", "END"), Timestamp.class);
+
+    private static final Field<Integer> SESSION_GRAVIONS =
+            DSL.field(DSL.name("G_LISTENING_SESSION", "GRAVIONS"), Integer.class);
+
+    private static final Field<Long> SESSION_DURATION =
+            DSL.field(DSL.name("G_LISTENING_SESSION", "DURATION"), Long.class);
+
+    private static final Table<Record> ALBUM = DSL.table(DSL.name("G_LISTENING_SESSION_ALBUM"));
+
+    private static final Field<Long> ALBUM_USER_ID =
+            DSL.field(DSL.name("G_LISTENING_SESSION_ALBUM", "USER_ID"), Long.class);
+
+    private static final Field<Timestamp> ALBUM_SESSION_BEGIN =
+            DSL.field(DSL.name("G_LISTENING_SESSION_ALBUM", "SESSION_BEGIN"), Timestamp.class);
+
+    private static final Field<Integer> ALBUM_ORDINAL =
+            DSL.field(DSL.name("G_LISTENING_SESSION_ALBUM", "ORDINAL"), Integer.class);
+
+    private static final Field<Long> ALBUM_RELEASE_ID =
+            DSL.field(DSL.name("G_LISTENING_SESSION_ALBUM", "RELEASE_ID"), Long.class);
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Maximum number of rows written by a single bulk statement.
+     */
+    @Value("${org.gravidence.gravifon.db.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Adds or replaces listening sessions (along with their albums) within a single transaction.
+     *
+     * @param sessions list of session beans
+     */
+    public void addSessions(List<SessionBean> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        dslContext.transaction(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+
+            for (int from = 0; from < sessions.size(); from += batchSize) {
+                List<SessionBean> chunk = sessions.subList(from, Math.min(from + batchSize, sessions.size()));
+
+                BatchBindStep merge = ctx.batch(ctx.mergeInto(SESSION, SESSION_USER_ID, SESSION_BEGIN,
+                        SESSION_END, SESSION_GRAVIONS, SESSION_DURATION)
+                        .key(SESSION_USER_ID, SESSION_BEGIN)
+                        .values((Long) null, null, null, null, null));
+                BatchBindStep delete = ctx.batch(ctx.deleteFrom(ALBUM)
+                        .where(ALBUM_USER_ID.eq((Long) null))
+                        .and(ALBUM_SESSION_BEGIN.eq((Timestamp) null)));
+                InsertValuesStep4<Record, Long, Timestamp, Integer, Long> albums = null;
+                for (SessionBean session : chunk) {
+                    Timestamp begin = GravionDao.toTimestamp(session.getBegin());
+                    merge = merge.bind(session.getUserId(), begin, GravionDao.toTimestamp(session.getEnd()),
+                            session.getGravions(), session.getDuration());
+                    delete = delete.bind(session.getUserId(), begin);
+                    if (session.getAlbums() != null) {
+                        for (int i = 0; i < session.getAlbums().size(); i++) {
+                            if (albums == null) {
+                                albums = ctx.insertInto(ALBUM,
+                                        ALBUM_USER_ID, ALBUM_SESSION_BEGIN, ALBUM_ORDINAL, ALBUM_RELEASE_ID);
+                            }
+                            albums = albums.values(session.getUserId(), begin, i, session.getAlbums().get(i));
+                        }
+                    }
+                }
+                merge.execute();
+                delete.execute();
+                if (albums != null) {
+                    albums.execute();
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes listening sessions of users within supplied ID range.
+     *
+     * @param userFrom lowest user ID, inclusive
+     * @param userTo highest user ID, inclusive
+     * @return Number of removed sessions.
+     */
+    public int removeSessions(long userFrom, long userTo) {
+        return dslContext.deleteFrom(SESSION)
+                .where(SESSION_USER_ID.between(userFrom, userTo))
+                .execute();
+    }
+
+    /**
+     * Fetches listening sessions of a user started within a time range, ordered by start time.
+     *
+     * @param userId user ID
+     * @param from beginning of time range, inclusive
+     * @param to end of time range, exclusive
+     * @return List of session beans or <code>null</code> if none found.
+     */
+    public List<SessionBean> getSessions(Long userId, Date from, Date to) {
+        Result<? extends Record> rs = dslContext.select(SESSION_USER_ID, SESSION_BEGIN, SESSION_END, SESSION_GRAVIONS,
+                SESSION_DURATION)
+                .from(SESSION)
+                .where(SESSION_USER_ID.eq(userId))
+                .and(SESSION_BEGIN.ge(GravionDao.toTimestamp(from)))
+                .and(SESSION_BEGIN.lt(GravionDao.toTimestamp(to)))
+                .orderBy(SESSION_BEGIN)
+                .fetch();
+        if (rs.isEmpty()) {
+            return null;
+        }
+
+        Map<Long, List<Long>> albums = new HashMap<>();
+        for (Record3<Timestamp, Integer, Long> r : dslContext.select(ALBUM_SESSION_BEGIN, ALBUM_ORDINAL,
+                ALBUM_RELEASE_ID)
+                .from(ALBUM)
+                .where(ALBUM_USER_ID.eq(userId))
+                .and(ALBUM_SESSION_BEGIN.ge(GravionDao.toTimestamp(from)))
+                .and(ALBUM_SESSION_BEGIN.lt(GravionDao.toTimestamp(to)))
+                .orderBy(ALBUM_SESSION_BEGIN, ALBUM_ORDINAL)
+                .fetch()) {
+            albums.computeIfAbsent(r.value1().getTime(), begin -> new ArrayList<>()).add(r.value3());
+        }
+
+        List<SessionBean> sessions = new ArrayList<>(rs.size());
+        for (Record r : rs) {
+            Timestamp begin = r.get(SESSION_BEGIN);
+            sessions.add(new SessionBean(r.get(SESSION_USER_ID), GravionDao.toDate(begin),
+                    GravionDao.toDate(r.get(SESSION_END)), r.get(SESSION_GRAVIONS), r.get(SESSION_DURATION),
+                    albums.get(begin.getTime())));
+        }
+
+        return sessions;
+    }
+
+    /**
+     * Fetches the latest listening session of a user.
+     *
+     * @param userId user ID
+     * @return Session bean or <code>null</code> if user has no sessions.
+     */
+    public SessionBean getLastSession(Long userId) {
+        Timestamp begin = dslContext.select(DSL.max(SESSION_BEGIN))
+                .from(SESSION)
+                .where(SESSION_USER_ID.eq(userId))
+                .fetchOne().value1();
+        if (begin == null) {
+            return null;
+        }
+
+        return getSessions(userId, begin, new Date(begin.getTime() + 1L)).get(0);
+    }
+
+    /**
+     * Fetches track order of releases of supplied tracks. Releases are considered only if all their tracks have
+     * positions, tracks are ordered by position (numbers within positions are compared numerically,
+     * so "A2" goes before "A10").
+     *
+     * @param trackIds track IDs
+     * @return Track ID to [release ID, track ordinal within release, number of release tracks] map
+     * (tracks of unknown order are absent).
+     */
+    public LongObjectHashMap<long[]> getTrackReleases(Collection<Long> trackIds) {
+        LongObjectHashMap<long[]> result = new LongObjectHashMap<>(trackIds.size());
+        if (trackIds.isEmpty()) {
+            return result;
+        }
+
+        Set<Long> releaseIds = new HashSet<>(dslContext.selectDistinct(G_TRACK.RELEASE_ID)
+                .from(G_TRACK)
+                .where(G_TRACK.ID.in(trackIds))
+                .and(G_TRACK.RELEASE_ID.isNotNull())
+                .fetch(G_TRACK.RELEASE_ID));
+        if (releaseIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, List<Record3<Long, Long, String>>> releases = new HashMap<>();
+        for (Record3<Long, Long, String> r : dslContext.select(G_TRACK.RELEASE_ID, G_TRACK.ID, G_TRACK.POSITION)
+                .from(G_TRACK)
+                .where(G_TRACK.RELEASE_ID.in(releaseIds))
+                .fetch()) {
+            releases.computeIfAbsent(r.value1(), id -> new ArrayList<>()).add(r);
+        }
+
+        Set<Long> requested = new HashSet<>(trackIds);
+        for (Map.Entry<Long, List<Record3<Long, Long, String>>> release : releases.entrySet()) {
+            List<Record3<Long, Long, String>> tracks = release.getValue();
+            if (tracks.stream().anyMatch(r -> r.value3() == null)) {
+                continue;
+            }
+
+            tracks.sort((a, b) -> comparePositions(a.value3(), b.value3()));
+            for (int i = 0; i < tracks.size(); i++) {
+                long trackId = tracks.get(i).value2();
+                if (requested.contains(trackId)) {
+                    result.put(trackId, new long[] {release.getKey(), i, tracks.size()});
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Compares track positions in natural order: digit runs are compared numerically, other characters
+     * are compared as is.
+     *
+     * @param a position
+     * @param b position
+     * @return Negative, zero or positive value as the first position goes before, along with or after the second.
+     */
+    static int comparePositions(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int startA = i;
+                int startB = j;
+                while (i < a.length() && Character.isDigit(a.charAt(i))) {
+                    i++;
+                }
+                while (j < b.length() && Character.isDigit(b.charAt(j))) {
+                    j++;
+                }
+                long na = Long.parseLong(a.substring(startA, Math.min(i, startA + 18)));
+                long nb = Long.parseLong(b.substring(startB, Math.min(j, startB + 18)));
+                if (na != nb) {
+                    return Long.compare(na, nb);
+                }
+            }
+            else {
+                if (ca != cb) {
+                    return Character.compare(ca, cb);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+}
@@ -0,0 +1,672 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import org.gravidence.gravifon.db.GravionPartitions.Partition;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.ArtistStatsBean;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.ListeningStatsBean;
+import org.gravidence.gravifon.web.model.TrackStatsBean;
+import org.jooq.BatchBindStep;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Record4;
+import org.jooq.Result;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+import static org.gravidence.gravidat.model.Tables.G_TRACK;
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * DAO for listening statistics (<code>G_USER_ARTIST_DAILY</code> and <code>G_USER_TRACK_DAILY</code> rollup tables,
+ * <code>G_USER_ARTIST_TOTAL</code> all-time totals).<p>
+ * Rollups hold daily number of plays and listening duration per user and artist (or track).
+ * All-time totals credit plays to principal artists (see {@link ArtistCanonicalizer#canonicalId(long)}),
+ * so they're recomputed as a whole once artist relations change.
+ * They're updated incrementally as gravions are written (see {@link GravionListener}),
+ * statistics are read from rollups only, raw gravions are scanned by {@link #rebuild(LocalDate, LocalDate)} only.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class StatsDao implements GravionListener {
+
+    /**
+     * Per user, artist and day rollup.
+     */
+    static final Rollup USER_ARTIST_DAILY = new Rollup("G_USER_ARTIST_DAILY", "ARTIST_ID");
+
+    /**
+     * Per user, track and day rollup.
+     */
+    static final Rollup USER_TRACK_DAILY = new Rollup("G_USER_TRACK_DAILY", "TRACK_ID");
+
+    /**
+     * Per user and principal artist all-time totals.
+     */
+    static final Rollup USER_ARTIST_TOTAL = new Rollup("G_USER_ARTIST_TOTAL", "ARTIST_ID", false);
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatsDao.class);
+
+    /**
+     * jOOQ instance bean.
+     */
+    @Autowired
+    private DSLContext dslContext;
+
+    @Autowired
+    private GravionPartitions gravionPartitions;
+
+    @Autowired
+    private ArtistCanonicalizer artistCanonicalizer;
+
+    /**
+     * Accumulates newly added gravions into rollups.
+     *
+     * @param gravions list of added gravion beans
+     */
+    @Override
+    public void gravionsAdded(List<GravionBean> gravions) {
+        LongObjectHashMap<long[]> trackArtists = getTrackArtists(gravions);
+
+        Map<RollupKey, long[]> artistDeltas = new HashMap<>();
+        Map<RollupKey, long[]> trackDeltas = new HashMap<>();
+        Map<RollupKey, long[]> totalDeltas = new HashMap<>();
+        for (GravionBean gravion : gravions) {
+            LocalDate day = dayOf(gravion.getBegin());
+            long duration = durationOf(gravion);
+
+            accumulate(trackDeltas, new RollupKey(gravion.getUserId(), gravion.getTrackId(), day), duration);
+
+            long[] artists = trackArtists.get(gravion.getTrackId());
+            if (artists != null) {
+                for (long artist : artists) {
+                    accumulate(artistDeltas, new RollupKey(gravion.getUserId(), artist, day), duration);
+                }
+                for (long principal : getPrincipals(artists)) {
+                    accumulate(totalDeltas, new RollupKey(gravion.getUserId(), principal, null), duration);
+                }
+            }
+        }
+
+        apply(USER_ARTIST_DAILY, artistDeltas);
+        apply(USER_TRACK_DAILY, trackDeltas);
+        apply(USER_ARTIST_TOTAL, totalDeltas);
+    }
+
+    /**
+     * Fetches listening statistics of a user.
+     *
+     * @param userId user ID
+     * @param from first day of period, inclusive, <code>null</code> for unbounded
+     * @param to last day of period, inclusive, <code>null</code> for unbounded
+     * @param limit maximum number of top artists and tracks
+     * @return Listening statistics bean (totals are zero if there's no data).
+     */
+    public ListeningStatsBean getListeningStats(Long userId, LocalDate from, LocalDate to, int limit) {
+        Record2<Long, Long> totals = dslContext
+                .select(DSL.sum(USER_TRACK_DAILY.plays).cast(Long.class), DSL.sum(USER_TRACK_DAILY.duration).cast(Long.class))
+                .from(USER_TRACK_DAILY.table)
+                .where(USER_TRACK_DAILY.period(userId, from, to))
+                .fetchOne();
+
+        return new ListeningStatsBean(userId,
+                totals.value1() == null ? 0L : totals.value1(),
+                totals.value2() == null ? 0L : totals.value2(),
+                getTopArtists(userId, from, to, limit),
+                getTopTracks(userId, from, to, limit));
+    }
+
+    /**
+     * Fetches most listened artists of a user, ordered by number of plays.
+     *
+     * @param userId user ID
+     * @param from first day of period, inclusive, <code>null</code> for unbounded
+     * @param to last day of period, inclusive, <code>null</code> for unbounded
+     * @param limit maximum number of artists
+     * @return List of artist statistics beans or <code>null</code> if none found.
+     */
+    public List<ArtistStatsBean> getTopArtists(Long userId, LocalDate from, LocalDate to, int limit) {
+        Field<Long> plays = DSL.sum(USER_ARTIST_DAILY.plays).cast(Long.class);
+        Field<Long> duration = DSL.sum(USER_ARTIST_DAILY.duration).cast(Long.class);
+
+        Result<Record4<Long, String, Long, Long>> rs = dslContext
+                .select(USER_ARTIST_DAILY.subject, G_ARTIST.TITLE, plays, duration)
+                .from(USER_ARTIST_DAILY.table)
+                .join(G_ARTIST).on(G_ARTIST.ID.eq(USER_ARTIST_DAILY.subject))
+                .where(USER_ARTIST_DAILY.period(userId, from, to))
+                .groupBy(USER_ARTIST_DAILY.subject, G_ARTIST.TITLE)
+                .orderBy(plays.desc(), duration.desc(), USER_ARTIST_DAILY.subject.asc())
+                .limit(limit)
+                .fetch();
+        if (rs.isEmpty()) {
+            return null;
+        }
+
+        List<ArtistStatsBean> artists = new ArrayList<>(rs.size());
+        for (Record4<Long, String, Long, Long> r : rs) {
+            artists.add(new ArtistStatsBean(new ArtistBean(r.value1(), r.value2(), null), r.value3(), r.value4()));
+        }
+
+        return artists;
+    }
+
+    /**
+     * Fetches all-time most listened principal artists of a user, ordered by number of plays.
+     *
+     * @param userId user ID
+     * @param limit maximum number of artists
+     * @return List of artist statistics beans or <code>null</code> if none found.
+     */
+    public List<ArtistStatsBean> getAllTimeArtists(Long userId, int limit) {
+        Result<Record4<Long, String, Long, Long>> rs = dslContext
+                .select(USER_ARTIST_TOTAL.subject, G_ARTIST.TITLE, USER_ARTIST_TOTAL.plays, USER_ARTIST_TOTAL.duration)
+                .from(USER_ARTIST_TOTAL.table)
+                .join(G_ARTIST).on(G_ARTIST.ID.eq(USER_ARTIST_TOTAL.subject))
+                .where(USER_ARTIST_TOTAL.user.eq(userId))
+                .orderBy(USER_ARTIST_TOTAL.plays.desc(), USER_ARTIST_TOTAL.duration.desc(),
+                        USER_ARTIST_TOTAL.subject.asc())
+                .limit(limit)
+                .fetch();
+        if (rs.isEmpty()) {
+            return null;
+        }
+
+        List<ArtistStatsBean> artists = new ArrayList<>(rs.size());
+        for (Record4<Long, String, Long, Long> r : rs) {
+            artists.add(new ArtistStatsBean(new ArtistBean(r.value1(), r.value2(), null), r.value3(), r.value4()));
+        }
+
+        return artists;
+    }
+
+    /**
+     * Replaces all-time totals of users within ID range, within a single transaction.
+     *
+     * @param userFrom lowest user ID, inclusive
+     * @param userTo highest user ID, inclusive
+     * @param totals list of [user ID, principal artist ID, plays, duration] rows
+     */
+    public void replaceArtistTotals(long userFrom, long userTo, List<long[]> totals) {
+        dslContext.transaction(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+            ctx.deleteFrom(USER_ARTIST_TOTAL.table)
+                    .where(USER_ARTIST_TOTAL.user.between(userFrom, userTo))
+                    .execute();
+
+            if (!totals.isEmpty()) {
+                BatchBindStep insert = ctx.batch(ctx.insertInto(USER_ARTIST_TOTAL.table, USER_ARTIST_TOTAL.user,
+                        USER_ARTIST_TOTAL.subject, USER_ARTIST_TOTAL.plays, USER_ARTIST_TOTAL.duration)
+                        .values((Long) null, null, null, null));
+                for (long[] row : totals) {
+                    insert = insert.bind(row[0], row[1], row[2], row[3]);
+                }
+                insert.execute();
+            }
+        });
+    }
+
+    /**
+     * Maps artists to principal ones, each principal artist is listed once.
+     *
+     * @param artists artist IDs
+     * @return Principal artist IDs.
+     */
+    public long[] getPrincipals(long[] artists) {
+        long[] principals = new long[artists.length];
+        int count = 0;
+        for (long artist : artists) {
+            long principal = artistCanonicalizer.canonicalId(artist);
+            boolean credited = false;
+            for (int i = 0; i < count && !credited; i++) {
+                credited = principals[i] == principal;
+            }
+            if (!credited) {
+                principals[count++] = principal;
+            }
+        }
+
+        return count == principals.length ? principals : Arrays.copyOf(principals, count);
+    }
+
+    /**
+     * Fetches most listened tracks of a user, ordered by number of plays.
+     *
+     * @param userId user ID
+     * @param from first day of period, inclusive, <code>null</code> for unbounded
+     * @param to last day of period, inclusive, <code>null</code> for unbounded
+     * @param limit maximum number of tracks
+     * @return List of track statistics beans or <code>null</code> if none found.
+     */
+    public List<TrackStatsBean> getTopTracks(Long userId, LocalDate from, LocalDate to, int limit) {
+        Field<Long> plays = DSL.sum(USER_TRACK_DAILY.plays).cast(Long.class);
+        Field<Long> duration = DSL.sum(USER_TRACK_DAILY.duration).cast(Long.class);
+
+        Result<Record4<Long, String, Long, Long>> rs = dslContext
+                .select(USER_TRACK_DAILY.subject, G_TRACK.TITLE, plays, duration)
+                .from(USER_TRACK_DAILY.table)
+                .join(G_TRACK).on(G_TRACK.ID.eq(USER_TRACK_DAILY.subject))
+                .where(USER_TRACK_DAILY.period(userId, from, to))
+                .groupBy(USER_TRACK_DAILY.subject, G_TRACK.TITLE)
+                .orderBy(plays.desc(), duration.desc(), USER_TRACK_DAILY.subject.asc())
+                .limit(limit)
+                .fetch();
+        if (rs.isEmpty()) {
+            return null;
+        }
+
+        List<TrackStatsBean> tracks = new ArrayList<>(rs.size());
+        for (Record4<Long, String, Long, Long> r : rs) {
+            tracks.add(new TrackStatsBean(r.value1(), r.value2(), r.value3(), r.value4()));
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Rebuilds rollups from raw gravions (backfill).<p>
+     * Rollups of supplied period are replaced within a single transaction, month by month, every month is scanned
+     * in its own partition. Rollups of archived months are kept as is.
+     * Gravions ingested concurrently for the same period may be counted twice or not at all,
+     * so rebuild is expected to be run for periods that are not being ingested.
+     *
+     * @param from first day of period, inclusive
+     * @param to last day of period, inclusive
+     */
+    public void rebuild(LocalDate from, LocalDate to) {
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            if (gravionPartitions.isArchived(month)) {
+                LOG.warn("Gravions of {} are archived, keeping rollups of the month", month);
+            }
+            else {
+                months.add(month);
+            }
+        }
+
+        dslContext.transaction(configuration -> {
+            DSLContext ctx = DSL.using(configuration);
+
+            for (YearMonth month : months) {
+                LocalDate first = from.isAfter(month.atDay(1)) ? from : month.atDay(1);
+                LocalDate last = to.isBefore(month.atEndOfMonth()) ? to : month.atEndOfMonth();
+
+                for (Rollup rollup : new Rollup[] {USER_ARTIST_DAILY, USER_TRACK_DAILY}) {
+                    ctx.deleteFrom(rollup.table)
+                            .where(rollup.day.between(Date.valueOf(first), Date.valueOf(last)))
+                            .execute();
+                }
+
+                Partition partition = gravionPartitions.get(month);
+                if (partition != null) {
+                    rebuild(ctx, partition, first, last);
+                }
+            }
+        });
+    }
+
+    /**
+     * Aggregates raw gravions of a partition into rollups.
+     *
+     * @param ctx transactional jOOQ context
+     * @param partition gravion partition
+     * @param from first day of period, inclusive
+     * @param to last day of period, inclusive
+     */
+    private static void rebuild(DSLContext ctx, Partition partition, LocalDate from, LocalDate to) {
+        Field<Date> day = partition.begin.cast(Date.class);
+        Field<Integer> duration = durationOf(partition);
+        Condition period = partition.begin.ge(Timestamp.valueOf(from.atStartOfDay()))
+                .and(partition.begin.lt(Timestamp.valueOf(to.plusDays(1).atStartOfDay())));
+
+        ctx.insertInto(USER_ARTIST_DAILY.table, USER_ARTIST_DAILY.user, USER_ARTIST_DAILY.subject,
+                USER_ARTIST_DAILY.day, USER_ARTIST_DAILY.plays, USER_ARTIST_DAILY.duration)
+                .select(DSL.select(partition.userId, G_TRACK_ARTIST.ARTIST_ID, day,
+                        DSL.count().cast(Long.class), DSL.sum(duration).cast(Long.class))
+                        .from(partition.table)
+                        .join(G_TRACK_ARTIST).on(G_TRACK_ARTIST.TRACK_ID.eq(partition.trackId))
+                        .where(period)
+                        .groupBy(partition.userId, G_TRACK_ARTIST.ARTIST_ID, day))
+                .execute();
+
+        ctx.insertInto(USER_TRACK_DAILY.table, USER_TRACK_DAILY.user, USER_TRACK_DAILY.subject,
+                USER_TRACK_DAILY.day, USER_TRACK_DAILY.plays, USER_TRACK_DAILY.duration)
+                .select(DSL.select(partition.userId, partition.trackId, day,
+                        DSL.count().cast(Long.class), DSL.sum(duration).cast(Long.class))
+                        .from(partition.table)
+                        .where(period)
+                        .groupBy(partition.userId, partition.trackId, day))
+                .execute();
+    }
+
+    /**
+     * @param partition gravion partition
+     * @return Actual listening duration of a gravion, in seconds. Falls back to gravion time span if not specified,
+     * truncated to seconds the same way {@link #durationOf(GravionBean)} does.
+     */
+    private static Field<Integer> durationOf(Partition partition) {
+        return DSL.coalesce(partition.duration,
+                DSL.field("CAST(DATEDIFF('MILLISECOND', {0}, {1}) / 1000 AS INT)", Integer.class,
+                        partition.begin, partition.end));
+    }
+
+    /**
+     * Fetches artists of tracks referenced by supplied gravions.
+     *
+     * @param gravions list of gravion beans
+     * @return Track ID to artist IDs map.
+     */
+    public LongObjectHashMap<long[]> getTrackArtists(List<GravionBean> gravions) {
+        Set<Long> trackIds = new HashSet<>();
+        for (GravionBean gravion : gravions) {
+            trackIds.add(gravion.getTrackId());
+        }
+
+        return getTrackArtists(trackIds);
+    }
+
+    /**
+     * Fetches artists of supplied tracks.
+     *
+     * @param trackIds track IDs
+     * @return Track ID to artist IDs map.
+     */
+    public LongObjectHashMap<long[]> getTrackArtists(Collection<Long> trackIds) {
+        LongObjectHashMap<LongArrayList> artists = new LongObjectHashMap<>(trackIds.size());
+        for (Record2<Long, Long> r : dslContext.select(G_TRACK_ARTIST.TRACK_ID, G_TRACK_ARTIST.ARTIST_ID)
+                .from(G_TRACK_ARTIST)
+                .where(G_TRACK_ARTIST.TRACK_ID.in(trackIds))
+                .fetch()) {
+            LongArrayList trackArtists = artists.get(r.value1());
+            if (trackArtists == null) {
+                trackArtists = new LongArrayList(1);
+                artists.put(r.value1(), trackArtists);
+            }
+            trackArtists.add(r.value2());
+        }
+
+        LongObjectHashMap<long[]> result = new LongObjectHashMap<>(artists.size());
+        artists.forEach((trackId, trackArtists) -> result.put(trackId, trackArtists.toArray()));
+
+        return result;
+    }
+
+    /**
+     * Applies accumulated deltas to a rollup: existing rows are incremented, missing rows are inserted.<p>
+     * Missing rows are inserted within a nested transaction. If a concurrent writer inserts some of them meanwhile
+     * (database waits for it to commit, then reports duplicate key), the insert is rolled back to savepoint and
+     * missing rows are upserted one by one, so deltas of both writers add up.
+     *
+     * @param rollup rollup table
+     * @param deltas rollup key to plays and duration deltas
+     */
+    private void apply(Rollup rollup, Map<RollupKey, long[]> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<RollupKey> keys = new ArrayList<>(deltas.keySet());
+        int[] updated = increment(rollup, keys, deltas);
+
+        List<RollupKey> missing = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                missing.add(keys.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        try {
+            dslContext.transaction(configuration -> insert(DSL.using(configuration), rollup, missing, deltas));
+        }
+        catch (DuplicateKeyException e) {
+            for (RollupKey key : missing) {
+                upsert(rollup, key, deltas);
+            }
+        }
+    }
+
+    /**
+     * Increments existing rollup rows.
+     *
+     * @param rollup rollup table
+     * @param keys rollup keys
+     * @param deltas rollup key to plays and duration deltas
+     * @return Number of updated rows per key.
+     */
+    private int[] increment(Rollup rollup, List<RollupKey> keys, Map<RollupKey, long[]> deltas) {
+        Condition rowKey = rollup.user.eq((Long) null).and(rollup.subject.eq((Long) null));
+        if (rollup.day != null) {
+            rowKey = rowKey.and(rollup.day.eq((Date) null));
+        }
+        BatchBindStep update = dslContext.batch(dslContext.update(rollup.table)
+                .set(rollup.plays, rollup.plays.plus((Long) null))
+                .set(rollup.duration, rollup.duration.plus((Long) null))
+                .where(rowKey));
+        for (RollupKey key : keys) {
+            long[] delta = deltas.get(key);
+            update = rollup.day == null ? update.bind(delta[0], delta[1], key.user, key.subject)
+                    : update.bind(delta[0], delta[1], key.user, key.subject, Date.valueOf(key.day));
+        }
+
+        return update.execute();
+    }
+
+    /**
+     * Inserts rollup rows.
+     *
+     * @param ctx jOOQ context
+     * @param rollup rollup table
+     * @param keys rollup keys
+     * @param deltas rollup key to plays and duration deltas
+     */
+    private static void insert(DSLContext ctx, Rollup rollup, List<RollupKey> keys, Map<RollupKey, long[]> deltas) {
+        List<Field<?>> columns = rollup.day == null
+                ? Arrays.asList(rollup.user, rollup.subject, rollup.plays, rollup.duration)
+                : Arrays.asList(rollup.user, rollup.subject, rollup.day, rollup.plays, rollup.duration);
+        BatchBindStep insert = ctx.batch(ctx.insertInto(rollup.table, columns)
+                .values(new Object[columns.size()]));
+        for (RollupKey key : keys) {
+            long[] delta = deltas.get(key);
+            insert = rollup.day == null ? insert.bind(key.user, key.subject, delta[0], delta[1])
+                    : insert.bind(key.user, key.subject, Date.valueOf(key.day), delta[0], delta[1]);
+        }
+        insert.execute();
+    }
+
+    /**
+     * Increments a rollup row, inserts it if missing. Insert that loses to a concurrent writer is rolled back
+     * to savepoint, and the row inserted by that writer is incremented.
+     *
+     * @param rollup rollup table
+     * @param key rollup key
+     * @param deltas rollup key to plays and duration deltas
+     */
+    private void upsert(Rollup rollup, RollupKey key, Map<RollupKey, long[]> deltas) {
+        List<RollupKey> keys = Collections.singletonList(key);
+        while (increment(rollup, keys, deltas)[0] == 0) {
+            try {
+                dslContext.transaction(configuration -> insert(DSL.using(configuration), rollup, keys, deltas));
+                return;
+            }
+            catch (DuplicateKeyException e) {
+                LOG.debug("Rollup row of user {} and subject {} is inserted concurrently, incrementing it",
+                        key.user, key.subject);
+            }
+        }
+    }
+
+    private static void accumulate(Map<RollupKey, long[]> deltas, RollupKey key, long duration) {
+        long[] delta = deltas.get(key);
+        if (delta == null) {
+            delta = new long[2];
+            deltas.put(key, delta);
+        }
+        delta[0]++;
+        delta[1] += duration;
+    }
+
+    /**
+     * @param date timestamp
+     * @return Day of supplied timestamp (in default time zone, same as the database does).
+     */
+    static LocalDate dayOf(java.util.Date date) {
+        return new Timestamp(date.getTime()).toLocalDateTime().toLocalDate();
+    }
+
+    /**
+     * @param gravion gravion bean
+     * @return Actual listening duration, falls back to gravion time span if not specified.
+     */
+    public static long durationOf(GravionBean gravion) {
+        return gravion.getDuration() != null ? gravion.getDuration()
+                : (gravion.getEnd().getTime() - gravion.getBegin().getTime()) / 1000L;
+    }
+
+    /**
+     * Rollup table definition (there's no generated jOOQ model for rollup tables).
+     */
+    static class Rollup {
+
+        final Table<Record> table;
+
+        final Field<Long> user;
+
+        final Field<Long> subject;
+
+        /**
+         * Day column, <code>null</code> for all-time totals.
+         */
+        final Field<Date> day;
+
+        final Field<Long> plays;
+
+        final Field<Long> duration;
+
+        Rollup(String tableName, String subjectName) {
+            this(tableName, subjectName, true);
+        }
+
+        /**
+         * @param tableName rollup table name
+         * @param subjectName subject column name
+         * @param daily <code>true</code> if rollup is broken down by day, <code>false</code> for all-time totals
+         */
+        Rollup(String tableName, String subjectName, boolean daily) {
+            table = DSL.table(DSL.name(tableName));
+            user = DSL.field(DSL.name(tableName, "USER_ID"), Long.class);
+            subject = DSL.field(DSL.name(tableName, subjectName), Long.class);
+            day = daily ? DSL.field(DSL.name(tableName, "DAY"), Date.class) : null;
+            plays = DSL.field(DSL.name(tableName, "PLAYS"), Long.class);
+            duration = DSL.field(DSL.name(tableName, "DURATION"), Long.class);
+        }
+
+        /**
+         * @param userId user ID
+         * @param from first day of period, inclusive, <code>null</code> for unbounded
+         * @param to last day of period, inclusive, <code>null</code> for unbounded
+         * @return Condition matching rows of a user within a period.
+         */
+        Condition period(Long userId, LocalDate from, LocalDate to) {
+            Condition condition = user.eq(userId);
+            if (from != null) {
+                condition = condition.and(day.ge(Date.valueOf(from)));
+            }
+            if (to != null) {
+                condition = condition.and(day.le(Date.valueOf(to)));
+            }
+
+            return condition;
+        }
+
+    }
+
+    /**
+     * Rollup row key.
+     */
+    private static class RollupKey {
+
+        private final long user;
+
+        private final long subject;
+
+        private final LocalDate day;
+
+        RollupKey(long user, long subject, LocalDate day) {
+            this.user = user;
+            this.subject = subject;
+            this.day = day;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey that = (RollupKey) o;
+            return user == that.user && subject == that.subject && Objects.equals(day, that.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, subject, day);
+        }
+
+    }
+
+}
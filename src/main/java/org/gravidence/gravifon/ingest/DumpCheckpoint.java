@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Dump import progress, persisted as a properties file next to the dump.<p>
+ * Tracked per dump file:
+ * <ul>
+ *     <li>{@link #BASE} - maximum table ID before import, dump lines get IDs right after it;</li>
+ *     <li>{@link #LINES} - number of leading lines that are committed;</li>
+ *     <li>{@link #PENDING} - number of lines after committed ones that could be committed or not;</li>
+ *     <li>{@link #MASTERS} - whether master references are set.</li>
+ * </ul>
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+class DumpCheckpoint {
+
+    static final String FILE_NAME = "import.checkpoint";
+
+    static final String BASE = "base";
+
+    static final String LINES = "lines";
+
+    static final String PENDING = "pending";
+
+    static final String MASTERS = "masters";
+
+    private final Path path;
+
+    private final Properties properties = new Properties();
+
+    private DumpCheckpoint(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @param directory dump directory
+     * @return Checkpoint of the dump, empty unless import was started already.
+     * @throws IOException if checkpoint can't be read
+     */
+    static DumpCheckpoint open(Path directory) throws IOException {
+        DumpCheckpoint result = new DumpCheckpoint(directory.resolve(FILE_NAME));
+        if (Files.exists(result.path)) {
+            try (Reader reader = Files.newBufferedReader(result.path, StandardCharsets.UTF_8)) {
+                result.properties.load(reader);
+            }
+        }
+        return result;
+    }
+
+    long get(DumpFile file, String key, long defaultValue) {
+        String value = properties.getProperty(keyOf(file, key));
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    void set(DumpFile file, String key, long value) {
+        properties.setProperty(keyOf(file, key), Long.toString(value));
+    }
+
+    /**
+     * Persists checkpoint atomically, a crash leaves either previous or current state.
+     *
+     * @throws IOException if checkpoint can't be written
+     */
+    void save() throws IOException {
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Gravifon dump import progress");
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String keyOf(DumpFile file, String key) {
+        return file.name().toLowerCase(Locale.ROOT) + "." + key;
+    }
+
+}
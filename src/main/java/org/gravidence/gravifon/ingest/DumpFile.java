@@ -0,0 +1,318 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import org.jooq.Field;
+import org.jooq.Table;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+import static org.gravidence.gravidat.model.Tables.G_ARTIST_ALIAS;
+import static org.gravidence.gravidat.model.Tables.G_RELEASE;
+import static org.gravidence.gravidat.model.Tables.G_RELEASE_ARTIST;
+import static org.gravidence.gravidat.model.Tables.G_RELEASE_GROUP;
+import static org.gravidence.gravidat.model.Tables.G_TRACK;
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * Dump files supported by {@link DumpImport}, declared in foreign key safe import order.<p>
+ * Every file is a headerless TSV in PostgreSQL <code>COPY</code> text format (the one MusicBrainz dumps use):
+ * tab separated columns, <code>\N</code> for <code>NULL</code>, backslash escaped special characters.
+ * Entity and reference IDs are the ones of the dump (positive numbers), they're mapped to database IDs on import.
+ * Unknown optional references are dropped, rows with unknown mandatory references are rejected.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+enum DumpFile {
+
+    /**
+     * <code>artist.tsv</code>: id, title, description, master_id.
+     */
+    ARTIST("artist.tsv", 4, G_ARTIST, G_ARTIST.ID, G_ARTIST.MASTER_ID,
+            G_ARTIST.ID, G_ARTIST.TITLE, G_ARTIST.DESCRIPTION) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return new Object[] {id, required(columns[1]), columns[2]};
+        }
+        @Override
+        long masterOf(String[] columns) {
+            return sourceId(columns[3]);
+        }
+    },
+
+    /**
+     * <code>artist_alias.tsv</code>: master_id, alias_id.
+     */
+    ARTIST_ALIAS("artist_alias.tsv", 2, G_ARTIST_ALIAS, null, null,
+            G_ARTIST_ALIAS.MASTER_ID, G_ARTIST_ALIAS.ALIAS_ID) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return link(resolver.resolve(ARTIST, columns[0]), resolver.resolve(ARTIST, columns[1]));
+        }
+    },
+
+    /**
+     * <code>release_group.tsv</code>: id, title, date.
+     */
+    RELEASE_GROUP("release_group.tsv", 3, G_RELEASE_GROUP, G_RELEASE_GROUP.ID, null,
+            G_RELEASE_GROUP.ID, G_RELEASE_GROUP.TITLE, G_RELEASE_GROUP.DATE) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return new Object[] {id, required(columns[1]), date(columns[2])};
+        }
+    },
+
+    /**
+     * <code>release.tsv</code>: id, master_id, release_group_id, title, date, type_id.
+     * Type ID is kept as is (release types are not part of the dump), unknown ones are dropped.
+     */
+    RELEASE("release.tsv", 6, G_RELEASE, G_RELEASE.ID, G_RELEASE.MASTER_ID,
+            G_RELEASE.ID, G_RELEASE.RELEASE_GROUP_ID, G_RELEASE.TITLE, G_RELEASE.DATE, G_RELEASE.TYPE_ID) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return new Object[] {id, resolver.resolve(RELEASE_GROUP, columns[2]), required(columns[3]),
+                    date(columns[4]), resolver.releaseType(columns[5])};
+        }
+        @Override
+        long masterOf(String[] columns) {
+            return sourceId(columns[1]);
+        }
+    },
+
+    /**
+     * <code>release_artist.tsv</code>: release_id, artist_id.
+     */
+    RELEASE_ARTIST("release_artist.tsv", 2, G_RELEASE_ARTIST, null, null,
+            G_RELEASE_ARTIST.RELEASE_ID, G_RELEASE_ARTIST.ARTIST_ID) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return link(resolver.resolve(RELEASE, columns[0]), resolver.resolve(ARTIST, columns[1]));
+        }
+    },
+
+    /**
+     * <code>track.tsv</code>: id, master_id, title, length, position, release_id, release_group_id.
+     */
+    TRACK("track.tsv", 7, G_TRACK, G_TRACK.ID, G_TRACK.MASTER_ID,
+            G_TRACK.ID, G_TRACK.TITLE, G_TRACK.LENGTH, G_TRACK.POSITION, G_TRACK.RELEASE_ID,
+            G_TRACK.RELEASE_GROUP_ID) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return new Object[] {id, required(columns[2]), Integer.valueOf(required(columns[3])), columns[4],
+                    resolver.resolve(RELEASE, columns[5]), resolver.resolve(RELEASE_GROUP, columns[6])};
+        }
+        @Override
+        long masterOf(String[] columns) {
+            return sourceId(columns[1]);
+        }
+    },
+
+    /**
+     * <code>track_artist.tsv</code>: track_id, artist_id.
+     */
+    TRACK_ARTIST("track_artist.tsv", 2, G_TRACK_ARTIST, null, null,
+            G_TRACK_ARTIST.TRACK_ID, G_TRACK_ARTIST.ARTIST_ID) {
+        @Override
+        Object[] parse(String[] columns, long id, Resolver resolver) {
+            return link(resolver.resolve(TRACK, columns[0]), resolver.resolve(ARTIST, columns[1]));
+        }
+    };
+
+    /**
+     * Resolves dump references to database values.
+     */
+    interface Resolver {
+
+        /**
+         * @param file referenced entity file
+         * @param sourceId dump ID of referenced entity
+         * @return Database ID of referenced entity or <code>null</code> if reference is empty or unknown.
+         */
+        Long resolve(DumpFile file, String sourceId);
+
+        /**
+         * @param typeId release type ID
+         * @return Release type ID or <code>null</code> if it's empty or unknown.
+         */
+        Byte releaseType(String typeId);
+
+    }
+
+    private final String fileName;
+
+    private final int columnCount;
+
+    private final Table<?> table;
+
+    private final Field<Long> id;
+
+    private final Field<Long> master;
+
+    private final List<Field<?>> fields;
+
+    DumpFile(String fileName, int columnCount, Table<?> table, Field<Long> id, Field<Long> master, Field<?>... fields) {
+        this.fileName = fileName;
+        this.columnCount = columnCount;
+        this.table = table;
+        this.id = id;
+        this.master = master;
+        this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * Converts parsed line to row values.
+     *
+     * @param columns line columns, <code>null</code> for <code>\N</code>
+     * @param id database ID assigned to the entity, meaningless for link files
+     * @return Row values in {@link #getFields()} order or <code>null</code> if row is to be rejected.
+     * @throws RuntimeException if line is malformed
+     */
+    abstract Object[] parse(String[] columns, long id, Resolver resolver);
+
+    /**
+     * @param columns line columns
+     * @return Dump ID of the master entity or <code>0</code> if there's none.
+     */
+    long masterOf(String[] columns) {
+        return 0;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    Table<?> getTable() {
+        return table;
+    }
+
+    /**
+     * @return ID field or <code>null</code> for link files.
+     */
+    Field<Long> getId() {
+        return id;
+    }
+
+    /**
+     * @return Master ID field or <code>null</code> if entity has no masters.
+     */
+    Field<Long> getMaster() {
+        return master;
+    }
+
+    List<Field<?>> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return Fields that identify a row: ID of entity or all fields of link.
+     */
+    List<Field<?>> getKeys() {
+        return id == null ? fields : Collections.singletonList(id);
+    }
+
+    boolean isEntity() {
+        return id != null;
+    }
+
+    /**
+     * Splits TSV line into columns, unescaping them.
+     *
+     * @param line TSV line
+     * @return Line columns, <code>null</code> for <code>\N</code>.
+     */
+    static String[] split(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : '\t';
+            if (c == '\t') {
+                boolean empty = i - start == 2 && line.startsWith("\\N", start);
+                columns.add(empty ? null : column.toString());
+                column.setLength(0);
+                start = i + 1;
+            }
+            else if (c == '\\' && i + 1 < line.length()) {
+                c = line.charAt(++i);
+                switch (c) {
+                    case 't': column.append('\t'); break;
+                    case 'n': column.append('\n'); break;
+                    case 'r': column.append('\r'); break;
+                    case 'b': column.append('\b'); break;
+                    case 'f': column.append('\f'); break;
+                    case 'v': column.append('\u000B'); break;
+                    default: column.append(c);
+                }
+            }
+            else {
+                column.append(c);
+            }
+        }
+
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    /**
+     * @param columns line columns
+     * @return Dump ID of the entity.
+     * @throws IllegalArgumentException if ID is empty or not positive
+     */
+    static long sourceIdOf(String[] columns) {
+        long result = sourceId(columns[0]);
+        if (result <= 0) {
+            throw new IllegalArgumentException("Entity ID must be positive");
+        }
+        return result;
+    }
+
+    private static long sourceId(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static String required(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Mandatory column is empty");
+        }
+        return value;
+    }
+
+    private static Date date(String value) {
+        return value == null ? null : Date.valueOf(value);
+    }
+
+    private static Object[] link(Long from, Long to) {
+        return from == null || to == null ? null : new Object[] {from, to};
+    }
+
+}
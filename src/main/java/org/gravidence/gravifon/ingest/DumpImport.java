@@ -0,0 +1,564 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import org.gravidence.gravifon.db.ArtistCatalogue;
+import org.gravidence.gravifon.db.DumpDao;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk import of MusicBrainz-style dumps (see {@link DumpFile} for supported files and their layout).<p>
+ * Files are imported one by one in foreign key safe order. Every file is read in blocks of lines, blocks are parsed
+ * by a pool of parser threads and then written by the importing thread in dump order, batch by batch, every batch
+ * within its own transaction. Dump IDs are mapped to database IDs by in-memory maps, which are kept for all entity
+ * files until import is over, so references of later files are resolved without database lookups.
+ * Master references are set once entity file is written, so they may point forward.<p>
+ * Database ID of an entity is derived from its line number, so it's stable across import attempts. IDs of the whole
+ * file are reserved before it's written, so concurrent writers don't take them. Progress is
+ * recorded to {@link DumpCheckpoint} after every batch, and an interrupted import is resumed by running it again:
+ * files are re-read to rebuild ID maps, committed lines are skipped and the batch that was in flight is merged.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class DumpImport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DumpImport.class);
+
+    @Autowired
+    private DumpDao dumpDao;
+
+    @Autowired
+    private ArtistCatalogue artistCatalogue;
+
+    /**
+     * Number of parser threads, <code>0</code> for number of available processors.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dump.threads:0}")
+    private int threads;
+
+    /**
+     * Number of lines parsed by a parser thread at once.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dump.block-size:1000}")
+    private int blockSize;
+
+    /**
+     * Number of lines written within a transaction.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dump.batch-size:5000}")
+    private int batchSize;
+
+    /**
+     * Import outcome of a dump file.
+     */
+    public static class TableReport {
+
+        private final String fileName;
+
+        private final long lines;
+
+        private final long written;
+
+        private final long rejected;
+
+        private final long elapsed;
+
+        TableReport(String fileName, long lines, long written, long rejected, long elapsed) {
+            this.fileName = fileName;
+            this.lines = lines;
+            this.written = written;
+            this.rejected = rejected;
+            this.elapsed = elapsed;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return Number of lines processed, lines committed by previous import attempts are not counted.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        /**
+         * @return Number of malformed, duplicate or unresolvable lines.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return Import time, in milliseconds.
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        public long getRowsPerSecond() {
+            return written * 1000 / Math.max(elapsed, 1);
+        }
+
+    }
+
+    /**
+     * Imports dump files found in supplied directory, missing ones are skipped.<p>
+     * Imported artists are recorded to the artist change log. Artist catalogue catches up with it afterwards
+     * and writes a snapshot (if configured), so the next application start doesn't replay the whole dump.
+     * Other in-memory artist structures are not reloaded, as import runs as a job that exits right after.
+     *
+     * @param directory dump directory, import progress is recorded there as well
+     * @return Reports of imported files, in import order.
+     * @throws IOException if dump or import progress can't be read or written
+     */
+    public List<TableReport> importDump(Path directory) throws IOException {
+        DumpCheckpoint checkpoint = DumpCheckpoint.open(directory);
+
+        Map<DumpFile, LongLongHashMap> ids = new EnumMap<>(DumpFile.class);
+        List<Byte> types = dumpDao.getReleaseTypeIds();
+        Set<Byte> releaseTypes = types == null ? Collections.emptySet() : new HashSet<>(types);
+        DumpFile.Resolver resolver = new DumpFile.Resolver() {
+            @Override
+            public Long resolve(DumpFile file, String sourceId) {
+                LongLongHashMap map = ids.get(file);
+                if (sourceId == null || map == null) {
+                    return null;
+                }
+                long id = map.get(Long.parseLong(sourceId), 0);
+                return id == 0 ? null : id;
+            }
+            @Override
+            public Byte releaseType(String typeId) {
+                Byte type = typeId == null ? null : Byte.valueOf(typeId);
+                return releaseTypes.contains(type) ? type : null;
+            }
+        };
+
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "dump-parser-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<TableReport> result = new ArrayList<>();
+        try {
+            for (DumpFile file : DumpFile.values()) {
+                Path path = directory.resolve(file.getFileName());
+                if (!Files.isRegularFile(path)) {
+                    LOG.info("Dump file {} not found, skipped", path);
+                    continue;
+                }
+
+                FileImport fileImport = new FileImport(file, path, checkpoint);
+                result.add(fileImport.run(parsers, parallelism, resolver));
+                if (file.isEntity()) {
+                    ids.put(file, fileImport.ids);
+                }
+            }
+        }
+        finally {
+            parsers.shutdownNow();
+        }
+
+        if (ids.containsKey(DumpFile.ARTIST) || ids.containsKey(DumpFile.ARTIST_ALIAS)) {
+            if (artistCatalogue.getSnapshotFile() != null) {
+                artistCatalogue.writeSnapshot();
+            }
+            else {
+                artistCatalogue.catchUp();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Parsed block of lines.
+     */
+    private static class Block {
+
+        /**
+         * Number of the first line.
+         */
+        final long first;
+
+        /**
+         * Row values, <code>null</code> for rejected lines.
+         */
+        final Object[][] rows;
+
+        /**
+         * Dump IDs of entities.
+         */
+        final long[] sourceIds;
+
+        /**
+         * Dump IDs of master entities, <code>0</code> for none.
+         */
+        final long[] masterIds;
+
+        Block(long first, int size) {
+            this.first = first;
+            this.rows = new Object[size][];
+            this.sourceIds = new long[size];
+            this.masterIds = new long[size];
+        }
+
+    }
+
+    /**
+     * Import of a single dump file.
+     */
+    private class FileImport {
+
+        final DumpFile file;
+
+        final Path path;
+
+        final DumpCheckpoint checkpoint;
+
+        /**
+         * Dump ID to database ID, <code>null</code> for link files.
+         */
+        final LongLongHashMap ids;
+
+        /**
+         * Database ID preceding the ones assigned to dump lines.
+         */
+        long base;
+
+        /**
+         * Number of leading lines that are committed.
+         */
+        long committed;
+
+        /**
+         * Lines before this one could be committed by previous import attempt, so they're merged.
+         */
+        long mergedBefore;
+
+        final List<Object[]> batch = new ArrayList<>();
+
+        boolean batchMerged;
+
+        /**
+         * Number of the line after the last consumed one.
+         */
+        long consumed;
+
+        /**
+         * Database IDs of entities that reference masters.
+         */
+        final LongArrayList masterRefs = new LongArrayList();
+
+        /**
+         * Dump IDs of referenced masters, in {@link #masterRefs} order.
+         */
+        final LongArrayList masterSourceIds = new LongArrayList();
+
+        long lines;
+
+        long written;
+
+        long rejected;
+
+        FileImport(DumpFile file, Path path, DumpCheckpoint checkpoint) {
+            this.file = file;
+            this.path = path;
+            this.checkpoint = checkpoint;
+            this.ids = file.isEntity() ? new LongLongHashMap() : null;
+        }
+
+        TableReport run(ExecutorService parsers, int parallelism, DumpFile.Resolver resolver) throws IOException {
+            long start = System.currentTimeMillis();
+
+            if (file.isEntity()) {
+                base = checkpoint.get(file, DumpCheckpoint.BASE, -1);
+                if (base < 0) {
+                    Long maxId = dumpDao.getMaxId(file.getTable(), file.getId());
+                    base = maxId == null ? 0 : maxId;
+                    checkpoint.set(file, DumpCheckpoint.BASE, base);
+                    checkpoint.save();
+                }
+            }
+            if (file.isEntity()) {
+                dumpDao.restartIdentity(file.getTable(), file.getId(), base + countLines());
+            }
+            committed = checkpoint.get(file, DumpCheckpoint.LINES, 0);
+            mergedBefore = committed + checkpoint.get(file, DumpCheckpoint.PENDING, 0);
+            consumed = committed;
+            if (committed > 0) {
+                LOG.info("Resuming import of {} after line {}", path, committed);
+            }
+
+            Deque<Future<Block>> parsing = new ArrayDeque<>();
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                long first = 0;
+                for (List<String> block = readBlock(reader); !block.isEmpty(); block = readBlock(reader)) {
+                    if (parsing.size() >= parallelism * 2) {
+                        consume(await(parsing.poll()));
+                    }
+
+                    long blockFirst = first;
+                    List<String> blockLines = block;
+                    parsing.add(parsers.submit(() -> parse(blockLines, blockFirst, resolver)));
+                    first += block.size();
+                }
+                while (!parsing.isEmpty()) {
+                    consume(await(parsing.poll()));
+                }
+            }
+            flush();
+            setMasters();
+
+            if (file.isEntity()) {
+                dumpDao.restartIdentity(file.getTable(), file.getId(), 0);
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            TableReport report = new TableReport(file.getFileName(), lines, written, rejected, elapsed);
+            LOG.info("Dump file {} imported in {} ms: {} lines, {} rows written, {} rejected ({} rows/s)",
+                    path, elapsed, lines, written, rejected, report.getRowsPerSecond());
+
+            return report;
+        }
+
+        /**
+         * @return Number of lines in the file (an upper bound of IDs it takes).
+         */
+        private long countLines() throws IOException {
+            long result = 0;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                while (reader.readLine() != null) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        private List<String> readBlock(BufferedReader reader) throws IOException {
+            List<String> result = new ArrayList<>(blockSize);
+            String line;
+            while (result.size() < blockSize && (line = reader.readLine()) != null) {
+                result.add(line);
+            }
+            return result;
+        }
+
+        /**
+         * Parses block of lines, executed by parser threads.
+         */
+        private Block parse(List<String> blockLines, long first, DumpFile.Resolver resolver) {
+            Block result = new Block(first, blockLines.size());
+            for (int i = 0; i < blockLines.size(); i++) {
+                try {
+                    String[] columns = DumpFile.split(blockLines.get(i));
+                    if (columns.length != file.getColumnCount()) {
+                        continue;
+                    }
+
+                    Object[] row = file.parse(columns, base + first + i + 1, resolver);
+                    if (row != null && file.isEntity()) {
+                        result.sourceIds[i] = DumpFile.sourceIdOf(columns);
+                        result.masterIds[i] = file.masterOf(columns);
+                    }
+                    result.rows[i] = row;
+                }
+                catch (RuntimeException e) {
+                    LOG.debug("Line {} of {} rejected", first + i + 1, path, e);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Maps IDs of parsed block and batches its rows, executed by the importing thread in dump order.
+         */
+        private void consume(Block block) throws IOException {
+            for (int i = 0; i < block.rows.length; i++) {
+                long line = block.first + i;
+                Object[] row = block.rows[i];
+                if (row != null && ids != null) {
+                    if (ids.containsKey(block.sourceIds[i])) {
+                        row = null;
+                    }
+                    else {
+                        ids.put(block.sourceIds[i], (Long) row[0]);
+                        if (block.masterIds[i] != 0) {
+                            masterRefs.add((Long) row[0]);
+                            masterSourceIds.add(block.masterIds[i]);
+                        }
+                    }
+                }
+
+                if (line < committed) {
+                    continue;
+                }
+
+                lines++;
+                if (row == null) {
+                    rejected++;
+                }
+                else {
+                    batch.add(row);
+                    batchMerged |= line < mergedBefore;
+                }
+                consumed = line + 1;
+
+                if (batch.size() >= batchSize) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * Writes batched rows and records progress. Lines of the batch are recorded as pending beforehand,
+         * so they're merged on resume if import fails right after the commit.
+         */
+        private void flush() throws IOException {
+            if (consumed == committed) {
+                return;
+            }
+
+            if (!batch.isEmpty()) {
+                checkpoint.set(file, DumpCheckpoint.PENDING, consumed - committed);
+                checkpoint.save();
+
+                dumpDao.writeRows(file.getTable(), file.getFields(),
+                        batchMerged || !file.isEntity() ? file.getKeys() : null, batch, changedArtistIds());
+                written += batch.size();
+                batch.clear();
+                batchMerged = false;
+            }
+
+            committed = consumed;
+            checkpoint.set(file, DumpCheckpoint.LINES, committed);
+            checkpoint.set(file, DumpCheckpoint.PENDING, 0);
+            checkpoint.save();
+        }
+
+        /**
+         * @return IDs of artists changed by the batch (artists themselves or masters of alias relations)
+         * or <code>null</code> if file is not about artists.
+         */
+        private long[] changedArtistIds() {
+            if (file != DumpFile.ARTIST && file != DumpFile.ARTIST_ALIAS) {
+                return null;
+            }
+
+            long[] result = new long[batch.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = (Long) batch.get(i)[0];
+            }
+            return result;
+        }
+
+        /**
+         * Sets master references, unknown masters are dropped.
+         */
+        private void setMasters() throws IOException {
+            if (file.getMaster() == null || checkpoint.get(file, DumpCheckpoint.MASTERS, 0) != 0) {
+                return;
+            }
+
+            long[] refs = new long[batchSize];
+            long[] masters = new long[batchSize];
+            int count = 0;
+            long unresolved = 0;
+            for (int i = 0; i < masterRefs.size(); i++) {
+                long master = ids.get(masterSourceIds.get(i), 0);
+                if (master == 0) {
+                    unresolved++;
+                    continue;
+                }
+
+                refs[count] = masterRefs.get(i);
+                masters[count] = master;
+                if (++count == batchSize) {
+                    dumpDao.updateMasters(file.getTable(), file.getId(), file.getMaster(), refs, masters, count,
+                            file == DumpFile.ARTIST);
+                    count = 0;
+                }
+            }
+            dumpDao.updateMasters(file.getTable(), file.getId(), file.getMaster(), refs, masters, count,
+                    file == DumpFile.ARTIST);
+            if (unresolved > 0) {
+                LOG.warn("{} unknown master references of {} dropped", unresolved, path);
+            }
+
+            checkpoint.set(file, DumpCheckpoint.MASTERS, 1);
+            checkpoint.save();
+        }
+
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Dump import interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Dump parsing failed", e.getCause());
+        }
+    }
+
+}
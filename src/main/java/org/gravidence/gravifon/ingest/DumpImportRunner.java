@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Dump import job.<p>
+ * Triggered by <code>--import-dump=DIR</code> command line option, where directory contains dump files.
+ * Failed import is resumed by running the job against the same directory again.
+ *
+ * @see DumpImport#importDump(Path)
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class DumpImportRunner implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DumpImportRunner.class);
+
+    public static final String OPTION = "import-dump";
+
+    @Autowired
+    private DumpImport dumpImport;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        List<String> values = args.getOptionValues(OPTION);
+        if (values.isEmpty() || values.get(0).trim().isEmpty()) {
+            throw new IllegalArgumentException("Dump directory must be specified as --" + OPTION + "=DIR");
+        }
+
+        long start = System.currentTimeMillis();
+        List<DumpImport.TableReport> reports = dumpImport.importDump(Paths.get(values.get(0).trim()));
+        for (DumpImport.TableReport report : reports) {
+            LOG.info("{}: {} rows written, {} rejected, {} rows/s", report.getFileName(), report.getWritten(),
+                    report.getRejected(), report.getRowsPerSecond());
+        }
+        LOG.info("Dump import completed in {} ms", System.currentTimeMillis() - start);
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.util.RotatingBloomFilter;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-memory filter of recently submitted gravions, drops most of client retries before they reach the database.<p>
+ * A gravion is identified by user, track and listening start time. Submitted gravions are checked against:
+ * <ul>
+ *     <li>exact cache of the most recent gravions of a user (bounded number of users) - a hit is a duplicate
+ *     for sure, so gravion is dropped;</li>
+ *     <li>{@link RotatingBloomFilter} of a longer history - a hit that misses exact cache is a suspect,
+ *     it's written with a lookup (see {@link GravionDao#addGravions(List, Collection)}), a miss means gravion
+ *     is new.</li>
+ * </ul>
+ * Filter never drops a gravion that was not submitted before, database unique key stays the final arbiter.
+ * Exact cache keeps completion future of the submission a gravion came with, so a dropped duplicate can wait
+ * for the original to be committed. Gravions of failed submissions are forgotten by exact cache,
+ * so retries of them are not dropped (an entry is forgotten only by the submission that owns it, so a late
+ * failure can't evict an entry taken over by a retry).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class GravionDeduplicator {
+
+    /**
+     * Meter registry, deduplication counters and gauges are registered to.
+     */
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Maximum number of users whose recent gravions are cached.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dedup.users:10000}")
+    private int users;
+
+    /**
+     * Number of the most recent gravions cached per user.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dedup.recent:32}")
+    private int recent;
+
+    /**
+     * Number of gravions per Bloom filter generation.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dedup.capacity:1000000}")
+    private int capacity;
+
+    /**
+     * Target false positive rate of a Bloom filter generation.
+     */
+    @Value("${org.gravidence.gravifon.ingest.dedup.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    /**
+     * Exact cache of the most recent gravions, by user ID.
+     */
+    private Cache<Long, RecentGravions> recentByUser;
+
+    /**
+     * Bloom filter of the longer gravion history.
+     */
+    private RotatingBloomFilter filter;
+
+    /**
+     * Gravions missed by both exact cache and Bloom filter.
+     */
+    private Counter unique;
+
+    /**
+     * Gravions missed by exact cache, but hit by Bloom filter.
+     */
+    private Counter suspected;
+
+    /**
+     * Gravions dropped as duplicates by exact cache.
+     */
+    private Counter duplicate;
+
+    /**
+     * Duplicates that passed the filter and were skipped by the database.
+     */
+    private Counter stored;
+
+    /**
+     * Deduplication outcome of a submission.
+     */
+    public static class Verdict {
+
+        /**
+         * See {@link #getGravions()}.
+         */
+        private final List<GravionBean> gravions;
+
+        /**
+         * See {@link #getSuspects()}.
+         */
+        private final List<GravionBean> suspects;
+
+        /**
+         * See {@link #getOriginals()}.
+         */
+        private final List<CompletableFuture<Void>> originals;
+
+        Verdict(List<GravionBean> gravions, List<GravionBean> suspects, List<CompletableFuture<Void>> originals) {
+            this.gravions = gravions;
+            this.suspects = suspects;
+            this.originals = originals;
+        }
+
+        /**
+         * @return Gravions to write, duplicates excluded.
+         */
+        public List<GravionBean> getGravions() {
+            return gravions;
+        }
+
+        /**
+         * @return Gravions to write that are likely stored already.
+         */
+        public List<GravionBean> getSuspects() {
+            return suspects;
+        }
+
+        /**
+         * @return Completion futures of submissions that dropped duplicates came with, and that are not
+         * completed yet (duplicates of committed gravions are not represented).
+         */
+        public List<CompletableFuture<Void>> getOriginals() {
+            return originals;
+        }
+
+    }
+
+    @PostConstruct
+    private void setUp() {
+        recentByUser = Caffeine.newBuilder()
+                .maximumSize(users)
+                .build();
+        filter = new RotatingBloomFilter(capacity, falsePositiveRate);
+
+        unique = checks("unique");
+        suspected = checks("suspect");
+        duplicate = checks("duplicate");
+        stored = Counter.builder("gravifon.ingest.dedup.stored")
+                .description("Duplicate gravions that passed the filter and were skipped by the database")
+                .register(registry);
+        Gauge.builder("gravifon.ingest.dedup.hit-rate", this, GravionDeduplicator::getHitRate)
+                .description("Share of duplicate gravions dropped in memory")
+                .register(registry);
+        Gauge.builder("gravifon.ingest.dedup.bytes", filter, RotatingBloomFilter::getBytes)
+                .description("Gravion Bloom filter memory footprint")
+                .register(registry);
+    }
+
+    /**
+     * Drops duplicates of recently submitted gravions and remembers the rest as submitted.
+     *
+     * @param gravions list of submitted gravion beans
+     * @param persisted completion future of the submission
+     * @return Deduplication outcome.
+     */
+    public Verdict check(List<GravionBean> gravions, CompletableFuture<Void> persisted) {
+        List<GravionBean> accepted = new ArrayList<>(gravions.size());
+        List<GravionBean> suspects = new ArrayList<>();
+        List<CompletableFuture<Void>> originals = new ArrayList<>();
+        for (GravionBean gravion : gravions) {
+            if (gravion.getUserId() == null || gravion.getTrackId() == null || gravion.getBegin() == null) {
+                accepted.add(gravion);
+                continue;
+            }
+
+            RecentGravions userRecent = recentByUser.get(gravion.getUserId(), k -> new RecentGravions(recent));
+            CompletableFuture<Void> original = userRecent.add(gravion.getTrackId(), gravion.getBegin().getTime(),
+                    persisted);
+            if (original != null) {
+                duplicate.increment();
+                if (!original.isDone() && !originals.contains(original)) {
+                    originals.add(original);
+                }
+                continue;
+            }
+
+            long key = keyOf(gravion);
+            if (filter.mightContain(key)) {
+                suspected.increment();
+                suspects.add(gravion);
+            }
+            else {
+                unique.increment();
+                filter.put(key);
+            }
+            accepted.add(gravion);
+        }
+
+        return new Verdict(accepted, suspects, originals);
+    }
+
+    /**
+     * Forgets gravions that are not stored (e.g. submission is rejected or failed), so their resubmission
+     * is not dropped as duplicate. Gravions are forgotten only if they're still owned by the submission,
+     * i.e. not taken over by a later submission of them.
+     *
+     * @param gravions list of gravion beans
+     * @param persisted completion future of the submission gravions came with
+     */
+    public void forget(List<GravionBean> gravions, CompletableFuture<Void> persisted) {
+        for (GravionBean gravion : gravions) {
+            if (gravion.getUserId() == null || gravion.getTrackId() == null || gravion.getBegin() == null) {
+                continue;
+            }
+
+            RecentGravions userRecent = recentByUser.getIfPresent(gravion.getUserId());
+            if (userRecent != null) {
+                userRecent.remove(gravion.getTrackId(), gravion.getBegin().getTime(), persisted);
+            }
+        }
+    }
+
+    /**
+     * Counts duplicates that passed the filter and were skipped by the database.
+     *
+     * @param count number of skipped duplicates
+     */
+    public void stored(int count) {
+        stored.increment(count);
+    }
+
+    /**
+     * @return Number of duplicates dropped in memory.
+     */
+    public long getDuplicateCount() {
+        return (long) duplicate.count();
+    }
+
+    /**
+     * @return Number of duplicates skipped by the database.
+     */
+    public long getStoredCount() {
+        return (long) stored.count();
+    }
+
+    /**
+     * @return Share of duplicates dropped in memory, out of all detected duplicates.
+     */
+    public double getHitRate() {
+        double duplicates = duplicate.count() + stored.count();
+        return duplicates == 0 ? 0 : duplicate.count() / duplicates;
+    }
+
+    private Counter checks(String result) {
+        return Counter.builder("gravifon.ingest.dedup")
+                .description("Submitted gravions by deduplication result")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static long keyOf(GravionBean gravion) {
+        return (gravion.getUserId() * 1_000_003L + gravion.getTrackId()) * 1_000_003L + gravion.getBegin().getTime();
+    }
+
+    /**
+     * Ring of the most recent gravions of a user. Thread-safe.
+     */
+    private static class RecentGravions {
+
+        /**
+         * Track IDs of gravions.
+         */
+        private final long[] tracks;
+
+        /**
+         * Listening start times of gravions, {@link Long#MIN_VALUE} marks a free slot.
+         */
+        private final long[] begins;
+
+        /**
+         * Completion futures of submissions gravions came with.
+         */
+        private final Object[] submissions;
+
+        /**
+         * Slot the next gravion is put to, the oldest one is overwritten.
+         */
+        private int next;
+
+        RecentGravions(int size) {
+            this.tracks = new long[size];
+            this.begins = new long[size];
+            this.submissions = new Object[size];
+            for (int i = 0; i < size; i++) {
+                begins[i] = Long.MIN_VALUE;
+            }
+        }
+
+        /**
+         * Adds gravion unless it's there already. Gravion of a failed submission is replaced, as failed gravions
+         * are about to be forgotten anyway.
+         *
+         * @param track track ID
+         * @param begin listening start time
+         * @param persisted completion future of the submission gravion comes with
+         * @return <code>null</code> if gravion is added, completion future of the submission it came with before
+         * if it's there already.
+         */
+        @SuppressWarnings("unchecked")
+        synchronized CompletableFuture<Void> add(long track, long begin, CompletableFuture<Void> persisted) {
+            int index = indexOf(track, begin);
+            if (index >= 0) {
+                CompletableFuture<Void> original = (CompletableFuture<Void>) submissions[index];
+                if (!original.isCompletedExceptionally()) {
+                    return original;
+                }
+                submissions[index] = persisted;
+                return null;
+            }
+
+            tracks[next] = track;
+            begins[next] = begin;
+            submissions[next] = persisted;
+            next = (next + 1) % tracks.length;
+
+            return null;
+        }
+
+        /**
+         * Removes gravion if it came with the given submission.
+         *
+         * @param track track ID
+         * @param begin listening start time
+         * @param persisted completion future of the submission gravion came with
+         */
+        synchronized void remove(long track, long begin, CompletableFuture<Void> persisted) {
+            int index = indexOf(track, begin);
+            if (index >= 0 && submissions[index] == persisted) {
+                begins[index] = Long.MIN_VALUE;
+                submissions[index] = null;
+            }
+        }
+
+        private int indexOf(long track, long begin) {
+            for (int i = 0; i < tracks.length; i++) {
+                if (begins[i] == begin && tracks[i] == track) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,410 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind gravion ingestion pipeline.<p>
+ * Submitted gravions are put to a bounded in-memory queue and written to the database by a single flusher thread
+ * in batches, a batch is flushed once it's big enough or flush interval is elapsed.
+ * Queue capacity is measured in gravions, submissions that don't fit are rejected as a whole
+ * (submissions exceeding the capacity itself are illegal, as they would never fit).<p>
+ * Submission is idempotent: duplicates of recently submitted gravions are dropped in memory
+ * (see {@link GravionDeduplicator}), the rest are skipped by the database if stored already.
+ * In sync durability mode a duplicate of a gravion that is still queued is acknowledged once the original
+ * submission is committed (and fails if it fails).<p>
+ * Durability mode defines when submission is acknowledged:
+ * <ul>
+ *     <li>{@link Durability#ASYNC} - once it's queued (gravions could be lost on crash);</li>
+ *     <li>{@link Durability#SYNC} - once it's committed to the database.</li>
+ * </ul>
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class GravionIngestion {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GravionIngestion.class);
+
+    /**
+     * Submission acknowledgement modes.
+     */
+    public enum Durability {
+
+        /**
+         * Submission is acknowledged once it's queued.
+         */
+        ASYNC,
+
+        /**
+         * Submission is acknowledged once it's committed to the database.
+         */
+        SYNC
+
+    }
+
+    /**
+     * Gravion DAO, writes flushed batches.
+     */
+    @Autowired
+    private GravionDao gravionDao;
+
+    /**
+     * Drops duplicates of recently submitted gravions.
+     */
+    @Autowired
+    private GravionDeduplicator gravionDeduplicator;
+
+    /**
+     * Maximum number of queued gravions.
+     */
+    @Value("${org.gravidence.gravifon.ingest.queue-capacity:100000}")
+    private int queueCapacity;
+
+    /**
+     * Number of gravions that triggers a flush.
+     */
+    @Value("${org.gravidence.gravifon.ingest.batch-size:5000}")
+    private int batchSize;
+
+    /**
+     * Maximum time a gravion waits in the queue before flush, in milliseconds.
+     */
+    @Value("${org.gravidence.gravifon.ingest.flush-interval:200}")
+    private long flushInterval;
+
+    /**
+     * Submission acknowledgement mode.
+     */
+    @Value("${org.gravidence.gravifon.ingest.durability:ASYNC}")
+    private Durability durability;
+
+    /**
+     * Submissions waiting for flush, bounded by {@link #capacity}.
+     */
+    private final BlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Free queue capacity, in gravions.
+     */
+    private Semaphore capacity;
+
+    /**
+     * Number of gravions written to the database, see {@link #getFlushedCount()}.
+     */
+    private final AtomicLong flushedCount = new AtomicLong();
+
+    /**
+     * Number of rejected gravions, see {@link #getRejectedCount()}.
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Number of gravions failed to be written, see {@link #getFailedCount()}.
+     */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * Whether submissions are accepted, cleared on tear down.
+     */
+    private volatile boolean running;
+
+    /**
+     * Thread writing queued gravions to the database.
+     */
+    private Thread flusher;
+
+    /**
+     * Starts flusher thread.
+     */
+    @PostConstruct
+    private void setUp() {
+        capacity = new Semaphore(queueCapacity);
+        running = true;
+
+        flusher = new Thread(this::flushLoop, "gravion-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops flusher thread, queued gravions are flushed before that.
+     * Submissions the flusher didn't get to (queued while it was stopping or left after timeout) are failed.
+     *
+     * @throws InterruptedException if interrupted while waiting for the flusher to finish
+     */
+    @PreDestroy
+    void tearDown() throws InterruptedException {
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+
+        Submission submission;
+        while ((submission = queue.poll()) != null) {
+            fail(submission, new IllegalStateException("Gravion ingestion is stopped"));
+            capacity.release(submission.gravions.size());
+        }
+    }
+
+    /**
+     * Submits gravions for ingestion.
+     *
+     * @param gravions list of gravion beans
+     * @return Future completed according to durability mode,
+     * or <code>null</code> if submission is rejected due to lack of queue capacity (or ingestion is stopped).
+     * @throws IllegalArgumentException if submission exceeds queue capacity
+     */
+    public CompletableFuture<Void> submit(List<GravionBean> gravions) {
+        if (gravions.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (gravions.size() > queueCapacity) {
+            rejectedCount.addAndGet(gravions.size());
+            throw new IllegalArgumentException("Submission of " + gravions.size()
+                    + " gravions exceeds queue capacity of " + queueCapacity);
+        }
+        Submission submission = new Submission();
+        GravionDeduplicator.Verdict verdict = gravionDeduplicator.check(gravions, submission.persisted);
+        submission.gravions = verdict.getGravions();
+        submission.suspects = verdict.getSuspects();
+        CompletableFuture<Void> originals = CompletableFuture.allOf(
+                verdict.getOriginals().toArray(new CompletableFuture<?>[0]));
+        if (submission.gravions.isEmpty()) {
+            submission.persisted.complete(null);
+            return durability == Durability.SYNC ? originals : CompletableFuture.completedFuture(null);
+        }
+        if (!running || !capacity.tryAcquire(submission.gravions.size())) {
+            reject(submission);
+            return null;
+        }
+
+        queue.add(submission);
+        // flusher could have stopped meanwhile, take submission back unless it's taken by flusher or tear down
+        if (!running && queue.remove(submission)) {
+            capacity.release(submission.gravions.size());
+            reject(submission);
+            return null;
+        }
+
+        return durability == Durability.SYNC
+                ? CompletableFuture.allOf(submission.persisted, originals) : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return Configured durability mode.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * @return Maximum number of queued gravions, larger submissions are never accepted.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return Number of queued gravions.
+     */
+    public int getQueueSize() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    /**
+     * @return Number of gravions written to the database (skipped duplicates are not counted).
+     */
+    public long getFlushedCount() {
+        return flushedCount.get();
+    }
+
+    /**
+     * @return Number of gravions rejected due to lack of queue capacity (including oversized submissions).
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return Number of gravions failed to be written to the database.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Flusher thread body. Collects submissions into batches and flushes them until stopped and queue is drained.
+     */
+    private void flushLoop() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        List<Submission> batch = new ArrayList<>();
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                int size = first.gravions.size();
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (size < batchSize) {
+                    Submission next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    size += next.gravions.size();
+                }
+
+                flush(batch, size);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of submissions to the database and completes them.<p>
+     * If batch fails, submissions are retried one by one, so a broken submission doesn't affect others.
+     *
+     * @param batch list of submissions
+     * @param size total number of gravions
+     */
+    private void flush(List<Submission> batch, int size) {
+        List<GravionBean> gravions = new ArrayList<>(size);
+        List<GravionBean> suspects = new ArrayList<>();
+        for (Submission submission : batch) {
+            gravions.addAll(submission.gravions);
+            suspects.addAll(submission.suspects);
+        }
+
+        try {
+            added(size, gravionDao.addGravions(gravions, suspects));
+            for (Submission submission : batch) {
+                submission.persisted.complete(null);
+            }
+        }
+        catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+            }
+            else {
+                for (Submission submission : batch) {
+                    try {
+                        int added = gravionDao.addGravions(submission.gravions, submission.suspects);
+                        added(submission.gravions.size(), added);
+                        submission.persisted.complete(null);
+                    }
+                    catch (RuntimeException ee) {
+                        fail(submission, ee);
+                    }
+                }
+            }
+        }
+        finally {
+            capacity.release(size);
+        }
+    }
+
+    /**
+     * Counts written gravions.
+     *
+     * @param size number of gravions submitted for writing
+     * @param added number of gravions actually added, the rest are duplicates skipped by the database
+     */
+    private void added(int size, int added) {
+        flushedCount.addAndGet(added);
+        gravionDeduplicator.stored(size - added);
+    }
+
+    /**
+     * Counts gravions of rejected submission and forgets them, so they're accepted once resubmitted.
+     * Submission is failed, so are duplicates that wait for it.
+     *
+     * @param submission rejected submission
+     */
+    private void reject(Submission submission) {
+        gravionDeduplicator.forget(submission.gravions, submission.persisted);
+        rejectedCount.addAndGet(submission.gravions.size());
+        submission.persisted.completeExceptionally(new IllegalStateException("Gravion submission is rejected"));
+    }
+
+    /**
+     * Completes failed submission.
+     *
+     * @param submission submission
+     * @param e failure cause
+     */
+    private void fail(Submission submission, RuntimeException e) {
+        LOG.error("Failed to flush {} gravions", submission.gravions.size(), e);
+        failedCount.addAndGet(submission.gravions.size());
+        gravionDeduplicator.forget(submission.gravions, submission.persisted);
+        submission.persisted.completeExceptionally(e);
+    }
+
+    /**
+     * Queued submission.
+     */
+    private static class Submission {
+
+        /**
+         * Gravions of the submission, in-memory duplicates excluded.
+         */
+        private List<GravionBean> gravions;
+
+        /**
+         * Gravions of the submission that are likely stored already.
+         */
+        private List<GravionBean> suspects;
+
+        private final CompletableFuture<Void> persisted = new CompletableFuture<>();
+
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.metrics;
+
+/**
+ * Name of DAO operation (<code>ArtistDao.getArtist</code>) currently performed by a thread.<p>
+ * Set by {@link DaoOperationAspect}, used to tag database query metrics.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public final class Operation {
+
+    /**
+     * Operation name of queries issued outside of DAO methods.
+     */
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+    private Operation() {
+        // utility class
+    }
+
+    /**
+     * @return Name of operation currently performed by calling thread.
+     */
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Marks calling thread as performing supplied operation.
+     *
+     * @param name operation name
+     * @return Name of enclosing operation, to be restored by {@link #exit(String)}.
+     */
+    static String enter(String name) {
+        String enclosing = CURRENT.get();
+        CURRENT.set(name);
+
+        return enclosing;
+    }
+
+    /**
+     * Restores enclosing operation of calling thread.
+     *
+     * @param enclosing name of enclosing operation
+     */
+    static void exit(String enclosing) {
+        CURRENT.set(enclosing);
+    }
+
+}
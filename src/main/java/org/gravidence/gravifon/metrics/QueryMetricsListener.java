@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jooq.ExecuteContext;
+import org.jooq.impl.DefaultExecuteListener;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jOOQ listener recording query metrics tagged by DAO {@link Operation}:
+ * <ul>
+ *     <li><code>gravifon.db.query</code> - query latency (including fetch) histogram;</li>
+ *     <li><code>gravifon.db.query.rows</code> - number of rows fetched (or affected);</li>
+ *     <li><code>gravifon.db.query.errors</code> - number of failed queries.</li>
+ * </ul>
+ * Meters are registered once per operation, so recording costs a map lookup and a small per-query state object.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class QueryMetricsListener extends DefaultExecuteListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Object STATE = new Object();
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry meter registry
+     */
+    public QueryMetricsListener(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void start(ExecuteContext ctx) {
+        ctx.data(STATE, new State(Operation.current(), System.nanoTime()));
+    }
+
+    @Override
+    public void recordEnd(ExecuteContext ctx) {
+        State state = (State) ctx.data(STATE);
+        if (state != null) {
+            state.rows++;
+        }
+    }
+
+    @Override
+    public void exception(ExecuteContext ctx) {
+        State state = (State) ctx.data(STATE);
+        if (state != null) {
+            metersOf(state.operation).errors.increment();
+        }
+    }
+
+    @Override
+    public void end(ExecuteContext ctx) {
+        State state = (State) ctx.data(STATE);
+        if (state != null) {
+            Meters m = metersOf(state.operation);
+            m.latency.record(System.nanoTime() - state.start, TimeUnit.NANOSECONDS);
+            m.rows.record(state.rows > 0 ? state.rows : Math.max(ctx.rows(), 0));
+        }
+    }
+
+    /**
+     * Records a query executed by plain JDBC, i.e. not seen by jOOQ listeners.
+     *
+     * @param operation DAO operation name
+     * @param start query start time, see {@link System#nanoTime()}
+     * @param rows number of rows fetched (or affected)
+     * @param failed whether query has failed
+     */
+    public void record(String operation, long start, long rows, boolean failed) {
+        Meters m = metersOf(operation);
+        if (failed) {
+            m.errors.increment();
+        }
+        else {
+            m.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            m.rows.record(rows);
+        }
+    }
+
+    private Meters metersOf(String operation) {
+        Meters m = meters.get(operation);
+        if (m == null) {
+            m = meters.computeIfAbsent(operation, o -> new Meters(registry, o));
+        }
+
+        return m;
+    }
+
+    /**
+     * Per query state.
+     */
+    private static class State {
+
+        final String operation;
+
+        final long start;
+
+        long rows;
+
+        State(String operation, long start) {
+            this.operation = operation;
+            this.start = start;
+        }
+
+    }
+
+    /**
+     * Meters of an operation.
+     */
+    private static class Meters {
+
+        final Timer latency;
+
+        final DistributionSummary rows;
+
+        final Counter errors;
+
+        Meters(MeterRegistry registry, String operation) {
+            latency = Timer.builder("gravifon.db.query")
+                    .description("Database query latency")
+                    .tag("operation", operation)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(10_000))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+            rows = DistributionSummary.builder("gravifon.db.query.rows")
+                    .description("Rows fetched or affected by database query")
+                    .tag("operation", operation)
+                    .register(registry);
+            errors = Counter.builder("gravifon.db.query.errors")
+                    .description("Failed database queries")
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+
+    }
+
+}
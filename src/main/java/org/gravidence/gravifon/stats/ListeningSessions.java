@@ -0,0 +1,424 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.db.GravionListener;
+import org.gravidence.gravifon.db.SessionDao;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.SessionBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Incremental listening sessions engine.<p>
+ * Gravions are handed over to a single engine thread once they're committed, and fed to per-user
+ * {@link SessionTracker}s in listening start time order. State of every touched session is written after each batch,
+ * so stored sessions are always up to date and a user whose tracker is gone (idle or restarted) resumes
+ * the stored session if the gap allows. Trackers of expired sessions are swept periodically.<p>
+ * History is {@link #backfill(int) backfilled} in parallel: user ID range is split into shards, every shard streams
+ * its users' gravions and keeps its own trackers, so shards share nothing but the database.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class ListeningSessions implements GravionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListeningSessions.class);
+
+    /**
+     * Release of a track of unknown order (cached lookup miss).
+     */
+    private static final long[] NO_RELEASE = new long[0];
+
+    /**
+     * Maximum number of cached track releases, cache is dropped once exceeded.
+     */
+    private static final int RELEASE_CACHE_SIZE = 100000;
+
+    /**
+     * Number of backfill shards per thread, spare shards even out skewed user activity.
+     */
+    private static final int SHARDS_PER_THREAD = 4;
+
+    @Autowired
+    private SessionDao sessionDao;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Maximum gap between gravions of the same session, in seconds.
+     */
+    @Value("${org.gravidence.gravifon.session.gap:1800}")
+    private long gap;
+
+    /**
+     * Minimum number of tracks an album needs to be recognized as played.
+     */
+    @Value("${org.gravidence.gravifon.session.min-album-tracks:3}")
+    private int minAlbumTracks;
+
+    /**
+     * Interval between expired sessions sweeps, in seconds.
+     */
+    @Value("${org.gravidence.gravifon.session.sweep-interval:60}")
+    private long sweepInterval;
+
+    /**
+     * Number of backfill threads, <code>0</code> stands for number of available processors.
+     */
+    @Value("${org.gravidence.gravifon.session.backfill.threads:0}")
+    private int backfillThreads;
+
+    @Value("${org.gravidence.gravifon.db.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Engine thread, the only one to access {@link #trackers} and {@link #releases}.
+     */
+    private ScheduledExecutorService engine;
+
+    private final LongObjectHashMap<SessionTracker> trackers = new LongObjectHashMap<>();
+
+    private final LongObjectHashMap<long[]> releases = new LongObjectHashMap<>();
+
+    private volatile int open;
+
+    private Counter closed;
+
+    @PostConstruct
+    public void init() {
+        engine = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "listening-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (sweepInterval > 0) {
+            engine.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+
+        Gauge.builder("gravifon.session.open", this, s -> s.open)
+                .description("Number of tracked open listening sessions")
+                .register(registry);
+        closed = Counter.builder("gravifon.session.closed")
+                .description("Number of closed listening sessions")
+                .register(registry);
+    }
+
+    /**
+     * Stops the engine, pending gravions are processed first. Open sessions are stored already.
+     */
+    @PreDestroy
+    public void tearDown() throws InterruptedException {
+        engine.shutdown();
+        engine.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hands gravions over to the engine once they're committed.
+     *
+     * @param gravions list of added gravion beans
+     */
+    @Override
+    public void gravionsAdded(List<GravionBean> gravions) {
+        List<GravionBean> added = new ArrayList<>(gravions);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    submit(added);
+                }
+            });
+        }
+        else {
+            submit(added);
+        }
+    }
+
+    private void submit(List<GravionBean> gravions) {
+        engine.execute(() -> {
+            try {
+                track(gravions);
+            }
+            catch (RuntimeException e) {
+                LOG.error("Failed to track listening sessions of {} gravions", gravions.size(), e);
+            }
+        });
+    }
+
+    /**
+     * Feeds gravions to trackers, stores closed and touched open sessions. Runs on engine thread.
+     *
+     * @param gravions list of gravion beans
+     */
+    private void track(List<GravionBean> gravions) {
+        gravions.sort(Comparator.comparing(GravionBean::getUserId).thenComparing(GravionBean::getBegin));
+        resolve(gravions, releases);
+
+        List<SessionBean> sessions = new ArrayList<>();
+        LongObjectHashMap<SessionTracker> touched = new LongObjectHashMap<>();
+        for (GravionBean gravion : gravions) {
+            long userId = gravion.getUserId();
+            SessionTracker tracker = trackers.get(userId);
+            if (tracker == null) {
+                tracker = new SessionTracker(userId, TimeUnit.SECONDS.toMillis(gap), minAlbumTracks);
+                SessionBean last = sessionDao.getLastSession(userId);
+                if (last != null && gravion.getBegin().getTime() - last.getEnd().getTime()
+                        <= TimeUnit.SECONDS.toMillis(gap)) {
+                    tracker.resume(last);
+                }
+                trackers.put(userId, tracker);
+            }
+
+            SessionBean session = tracker.add(gravion, releaseOf(gravion, releases));
+            if (session != null) {
+                sessions.add(session);
+            }
+            touched.put(userId, tracker);
+        }
+        closed.increment(sessions.size());
+
+        touched.forEach((userId, tracker) -> {
+            if (tracker.isOpen()) {
+                sessions.add(tracker.current());
+            }
+        });
+        sessionDao.addSessions(sessions);
+        open = trackers.size();
+    }
+
+    /**
+     * Drops trackers of expired sessions. Runs on engine thread.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        LongArrayList expired = new LongArrayList();
+        trackers.forEach((userId, tracker) -> {
+            if (tracker.isExpired(now)) {
+                expired.add(userId);
+            }
+        });
+        for (int i = 0; i < expired.size(); i++) {
+            trackers.remove(expired.get(i));
+        }
+        closed.increment(expired.size());
+        open = trackers.size();
+    }
+
+    /**
+     * Waits until gravions handed over so far are processed.
+     */
+    void await() throws InterruptedException, ExecutionException {
+        engine.submit(() -> { }).get();
+    }
+
+    /**
+     * Rebuilds listening sessions of all users from stored history, using configured number of threads.
+     *
+     * @return Number of stored sessions.
+     */
+    public long backfill() {
+        return backfill(backfillThreads);
+    }
+
+    /**
+     * Rebuilds listening sessions of all users from stored history. User ID range is split into shards, which are
+     * processed in parallel: sessions of shard users are removed, then their gravions are streamed oldest first
+     * and sessions are stored as they close. Archived months are not scanned, so sessions of that time are lost.
+     *
+     * @param threads number of threads, <code>0</code> stands for number of available processors
+     * @return Number of stored sessions.
+     */
+    public long backfill(int threads) {
+        long[] range = gravionDao.getUserIdRange();
+        if (range == null) {
+            return 0L;
+        }
+
+        long start = System.currentTimeMillis();
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        long users = range[1] - range[0] + 1;
+        long step = Math.max(1L, (users + (long) parallelism * SHARDS_PER_THREAD - 1)
+                / ((long) parallelism * SHARDS_PER_THREAD));
+        int shards = (int) ((users + step - 1) / step);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "session-backfill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long sessions = 0L;
+        try {
+            AtomicInteger done = new AtomicInteger();
+            List<Future<Long>> futures = new ArrayList<>(shards);
+            for (long from = range[0]; from <= range[1]; from += step) {
+                long userFrom = from;
+                long userTo = Math.min(range[1], from + step - 1);
+                futures.add(workers.submit(() -> {
+                    long stored = backfill(userFrom, userTo);
+                    LOG.info("Listening sessions backfilled for users {} - {}: {} sessions ({}/{} shards)",
+                            userFrom, userTo, stored, done.incrementAndGet(), shards);
+                    return stored;
+                }));
+            }
+            for (Future<Long> future : futures) {
+                sessions += future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Listening sessions backfill interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Listening sessions backfill failed", e.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+
+        // trackers of the engine are stale now, stored sessions are resumed instead
+        engine.execute(() -> {
+            trackers.clear();
+            open = 0;
+        });
+        LOG.info("Listening sessions backfill completed in {} ms: {} sessions, {} threads",
+                System.currentTimeMillis() - start, sessions, parallelism);
+
+        return sessions;
+    }
+
+    /**
+     * Rebuilds listening sessions of users within ID range.
+     *
+     * @param userFrom lowest user ID, inclusive
+     * @param userTo highest user ID, inclusive
+     * @return Number of stored sessions.
+     */
+    private long backfill(long userFrom, long userTo) {
+        sessionDao.removeSessions(userFrom, userTo);
+
+        LongObjectHashMap<SessionTracker> shard = new LongObjectHashMap<>();
+        LongObjectHashMap<long[]> shardReleases = new LongObjectHashMap<>();
+        List<SessionBean> sessions = new ArrayList<>();
+        long[] stored = {0L};
+        gravionDao.scanGravions(userFrom, userTo, gravions -> {
+            resolve(gravions, shardReleases);
+            for (GravionBean gravion : gravions) {
+                long userId = gravion.getUserId();
+                SessionTracker tracker = shard.get(userId);
+                if (tracker == null) {
+                    tracker = new SessionTracker(userId, TimeUnit.SECONDS.toMillis(gap), minAlbumTracks);
+                    shard.put(userId, tracker);
+                }
+
+                SessionBean session = tracker.add(gravion, releaseOf(gravion, shardReleases));
+                if (session != null) {
+                    sessions.add(session);
+                }
+            }
+
+            if (sessions.size() >= batchSize) {
+                sessionDao.addSessions(sessions);
+                stored[0] += sessions.size();
+                sessions.clear();
+            }
+        });
+
+        shard.forEach((userId, tracker) -> {
+            SessionBean session = tracker.close();
+            if (session != null) {
+                sessions.add(session);
+            }
+        });
+        sessionDao.addSessions(sessions);
+
+        return stored[0] + sessions.size();
+    }
+
+    /**
+     * Makes sure releases of gravion tracks are cached.
+     *
+     * @param gravions list of gravion beans
+     * @param cache track ID to release cache
+     */
+    private void resolve(List<GravionBean> gravions, LongObjectHashMap<long[]> cache) {
+        if (cache.size() > RELEASE_CACHE_SIZE) {
+            cache.clear();
+        }
+
+        Set<Long> missing = new HashSet<>();
+        for (GravionBean gravion : gravions) {
+            if (cache.get(gravion.getTrackId()) == null) {
+                missing.add(gravion.getTrackId());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        LongObjectHashMap<long[]> found = sessionDao.getTrackReleases(missing);
+        for (Long trackId : missing) {
+            long[] release = found.get(trackId);
+            cache.put(trackId, release != null ? release : NO_RELEASE);
+        }
+    }
+
+    private static long[] releaseOf(GravionBean gravion, LongObjectHashMap<long[]> cache) {
+        long[] release = cache.get(gravion.getTrackId());
+        return release == NO_RELEASE ? null : release;
+    }
+
+}
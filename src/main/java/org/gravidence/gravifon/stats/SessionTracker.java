@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import org.gravidence.gravifon.db.StatsDao;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.SessionBean;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Listening session state of a single user, fed with user's gravions in listening start time order.<p>
+ * Session lasts while gap between the end of listening and the next gravion start doesn't exceed configured one.
+ * Only session totals, albums played so far and the current album run (release and the next expected track)
+ * are kept, so state doesn't grow with number of gravions.<p>
+ * An album counts as played if all its tracks are listened in order, one after another,
+ * and it has at least configured number of tracks.<p>
+ * Gravions that come late (start before the last one) are counted if they fall within the open session
+ * and dropped if they start before it.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+class SessionTracker {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final long userId;
+
+    private final long gapMillis;
+
+    private final int minAlbumTracks;
+
+    private long begin = NONE;
+
+    private long lastBegin;
+
+    private long end;
+
+    private int gravions;
+
+    private long duration;
+
+    private LongArrayList albums;
+
+    private long runRelease = NONE;
+
+    private long runNext;
+
+    /**
+     * @param userId user ID
+     * @param gapMillis maximum gap between gravions of the same session, in milliseconds
+     * @param minAlbumTracks minimum number of tracks of an album
+     */
+    SessionTracker(long userId, long gapMillis, int minAlbumTracks) {
+        this.userId = userId;
+        this.gapMillis = gapMillis;
+        this.minAlbumTracks = minAlbumTracks;
+    }
+
+    /**
+     * Continues a stored session, album run in progress (if any) is not restored.
+     *
+     * @param session stored session bean
+     */
+    void resume(SessionBean session) {
+        begin = session.getBegin().getTime();
+        lastBegin = begin;
+        end = session.getEnd().getTime();
+        gravions = session.getGravions();
+        duration = session.getDuration();
+        albums = null;
+        if (session.getAlbums() != null) {
+            albums = new LongArrayList(session.getAlbums().size());
+            for (Long album : session.getAlbums()) {
+                albums.add(album);
+            }
+        }
+        runRelease = NONE;
+    }
+
+    /**
+     * Adds a gravion to the session.
+     *
+     * @param gravion gravion bean
+     * @param release played track order within its release ([release ID, track ordinal, number of release tracks]),
+     * <code>null</code> if unknown
+     * @return Session closed by the gravion or <code>null</code> if the gravion continues open session.
+     */
+    SessionBean add(GravionBean gravion, long[] release) {
+        long gravionBegin = gravion.getBegin().getTime();
+        long gravionEnd = Math.max(gravionBegin, gravion.getEnd().getTime());
+
+        SessionBean closed = null;
+        if (begin != NONE) {
+            if (gravionBegin < begin) {
+                return null;
+            }
+            if (gravionBegin < lastBegin) {
+                count(gravion, gravionEnd);
+                runRelease = NONE;
+                return null;
+            }
+            if (gravionBegin - end > gapMillis) {
+                closed = close();
+            }
+        }
+
+        if (begin == NONE) {
+            begin = gravionBegin;
+        }
+        lastBegin = gravionBegin;
+        count(gravion, gravionEnd);
+        played(release);
+
+        return closed;
+    }
+
+    private void count(GravionBean gravion, long gravionEnd) {
+        gravions++;
+        duration += StatsDao.durationOf(gravion);
+        end = Math.max(end, gravionEnd);
+    }
+
+    private void played(long[] release) {
+        if (release == null) {
+            runRelease = NONE;
+            return;
+        }
+
+        if (release[1] == 0L) {
+            runRelease = release[0];
+            runNext = 1L;
+        }
+        else if (runRelease == release[0] && runNext == release[1]) {
+            runNext++;
+        }
+        else {
+            runRelease = NONE;
+            return;
+        }
+
+        if (runNext == release[2]) {
+            if (release[2] >= minAlbumTracks) {
+                if (albums == null) {
+                    albums = new LongArrayList(1);
+                }
+                albums.add(release[0]);
+            }
+            runRelease = NONE;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if there's an open session.
+     */
+    boolean isOpen() {
+        return begin != NONE;
+    }
+
+    /**
+     * @param now current time, in milliseconds
+     * @return <code>true</code> if open session can't be continued anymore (gap since its end is exceeded).
+     */
+    boolean isExpired(long now) {
+        return begin != NONE && now - end > gapMillis;
+    }
+
+    /**
+     * @return Open session state or <code>null</code> if there's no open session.
+     */
+    SessionBean current() {
+        if (begin == NONE) {
+            return null;
+        }
+
+        List<Long> played = null;
+        if (albums != null) {
+            played = new ArrayList<>(albums.size());
+            for (int i = 0; i < albums.size(); i++) {
+                played.add(albums.get(i));
+            }
+        }
+
+        return new SessionBean(userId, new Date(begin), new Date(end), gravions, duration, played);
+    }
+
+    /**
+     * Closes open session.
+     *
+     * @return Closed session or <code>null</code> if there was no open session.
+     */
+    SessionBean close() {
+        SessionBean closed = current();
+
+        begin = NONE;
+        gravions = 0;
+        duration = 0L;
+        end = 0L;
+        albums = null;
+        runRelease = NONE;
+
+        return closed;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import org.gravidence.gravifon.db.StatsDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Statistics rollups rebuild job (backfill).<p>
+ * Triggered by <code>--rebuild-stats=FROM,TO</code> command line option (ISO dates, both inclusive).
+ * Period is processed month by month, every month is rebuilt within its own transaction.
+ *
+ * @see StatsDao#rebuild(LocalDate, LocalDate)
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class StatsRebuildRunner implements ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatsRebuildRunner.class);
+
+    public static final String OPTION = "rebuild-stats";
+
+    @Autowired
+    private StatsDao statsDao;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        List<String> values = args.getOptionValues(OPTION);
+        String[] period = values.isEmpty() ? new String[0] : values.get(0).split(",");
+        if (period.length != 2) {
+            throw new IllegalArgumentException("Period must be specified as --" + OPTION + "=FROM,TO");
+        }
+
+        rebuild(LocalDate.parse(period[0].trim()), LocalDate.parse(period[1].trim()));
+    }
+
+    /**
+     * Rebuilds statistics rollups month by month.
+     *
+     * @param from first day of period, inclusive
+     * @param to last day of period, inclusive
+     */
+    public void rebuild(LocalDate from, LocalDate to) {
+        long start = System.currentTimeMillis();
+        for (LocalDate first = from; !first.isAfter(to); first = first.withDayOfMonth(1).plusMonths(1)) {
+            LocalDate last = first.withDayOfMonth(first.lengthOfMonth());
+            if (last.isAfter(to)) {
+                last = to;
+            }
+
+            statsDao.rebuild(first, last);
+            LOG.info("Statistics rebuilt for {} - {}", first, last);
+        }
+        LOG.info("Statistics rebuild completed in {} ms", System.currentTimeMillis() - start);
+    }
+
+}
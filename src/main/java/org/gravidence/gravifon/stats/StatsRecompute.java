@@ -0,0 +1,362 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import org.gravidence.gravifon.db.GravionArchive;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.db.StatsDao;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All-time statistics recompute engine (see {@link StatsDao#getAllTimeArtists(Long, int)}), needed once artist
+ * relations change, e.g. an alias is merged.<p>
+ * User ID range is split into shards of configured size, which are forked to a work-stealing pool. Every shard
+ * streams its users' gravions (archived ones included), credits plays to principal artists in its own primitive maps
+ * and replaces its users' totals. Shards own disjoint users, so nothing is shared but progress counters,
+ * and shard summaries are merged once all of them are joined. Shards never wait for each other, as a blocked join
+ * would make the pool spawn compensating threads (and exceed database connections meant for the job).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class StatsRecompute {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatsRecompute.class);
+
+    /**
+     * Artists of a track that has none (cached lookup miss).
+     */
+    private static final long[] NO_ARTISTS = new long[0];
+
+    /**
+     * Maximum number of cached track artists per shard, cache is dropped once exceeded.
+     */
+    private static final int TRACK_CACHE_SIZE = 100000;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private GravionArchive gravionArchive;
+
+    @Autowired
+    private StatsDao statsDao;
+
+    /**
+     * Number of recompute threads, <code>0</code> stands for number of available processors.
+     */
+    @Value("${org.gravidence.gravifon.stats.recompute.threads:0}")
+    private int threads;
+
+    /**
+     * Maximum span of user IDs processed by a single shard.
+     */
+    @Value("${org.gravidence.gravifon.stats.recompute.shard-size:10000}")
+    private int shardSize;
+
+    /**
+     * Number of plays resolved to artists at once.
+     */
+    @Value("${org.gravidence.gravifon.db.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Recompute outcome.
+     */
+    public static class Report {
+
+        private final long users;
+
+        private final long gravions;
+
+        private final long totals;
+
+        Report(long users, long gravions, long totals) {
+            this.users = users;
+            this.gravions = gravions;
+            this.totals = totals;
+        }
+
+        /**
+         * @return Span of processed user IDs.
+         */
+        public long getUsers() {
+            return users;
+        }
+
+        /**
+         * @return Number of processed gravions.
+         */
+        public long getGravions() {
+            return gravions;
+        }
+
+        /**
+         * @return Number of stored user and artist totals.
+         */
+        public long getTotals() {
+            return totals;
+        }
+
+    }
+
+    /**
+     * Recomputes all-time statistics of all users, using configured number of threads.
+     *
+     * @return Recompute report.
+     */
+    public Report recompute() {
+        return recompute(threads);
+    }
+
+    /**
+     * Recomputes all-time statistics of all users. Gravions written meanwhile may be counted twice or missed,
+     * so ingestion is expected to be paused.
+     *
+     * @param threads number of threads, <code>0</code> stands for number of available processors
+     * @return Recompute report.
+     */
+    public Report recompute(int threads) {
+        long[] range = gravionDao.getUserIdRange();
+        if (range == null) {
+            return new Report(0L, 0L, 0L);
+        }
+
+        long start = System.currentTimeMillis();
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("stats-recompute-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+
+        Progress progress = new Progress(range[1] - range[0] + 1);
+        List<Callable<long[]>> shards = new ArrayList<>();
+        for (long from = range[0]; from <= range[1]; from += shardSize) {
+            long userFrom = from;
+            long userTo = Math.min(range[1], from + shardSize - 1);
+            shards.add(() -> {
+                long[] result = new Totals(userFrom, userTo).compute();
+                progress.processed(userTo - userFrom + 1, result[0]);
+                return result;
+            });
+        }
+
+        long[] summary = new long[2];
+        try {
+            for (Future<long[]> shard : pool.invokeAll(shards)) {
+                long[] result = shard.get();
+                summary[0] += result[0];
+                summary[1] += result[1];
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("All-time statistics recompute interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("All-time statistics recompute failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        LOG.info("All-time statistics recomputed in {} ms: {} gravions, {} totals, {} threads",
+                System.currentTimeMillis() - start, summary[0], summary[1], parallelism);
+
+        return new Report(progress.total, summary[0], summary[1]);
+    }
+
+    /**
+     * Recompute progress, logged as every ten percent of user IDs are processed.
+     */
+    private static class Progress {
+
+        final long total;
+
+        final AtomicLong done = new AtomicLong();
+
+        final AtomicLong gravions = new AtomicLong();
+
+        Progress(long total) {
+            this.total = total;
+        }
+
+        void processed(long users, long shardGravions) {
+            long before = done.getAndAdd(users);
+            long after = before + users;
+            long all = gravions.addAndGet(shardGravions);
+            if (after * 10 / total > before * 10 / total || after == total) {
+                LOG.info("All-time statistics recompute: {}% of users done, {} gravions processed",
+                        after * 100 / total, all);
+            }
+        }
+
+    }
+
+    /**
+     * Totals of a shard: user ID to principal artist ID to plays (and duration) maps. Plays are buffered
+     * and credited in chunks, so track artists are looked up once per chunk.
+     */
+    private class Totals {
+
+        private final long userFrom;
+
+        private final long userTo;
+
+        private final LongObjectHashMap<LongLongHashMap> plays = new LongObjectHashMap<>();
+
+        private final LongObjectHashMap<LongLongHashMap> durations = new LongObjectHashMap<>();
+
+        private final LongObjectHashMap<long[]> principals = new LongObjectHashMap<>();
+
+        private final LongArrayList users = new LongArrayList(fetchSize);
+
+        private final LongArrayList tracks = new LongArrayList(fetchSize);
+
+        private final LongArrayList seconds = new LongArrayList(fetchSize);
+
+        private long gravions;
+
+        Totals(long userFrom, long userTo) {
+            this.userFrom = userFrom;
+            this.userTo = userTo;
+        }
+
+        /**
+         * @return Number of processed gravions and number of stored totals.
+         */
+        long[] compute() {
+            gravionArchive.scanPlays(userFrom, userTo, this::play);
+            gravionDao.scanGravions(userFrom, userTo, chunk -> {
+                for (GravionBean gravion : chunk) {
+                    play(gravion.getUserId(), gravion.getTrackId(), StatsDao.durationOf(gravion));
+                }
+            });
+            credit();
+
+            List<long[]> rows = new ArrayList<>();
+            plays.forEach((user, artists) -> {
+                LongLongHashMap userDurations = durations.get(user);
+                artists.forEach((artist, count) ->
+                        rows.add(new long[] {user, artist, count, userDurations.get(artist, 0L)}));
+            });
+            statsDao.replaceArtistTotals(userFrom, userTo, rows);
+
+            return new long[] {gravions, rows.size()};
+        }
+
+        private void play(long user, long track, long duration) {
+            users.add(user);
+            tracks.add(track);
+            seconds.add(duration);
+            if (users.size() >= fetchSize) {
+                credit();
+            }
+        }
+
+        /**
+         * Credits buffered plays to principal artists of their tracks.
+         */
+        private void credit() {
+            resolve();
+            for (int i = 0; i < users.size(); i++) {
+                long[] artists = principals.get(tracks.get(i));
+                if (artists.length == 0) {
+                    continue;
+                }
+
+                long user = users.get(i);
+                LongLongHashMap userPlays = plays.get(user);
+                LongLongHashMap userDurations;
+                if (userPlays == null) {
+                    userPlays = new LongLongHashMap();
+                    userDurations = new LongLongHashMap();
+                    plays.put(user, userPlays);
+                    durations.put(user, userDurations);
+                }
+                else {
+                    userDurations = durations.get(user);
+                }
+                for (long artist : artists) {
+                    userPlays.addTo(artist, 1L);
+                    userDurations.addTo(artist, seconds.get(i));
+                }
+            }
+
+            gravions += users.size();
+            users.clear();
+            tracks.clear();
+            seconds.clear();
+        }
+
+        /**
+         * Makes sure principal artists of buffered tracks are cached.
+         */
+        private void resolve() {
+            if (principals.size() > TRACK_CACHE_SIZE) {
+                principals.clear();
+            }
+
+            Set<Long> missing = new HashSet<>();
+            for (int i = 0; i < tracks.size(); i++) {
+                if (principals.get(tracks.get(i)) == null) {
+                    missing.add(tracks.get(i));
+                }
+            }
+            if (missing.isEmpty()) {
+                return;
+            }
+
+            LongObjectHashMap<long[]> trackArtists = statsDao.getTrackArtists(missing);
+            for (Long track : missing) {
+                long[] artists = trackArtists.get(track);
+                principals.put(track, artists == null ? NO_ARTISTS : statsDao.getPrincipals(artists));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import org.gravidence.gravifon.db.ArtistCanonicalizer;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.db.ArtistGraphIndex;
+import org.gravidence.gravifon.db.GravionListener;
+import org.gravidence.gravifon.db.StatsDao;
+import org.gravidence.gravifon.util.LongArrayList;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.util.LongObjectHashMap;
+import org.gravidence.gravifon.util.SlidingCountMinSketch;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.TrendingArtistBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory engine of trending artists, i.e. artists played most over recent time {@link Window windows}.<p>
+ * Plays are counted as gravions are written (after commit), every track artist is credited to its principal
+ * artist (see {@link ArtistCanonicalizer#canonicalId(long)}), so aliases and variations roll up to masters.
+ * Per window, plays are counted by a {@link SlidingCountMinSketch} and top artists are kept in a bounded
+ * candidate set, so memory use doesn't depend on number of artists. Play counts are estimates
+ * (never less than actual ones).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+public class TrendingArtists implements GravionListener {
+
+    /**
+     * Trending time window.
+     */
+    public enum Window {
+
+        FIVE_MINUTES("5m", 10, TimeUnit.SECONDS.toMillis(30)),
+        HOUR("1h", 12, TimeUnit.MINUTES.toMillis(5)),
+        DAY("24h", 24, TimeUnit.HOURS.toMillis(1));
+
+        private final String name;
+
+        private final int buckets;
+
+        private final long bucketMillis;
+
+        Window(String name, int buckets, long bucketMillis) {
+            this.name = name;
+            this.buckets = buckets;
+            this.bucketMillis = bucketMillis;
+        }
+
+        /**
+         * @return Window name, as used by API.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name window name
+         * @return Window of supplied name or <code>null</code> if unknown.
+         */
+        public static Window of(String name) {
+            for (Window window : values()) {
+                if (window.name.equals(name)) {
+                    return window;
+                }
+            }
+
+            return null;
+        }
+
+    }
+
+    @Autowired
+    private StatsDao statsDao;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private ArtistCanonicalizer artistCanonicalizer;
+
+    /**
+     * Number of count-min sketch rows.
+     */
+    @Value("${org.gravidence.gravifon.trending.sketch-depth:4}")
+    private int sketchDepth;
+
+    /**
+     * Number of count-min sketch counters per row.
+     */
+    @Value("${org.gravidence.gravifon.trending.sketch-width:16384}")
+    private int sketchWidth;
+
+    /**
+     * Maximum number of trending artists kept per window.
+     */
+    @Value("${org.gravidence.gravifon.trending.top-size:100}")
+    private int topSize;
+
+    private final Map<Window, Chart> charts = new EnumMap<>(Window.class);
+
+    @PostConstruct
+    public void init() {
+        for (Window window : Window.values()) {
+            charts.put(window, new Chart(
+                    new SlidingCountMinSketch(window.buckets, window.bucketMillis, sketchDepth, sketchWidth), topSize));
+        }
+    }
+
+    /**
+     * Resolves played artists within writing transaction, counts plays once it's committed.
+     *
+     * @param gravions list of added gravion beans
+     */
+    @Override
+    public void gravionsAdded(List<GravionBean> gravions) {
+        LongObjectHashMap<long[]> trackArtists = statsDao.getTrackArtists(gravions);
+
+        LongArrayList artists = new LongArrayList(gravions.size());
+        LongArrayList times = new LongArrayList(gravions.size());
+        LongLongHashMap credited = new LongLongHashMap();
+        for (GravionBean gravion : gravions) {
+            long[] played = trackArtists.get(gravion.getTrackId());
+            if (played == null) {
+                continue;
+            }
+
+            long time = (gravion.getEnd() != null ? gravion.getEnd() : gravion.getBegin()).getTime();
+            credited.clear();
+            for (long artist : played) {
+                long principal = artistCanonicalizer.canonicalId(artist);
+                // a play is credited once, even if several track artists roll up to the same one
+                if (!credited.containsKey(principal)) {
+                    credited.put(principal, 1L);
+                    artists.add(principal);
+                    times.add(time);
+                }
+            }
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    played(artists, times);
+                }
+            });
+        }
+        else {
+            played(artists, times);
+        }
+    }
+
+    /**
+     * Counts artist plays.
+     *
+     * @param artists played artist IDs
+     * @param times play times, in milliseconds
+     */
+    private void played(LongArrayList artists, LongArrayList times) {
+        long now = System.currentTimeMillis();
+        for (Chart chart : charts.values()) {
+            for (int i = 0; i < artists.size(); i++) {
+                chart.played(artists.get(i), times.get(i), now);
+            }
+        }
+    }
+
+    /**
+     * Fetches most played artists of a window.
+     *
+     * @param window time window
+     * @param limit maximum number of artists
+     * @return List of trending artists, most played first, <code>null</code> if none.
+     */
+    public List<TrendingArtistBean> getTrendingArtists(Window window, int limit) {
+        long[][] top = charts.get(window).top(limit, System.currentTimeMillis());
+        if (top.length == 0) {
+            return null;
+        }
+
+        long[] ids = new long[top.length];
+        for (int i = 0; i < top.length; i++) {
+            ids[i] = top[i][0];
+        }
+        LongObjectHashMap<ArtistBean> found = new LongObjectHashMap<>(ids.length);
+        List<ArtistBean> artists = artistDao.getArtists(toList(ids));
+        if (artists != null) {
+            for (ArtistBean artist : artists) {
+                found.put(artist.getId(), artist);
+            }
+        }
+
+        List<TrendingArtistBean> result = new ArrayList<>(top.length);
+        for (long[] entry : top) {
+            ArtistBean artist = found.get(entry[0]);
+            if (artist != null) {
+                result.add(new TrendingArtistBean(artist, entry[1]));
+            }
+        }
+
+        return result.isEmpty() ? null : result;
+    }
+
+    private static List<Long> toList(long[] ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+
+        return list;
+    }
+
+    /**
+     * Plays of a window: sketch of all artists and candidate set of top ones.<p>
+     * Sketch is updated lock-free. Candidates are locked only if played artist estimate reaches
+     * the lowest candidate estimate (i.e. when the set is likely to change).
+     */
+    private static class Chart {
+
+        private final SlidingCountMinSketch sketch;
+
+        private final int capacity;
+
+        /**
+         * Candidate artist ID to its last known estimate.
+         */
+        private final LongLongHashMap candidates;
+
+        /**
+         * Lowest estimate a new candidate needs, zero while set is not full.
+         */
+        private volatile long threshold;
+
+        Chart(SlidingCountMinSketch sketch, int capacity) {
+            this.sketch = sketch;
+            this.capacity = capacity;
+            this.candidates = new LongLongHashMap(capacity + 1);
+        }
+
+        void played(long artist, long time, long now) {
+            if (!sketch.add(artist, time, now, 1)) {
+                return;
+            }
+
+            long estimate = sketch.estimate(artist, now);
+            if (estimate < threshold) {
+                return;
+            }
+
+            synchronized (this) {
+                if (candidates.containsKey(artist) || candidates.size() < capacity) {
+                    candidates.put(artist, estimate);
+                    if (candidates.size() == capacity && threshold == 0L) {
+                        threshold = lowest()[1];
+                    }
+                    return;
+                }
+
+                // estimates decay as buckets expire, so refresh them before deciding who leaves
+                refresh(now);
+                if (candidates.size() < capacity) {
+                    candidates.put(artist, estimate);
+                }
+                else {
+                    long[] lowest = lowest();
+                    if (estimate > lowest[1]) {
+                        candidates.remove(lowest[0]);
+                        candidates.put(artist, estimate);
+                    }
+                }
+                threshold = candidates.size() < capacity ? 0L : lowest()[1];
+            }
+        }
+
+        synchronized long[][] top(int limit, long now) {
+            refresh(now);
+            threshold = candidates.size() < capacity ? 0L : lowest()[1];
+
+            long[][] top = new long[candidates.size()][];
+            int[] i = {0};
+            candidates.forEach((artist, estimate) -> top[i[0]++] = new long[] {artist, estimate});
+            Arrays.sort(top, Comparator.<long[]>comparingLong(entry -> -entry[1]).thenComparingLong(entry -> entry[0]));
+
+            return top.length > limit ? Arrays.copyOf(top, limit) : top;
+        }
+
+        /**
+         * Re-estimates candidates, drops the ones with no plays within the window.
+         */
+        private void refresh(long now) {
+            for (long artist : candidates.keys()) {
+                long estimate = sketch.estimate(artist, now);
+                if (estimate > 0L) {
+                    candidates.put(artist, estimate);
+                }
+                else {
+                    candidates.remove(artist);
+                }
+            }
+        }
+
+        /**
+         * @return Candidate with the lowest estimate (artist ID and estimate).
+         */
+        private long[] lowest() {
+            long[] lowest = {ArtistGraphIndex.NO_ARTIST, Long.MAX_VALUE};
+            candidates.forEach((artist, estimate) -> {
+                if (estimate < lowest[1]) {
+                    lowest[0] = artist;
+                    lowest[1] = estimate;
+                }
+            });
+
+            return lowest;
+        }
+
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive <code>long</code> values.<p>
+ * Not thread-safe.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class LongArrayList {
+
+    private long[] elements;
+
+    private int size;
+
+    /**
+     * Constructs an empty list of default capacity.
+     */
+    public LongArrayList() {
+        this(8);
+    }
+
+    /**
+     * Constructs an empty list of supplied capacity.
+     *
+     * @param capacity initial capacity
+     */
+    public LongArrayList(int capacity) {
+        elements = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @return Number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if list has no elements.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends an element.
+     *
+     * @param value element value
+     */
+    public void add(long value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Inserts an element at supplied position, subsequent elements are shifted.
+     *
+     * @param index element index
+     * @param value element value
+     *
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public void insert(int index, long value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size << 1);
+        }
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = value;
+        size++;
+    }
+
+    /**
+     * Searches for a value, list is expected to be sorted in ascending order.
+     *
+     * @param value element value
+     * @return Element index if found, <code>-(insertion point) - 1</code> otherwise.
+     *
+     * @see Arrays#binarySearch(long[], int, int, long)
+     */
+    public int binarySearch(long value) {
+        return Arrays.binarySearch(elements, 0, size, value);
+    }
+
+    /**
+     * @param index element index
+     * @return Element value.
+     *
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        return elements[index];
+    }
+
+    /**
+     * Removes an element at supplied position, subsequent elements are shifted.
+     *
+     * @param index element index
+     * @return Removed element value.
+     *
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public long remove(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+
+        long value = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+
+        return value;
+    }
+
+    /**
+     * Removes the first occurrence of supplied value, order of other elements is preserved.
+     *
+     * @param value element value
+     * @return <code>true</code> if element was removed.
+     */
+    public boolean removeValue(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param value element value
+     * @return <code>true</code> if list contains supplied value.
+     */
+    public boolean contains(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return Array of elements.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+}
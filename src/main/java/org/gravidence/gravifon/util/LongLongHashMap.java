@@ -0,0 +1,306 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive <code>long</code> keys and values.<p>
+ * Linear probing is used, removal is done by backward shifting, so there're no tombstones.
+ * No key boxing or entry allocation happens on lookups and updates.<p>
+ * Not thread-safe.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class LongLongHashMap {
+
+    /**
+     * Key that marks free slots. Actual zero key is stored aside.
+     */
+    private static final long FREE_KEY = 0L;
+
+    private static final int MIN_CAPACITY = 8;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * Entry visitor.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * Visits an entry.
+         *
+         * @param key entry key
+         * @param value entry value
+         */
+        void visit(long key, long value);
+
+    }
+
+    private long[] keys;
+
+    private long[] values;
+
+    private int mask;
+
+    private int size;
+
+    private int threshold;
+
+    private boolean hasZeroKey;
+
+    private long zeroValue;
+
+    /**
+     * Constructs an empty map of default capacity.
+     */
+    public LongLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty map able to hold supplied number of entries without rehashing.
+     *
+     * @param expectedSize expected number of entries
+     */
+    public LongLongHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if map has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key entry key
+     * @return <code>true</code> if map contains an entry with supplied key.
+     */
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey;
+        }
+
+        return keys[slotOf(key)] == key;
+    }
+
+    /**
+     * @param key entry key
+     * @param defaultValue value to return if there's no matching entry
+     * @return Value of matching entry or supplied default value.
+     */
+    public long get(long key, long defaultValue) {
+        if (key == FREE_KEY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+
+        int slot = slotOf(key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Associates value with key.
+     *
+     * @param key entry key
+     * @param value entry value
+     */
+    public void put(long key, long value) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+
+        int slot = slotOf(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            if (++size > threshold) {
+                values[slot] = value;
+                rehash(keys.length << 1);
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds delta to value associated with key (missing entry is treated as zero value).
+     *
+     * @param key entry key
+     * @param delta value increment
+     * @return Updated value.
+     */
+    public long addTo(long key, long delta) {
+        long value = get(key, 0L) + delta;
+        put(key, value);
+
+        return value;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key entry key
+     * @return <code>true</code> if entry was removed, <code>false</code> if there was no such entry.
+     */
+    public boolean remove(long key) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) {
+                return false;
+            }
+            hasZeroKey = false;
+            size--;
+            return true;
+        }
+
+        int slot = slotOf(key);
+        if (keys[slot] != key) {
+            return false;
+        }
+        shiftBack(slot);
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Visits every entry, order is not defined.
+     *
+     * @param visitor entry visitor
+     */
+    public void forEach(Visitor visitor) {
+        if (hasZeroKey) {
+            visitor.visit(FREE_KEY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Array of keys, order is not defined.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int i = 0;
+        if (hasZeroKey) {
+            result[i++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                result[i++] = key;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds a slot that either holds supplied key or is free.
+     */
+    private int slotOf(long key) {
+        int slot = Hashing.mix(key) & mask;
+        while (keys[slot] != key && keys[slot] != FREE_KEY) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Frees a slot shifting back subsequent entries of the same probe sequence.
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE_KEY) {
+            int ideal = Hashing.mix(keys[next]) & mask;
+            // move entry to the gap unless its ideal slot lies cyclically within (gap, next]
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive <code>long</code> keys and object values.<p>
+ * Same layout as {@link LongLongHashMap}. <code>null</code> values are not allowed.<p>
+ * Not thread-safe.
+ *
+ * @param <V> value type
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * Key that marks free slots. Actual zero key is stored aside.
+     */
+    private static final long FREE_KEY = 0L;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * Entry visitor.
+     *
+     * @param <V> value type
+     */
+    @FunctionalInterface
+    public interface Visitor<V> {
+
+        /**
+         * Visits an entry.
+         *
+         * @param key entry key
+         * @param value entry value
+         */
+        void visit(long key, V value);
+
+    }
+
+    private long[] keys;
+
+    private Object[] values;
+
+    private int mask;
+
+    private int size;
+
+    private int threshold;
+
+    private V zeroValue;
+
+    /**
+     * Constructs an empty map of default capacity.
+     */
+    public LongObjectHashMap() {
+        this(0);
+    }
+
+    /**
+     * Constructs an empty map able to hold supplied number of entries without rehashing.
+     *
+     * @param expectedSize expected number of entries
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(LongLongHashMap.capacityFor(expectedSize));
+    }
+
+    /**
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if map has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key entry key
+     * @return Value of matching entry or <code>null</code> if there's no such entry.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE_KEY) {
+            return zeroValue;
+        }
+
+        int slot = slotOf(key);
+        return keys[slot] == key ? (V) values[slot] : null;
+    }
+
+    /**
+     * Associates value with key.
+     *
+     * @param key entry key
+     * @param value entry value
+     * @return Previous value or <code>null</code> if there was no such entry.
+     *
+     * @throws IllegalArgumentException if value is <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+
+        if (key == FREE_KEY) {
+            V previous = zeroValue;
+            if (previous == null) {
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+
+        int slot = slotOf(key);
+        if (keys[slot] == key) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key entry key
+     * @return Removed value or <code>null</code> if there was no such entry.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == FREE_KEY) {
+            V previous = zeroValue;
+            if (previous != null) {
+                zeroValue = null;
+                size--;
+            }
+            return previous;
+        }
+
+        int slot = slotOf(key);
+        if (keys[slot] != key) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        shiftBack(slot);
+        size--;
+
+        return previous;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Visits every entry, order is not defined.
+     *
+     * @param visitor entry visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        if (zeroValue != null) {
+            visitor.visit(FREE_KEY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds a slot that either holds supplied key or is free.
+     */
+    private int slotOf(long key) {
+        int slot = Hashing.mix(key) & mask;
+        while (keys[slot] != key && keys[slot] != FREE_KEY) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Frees a slot shifting back subsequent entries of the same probe sequence.
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE_KEY) {
+            int ideal = Hashing.mix(keys[next]) & mask;
+            // move entry to the gap unless its ideal slot lies cyclically within (gap, next]
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+        values[gap] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+}
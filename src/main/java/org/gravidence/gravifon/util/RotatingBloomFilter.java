@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of recently seen keys.<p>
+ * Filter consists of two generations, keys are put to the current one and looked up in both. Once current generation
+ * holds <code>capacity</code> keys, it replaces the previous one and a blank generation is started, so the filter
+ * remembers at least <code>capacity</code> most recent keys while memory use stays fixed. Every generation is sized
+ * for half of false positive rate, so the rate of the filter as a whole stays within the configured one.
+ * Negative answers are exact for keys put within remembered history.<p>
+ * Bits are set lock-free, keys put concurrently with generation replacement may be lost (which is benign for
+ * a filter of recent keys). Thread-safe.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class RotatingBloomFilter {
+
+    private final int capacity;
+
+    /**
+     * Number of bits per generation, a power of two.
+     */
+    private final int bits;
+
+    private final int hashes;
+
+    private volatile AtomicLongArray current;
+
+    private volatile AtomicLongArray previous;
+
+    /**
+     * Number of keys put to the current generation.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param capacity number of keys per generation
+     * @param falsePositiveRate acceptable false positive rate, between <code>0</code> and <code>1</code> exclusive
+     */
+    public RotatingBloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "Filter capacity must be positive, false positive rate must be within (0, 1).");
+        }
+
+        // optimal number of bits, rounded up to a power of two
+        double optimal = -capacity * Math.log(falsePositiveRate / 2) / (Math.log(2) * Math.log(2));
+        long size = Long.highestOneBit((long) Math.ceil(optimal) - 1) << 1;
+        this.bits = (int) Math.min(1L << 30, Math.max(Long.SIZE, size));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        this.capacity = capacity;
+        this.current = new AtomicLongArray(bits / Long.SIZE);
+        this.previous = new AtomicLongArray(bits / Long.SIZE);
+    }
+
+    /**
+     * @param key key
+     * @return <code>false</code> if key is definitely not seen recently, <code>true</code> if it probably is.
+     */
+    public boolean mightContain(long key) {
+        return contains(current, key) || contains(previous, key);
+    }
+
+    /**
+     * Remembers a key.
+     *
+     * @param key key
+     */
+    public void put(long key) {
+        AtomicLongArray words = current;
+        int h1 = Hashing.mix(key);
+        int h2 = Hashing.mix(~key) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & (bits - 1);
+            long mask = 1L << bit;
+            int index = bit >>> 6;
+            long word = words.get(index);
+            while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                word = words.get(index);
+            }
+        }
+
+        if (count.incrementAndGet() >= capacity) {
+            rotate();
+        }
+    }
+
+    /**
+     * @return Memory taken by filter bits, in bytes.
+     */
+    public long getBytes() {
+        return 2L * bits / Byte.SIZE;
+    }
+
+    private boolean contains(AtomicLongArray words, long key) {
+        int h1 = Hashing.mix(key);
+        int h2 = Hashing.mix(~key) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & (bits - 1);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces previous generation with the current one, unless it's done concurrently already.
+     */
+    private synchronized void rotate() {
+        if (count.get() >= capacity) {
+            previous = current;
+            current = new AtomicLongArray(bits / Long.SIZE);
+            count.set(0);
+        }
+    }
+
+}
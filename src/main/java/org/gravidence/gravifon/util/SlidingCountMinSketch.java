@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of event counts over a sliding time window.<p>
+ * Window is a ring of equal time buckets, every bucket is a sketch of <code>depth</code> rows
+ * by <code>width</code> counters. Memory use is fixed (<code>4 * buckets * depth * width</code> bytes)
+ * no matter how many distinct keys are counted, estimates never undercount and overcount by at most
+ * <code>e / width</code> of the window total with probability <code>1 - exp(-depth)</code>.<p>
+ * Window slides by bucket duration, i.e. it covers the current (partial) bucket and preceding full ones.
+ * Counters are updated lock-free. A bucket is cleared when it's reused for a newer time span,
+ * events older than the window are dropped. Thread-safe.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class SlidingCountMinSketch {
+
+    private final int buckets;
+
+    private final long bucketMillis;
+
+    private final int depth;
+
+    private final int width;
+
+    /**
+     * Counters of all buckets, bucket by bucket, row by row.
+     */
+    private final AtomicIntegerArray counters;
+
+    /**
+     * Time span (time divided by bucket duration) each bucket currently counts.
+     */
+    private final AtomicLongArray spans;
+
+    /**
+     * @param buckets number of buckets
+     * @param bucketMillis bucket duration, in milliseconds
+     * @param depth number of sketch rows (independent hashes)
+     * @param width number of counters per row, rounded up to a power of two
+     */
+    public SlidingCountMinSketch(int buckets, long bucketMillis, int depth, int width) {
+        if (buckets < 1 || bucketMillis < 1 || depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Sketch dimensions must be positive.");
+        }
+
+        this.buckets = buckets;
+        this.bucketMillis = bucketMillis;
+        this.depth = depth;
+        this.width = Integer.highestOneBit(width) == width ? width : Integer.highestOneBit(width) << 1;
+        this.counters = new AtomicIntegerArray(buckets * depth * this.width);
+        this.spans = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * @return Window duration, in milliseconds.
+     */
+    public long getWindowMillis() {
+        return buckets * bucketMillis;
+    }
+
+    /**
+     * Counts events of a key.
+     *
+     * @param key key
+     * @param time time of events, in milliseconds
+     * @param now current time, in milliseconds (events newer than that are counted as current)
+     * @param count number of events
+     * @return <code>true</code> if events are counted, <code>false</code> if they're older than the window.
+     */
+    public boolean add(long key, long time, long now, int count) {
+        long span = Math.min(time, now) / bucketMillis;
+        if (span <= now / bucketMillis - buckets) {
+            return false;
+        }
+
+        int bucket = (int) (span % buckets);
+        long current = spans.get(bucket);
+        if (current != span) {
+            if (current > span || !reuse(bucket, span)) {
+                // bucket already counts a newer time span
+                return false;
+            }
+        }
+
+        int offset = bucket * depth * width;
+        int h1 = Hashing.mix(key);
+        int h2 = Hashing.mix(~key) | 1;
+        for (int row = 0; row < depth; row++) {
+            counters.addAndGet(offset + row * width + ((h1 + row * h2) & (width - 1)), count);
+        }
+
+        return true;
+    }
+
+    /**
+     * Estimates number of events of a key within the window ending at supplied time.
+     *
+     * @param key key
+     * @param now current time, in milliseconds
+     * @return Estimated number of events (never less than actual one).
+     */
+    public long estimate(long key, long now) {
+        long last = now / bucketMillis;
+        int h1 = Hashing.mix(key);
+        int h2 = Hashing.mix(~key) | 1;
+
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = (h1 + row * h2) & (width - 1);
+            long sum = 0L;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                long span = spans.get(bucket);
+                if (span <= last && span > last - buckets) {
+                    sum += counters.get((bucket * depth + row) * width + column);
+                }
+            }
+            estimate = Math.min(estimate, sum);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Clears a bucket for a newer time span. Concurrent updates of the old span may leak into the new one,
+     * which is within sketch error.
+     *
+     * @param bucket bucket index
+     * @param span newer time span
+     * @return <code>true</code> if bucket counts supplied span.
+     */
+    private synchronized boolean reuse(int bucket, long span) {
+        long current = spans.get(bucket);
+        if (current < span) {
+            int offset = bucket * depth * width;
+            for (int i = 0; i < depth * width; i++) {
+                counters.set(offset + i, 0);
+            }
+            spans.set(bucket, span);
+        }
+
+        return spans.get(bucket) == span;
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response payload encoded once and served as is.<p>
+ * Intended for immutable or rarely changing responses: body bytes, gzip variant and entity tags are computed
+ * on construction, so serving a payload costs neither serialization nor compression.
+ * Conditional requests (<code>If-None-Match</code>) are answered with <code>304 Not Modified</code>.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public final class EncodedPayload {
+
+    /**
+     * Payloads smaller than that are not compressed, gzip overhead outweighs the gain.
+     */
+    private static final int GZIP_THRESHOLD = 256;
+
+    private static final String GZIP = "gzip";
+
+    private final byte[] body;
+
+    private final String etag;
+
+    /**
+     * Responses are immutable, so they are built once per variant.
+     */
+    private final ResponseEntity<byte[]> ok;
+
+    private final ResponseEntity<byte[]> notModified;
+
+    /**
+     * Gzip variant responses, <code>null</code> if compression doesn't pay off.
+     */
+    private final ResponseEntity<byte[]> gzipOk;
+
+    private final ResponseEntity<byte[]> gzipNotModified;
+
+    private final String gzipEtag;
+
+    /**
+     * Encodes payload.
+     *
+     * @param contentType payload content type
+     * @param body payload bytes, must not be modified afterwards
+     */
+    public EncodedPayload(MediaType contentType, byte[] body) {
+        if (contentType == null) {
+            throw new IllegalArgumentException("contentType");
+        }
+        if (body == null) {
+            throw new IllegalArgumentException("body");
+        }
+
+        this.body = body;
+
+        String hash = DigestUtils.md5DigestAsHex(body);
+        this.etag = "\"" + hash + "\"";
+        this.ok = new ResponseEntity<>(body, headers(contentType, null, etag, body.length), HttpStatus.OK);
+        this.notModified = new ResponseEntity<>(headers(null, null, etag, -1), HttpStatus.NOT_MODIFIED);
+
+        byte[] compressed = body.length < GZIP_THRESHOLD ? null : gzip(body);
+        if (compressed != null && compressed.length < body.length) {
+            this.gzipEtag = "\"" + hash + "-" + GZIP + "\"";
+            this.gzipOk = new ResponseEntity<>(compressed, headers(contentType, GZIP, gzipEtag, compressed.length),
+                    HttpStatus.OK);
+            this.gzipNotModified = new ResponseEntity<>(headers(null, null, gzipEtag, -1), HttpStatus.NOT_MODIFIED);
+        }
+        else {
+            this.gzipEtag = null;
+            this.gzipOk = null;
+            this.gzipNotModified = null;
+        }
+    }
+
+    /**
+     * Encodes value as JSON payload.
+     *
+     * @param objectMapper object mapper
+     * @param value value to encode
+     * @return Encoded payload.
+     */
+    public static EncodedPayload json(ObjectMapper objectMapper, Object value) {
+        try {
+            return new EncodedPayload(MediaType.APPLICATION_JSON_UTF8, objectMapper.writeValueAsBytes(value));
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode payload", e);
+        }
+    }
+
+    /**
+     * @return Entity tag of identity encoded payload.
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return Payload bytes (not compressed), must not be modified.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns response serving this payload.<p>
+     * Gzip variant is served if client accepts it, <code>304 Not Modified</code> is returned if client
+     * already has current payload. Header values are scanned in place, nothing is allocated per request.
+     *
+     * @param ifNoneMatch value of <code>If-None-Match</code> request header, may be <code>null</code>
+     * @param acceptEncoding value of <code>Accept-Encoding</code> request header, may be <code>null</code>
+     * @return Response entity, must not be modified.
+     */
+    public ResponseEntity<byte[]> toResponse(String ifNoneMatch, String acceptEncoding) {
+        boolean gzip = gzipOk != null && acceptsGzip(acceptEncoding);
+        boolean current = ifNoneMatch != null && matches(ifNoneMatch);
+
+        if (gzip) {
+            return current ? gzipNotModified : gzipOk;
+        }
+        else {
+            return current ? notModified : ok;
+        }
+    }
+
+    private static HttpHeaders headers(MediaType contentType, String contentEncoding, String etag, long length) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (contentType != null) {
+            headers.setContentType(contentType);
+        }
+        if (contentEncoding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        if (length >= 0) {
+            headers.setContentLength(length);
+        }
+
+        return HttpHeaders.readOnlyHttpHeaders(headers);
+    }
+
+    /**
+     * Checks whether <code>If-None-Match</code> header value matches any variant of this payload.
+     * Weak comparison is used, as required for <code>If-None-Match</code>.
+     *
+     * @param ifNoneMatch header value
+     * @return <code>true</code> if client has current payload
+     */
+    private boolean matches(String ifNoneMatch) {
+        int length = ifNoneMatch.length();
+        for (int start = 0; start < length; ) {
+            int end = ifNoneMatch.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+
+            int from = skipSpaces(ifNoneMatch, start, end);
+            int to = trimSpaces(ifNoneMatch, from, end);
+            if (ifNoneMatch.startsWith("W/", from)) {
+                from += 2;
+            }
+            if (regionEquals(ifNoneMatch, from, to, "*") || regionEquals(ifNoneMatch, from, to, etag)
+                    || (gzipEtag != null && regionEquals(ifNoneMatch, from, to, gzipEtag))) {
+                return true;
+            }
+
+            start = end + 1;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether <code>Accept-Encoding</code> header value allows gzip.
+     *
+     * @param acceptEncoding header value
+     * @return <code>true</code> if gzip is acceptable
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        int length = acceptEncoding.length();
+        for (int start = 0; start < length; ) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+
+            int params = acceptEncoding.indexOf(';', start);
+            if (params < 0 || params > end) {
+                params = end;
+            }
+            int from = skipSpaces(acceptEncoding, start, params);
+            int to = trimSpaces(acceptEncoding, from, params);
+            boolean gzip = (to - from == GZIP.length() && acceptEncoding.regionMatches(true, from, GZIP, 0, to - from))
+                    || regionEquals(acceptEncoding, from, to, "*");
+            if (gzip) {
+                return !isZeroQuality(acceptEncoding, params, end);
+            }
+
+            start = end + 1;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether content coding parameters (e.g. <code>;q=0</code>) forbid the coding.
+     */
+    private static boolean isZeroQuality(String value, int from, int to) {
+        int q = value.indexOf("q=", from);
+        if (q < 0 || q >= to) {
+            return false;
+        }
+
+        int start = skipSpaces(value, q + 2, to);
+        int end = trimSpaces(value, start, to);
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c != '0' && c != '.') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean regionEquals(String value, int from, int to, String expected) {
+        return to - from == expected.length() && value.regionMatches(from, expected, 0, expected.length());
+    }
+
+    private static int skipSpaces(String value, int from, int to) {
+        while (from < to && value.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimSpaces(String value, int from, int to) {
+        while (to > from && value.charAt(to - 1) == ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+}
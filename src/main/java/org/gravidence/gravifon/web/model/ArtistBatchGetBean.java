@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Bulk artist lookup request, artists are looked up by IDs and/or titles.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class ArtistBatchGetBean extends JsonBean {
+
+    @JsonProperty
+    private List<Long> ids;
+
+    @JsonProperty
+    private List<String> titles;
+
+    /**
+     * Default constructor for DI.
+     */
+    public ArtistBatchGetBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs a bulk lookup request using supplied properties.
+     *
+     * @param ids artist IDs
+     * @param titles artist titles
+     */
+    public ArtistBatchGetBean(List<Long> ids, List<String> titles) {
+        this.ids = ids;
+        this.titles = titles;
+    }
+
+    /**
+     * @return Artist IDs, <code>null</code> if none.
+     */
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    /**
+     * @return Artist titles, <code>null</code> if none.
+     */
+    public List<String> getTitles() {
+        return titles;
+    }
+
+}
@@ -55,6 +55,10 @@ public class ArtistBean extends JsonBean {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<ArtistBean> aliases;
 
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ArtistBean> variations;
+
     /**
      * Default constructor for DI.
      */
@@ -200,4 +204,20 @@ public class ArtistBean extends JsonBean {
         setAliases(aliases);
     }
 
+    /**
+     * @see #setVariations(List)
+     */
+    public List<ArtistBean> getVariations() {
+        return variations;
+    }
+
+    /**
+     * Sets variations of master (<code>this</code>) artist.
+     *
+     * @param variations list of variation artist beans
+     */
+    public void setVariations(List<ArtistBean> variations) {
+        this.variations = variations;
+    }
+
 }
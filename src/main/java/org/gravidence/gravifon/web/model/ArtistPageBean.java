@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Page of artists fetched using keyset pagination.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class ArtistPageBean extends JsonBean {
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ArtistBean> artists;
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long next;
+
+    /**
+     * Default constructor for DI.
+     */
+    public ArtistPageBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs an artist page using supplied properties.
+     *
+     * @param artists artists of the page
+     * @param next ID to continue listing after, <code>null</code> if there are no more artists
+     */
+    public ArtistPageBean(List<ArtistBean> artists, Long next) {
+        this.artists = artists;
+        this.next = next;
+    }
+
+    /**
+     * @return Artists of the page, <code>null</code> if none.
+     */
+    public List<ArtistBean> getArtists() {
+        return artists;
+    }
+
+    /**
+     * @return ID to continue listing after, <code>null</code> if there are no more artists.
+     */
+    public Long getNext() {
+        return next;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Listening statistics of a single artist.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class ArtistStatsBean extends JsonBean {
+
+    @JsonProperty
+    private ArtistBean artist;
+
+    @JsonProperty
+    private long plays;
+
+    @JsonProperty
+    private long duration;
+
+    /**
+     * Default constructor for DI.
+     */
+    public ArtistStatsBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs artist statistics using supplied properties.
+     *
+     * @param artist artist bean
+     * @param plays number of plays
+     * @param duration total listening duration, in seconds
+     */
+    public ArtistStatsBean(ArtistBean artist, long plays, long duration) {
+        this.artist = artist;
+        this.plays = plays;
+        this.duration = duration;
+    }
+
+    /**
+     * @return Artist bean.
+     */
+    public ArtistBean getArtist() {
+        return artist;
+    }
+
+    /**
+     * @return Number of plays.
+     */
+    public long getPlays() {
+        return plays;
+    }
+
+    /**
+     * @return Total listening duration, in seconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+}
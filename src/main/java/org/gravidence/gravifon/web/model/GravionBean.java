@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+
+/**
+ * Gravion (single listening event) web model entity.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class GravionBean extends JsonBean {
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long id;
+
+    @JsonProperty("user_id")
+    private Long userId;
+
+    @JsonProperty("track_id")
+    private Long trackId;
+
+    @JsonProperty
+    private Date begin;
+
+    @JsonProperty
+    private Date end;
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer duration;
+
+    /**
+     * Default constructor for DI.
+     */
+    public GravionBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs a gravion bean using supplied properties.
+     *
+     * @param userId user ID
+     * @param trackId track ID
+     * @param begin listening start time
+     * @param end listening end time
+     * @param duration actual listening duration, in seconds
+     */
+    public GravionBean(Long userId, Long trackId, Date begin, Date end, Integer duration) {
+        this(null, userId, trackId, begin, end, duration);
+    }
+
+    /**
+     * Constructs a gravion bean using supplied properties.
+     *
+     * @param id gravion ID
+     * @param userId user ID
+     * @param trackId track ID
+     * @param begin listening start time
+     * @param end listening end time
+     * @param duration actual listening duration, in seconds
+     */
+    public GravionBean(Long id, Long userId, Long trackId, Date begin, Date end, Integer duration) {
+        this.id = id;
+        this.userId = userId;
+        this.trackId = trackId;
+        this.begin = begin;
+        this.end = end;
+        this.duration = duration;
+    }
+
+    /**
+     * @see #setId(Long)
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Sets gravion identifier.
+     *
+     * @param id gravion identifier
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * @see #setUserId(Long)
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Sets identifier of user the gravion belongs to.
+     *
+     * @param userId user identifier
+     */
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * @see #setTrackId(Long)
+     */
+    public Long getTrackId() {
+        return trackId;
+    }
+
+    /**
+     * Sets identifier of listened track.
+     *
+     * @param trackId track identifier
+     */
+    public void setTrackId(Long trackId) {
+        this.trackId = trackId;
+    }
+
+    /**
+     * @see #setBegin(Date)
+     */
+    public Date getBegin() {
+        return begin;
+    }
+
+    /**
+     * Sets listening start time.
+     *
+     * @param begin listening start time
+     */
+    public void setBegin(Date begin) {
+        this.begin = begin;
+    }
+
+    /**
+     * @see #setEnd(Date)
+     */
+    public Date getEnd() {
+        return end;
+    }
+
+    /**
+     * Sets listening end time.
+     *
+     * @param end listening end time
+     */
+    public void setEnd(Date end) {
+        this.end = end;
+    }
+
+    /**
+     * @see #setDuration(Integer)
+     */
+    public Integer getDuration() {
+        return duration;
+    }
+
+    /**
+     * Sets actual listening duration (pauses excluded).
+     *
+     * @param duration listening duration, in seconds
+     */
+    public void setDuration(Integer duration) {
+        this.duration = duration;
+    }
+
+}
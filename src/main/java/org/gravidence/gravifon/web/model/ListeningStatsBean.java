@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Listening statistics of a user over a period of time.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class ListeningStatsBean extends JsonBean {
+
+    @JsonProperty("user_id")
+    private Long userId;
+
+    @JsonProperty
+    private long plays;
+
+    @JsonProperty
+    private long duration;
+
+    @JsonProperty("top_artists")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ArtistStatsBean> topArtists;
+
+    @JsonProperty("top_tracks")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<TrackStatsBean> topTracks;
+
+    /**
+     * Default constructor for DI.
+     */
+    public ListeningStatsBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs listening statistics using supplied properties.
+     *
+     * @param userId user ID
+     * @param plays total number of plays
+     * @param duration total listening duration, in seconds
+     * @param topArtists most listened artists
+     * @param topTracks most listened tracks
+     */
+    public ListeningStatsBean(Long userId, long plays, long duration,
+                              List<ArtistStatsBean> topArtists, List<TrackStatsBean> topTracks) {
+        this.userId = userId;
+        this.plays = plays;
+        this.duration = duration;
+        this.topArtists = topArtists;
+        this.topTracks = topTracks;
+    }
+
+    /**
+     * @return User ID.
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return Total number of plays.
+     */
+    public long getPlays() {
+        return plays;
+    }
+
+    /**
+     * @return Total listening duration, in seconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return Most listened artists, <code>null</code> if none.
+     */
+    public List<ArtistStatsBean> getTopArtists() {
+        return topArtists;
+    }
+
+    /**
+     * @return Most listened tracks, <code>null</code> if none.
+     */
+    public List<TrackStatsBean> getTopTracks() {
+        return topTracks;
+    }
+
+}
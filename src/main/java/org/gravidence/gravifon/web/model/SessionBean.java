@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Listening session: gravions of a user that follow each other without long pauses.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class SessionBean extends JsonBean {
+
+    @JsonProperty("user_id")
+    private Long userId;
+
+    @JsonProperty
+    private Date begin;
+
+    @JsonProperty
+    private Date end;
+
+    @JsonProperty
+    private int gravions;
+
+    @JsonProperty
+    private long duration;
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<Long> albums;
+
+    /**
+     * Default constructor for DI.
+     */
+    public SessionBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs listening session using supplied properties.
+     *
+     * @param userId user ID
+     * @param begin listening start time of the first gravion
+     * @param end listening end time of the last gravion
+     * @param gravions number of gravions
+     * @param duration total listening duration, in seconds
+     * @param albums IDs of releases played start to finish, in play order
+     */
+    public SessionBean(Long userId, Date begin, Date end, int gravions, long duration, List<Long> albums) {
+        this.userId = userId;
+        this.begin = begin;
+        this.end = end;
+        this.gravions = gravions;
+        this.duration = duration;
+        this.albums = albums;
+    }
+
+    /**
+     * @return User ID.
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return Listening start time of the first gravion.
+     */
+    public Date getBegin() {
+        return begin;
+    }
+
+    /**
+     * @return Listening end time of the last gravion.
+     */
+    public Date getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Number of gravions.
+     */
+    public int getGravions() {
+        return gravions;
+    }
+
+    /**
+     * @return Total listening duration, in seconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return IDs of releases played start to finish, in play order.
+     */
+    public List<Long> getAlbums() {
+        return albums;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Trending artist, i.e. number of recent plays of an artist (including its aliases and variations).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class TrendingArtistBean extends JsonBean {
+
+    @JsonProperty
+    private ArtistBean artist;
+
+    @JsonProperty
+    private long plays;
+
+    /**
+     * Default constructor for DI.
+     */
+    public TrendingArtistBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs trending artist using supplied properties.
+     *
+     * @param artist artist bean
+     * @param plays estimated number of plays
+     */
+    public TrendingArtistBean(ArtistBean artist, long plays) {
+        this.artist = artist;
+        this.plays = plays;
+    }
+
+    /**
+     * @return Artist bean.
+     */
+    public ArtistBean getArtist() {
+        return artist;
+    }
+
+    /**
+     * @return Estimated number of plays.
+     */
+    public long getPlays() {
+        return plays;
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Chart of most played artists over a recent time window.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+public class TrendingChartBean extends JsonBean {
+
+    @JsonProperty
+    private String window;
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<TrendingArtistBean> artists;
+
+    /**
+     * Default constructor for DI.
+     */
+    public TrendingChartBean() {
+        // do nothing
+    }
+
+    /**
+     * Constructs trending chart using supplied properties.
+     *
+     * @param window time window name (e.g. <code>1h</code>)
+     * @param artists trending artists, most played first, <code>null</code> if none
+     */
+    public TrendingChartBean(String window, List<TrendingArtistBean> artists) {
+        this.window = window;
+        this.artists = artists;
+    }
+
+    /**
+     * @return Time window name.
+     */
+    public String getWindow() {
+        return window;
+    }
+
+    /**
+     * @return Trending artists, most played first, <code>null</code> if none.
+     */
+    public List<TrendingArtistBean> getArtists() {
+        return artists;
+    }
+
+}
@@ -24,9 +24,14 @@
 
 package org.gravidence.gravifon.web.resource;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gravidence.gravifon.web.EncodedPayload;
 import org.gravidence.gravifon.web.model.ApplicationInfoBean;
 import org.gravidence.gravifon.web.model.StatusBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
@@ -51,28 +56,35 @@ public class Application {
     @Autowired
     private ApplicationInfoBean applicationInfo;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
-     * Response instance to hold application description.<p>
-     * Virtually immutable.
+     * Encoded response holding application description.<p>
+     * Virtually immutable, so it is encoded only once.
      */
-    private StatusBean<ApplicationInfoBean> infoRS;
+    private EncodedPayload infoRS;
 
     /**
      * Instantiates response with application description entity.
      */
     @PostConstruct
     private void setUp() {
-        infoRS = new StatusBean<>(applicationInfo);
+        infoRS = EncodedPayload.json(objectMapper, new StatusBean<>(applicationInfo));
     }
 
     /**
      * Returns application description.
      *
+     * @param ifNoneMatch entity tags client already has
+     * @param acceptEncoding encodings client accepts
      * @return application description
      */
     @RequestMapping(method = RequestMethod.GET)
-    public StatusBean info() {
-        return infoRS;
+    public ResponseEntity<byte[]> info(
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return infoRS.toResponse(ifNoneMatch, acceptEncoding);
     }
 
 }
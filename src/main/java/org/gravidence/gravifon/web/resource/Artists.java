@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.db.ArtistSearchIndex;
+import org.gravidence.gravifon.web.EncodedPayload;
+import org.gravidence.gravifon.web.model.ArtistBatchGetBean;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Artist resource.<p>
+ * Provides artist lookup (single and bulk), paginated artist listing, artist search and complete artist export.
+ * Responses that need the database are computed asynchronously, see {@link DeferredResponses}.
+ *
+ * @see ArtistDao
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RestController
+@RequestMapping("/v1")
+public class Artists {
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DeferredResponses deferredResponses;
+
+    /**
+     * Number of artists per page if not requested explicitly.
+     */
+    @Value("${org.gravidence.gravifon.api.page.default-size:100}")
+    private int defaultPageSize;
+
+    /**
+     * Maximum number of artists per page.
+     */
+    @Value("${org.gravidence.gravifon.api.page.max-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * Returns an artist.<p>
+     * Artist relations are expanded on request, e.g. <code>expand=master,aliases,variations</code>.
+     * Response without expanded relations is encoded once and served from cache until artist changes,
+     * see {@link EncodedPayload}.
+     *
+     * @param id artist ID
+     * @param expand comma separated relations to expand, see {@link ArtistDao.Relation}
+     * @param ifNoneMatch entity tags client already has
+     * @param acceptEncoding encodings client accepts
+     * @return artist
+     */
+    @RequestMapping(path = "/artists/{id:\\d+}", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<?>> get(
+            @PathVariable("id") Long id,
+            @RequestParam(name = "expand", required = false) String expand,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        Set<ArtistDao.Relation> relations = EnumSet.noneOf(ArtistDao.Relation.class);
+        if (expand != null) {
+            for (String relation : expand.split(",")) {
+                try {
+                    relations.add(ArtistDao.Relation.valueOf(relation.trim().toUpperCase(Locale.ROOT)));
+                }
+                catch (IllegalArgumentException e) {
+                    return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                            HttpStatus.BAD_REQUEST.value(),
+                            "Expand must be a combination of master, aliases and variations.")));
+                }
+            }
+        }
+
+        if (!relations.isEmpty()) {
+            return deferredResponses.defer(() -> {
+                ArtistBean artist = artistDao.getArtist(id, relations);
+                return artist == null ? artistNotFound() : ResponseEntity.ok(new StatusBean<>(artist));
+            });
+        }
+
+        return deferredResponses.defer(() -> {
+            EncodedPayload artist = artistDao.getEncodedArtist(id,
+                    entity -> EncodedPayload.json(objectMapper, new StatusBean<>(entity)));
+            return artist == null ? artistNotFound() : artist.toResponse(ifNoneMatch, acceptEncoding);
+        });
+    }
+
+    /**
+     * Returns many artists at once, looked up by IDs and/or titles.<p>
+     * Every artist comes with its master artist and aliases. Artists found by IDs go first (in requested order),
+     * followed by artists found by titles. Unknown IDs and titles are skipped, every artist is returned once.
+     *
+     * @param request IDs and titles to look up
+     * @return found artists
+     */
+    @RequestMapping(path = "/artists:batchGet", method = RequestMethod.POST)
+    public DeferredResult<ResponseEntity<?>> batchGet(@RequestBody ArtistBatchGetBean request) {
+        int size = (request.getIds() == null ? 0 : request.getIds().size())
+                + (request.getTitles() == null ? 0 : request.getTitles().size());
+        if (size < 1 || size > maxPageSize) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Number of IDs and titles must be between 1 and " + maxPageSize + ".")));
+        }
+
+        return deferredResponses.defer(() -> {
+            List<ArtistBean> artists = new ArrayList<>(size);
+            Set<Long> ids = new HashSet<>();
+            for (List<ArtistBean> found : Arrays.asList(artistDao.getArtists(request.getIds()),
+                    artistDao.getArtistsByTitles(request.getTitles()))) {
+                if (found != null) {
+                    for (ArtistBean artist : found) {
+                        if (ids.add(artist.getId())) {
+                            artists.add(artist);
+                        }
+                    }
+                }
+            }
+
+            return ResponseEntity.ok(new StatusBean<>(artists));
+        });
+    }
+
+    /**
+     * Returns a page of artists ordered by ID.<p>
+     * Next page is requested by passing <code>next</code> value of current page as <code>after</code>.
+     *
+     * @param title artist title, all artists are listed if not specified
+     * @param after ID of the last artist of previous page, first page is returned if not specified
+     * @param limit number of artists per page
+     * @return artist page
+     */
+    @RequestMapping(path = "/artists", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<?>> list(
+            @RequestParam(name = "title", required = false) String title,
+            @RequestParam(name = "after", required = false) Long after,
+            @RequestParam(name = "limit", required = false) Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : limit;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Limit must be between 1 and " + maxPageSize + ".")));
+        }
+
+        return deferredResponses.defer(
+                () -> ResponseEntity.ok(new StatusBean<>(artistDao.getArtistPage(title, after, pageSize))));
+    }
+
+    /**
+     * Searches artists by title.<p>
+     * Modes are <code>prefix</code> (autocomplete), <code>fuzzy</code> (similar titles) and <code>auto</code>
+     * (prefix matches followed by fuzzy ones). Case, diacritics, spaces and punctuation don't matter.
+     *
+     * @param query search query
+     * @param mode search mode
+     * @param limit maximum number of artists
+     * @return matching artists, best matches first
+     */
+    @RequestMapping(path = "/artists/search", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<?>> search(
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "mode", defaultValue = "auto") String mode,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        ArtistSearchIndex.Mode searchMode;
+        try {
+            searchMode = ArtistSearchIndex.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Mode must be one of prefix, fuzzy or auto.")));
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Limit must be between 1 and " + maxPageSize + ".")));
+        }
+
+        return deferredResponses.defer(
+                () -> ResponseEntity.ok(new StatusBean<>(artistDao.searchArtists(query, searchMode, limit))));
+    }
+
+    /**
+     * Streams all artists ordered by ID.<p>
+     * Response has the same shape as a regular one (entity is an array of artists), but it is written
+     * while artists are read from the database, so neither side holds complete result in memory.
+     *
+     * @param title artist title, all artists are exported if not specified
+     * @return artist stream
+     */
+    @RequestMapping(path = "/artists/export", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(name = "title", required = false) String title) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeBooleanField("ok", true);
+                generator.writeArrayFieldStart("entity");
+                artistDao.exportArtists(title, artist -> {
+                    try {
+                        generator.writeObject(artist);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    private static ResponseEntity<StatusBean<Void>> artistNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new StatusBean<>(HttpStatus.NOT_FOUND.value(),
+                "Artist not found."));
+    }
+
+}
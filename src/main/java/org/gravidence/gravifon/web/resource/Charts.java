@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import org.gravidence.gravifon.stats.TrendingArtists;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.gravidence.gravifon.web.model.TrendingChartBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Chart resource.<p>
+ * Provides real-time charts of trending artists. Plays are counted in memory,
+ * only artist details may need the database, so responses are computed asynchronously (see {@link DeferredResponses}).
+ *
+ * @see TrendingArtists
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RestController
+@RequestMapping("/v1/charts")
+public class Charts {
+
+    @Autowired
+    private TrendingArtists trendingArtists;
+
+    @Autowired
+    private DeferredResponses deferredResponses;
+
+    /**
+     * Maximum number of trending artists kept per window.
+     */
+    @Value("${org.gravidence.gravifon.trending.top-size:100}")
+    private int topSize;
+
+    /**
+     * Returns artists played most over a recent time window.
+     *
+     * @param window time window, one of <code>5m</code>, <code>1h</code> or <code>24h</code>
+     * @param limit maximum number of artists
+     * @return trending chart
+     */
+    @RequestMapping(path = "/trending", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<?>> trending(
+            @RequestParam(name = "window", defaultValue = "1h") String window,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        TrendingArtists.Window chartWindow = TrendingArtists.Window.of(window);
+        if (chartWindow == null) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Window must be one of 5m, 1h or 24h.")));
+        }
+        if (limit < 1 || limit > topSize) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Limit must be between 1 and " + topSize + ".")));
+        }
+
+        return deferredResponses.defer(() -> ResponseEntity.ok(new StatusBean<>(new TrendingChartBean(
+                chartWindow.getName(), trendingArtists.getTrendingArtists(chartWindow, limit)))));
+    }
+
+}
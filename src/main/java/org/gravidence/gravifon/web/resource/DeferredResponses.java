@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import org.gravidence.gravifon.db.DbExecutor;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Builds asynchronous responses computed by {@link DbExecutor}, so request threads don't wait for the database.<p>
+ * Responds with <code>503 Service Unavailable</code> if the executor is overloaded or response is not computed
+ * in time (pending database call is cancelled in the latter case).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@Component
+class DeferredResponses {
+
+    /**
+     * Time a client is advised to wait before retrying rejected request, in seconds.
+     */
+    private static final String RETRY_AFTER = "1";
+
+    @Autowired
+    private DbExecutor dbExecutor;
+
+    /**
+     * Maximum time to compute a response, in milliseconds.
+     */
+    @Value("${org.gravidence.gravifon.api.async.timeout:5000}")
+    private long timeout;
+
+    /**
+     * Computes a response asynchronously.
+     *
+     * @param response response supplier, performs database calls
+     * @return Deferred response.
+     */
+    DeferredResult<ResponseEntity<?>> defer(Supplier<? extends ResponseEntity<?>> response) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(timeout,
+                unavailable("Response was not computed in time."));
+
+        CompletableFuture<? extends ResponseEntity<?>> future = dbExecutor.submit(response);
+        if (future == null) {
+            result.setResult(unavailable("Too many requests in progress."));
+            return result;
+        }
+
+        result.onTimeout(() -> future.cancel(false));
+        future.whenComplete((r, e) -> {
+            if (e == null) {
+                result.setResult(r);
+            }
+            // cancelled future means timeout response is already in place
+            else if (!future.isCancelled()) {
+                result.setErrorResult(e);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Wraps an already computed response (e.g. validation failure).
+     *
+     * @param response response
+     * @return Deferred response holding supplied one.
+     */
+    static DeferredResult<ResponseEntity<?>> completed(ResponseEntity<?> response) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.setResult(response);
+
+        return result;
+    }
+
+    private static ResponseEntity<StatusBean<Void>> unavailable(String description) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER)
+                .body(new StatusBean<>(HttpStatus.SERVICE_UNAVAILABLE.value(), description));
+    }
+
+}
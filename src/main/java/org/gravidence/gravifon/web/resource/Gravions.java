@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import org.gravidence.gravifon.ingest.GravionIngestion;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gravion resource.<p>
+ * Accepts listening events (scrobbles) for write-behind ingestion.
+ *
+ * @see GravionIngestion
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RestController
+@RequestMapping("/v1/gravions")
+public class Gravions {
+
+    /**
+     * Time a client is advised to wait before retrying rejected submission, in seconds.
+     */
+    private static final String RETRY_AFTER = "1";
+
+    @Autowired
+    private GravionIngestion gravionIngestion;
+
+    /**
+     * Submits gravions for ingestion.<p>
+     * Submission is idempotent, so clients may safely retry it: a gravion (user, track and listening start time)
+     * is stored once.<p>
+     * Responds with:
+     * <ul>
+     *     <li><code>202 Accepted</code> once gravions are queued (async durability mode);</li>
+     *     <li><code>200 OK</code> once gravions are committed (sync durability mode);</li>
+     *     <li><code>400 Bad Request</code> if a gravion misses mandatory properties;</li>
+     *     <li><code>413 Payload Too Large</code> if submission exceeds ingestion queue capacity
+     *     (it should be split);</li>
+     *     <li><code>503 Service Unavailable</code> if ingestion queue is full (backpressure).</li>
+     * </ul>
+     *
+     * @param gravions list of gravion beans
+     * @return submission status
+     */
+    @RequestMapping(method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<StatusBean<Void>>> add(@RequestBody List<GravionBean> gravions) {
+        for (GravionBean gravion : gravions) {
+            if (gravion.getUserId() == null || gravion.getTrackId() == null
+                    || gravion.getBegin() == null || gravion.getEnd() == null) {
+                return CompletableFuture.completedFuture(error(HttpStatus.BAD_REQUEST,
+                        "Gravion must have user_id, track_id, begin and end specified."));
+            }
+        }
+
+        if (gravions.size() > gravionIngestion.getQueueCapacity()) {
+            return CompletableFuture.completedFuture(error(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Submission must not exceed " + gravionIngestion.getQueueCapacity() + " gravions."));
+        }
+
+        CompletableFuture<Void> persisted = gravionIngestion.submit(gravions);
+        if (persisted == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER)
+                    .body(new StatusBean<>(HttpStatus.SERVICE_UNAVAILABLE.value(), "Ingestion queue is full.")));
+        }
+
+        HttpStatus status = gravionIngestion.getDurability() == GravionIngestion.Durability.SYNC
+                ? HttpStatus.OK : HttpStatus.ACCEPTED;
+        return persisted.handle((v, e) -> e == null
+                ? ResponseEntity.status(status).body(new StatusBean<>())
+                : error(HttpStatus.INTERNAL_SERVER_ERROR, "Gravions could not be stored."));
+    }
+
+    private static ResponseEntity<StatusBean<Void>> error(HttpStatus status, String description) {
+        return ResponseEntity.status(status).body(new StatusBean<>(status.value(), description));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import org.gravidence.gravifon.db.StatsDao;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.LocalDate;
+
+/**
+ * User resource.<p>
+ * Provides user listening statistics, computed asynchronously (see {@link DeferredResponses}).
+ *
+ * @see StatsDao
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RestController
+@RequestMapping("/v1/users")
+public class Users {
+
+    @Autowired
+    private StatsDao statsDao;
+
+    @Autowired
+    private DeferredResponses deferredResponses;
+
+    /**
+     * Maximum number of top artists and tracks.
+     */
+    @Value("${org.gravidence.gravifon.stats.top-size:100}")
+    private int topSize;
+
+    /**
+     * Returns listening statistics of a user (totals, top artists and top tracks) over a period.
+     *
+     * @param id user ID
+     * @param from first day of period (ISO date), inclusive, unbounded if not specified
+     * @param to last day of period (ISO date), inclusive, unbounded if not specified
+     * @param limit maximum number of top artists and tracks
+     * @return listening statistics
+     */
+    @RequestMapping(path = "/{id}/stats", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<?>> stats(@PathVariable("id") Long id,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        if (limit < 1 || limit > topSize) {
+            return DeferredResponses.completed(ResponseEntity.badRequest().body(new StatusBean<>(
+                    HttpStatus.BAD_REQUEST.value(), "Limit must be between 1 and " + topSize + ".")));
+        }
+
+        return deferredResponses.defer(
+                () -> ResponseEntity.ok(new StatusBean<>(statsDao.getListeningStats(id, from, to, limit))));
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link Gravifon} command line jobs.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(JUnit4.class)
+public class GravifonTest extends TestCase {
+
+    /**
+     * Tests {@link Gravifon#isJob(String[])}.
+     */
+    @Test
+    public void isJob() {
+        assertFalse(Gravifon.isJob(new String[0]));
+        assertFalse(Gravifon.isJob(new String[] {"--server.port=8081"}));
+        assertTrue(Gravifon.isJob(new String[] {"--import-dump=/tmp/dump"}));
+        assertTrue(Gravifon.isJob(new String[] {"--rebuild-stats=2017-01-01,2017-01-31"}));
+        assertTrue(Gravifon.isJob(new String[] {"--backfill-sessions"}));
+        assertTrue(Gravifon.isJob(new String[] {"--recompute-stats=2"}));
+    }
+
+    /**
+     * Tests {@link Gravifon#runJob(String[])}: exit code reflects job outcome.
+     */
+    @Test
+    public void runJob() {
+        assertEquals(0, Gravifon.runJob(new String[] {"--rebuild-stats=2017-01-01,2017-01-31",
+                "--spring.main.banner-mode=off"}));
+        assertEquals(1, Gravifon.runJob(new String[] {"--rebuild-stats=2017-01-01",
+                "--spring.main.banner-mode=off"}));
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Integration tests for {@link ArtistCanonicalizer}.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArtistCanonicalizerTest extends TestCase {
+
+    @Autowired
+    private ArtistCanonicalizer artistCanonicalizer;
+
+    @Autowired
+    private ArtistGraphIndex artistGraphIndex;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    /**
+     * Tests {@link ArtistCanonicalizer#canonicalId(long)}.<p>
+     * Variations and aliases from initial data set map to masters, other artists are canonical themselves.
+     */
+    @Test
+    public void canonicalId() {
+        assertEquals(4L, artistCanonicalizer.canonicalId(5L));
+        assertEquals(4L, artistCanonicalizer.canonicalId(8L));
+        assertEquals(6L, artistCanonicalizer.canonicalId(3L));
+        assertEquals(6L, artistCanonicalizer.canonicalId(7L));
+        assertEquals(6L, artistCanonicalizer.canonicalId(6L));
+        assertEquals(1L, artistCanonicalizer.canonicalId(1L));
+        assertEquals(100L, artistCanonicalizer.canonicalId(100L));
+        assertEquals(4, artistCanonicalizer.size());
+    }
+
+    /**
+     * Tests that mapping follows {@link ArtistDao} writes, including artists that roll up through changed one.
+     */
+    @Test
+    public void maintainedByDao() {
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, 7L));
+        assertEquals(6L, artistCanonicalizer.canonicalId(ae.getId()));
+
+        // Funckarma becomes an alias of Autechre, so do its aliases and their variations
+        artistDao.addArtistAlias(1L, 6L);
+        assertEquals(1L, artistCanonicalizer.canonicalId(6L));
+        assertEquals(1L, artistCanonicalizer.canonicalId(3L));
+        assertEquals(1L, artistCanonicalizer.canonicalId(ae.getId()));
+
+        final ArtistBean vo = artistDao.getArtist(8L);
+        vo.setMaster(null);
+        artistDao.updateArtist(vo);
+        assertEquals(8L, artistCanonicalizer.canonicalId(8L));
+        assertEquals(4L, artistCanonicalizer.canonicalId(5L));
+
+        for (long id = 1L; id <= ae.getId(); id++) {
+            assertEquals(artistGraphIndex.getPrincipal(id), artistCanonicalizer.canonicalId(id));
+        }
+
+        artistGraphIndex.init();
+        assertEquals(1L, artistCanonicalizer.canonicalId(ae.getId()));
+        assertEquals(8L, artistCanonicalizer.canonicalId(8L));
+    }
+
+    /**
+     * Tests that table grows and shrinks consistently, entries are looked up after removal of colliding ones.
+     */
+    @Test
+    public void updateTable() {
+        final ArtistCanonicalizer canonicalizer = new ArtistCanonicalizer();
+        final LongLongHashMap expected = new LongLongHashMap();
+        for (long id = 1L; id <= 1000L; id++) {
+            canonicalizer.update(id, id % 7L + 1L);
+            expected.put(id, id % 7L + 1L);
+        }
+        for (long id = 1L; id <= 1000L; id += 3L) {
+            canonicalizer.update(id, id);
+            expected.remove(id);
+        }
+
+        for (long id = 1L; id <= 1000L; id++) {
+            assertEquals(expected.get(id, id), canonicalizer.canonicalId(id));
+        }
+        assertEquals(expected.size(), canonicalizer.size());
+
+        canonicalizer.rebuild(new LongLongHashMap());
+        assertEquals(0, canonicalizer.size());
+        assertEquals(9L, canonicalizer.canonicalId(9L));
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+
+/**
+ * Integration tests for {@link ArtistCatalogueFile} and {@link ArtistCatalogue} warm-up from snapshot file.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "org.gravidence.gravifon.catalogue.snapshot.path=target/artist-catalogue-test.bin"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArtistCatalogueFileTest extends TestCase {
+
+    @Autowired
+    private ArtistCatalogue artistCatalogue;
+
+    @Autowired
+    private ArtistGraphIndex artistGraphIndex;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(artistCatalogue.getSnapshotFile());
+    }
+
+    /**
+     * Tests {@link ArtistCatalogue#writeSnapshot()}.<p>
+     * Catalogue modifications should be merged into snapshot, catalogue should switch to the mapped snapshot.
+     */
+    @Test
+    public void writeSnapshot() throws IOException {
+        assertFalse(artistCatalogue.isMapped());
+
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, 1L));
+        final ArtistBean vo = artistDao.getArtist(8L);
+        vo.setTitle("VO");
+        artistDao.updateArtist(vo);
+        artistDao.addArtistAlias(1L, 7L);
+
+        artistCatalogue.writeSnapshot();
+
+        assertTrue(artistCatalogue.isMapped());
+        assertEquals(9, artistCatalogue.size());
+        assertEquals("AE", artistCatalogue.getTitle(ae.getId()));
+        assertEquals(1L, artistCatalogue.getMaster(ae.getId()));
+        assertEquals("VO", artistCatalogue.getTitle(8L));
+        assertEquals(4L, artistCatalogue.getMaster(8L));
+        assertEquals("Quench", artistCatalogue.getTitle(3L));
+        assertEquals(Arrays.asList("1>7", "6>3", "6>7"), aliases());
+        assertTrue(artistCatalogue.getBytes() < artistCatalogue.getBeanBytes());
+    }
+
+    /**
+     * Tests {@link ArtistCatalogue#warmUp()}.<p>
+     * Catalogue should be mapped from snapshot file and catch up with changes made after the snapshot was written.
+     */
+    @Test
+    public void warmUpFromSnapshot() throws IOException {
+        artistCatalogue.writeSnapshot();
+
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, 1L));
+        final ArtistBean vo = artistDao.getArtist(8L);
+        vo.setTitle("VO");
+        vo.setMaster(null);
+        artistDao.updateArtist(vo);
+        artistDao.addArtistAlias(1L, 7L);
+
+        artistCatalogue.warmUp();
+        artistGraphIndex.init();
+
+        assertTrue(artistCatalogue.isMapped());
+        assertEquals(9, artistCatalogue.size());
+        assertEquals("AE", artistCatalogue.getTitle(ae.getId()));
+        assertEquals("VO", artistCatalogue.getTitle(8L));
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistCatalogue.getMaster(8L));
+        assertEquals(Arrays.asList("1>7", "6>3", "6>7"), aliases());
+
+        assertEquals(1L, artistGraphIndex.getMaster(ae.getId()));
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistGraphIndex.getMaster(8L));
+        assertEquals(4L, artistGraphIndex.getMaster(5L));
+        assertEquals(7L, artistGraphIndex.getAliases(1L)[0]);
+    }
+
+    /**
+     * Tests {@link ArtistCatalogue#warmUp()}.<p>
+     * Corrupted snapshot file should be ignored, catalogue should be loaded from the database.
+     */
+    @Test
+    public void warmUpCorrupted() throws IOException {
+        Files.write(artistCatalogue.getSnapshotFile(), "not a snapshot".getBytes(StandardCharsets.UTF_8));
+
+        artistCatalogue.warmUp();
+
+        assertFalse(artistCatalogue.isMapped());
+        assertEquals(8, artistCatalogue.size());
+        assertEquals("V.O.", artistCatalogue.getTitle(8L));
+    }
+
+    /**
+     * Tests {@link ArtistCatalogue#warmUp()}.<p>
+     * Snapshot file ahead of change log (i.e. one of another database) should be ignored.
+     */
+    @Test
+    public void warmUpForeign() throws IOException {
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, null));
+        artistCatalogue.writeSnapshot();
+
+        dslContext.deleteFrom(ArtistChangeDao.G_ARTIST_CHANGE).execute();
+        dslContext.deleteFrom(G_ARTIST).where(G_ARTIST.ID.eq(ae.getId()))
+                .execute();
+
+        artistCatalogue.warmUp();
+
+        assertFalse(artistCatalogue.isMapped());
+        assertEquals(8, artistCatalogue.size());
+        assertFalse(artistCatalogue.contains(ae.getId()));
+    }
+
+    private List<String> aliases() {
+        List<String> aliases = new ArrayList<>();
+        artistCatalogue.forEachAlias((masterId, aliasId) -> aliases.add(masterId + ">" + aliasId));
+        aliases.sort(null);
+
+        return aliases;
+    }
+
+}
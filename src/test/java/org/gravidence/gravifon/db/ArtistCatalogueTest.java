@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.jooq.DSLContext;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+
+/**
+ * Integration tests for {@link ArtistCatalogue}.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArtistCatalogueTest extends TestCase {
+
+    @Autowired
+    private ArtistCatalogue artistCatalogue;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private ArtistChangeDao artistChangeDao;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Tests {@link ArtistCatalogue#load()}.<p>
+     * Artists from initial data set should be loaded, compact form should take less memory than beans.
+     */
+    @Test
+    public void load() {
+        assertEquals(8, artistCatalogue.size());
+        assertEquals("Vidna Obmana", artistCatalogue.getTitle(4L));
+        assertEquals("V.O.", artistCatalogue.getTitle(8L));
+        assertEquals(4L, artistCatalogue.getMaster(8L));
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistCatalogue.getMaster(4L));
+        assertTrue(artistCatalogue.contains(1L));
+        assertFalse(artistCatalogue.contains(100L));
+        assertNull(artistCatalogue.getTitle(100L));
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistCatalogue.getMaster(100L));
+        assertTrue(artistCatalogue.getBytes() < artistCatalogue.getBeanBytes());
+    }
+
+    /**
+     * Tests that equal titles share single title pool entry.
+     */
+    @Test
+    public void titlesDeduplicated() {
+        ArtistCatalogue.Builder builder = new ArtistCatalogue.Builder();
+        builder.add(2L, "Quench", ArtistGraphIndex.NO_ARTIST);
+        builder.add(3L, "Quench", ArtistGraphIndex.NO_ARTIST);
+        builder.add(4L, null, ArtistGraphIndex.NO_ARTIST);
+        builder.add(5L, "Вiдна", 4L);
+        ArtistCatalogue.Snapshot snapshot = builder.build(0L);
+
+        assertEquals(snapshot.titles.get(0), snapshot.titles.get(1));
+        assertEquals(-1, snapshot.titles.get(2));
+        assertEquals(1 + "Quench".length() + 1 + "Вiдна".getBytes(StandardCharsets.UTF_8).length,
+                snapshot.pool.limit());
+    }
+
+    /**
+     * Tests that artists must be supplied to builder in ascending ID order.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void builderUnordered() {
+        ArtistCatalogue.Builder builder = new ArtistCatalogue.Builder();
+        builder.add(2L, "Quench", ArtistGraphIndex.NO_ARTIST);
+        builder.add(1L, "Autechre", ArtistGraphIndex.NO_ARTIST);
+    }
+
+    /**
+     * Tests that {@link ArtistDao} write methods keep the catalogue up to date until it's reloaded.
+     */
+    @Test
+    public void maintainedByDao() {
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, 1L));
+        assertEquals(9, artistCatalogue.size());
+        assertEquals("AE", artistCatalogue.getTitle(ae.getId()));
+        assertEquals(1L, artistCatalogue.getMaster(ae.getId()));
+
+        final ArtistBean vo = artistDao.getArtist(8L);
+        vo.setTitle("VO");
+        vo.setMaster(null);
+        artistDao.updateArtist(vo);
+        assertEquals(9, artistCatalogue.size());
+        assertEquals("VO", artistCatalogue.getTitle(8L));
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistCatalogue.getMaster(8L));
+
+        artistCatalogue.load();
+        assertEquals(9, artistCatalogue.size());
+        assertEquals("AE", artistCatalogue.getTitle(ae.getId()));
+        assertEquals("VO", artistCatalogue.getTitle(8L));
+    }
+
+    /**
+     * Tests {@link ArtistCatalogue#catchUp()} against changes committed out of ID order.<p>
+     * Change that shows up after a greater one is applied should still be replayed.
+     */
+    @Test
+    public void catchUpLateChange() {
+        artistCatalogue.catchUp();
+        final Long lastChangeId = artistChangeDao.getLastChangeId();
+        final long last = lastChangeId == null ? 0L : lastChangeId;
+
+        dslContext.update(G_ARTIST).set(G_ARTIST.TITLE, "VO").where(G_ARTIST.ID.eq(4L)).execute();
+        dslContext.insertInto(ArtistChangeDao.G_ARTIST_CHANGE,
+                ArtistChangeDao.CHANGE_ID, ArtistChangeDao.CHANGE_ARTIST_ID).values(last + 2L, 4L).execute();
+        artistCatalogue.catchUp();
+        assertEquals("VO", artistCatalogue.getTitle(4L));
+
+        dslContext.update(G_ARTIST).set(G_ARTIST.TITLE, "V.O").where(G_ARTIST.ID.eq(8L)).execute();
+        dslContext.insertInto(ArtistChangeDao.G_ARTIST_CHANGE,
+                ArtistChangeDao.CHANGE_ID, ArtistChangeDao.CHANGE_ARTIST_ID).values(last + 1L, 8L).execute();
+        artistCatalogue.catchUp();
+        assertEquals("V.O", artistCatalogue.getTitle(8L));
+    }
+
+}
@@ -24,8 +24,12 @@
 
 package org.gravidence.gravifon.db;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import junit.framework.TestCase;
 import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.ArtistPageBean;
+import org.jooq.DSLContext;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,10 +38,15 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+
 /**
  * Integration tests for {@link ArtistDao}.<p>
  * H2 in-memory is used underneath.
@@ -52,6 +61,15 @@ public class ArtistDaoTest extends TestCase {
     @Autowired
     private ArtistDao artistDao;
 
+    @Autowired
+    private ArtistCache artistCache;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     /**
      * Tests {@link ArtistDao#addArtist(ArtistBean)}.<p>
      * Happy path.
@@ -119,6 +137,135 @@ public class ArtistDaoTest extends TestCase {
         artistDao.addArtist(new ArtistBean(42L, "Makyo", null));
     }
 
+    /**
+     * Tests {@link ArtistDao#addArtist(ArtistBean)}.<p>
+     * Adding an artist variation using non-existing master ID.
+     */
+    @Test(expected = DataIntegrityViolationException.class)
+    public void addArtistNoMasterArtist() {
+        artistDao.addArtist(new ArtistBean(null, "Makyo", null, System.currentTimeMillis()));
+
+        fail("Data integrity violation exception is expected.");
+    }
+
+    /**
+     * Tests {@link ArtistDao#addArtists(List)}.<p>
+     * Happy path.
+     */
+    @Test
+    public void addArtists() {
+        final List<ArtistBean> expected = Arrays.asList(
+                new ArtistBean("Boards Of Canada"),
+                new ArtistBean(null, "Plaid", "Ed Handley & Andy Turner", null),
+                new ArtistBean(null, "Bola", null, 1L));
+        final List<ArtistBean> actual = artistDao.addArtists(expected);
+
+        assertEquals(expected.size(), actual.size());
+        for (ArtistBean artist : actual) {
+            assertNotNull(artist.getId());
+
+            final ArtistBean persisted = artistDao.getArtist(artist.getId());
+            assertEquals(artist.getTitle(), persisted.getTitle());
+            assertEquals(artist.getDescription(), persisted.getDescription());
+            if (artist.getMaster() == null) {
+                assertNull(persisted.getMaster());
+            }
+            else {
+                assertEquals(artist.getMaster().getId(), persisted.getMaster().getId());
+            }
+        }
+    }
+
+    /**
+     * Tests {@link ArtistDao#addArtists(List)}.<p>
+     * Variation refers to master artist supplied later in the same list.
+     */
+    @Test
+    public void addArtistsMasterInBatch() {
+        final ArtistBean master = new ArtistBean("Aphex Twin");
+        final ArtistBean variation = new ArtistBean("AFX");
+        variation.setMaster(master);
+
+        artistDao.addArtists(Arrays.asList(variation, master));
+
+        assertNotNull(master.getId());
+        assertNotNull(variation.getId());
+        final ArtistBean actual = artistDao.getArtist(variation.getId());
+        assertEquals(master.getId(), actual.getMaster().getId());
+    }
+
+    /**
+     * Tests {@link ArtistDao#addArtists(java.util.Iterator)}.<p>
+     * Artists exceed a single batch, variations refer to masters from the same and from previous batches.
+     */
+    @Test
+    public void addArtistsSeveralBatches() {
+        // see org.gravidence.gravifon.db.batch-size of test configuration
+        final int batchSize = 100;
+        final List<ArtistBean> expected = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            final ArtistBean artist = new ArtistBean("Artist #" + i);
+            if (i % 2 == 1) {
+                // variations of the first batch refer to preceding artist, later ones to a master a batch earlier
+                artist.setMaster(expected.get(i < batchSize ? i - 1 : i - batchSize - 1));
+            }
+            expected.add(artist);
+        }
+
+        assertEquals(expected.size(), artistDao.addArtists(expected.iterator()));
+
+        final Set<Long> artistIds = new HashSet<>();
+        for (ArtistBean artist : expected) {
+            assertNotNull(artist.getId());
+            assertTrue(artistIds.add(artist.getId()));
+
+            final ArtistBean persisted = artistDao.getArtist(artist.getId());
+            assertEquals(artist.getTitle(), persisted.getTitle());
+            final Long storedMasterId = dslContext.select(G_ARTIST.MASTER_ID)
+                    .from(G_ARTIST)
+                    .where(G_ARTIST.ID.eq(artist.getId()))
+                    .fetchOne(G_ARTIST.MASTER_ID);
+            if (artist.getMaster() != null) {
+                assertEquals(artist.getMaster().getId(), storedMasterId);
+                assertEquals(artist.getMaster().getId(), persisted.getMaster().getId());
+            }
+            else {
+                assertNull(storedMasterId);
+            }
+        }
+    }
+
+    /**
+     * Tests {@link ArtistDao#addArtists(List)}.<p>
+     * Master artist is neither persisted nor supplied, whole batch should be rejected.
+     */
+    @Test
+    public void addArtistsUnresolvedMaster() {
+        final ArtistBean orphan = new ArtistBean("Polygon Window");
+        orphan.setMaster(new ArtistBean("Richard D. James"));
+        final ArtistBean bystander = new ArtistBean("Squarepusher");
+
+        try {
+            artistDao.addArtists(Arrays.asList(bystander, orphan));
+            fail("Illegal argument exception is expected.");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertNull(bystander.getId());
+        assertNull(artistDao.getArtists("Squarepusher"));
+    }
+
+    /**
+     * Tests {@link ArtistDao#addArtists(List)}.<p>
+     * Artist ID specified (actually, should be treated as wrong usage of DAO).
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void addArtistsWithId() {
+        artistDao.addArtists(Arrays.asList(new ArtistBean("Makyo"), new ArtistBean(42L, "Makyo", null)));
+    }
+
     /**
      * Tests {@link ArtistDao#getArtist(Long)}.<p>
      * Happy path.
@@ -147,6 +294,63 @@ public class ArtistDaoTest extends TestCase {
         assertNull(actual);
     }
 
+    /**
+     * Tests {@link ArtistDao#getArtist(Long)}.<p>
+     * Repeated lookup should be served from cache, mutating returned bean shouldn't affect cached one.
+     */
+    @Test
+    public void getArtistByIdCached() {
+        final ArtistBean first = artistDao.getArtist(4L);
+        final long hits = artistCache.getIdHitCount();
+
+        first.setTitle("Dirk Serries");
+        final ArtistBean second = artistDao.getArtist(4L);
+
+        assertEquals(hits + 1, artistCache.getIdHitCount());
+        assertNotSame(first, second);
+        assertEquals("Vidna Obmana", second.getTitle());
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtist(Long, java.util.Set)}.<p>
+     * Artist neighbourhood is fetched by a single query, cached artists are not fetched again.
+     */
+    @Test
+    public void getArtistByIdExpanded() {
+        final ArtistBean master = artistDao.getArtist(4L, EnumSet.allOf(ArtistDao.Relation.class));
+
+        assertEquals("Vidna Obmana", master.getTitle());
+        assertNull(master.getMaster());
+        assertNull(master.getAliases());
+        assertEquals(Arrays.asList(5L, 8L), artistIdsOf(master.getVariations()));
+        assertEquals("V.O.", master.getVariations().get(1).getTitle());
+        assertEquals(1L, queryCount("ArtistDao.getArtist"));
+
+        final ArtistBean variation = artistDao.getArtist(8L, EnumSet.of(ArtistDao.Relation.MASTER));
+
+        assertEquals("Vidna Obmana", variation.getMaster().getTitle());
+        assertNull(variation.getAliases());
+        assertNull(variation.getVariations());
+        assertEquals(1L, queryCount("ArtistDao.getArtist"));
+
+        final ArtistBean aliased = artistDao.getArtist(6L, EnumSet.of(ArtistDao.Relation.ALIASES));
+
+        assertEquals(new HashSet<>(Arrays.asList(3L, 7L)), new HashSet<>(artistIdsOf(aliased.getAliases())));
+        assertEquals(2L, queryCount("ArtistDao.getArtist"));
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtist(Long, java.util.Set)}.<p>
+     * Artist doesn't exist, though there are records that would be related to it.
+     */
+    @Test
+    public void getArtistByIdExpandedNotExists() {
+        dslContext.deleteFrom(G_ARTIST).where(G_ARTIST.ID.eq(1L)).execute();
+
+        assertNull(artistDao.getArtist(1L, EnumSet.allOf(ArtistDao.Relation.class)));
+        assertNull(artistDao.getArtist(100L, EnumSet.allOf(ArtistDao.Relation.class)));
+    }
+
     /**
      * Tests {@link ArtistDao#getArtist(String)}.<p>
      * Happy path.
@@ -191,6 +395,54 @@ public class ArtistDaoTest extends TestCase {
         assertNull(actual);
     }
 
+    /**
+     * Tests {@link ArtistDao#getArtist(String)}.<p>
+     * Cached title lookup shouldn't survive artist rename.
+     */
+    @Test
+    public void getArtistByTitleRenamed() {
+        final ArtistBean autechre = artistDao.getArtist("Autechre");
+        assertEquals(autechre.getId(), artistDao.getArtist("autechre").getId());
+
+        autechre.setTitle("Gescom");
+        artistDao.updateArtist(autechre);
+
+        assertNull(artistDao.getArtist("Autechre"));
+        assertEquals(autechre.getId(), artistDao.getArtist("Gescom").getId());
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtist(String)}.<p>
+     * Diacritics, case and extra whitespace don't matter, lowest ID wins.
+     */
+    @Test
+    public void getArtistByTitleNormalized() {
+        final ArtistBean expected = artistDao.addArtist(new ArtistBean("Sigur Rós"));
+        artistDao.addArtist(new ArtistBean("SIGUR ROS"));
+
+        assertEquals(expected.getId(), artistDao.getArtist(" sigur  ros ").getId());
+        assertEquals(Long.valueOf(2L), artistDao.getArtist("QUENCH").getId());
+        assertEquals(2, artistDao.getArtists("Sigur Ros").size());
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtists(String)}.<p>
+     * Lookup goes via normalized title, so it matches regardless of case and diacritics among many artists.
+     */
+    @Test
+    public void getArtistsByTitleNormalized() {
+        final List<ArtistBean> artists = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            artists.add(new ArtistBean("Artist #" + i));
+        }
+        artists.add(new ArtistBean("Artíst #999"));
+        artistDao.addArtists(artists);
+
+        final List<ArtistBean> actual = artistDao.getArtists("ARTIST #999");
+        assertEquals(Arrays.asList(artists.get(999).getId(), artists.get(1000).getId()), artistIdsOf(actual));
+        assertNull(artistDao.getArtists("artist #1000"));
+    }
+
     /**
      * Tests {@link ArtistDao#getArtists(String)}.<p>
      * Happy path.
@@ -226,6 +478,80 @@ public class ArtistDaoTest extends TestCase {
         assertNull(actual);
     }
 
+    /**
+     * Tests {@link ArtistDao#getArtists(java.util.Collection)}.<p>
+     * Artists are returned in requested order with master artist and aliases, all fetched by a single query.
+     */
+    @Test
+    public void getArtistsByIds() {
+        final List<ArtistBean> actual = artistDao.getArtists(Arrays.asList(8L, 6L, 100L, 8L, null, 1L));
+
+        assertEquals(Arrays.asList(8L, 6L, 1L), artistIdsOf(actual));
+
+        assertEquals("V.O.", actual.get(0).getTitle());
+        assertEquals("Vidna Obmana", actual.get(0).getMaster().getTitle());
+        assertNull(actual.get(0).getAliases());
+
+        assertNull(actual.get(1).getMaster());
+        assertEquals(new HashSet<>(Arrays.asList(3L, 7L)), new HashSet<>(artistIdsOf(actual.get(1).getAliases())));
+        assertEquals("Cane", actual.get(1).getAliases().get(artistIdsOf(actual.get(1).getAliases()).indexOf(7L))
+                .getTitle());
+
+        assertEquals(1L, queryCount("ArtistDao.getArtists"));
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtists(java.util.Collection)}.<p>
+     * Cached artists are not fetched again, IDs exceeding a single batch are fetched in chunks.
+     */
+    @Test
+    public void getArtistsByIdsChunked() {
+        final List<ArtistBean> artists = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            artists.add(new ArtistBean("Bulk #" + i));
+        }
+        artistDao.addArtists(artists);
+        artistCache.invalidate(artists.get(0).getId());
+
+        final List<Long> ids = artistIdsOf(artists);
+        assertEquals(ids, artistIdsOf(artistDao.getArtists(ids)));
+        assertEquals(1L, queryCount("ArtistDao.getArtists")); // the only invalidated one
+
+        for (Long id : ids) {
+            artistCache.invalidate(id);
+        }
+        assertEquals(ids, artistIdsOf(artistDao.getArtists(ids)));
+        assertEquals(1L + 3L, queryCount("ArtistDao.getArtists")); // batch size is 100
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtists(java.util.Collection)}.<p>
+     * None of requested artists exists.
+     */
+    @Test
+    public void getArtistsByIdsNotExist() {
+        assertNull(artistDao.getArtists(Arrays.asList(100L, 101L)));
+        assertNull(artistDao.getArtists(new ArrayList<>()));
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtistsByTitles(java.util.Collection)}.<p>
+     * First matching artist is returned per title, with master artist and aliases.
+     */
+    @Test
+    public void getArtistsByTitles() {
+        final List<ArtistBean> actual = artistDao.getArtistsByTitles(
+                Arrays.asList("funckarma", "Vidnaobmana", "Squarepusher", "QUENCH", "Quench"));
+
+        assertEquals(Arrays.asList(6L, 5L, 2L), artistIdsOf(actual));
+        assertEquals(2, actual.get(0).getAliases().size());
+        assertEquals("Vidna Obmana", actual.get(1).getMaster().getTitle());
+        assertNull(actual.get(2).getAliases());
+
+        assertEquals(2L, queryCount("ArtistDao.getArtistsByTitles")); // titles, then related artists
+        assertNull(artistDao.getArtistsByTitles(Arrays.asList("Squarepusher")));
+    }
+
     /**
      * Tests {@link ArtistDao#getArtistVariations(Long)}.<p>
      * Happy path.
@@ -414,4 +740,103 @@ public class ArtistDaoTest extends TestCase {
         artistDao.updateArtist(new ArtistBean("Another Electronic Musician"));
     }
 
+    /**
+     * Tests {@link ArtistDao#getArtistPage(String, Long, int)}.<p>
+     * Whole listing is walked page by page.
+     */
+    @Test
+    public void getArtistPage() {
+        ArtistPageBean actual = artistDao.getArtistPage(null, null, 3);
+        assertEquals(Arrays.asList(1L, 2L, 3L), artistIdsOf(actual.getArtists()));
+        assertEquals(Long.valueOf(3L), actual.getNext());
+
+        actual = artistDao.getArtistPage(null, actual.getNext(), 3);
+        assertEquals(Arrays.asList(4L, 5L, 6L), artistIdsOf(actual.getArtists()));
+        assertEquals(Long.valueOf(6L), actual.getNext());
+
+        actual = artistDao.getArtistPage(null, actual.getNext(), 3);
+        assertEquals(Arrays.asList(7L, 8L), artistIdsOf(actual.getArtists()));
+        assertNull(actual.getNext());
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtistPage(String, Long, int)}.<p>
+     * Listing filtered by title, exact page size.
+     */
+    @Test
+    public void getArtistPageByTitle() {
+        ArtistPageBean actual = artistDao.getArtistPage("Quench", null, 2);
+        assertEquals(Arrays.asList(2L, 3L), artistIdsOf(actual.getArtists()));
+        assertNull(actual.getNext());
+
+        actual = artistDao.getArtistPage("Quench", 3L, 2);
+        assertNull(actual.getArtists());
+        assertNull(actual.getNext());
+    }
+
+    /**
+     * Tests {@link ArtistDao#getArtistPage(String, Long, int)}.<p>
+     * Title filter is case and diacritics insensitive, same as title lookup.
+     */
+    @Test
+    public void getArtistPageByTitleNormalized() {
+        final ArtistPageBean actual = artistDao.getArtistPage(" quench ", null, 2);
+        assertEquals(Arrays.asList(2L, 3L), artistIdsOf(actual.getArtists()));
+        assertEquals(artistIdsOf(artistDao.getArtists("quench")), artistIdsOf(actual.getArtists()));
+    }
+
+    /**
+     * Tests {@link ArtistDao#exportArtists(String, java.util.function.Consumer)}.<p>
+     * Streamed artists should match paginated listing.
+     */
+    @Test
+    public void exportArtists() {
+        final List<ArtistBean> artists = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            artists.add(new ArtistBean("Export #" + i));
+        }
+        artistDao.addArtists(artists);
+
+        final List<Long> expected = new ArrayList<>();
+        ArtistPageBean page = artistDao.getArtistPage(null, null, 1000);
+        expected.addAll(artistIdsOf(page.getArtists()));
+        while (page.getNext() != null) {
+            page = artistDao.getArtistPage(null, page.getNext(), 1000);
+            expected.addAll(artistIdsOf(page.getArtists()));
+        }
+
+        final List<Long> actual = new ArrayList<>();
+        final long count = artistDao.exportArtists(null, artist -> actual.add(artist.getId()));
+
+        assertEquals(2508L, count);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Tests {@link ArtistDao#exportArtists(String, java.util.function.Consumer)}.<p>
+     * Title filter is case and diacritics insensitive, same as title lookup.
+     */
+    @Test
+    public void exportArtistsByTitle() {
+        final List<Long> actual = new ArrayList<>();
+        final long count = artistDao.exportArtists("QUENCH", artist -> actual.add(artist.getId()));
+
+        assertEquals(2L, count);
+        assertEquals(Arrays.asList(2L, 3L), actual);
+    }
+
+    private long queryCount(String operation) {
+        final Timer timer = meterRegistry.find("gravifon.db.query").tags("operation", operation).timer();
+        return timer == null ? 0L : timer.count();
+    }
+
+    private static List<Long> artistIdsOf(List<ArtistBean> artists) {
+        final List<Long> ids = new ArrayList<>(artists.size());
+        for (ArtistBean artist : artists) {
+            ids.add(artist.getId());
+        }
+
+        return ids;
+    }
+
 }
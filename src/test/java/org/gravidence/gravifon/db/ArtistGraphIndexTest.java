@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Integration tests for {@link ArtistGraphIndex}.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArtistGraphIndexTest extends TestCase {
+
+    @Autowired
+    private ArtistGraphIndex artistGraphIndex;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private ArtistCanonicalizer artistCanonicalizer;
+
+    /**
+     * Tests {@link ArtistGraphIndex#init()}.<p>
+     * Relations from initial data set should be indexed.
+     */
+    @Test
+    public void init() {
+        assertEquals(4L, artistGraphIndex.getMaster(5L));
+        assertEquals(4L, artistGraphIndex.getMaster(8L));
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistGraphIndex.getMaster(4L));
+        assertEquals(Arrays.asList(5L, 8L), sorted(artistGraphIndex.getVariations(4L)));
+        assertEquals(Arrays.asList(3L, 7L), sorted(artistGraphIndex.getAliases(6L)));
+        assertEquals(Arrays.asList(6L), sorted(artistGraphIndex.getAliasMasters(7L)));
+        assertEquals(0, artistGraphIndex.getAliases(1L).length);
+    }
+
+    /**
+     * Tests {@link ArtistGraphIndex#getIdentities(long)}.<p>
+     * Identities are reachable in any direction, supplied artist goes first.
+     */
+    @Test
+    public void getIdentities() {
+        long[] actual = artistGraphIndex.getIdentities(8L);
+        assertEquals(8L, actual[0]);
+        assertEquals(Arrays.asList(4L, 5L, 8L), sorted(actual));
+
+        actual = artistGraphIndex.getIdentities(3L);
+        assertEquals(3L, actual[0]);
+        assertEquals(Arrays.asList(3L, 6L, 7L), sorted(actual));
+
+        assertEquals(Arrays.asList(1L), sorted(artistGraphIndex.getIdentities(1L)));
+    }
+
+    /**
+     * Tests {@link ArtistGraphIndex#getPrincipal(long)}.<p>
+     * Variations and aliases roll up to masters, transitively, relation cycles roll up to their lowest artist.
+     */
+    @Test
+    public void getPrincipal() {
+        assertEquals(4L, artistGraphIndex.getPrincipal(8L));
+        assertEquals(6L, artistGraphIndex.getPrincipal(7L));
+        assertEquals(6L, artistGraphIndex.getPrincipal(6L));
+        assertEquals(1L, artistGraphIndex.getPrincipal(1L));
+
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, 7L));
+        assertEquals(6L, artistGraphIndex.getPrincipal(ae.getId()));
+
+        artistDao.addArtistAlias(7L, 6L);
+        assertEquals(6L, artistGraphIndex.getPrincipal(6L));
+        assertEquals(6L, artistGraphIndex.getPrincipal(7L));
+        assertEquals(6L, artistGraphIndex.getPrincipal(ae.getId()));
+        assertEquals(6L, artistCanonicalizer.canonicalId(7L));
+        assertEquals(6L, artistCanonicalizer.canonicalId(ae.getId()));
+    }
+
+    /**
+     * Tests {@link ArtistGraphIndex#getPrincipal(long)} on a long variation chain.<p>
+     * Chain should be followed to its head, not to an intermediate artist.
+     */
+    @Test
+    public void getPrincipalLongChain() {
+        long master = 1L;
+        for (int i = 0; i < 20; i++) {
+            master = artistDao.addArtist(new ArtistBean(null, "Chain " + i, null, master)).getId();
+        }
+
+        assertEquals(1L, artistGraphIndex.getPrincipal(master));
+        assertEquals(1L, artistCanonicalizer.canonicalId(master));
+    }
+
+    /**
+     * Tests that {@link ArtistDao} write methods keep the index up to date.
+     */
+    @Test
+    public void maintainedByDao() {
+        final ArtistBean ae = artistDao.addArtist(new ArtistBean(null, "AE", null, 1L));
+        assertEquals(1L, artistGraphIndex.getMaster(ae.getId()));
+
+        artistDao.addArtistAlias(6L, 1L);
+        assertEquals(Arrays.asList(1L, 3L, 6L, 7L, ae.getId()), sorted(artistGraphIndex.getIdentities(ae.getId())));
+
+        final ArtistBean vo = artistDao.getArtist(8L);
+        vo.setMaster(null);
+        artistDao.updateArtist(vo);
+        assertEquals(ArtistGraphIndex.NO_ARTIST, artistGraphIndex.getMaster(8L));
+        assertEquals(Arrays.asList(5L), sorted(artistGraphIndex.getVariations(4L)));
+    }
+
+    private static List<Long> sorted(long[] ids) {
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+
+        final Long[] boxed = new Long[copy.length];
+        for (int i = 0; i < copy.length; i++) {
+            boxed[i] = copy[i];
+        }
+
+        return Arrays.asList(boxed);
+    }
+
+}
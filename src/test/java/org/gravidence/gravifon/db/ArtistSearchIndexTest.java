@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Integration tests for {@link ArtistSearchIndex}.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArtistSearchIndexTest extends TestCase {
+
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ne", "ra", "sto", "vid", "na", "ob", "ma", "que",
+            "nch", "fun", "ck", "ar", "au", "te", "chre", "bo", "la", "pl", "aid", "s", "x"};
+
+    @Autowired
+    private ArtistSearchIndex artistSearchIndex;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    /**
+     * Tests {@link ArtistSearchIndex#prefix(String, int)}.<p>
+     * Titles and title words are completed, punctuation, spaces and case don't matter.
+     */
+    @Test
+    public void prefix() {
+        assertEquals(Arrays.asList(4L, 5L), asList(artistSearchIndex.prefix("Vid", 10)));
+        assertEquals(Arrays.asList(4L, 5L), asList(artistSearchIndex.prefix("vidna ob", 10)));
+        assertEquals(Arrays.asList(4L), asList(artistSearchIndex.prefix("obm", 10)));
+        assertEquals(Arrays.asList(8L), asList(artistSearchIndex.prefix("v.o", 10)));
+        assertEquals(Arrays.asList(2L), asList(artistSearchIndex.prefix("QUENCH", 1)));
+        assertEquals(0, artistSearchIndex.prefix("Rammstein", 10).length);
+        assertEquals(0, artistSearchIndex.prefix(" ", 10).length);
+    }
+
+    /**
+     * Tests {@link ArtistSearchIndex#prefix(String, int)}.<p>
+     * Shorter titles rank higher.
+     */
+    @Test
+    public void prefixRanking() {
+        final ArtistBean longer = artistDao.addArtist(new ArtistBean("Autechre & Hafler Trio"));
+        final ArtistBean shorter = artistDao.addArtist(new ArtistBean("Aut"));
+
+        assertEquals(Arrays.asList(shorter.getId(), 1L, longer.getId()),
+                asList(artistSearchIndex.prefix("au", 10)));
+    }
+
+    /**
+     * Tests {@link ArtistSearchIndex#fuzzy(String, int)}.<p>
+     * Misspelled titles are found, more similar first.
+     */
+    @Test
+    public void fuzzy() {
+        assertEquals(Arrays.asList(1L), asList(artistSearchIndex.fuzzy("Autecre", 10)));
+        assertEquals(Arrays.asList(4L, 5L), asList(artistSearchIndex.fuzzy("Vidna Obmanna", 10)));
+        assertEquals(Arrays.asList(6L), asList(artistSearchIndex.fuzzy("Funkarma", 10)));
+        assertEquals(0, artistSearchIndex.fuzzy("Rammstein", 10).length);
+    }
+
+    /**
+     * Tests {@link ArtistSearchIndex#search(String, ArtistSearchIndex.Mode, int)}.<p>
+     * Prefix matches are followed by fuzzy ones.
+     */
+    @Test
+    public void searchAuto() {
+        final ArtistBean variation = artistDao.addArtist(new ArtistBean("Funckarma Live"));
+
+        assertEquals(Arrays.asList(6L, variation.getId()),
+                asList(artistSearchIndex.search("funckarma", ArtistSearchIndex.Mode.AUTO, 10)));
+        assertEquals(Arrays.asList(6L, variation.getId()),
+                asList(artistSearchIndex.search("funkarma", ArtistSearchIndex.Mode.AUTO, 10)));
+    }
+
+    /**
+     * Tests index maintenance via {@link ArtistDao} write methods.
+     */
+    @Test
+    public void maintainedByDao() {
+        final ArtistBean plaid = artistDao.addArtist(new ArtistBean("Plaid"));
+        assertEquals(Arrays.asList(plaid.getId()), asList(artistSearchIndex.prefix("pla", 10)));
+
+        plaid.setTitle("Gescom");
+        artistDao.updateArtist(plaid);
+        assertEquals(0, artistSearchIndex.prefix("pla", 10).length);
+        assertEquals(Arrays.asList(plaid.getId()), asList(artistSearchIndex.prefix("ges", 10)));
+
+        final List<ArtistBean> found = artistDao.searchArtists("gescom", ArtistSearchIndex.Mode.AUTO, 10);
+        assertEquals(1, found.size());
+        assertEquals("Gescom", found.get(0).getTitle());
+    }
+
+    /**
+     * Tests {@link ArtistSearchIndex#load()}.<p>
+     * Loaded index replaces the previous one, entries missing from the database are gone.
+     */
+    @Test
+    public void load() {
+        artistSearchIndex.artistWritten(1000L, "Plaid");
+        assertEquals(Arrays.asList(1000L), asList(artistSearchIndex.prefix("pla", 10)));
+
+        artistSearchIndex.load();
+        assertEquals(0, artistSearchIndex.prefix("pla", 10).length);
+        assertEquals(Arrays.asList(4L, 5L), asList(artistSearchIndex.prefix("Vid", 10)));
+        assertEquals(Arrays.asList(1L), asList(artistSearchIndex.fuzzy("Autecre", 10)));
+    }
+
+    /**
+     * Tests {@link ArtistSearchIndex#prefix(String, int)} against brute force matching
+     * while titles are randomly written and rewritten.
+     */
+    @Test
+    public void prefixRandomWrites() {
+        final Random random = new Random(42);
+        final String[] titles = new String[2000];
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < titles.length; i++) {
+                if (titles[i] == null || random.nextBoolean()) {
+                    titles[i] = randomTitle(random);
+                    artistSearchIndex.artistWritten(1000L + i, titles[i]);
+                }
+            }
+
+            for (int q = 0; q < 200; q++) {
+                final String key = randomTitle(random).replace(" ", "");
+                final String query = key.substring(0, Math.min(key.length(), 1 + random.nextInt(3)));
+                final Set<Long> expected = new TreeSet<>();
+                for (int i = 0; i < titles.length; i++) {
+                    // title is completed from its start and from every word start
+                    for (int start = 0; start >= 0; start = titles[i].indexOf(' ', start + 1)) {
+                        if (titles[i].substring(start).replace(" ", "").startsWith(query)) {
+                            expected.add(1000L + i);
+                        }
+                    }
+                }
+                final Set<Long> actual = new TreeSet<>();
+                for (long id : artistSearchIndex.prefix(query, Integer.MAX_VALUE)) {
+                    if (id >= 1000L) {
+                        actual.add(id);
+                    }
+                }
+                assertEquals(query, expected, actual);
+            }
+        }
+    }
+
+    private static String randomTitle(Random random) {
+        final StringBuilder title = new StringBuilder();
+        final int words = 1 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                title.append(' ');
+            }
+            final int syllables = 1 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++) {
+                title.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+        }
+
+        return title.toString();
+    }
+
+    private static List<Long> asList(long[] ids) {
+        final List<Long> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            result.add(id);
+        }
+
+        return result;
+    }
+
+}
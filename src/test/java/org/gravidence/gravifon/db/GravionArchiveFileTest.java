@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link GravionArchiveFile}.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(JUnit4.class)
+public class GravionArchiveFileTest extends TestCase {
+
+    private static final Path FILE = Paths.get("target/gravion-archive-file-test.gra");
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(FILE);
+    }
+
+    /**
+     * Tests {@link GravionArchiveFile.Writer} and {@link GravionArchiveFile.Mapped} decoding.<p>
+     * Every column should be decoded as written, zone maps should bound blocks' users and listening start times.
+     */
+    @Test
+    public void writeDecode() throws IOException {
+        final int rows = 10_000;
+        final int blockSize = 1000;
+        final long[] dictionary = {5L, 1L << 40, 7L, 3_000_000_000L};
+        final long[] users = new long[rows];
+        final long[] begins = new long[rows];
+        final long[] ends = new long[rows];
+        final Integer[] durations = new Integer[rows];
+        final long[] tracks = new long[rows];
+        final long[] ids = new long[rows];
+
+        final Random random = new Random(42L);
+        long user = 1L;
+        long begin = 1_491_000_000_000L;
+        for (int i = 0; i < rows; i++) {
+            if (random.nextInt(100) == 0) {
+                user += 1 + random.nextInt(1000);
+                begin = 1_491_000_000_000L + random.nextInt(1_000_000);
+            }
+            begin += random.nextInt(10) == 0 ? random.nextInt(100_000_000) : 180_000L + random.nextInt(3);
+            users[i] = user;
+            begins[i] = begin;
+            ends[i] = begin + (random.nextBoolean() ? 180_000L : -1000L);
+            durations[i] = random.nextInt(5) == 0 ? null : random.nextInt(1000);
+            tracks[i] = dictionary[random.nextInt(dictionary.length)];
+            ids[i] = random.nextInt(rows * 10);
+        }
+
+        try (GravionArchiveFile.Writer writer = new GravionArchiveFile.Writer(FILE, dictionary, blockSize)) {
+            for (int i = 0; i < rows; i++) {
+                writer.add(ids[i], users[i], tracks[i], begins[i], ends[i], durations[i]);
+            }
+            writer.finish();
+        }
+
+        final GravionArchiveFile.Mapped file = GravionArchiveFile.open(FILE);
+        assertEquals(rows, file.rows());
+        assertEquals(rows / blockSize, file.blocks());
+        assertEquals(dictionary.length, file.tracks());
+        assertTrue(file.size() < rows * 12);
+
+        final long[] longs = new long[blockSize];
+        final long[] decodedBegins = new long[blockSize];
+        final int[] ints = new int[blockSize];
+        for (int block = 0; block < file.blocks(); block++) {
+            final int offset = block * blockSize;
+            assertEquals(blockSize, file.rows(block));
+
+            assertEquals(blockSize, file.decodeLongs(block, GravionArchiveFile.USER, longs));
+            for (int i = 0; i < blockSize; i++) {
+                assertEquals(users[offset + i], longs[i]);
+            }
+            file.decodeLongs(block, GravionArchiveFile.BEGIN, decodedBegins);
+            for (int i = 0; i < blockSize; i++) {
+                assertEquals(begins[offset + i], decodedBegins[i]);
+            }
+            file.decodeEnds(block, decodedBegins, longs);
+            for (int i = 0; i < blockSize; i++) {
+                assertEquals(ends[offset + i], longs[i]);
+            }
+            file.decodeLongs(block, GravionArchiveFile.ID, longs);
+            for (int i = 0; i < blockSize; i++) {
+                assertEquals(ids[offset + i], longs[i]);
+            }
+            file.decodeInts(block, GravionArchiveFile.DURATION, ints);
+            for (int i = 0; i < blockSize; i++) {
+                assertEquals(durations[offset + i] == null ? -1 : durations[offset + i].intValue(), ints[i]);
+            }
+            file.decodeInts(block, GravionArchiveFile.TRACK, ints);
+            for (int i = 0; i < blockSize; i++) {
+                assertEquals(tracks[offset + i], file.trackId(ints[i]));
+            }
+
+            final long first = users[offset];
+            final long last = users[offset + blockSize - 1];
+            assertTrue(file.mayContain(block, first, first, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertTrue(file.mayContain(block, last, last, begins[offset], begins[offset] + 1L));
+            assertFalse(file.mayContain(block, last + 1L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertFalse(file.mayContain(block, Long.MIN_VALUE, first - 1L, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertFalse(file.mayContain(block, first, last, Long.MIN_VALUE, 1_491_000_000_000L));
+        }
+    }
+
+    /**
+     * Tests {@link GravionArchiveFile.Writer} input checks.<p>
+     * Unsorted rows and tracks out of dictionary should be rejected, unfinished file should be discarded.
+     */
+    @Test
+    public void writeInvalid() throws IOException {
+        try (GravionArchiveFile.Writer writer = new GravionArchiveFile.Writer(FILE, new long[] {1L}, 10)) {
+            writer.add(1L, 2L, 1L, 1000L, 2000L, null);
+            try {
+                writer.add(2L, 1L, 1L, 1000L, 2000L, null);
+                fail();
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                writer.add(2L, 2L, 2L, 1000L, 2000L, null);
+                fail();
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        assertFalse(Files.exists(FILE));
+        assertFalse(Files.exists(Paths.get(FILE + ".tmp")));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.util.LongLongHashMap;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Integration tests for {@link GravionArchive} scans over archived partitions.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "org.gravidence.gravifon.gravion.archive.path=target/gravion-archive-scan-test",
+        "org.gravidence.gravifon.gravion.archive.block-size=16"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class GravionArchiveTest extends TestCase {
+
+    @Autowired
+    private GravionArchive gravionArchive;
+
+    @Autowired
+    private GravionPartitions gravionPartitions;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(Paths.get("target/gravion-archive-scan-test").toFile());
+    }
+
+    /**
+     * Tests {@link GravionArchive#getArtistPlays(Long, Date, Date)}
+     * and {@link GravionArchive#getUserDurations(Date, Date)}.<p>
+     * Aggregates over archive files should match archived gravions, filters should be applied.
+     */
+    @Test
+    public void aggregate() throws IOException {
+        final long start = Timestamp.valueOf("2017-03-01 00:00:00").getTime();
+        final List<GravionBean> gravions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final long begin = start + i * 3_600_000L;
+            gravions.add(new GravionBean(1L + i % 2, 1L + i % 3, new Date(begin), new Date(begin + 200_000L),
+                    i % 4 == 0 ? null : 100));
+        }
+        gravionDao.addGravions(gravions);
+
+        assertTrue(gravionArchive.getArtistPlays(null, new Date(0L), new Date()).isEmpty());
+        assertEquals(2, gravionPartitions.archive(YearMonth.of(2017, 5)));
+
+        final Date from = new Date(start);
+        final Date to = Timestamp.valueOf("2017-05-01 00:00:00");
+        LongLongHashMap plays = gravionArchive.getArtistPlays(1L, from, to);
+        assertEquals(1, plays.size());
+        assertEquals(50L + 3L, plays.get(4L, 0L));
+        plays = gravionArchive.getArtistPlays(null, from, to);
+        assertEquals(100L + 3L, plays.get(4L, 0L));
+        plays = gravionArchive.getArtistPlays(2L, new Date(start + 10 * 3_600_000L), new Date(start + 20 * 3_600_000L));
+        assertEquals(5L, plays.get(4L, 0L));
+        assertTrue(gravionArchive.getArtistPlays(1L, to, new Date()).isEmpty());
+
+        final LongLongHashMap durations = gravionArchive.getUserDurations(from, to);
+        assertEquals(2, durations.size());
+        // 25 of 50 user 1 gravions have no duration (time span of 200 seconds is taken), plus seeded gravions
+        assertEquals(25L * 200L + 25L * 100L + 1943L, durations.get(1L, 0L));
+        assertEquals(50L * 100L, durations.get(2L, 0L));
+        assertTrue(gravionArchive.getUserDurations(from, from).isEmpty());
+    }
+
+}
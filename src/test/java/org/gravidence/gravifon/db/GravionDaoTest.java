@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Integration tests for {@link GravionDao}.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class GravionDaoTest extends TestCase {
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    /**
+     * Tests {@link GravionDao#getGravions(Long, Date, Date)}.<p>
+     * Happy path, only gravions within time range are fetched.
+     */
+    @Test
+    public void getGravions() {
+        final List<GravionBean> actual = gravionDao.getGravions(1L,
+                Timestamp.valueOf("2017-04-15 12:50:00"), Timestamp.valueOf("2017-04-15 13:05:00"));
+
+        assertNotNull(actual);
+        assertEquals(2, actual.size());
+        assertEquals(Long.valueOf(2L), actual.get(0).getTrackId());
+        assertEquals(Long.valueOf(1L), actual.get(1).getTrackId());
+        assertEquals(Timestamp.valueOf("2017-04-15 12:59:00").getTime(), actual.get(1).getBegin().getTime());
+    }
+
+    /**
+     * Tests {@link GravionDao#getGravions(Long, Date, Date)}.<p>
+     * Not found.
+     */
+    @Test
+    public void getGravionsNotExist() {
+        assertNull(gravionDao.getGravions(2L, new Date(0L), new Date()));
+    }
+
+    /**
+     * Tests {@link GravionDao#addGravions(List)}.<p>
+     * Happy path, number of gravions exceeds single statement batch.
+     */
+    @Test
+    public void addGravions() {
+        final long begin = Timestamp.valueOf("2017-05-01 00:00:00").getTime();
+        final List<GravionBean> expected = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            expected.add(new GravionBean(2L, 1L + i % 3, new Date(begin + i * 60_000L),
+                    new Date(begin + i * 60_000L + 30_000L), 30));
+        }
+
+        assertEquals(expected.size(), gravionDao.addGravions(expected));
+
+        final List<GravionBean> actual = gravionDao.getGravions(2L, new Date(begin), new Date(begin + 250 * 60_000L));
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertNotNull(actual.get(i).getId());
+            assertEquals(expected.get(i).getTrackId(), actual.get(i).getTrackId());
+            assertEquals(expected.get(i).getBegin(), actual.get(i).getBegin());
+            assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+            assertEquals(expected.get(i).getDuration(), actual.get(i).getDuration());
+        }
+    }
+
+    /**
+     * Tests {@link GravionDao#addGravions(List)}.<p>
+     * Unknown track, nothing should be written.
+     */
+    @Test
+    public void addGravionsNoTrack() {
+        final Date now = new Date();
+        try {
+            gravionDao.addGravions(Arrays.asList(
+                    new GravionBean(2L, 1L, now, now, 0),
+                    new GravionBean(2L, Long.MAX_VALUE, now, now, 0)));
+            fail("Data integrity violation exception is expected.");
+        }
+        catch (DataIntegrityViolationException e) {
+            // expected
+        }
+
+        assertNull(gravionDao.getGravions(2L, new Date(0L), new Date(now.getTime() + 1)));
+    }
+
+    /**
+     * Tests {@link GravionDao#addGravions(List)}.<p>
+     * Stored gravions and ones repeated within the list are skipped, rest of them is written.
+     */
+    @Test
+    public void addGravionsDuplicates() {
+        final Date stored = Timestamp.valueOf("2017-04-15 12:44:00");
+        final Date begin = Timestamp.valueOf("2017-05-01 00:00:00");
+
+        assertEquals(1, gravionDao.addGravions(Arrays.asList(
+                new GravionBean(1L, 1L, stored, stored, 0),
+                new GravionBean(1L, 2L, begin, begin, 0),
+                new GravionBean(1L, 2L, begin, begin, 0))));
+        assertEquals(0, gravionDao.addGravions(Arrays.asList(new GravionBean(1L, 2L, begin, begin, 0))));
+
+        final List<GravionBean> actual = gravionDao.getGravions(1L, new Date(0L), new Date());
+        assertNotNull(actual);
+        assertEquals(4, actual.size());
+    }
+
+    /**
+     * Tests {@link GravionDao#addGravions(List, Collection)}.<p>
+     * Suspected duplicates are looked up, stored ones are skipped.
+     */
+    @Test
+    public void addGravionsSuspects() {
+        final Date stored = Timestamp.valueOf("2017-04-15 12:59:00");
+        final Date begin = Timestamp.valueOf("2017-05-01 00:00:00");
+        final GravionBean duplicate = new GravionBean(1L, 1L, stored, stored, 0);
+        final GravionBean suspect = new GravionBean(1L, 3L, stored, stored, 0);
+
+        assertEquals(2, gravionDao.addGravions(
+                Arrays.asList(duplicate, suspect, new GravionBean(2L, 2L, begin, begin, 0)),
+                Arrays.asList(duplicate, suspect)));
+
+        assertEquals(4, gravionDao.getGravions(1L, new Date(0L), new Date()).size());
+        assertEquals(1, gravionDao.getGravions(2L, new Date(0L), new Date()).size());
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.gravidence.gravidat.model.Tables.G_GRAVION;
+
+/**
+ * Integration tests for {@link GravionPartitions} and partitioned {@link GravionDao} reads and writes.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "org.gravidence.gravifon.gravion.archive.path=target/gravion-archive-test"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class GravionPartitionsTest extends TestCase {
+
+    private static final Path ARCHIVE = Paths.get("target/gravion-archive-test");
+
+    @Autowired
+    private GravionPartitions gravionPartitions;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private StatsDao statsDao;
+
+    @Autowired
+    private GravionArchive gravionArchive;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(ARCHIVE.toFile());
+    }
+
+    /**
+     * Tests legacy <code>G_GRAVION</code> migration on startup.<p>
+     * Seeded gravions should be moved to April 2017 partition keeping their IDs, new gravions should get greater IDs.
+     */
+    @Test
+    public void migrate() {
+        assertEquals(0, dslContext.fetchCount(G_GRAVION));
+        assertEquals(Arrays.asList(YearMonth.of(2017, 4)), months(gravionPartitions.getPartitions()));
+        assertEquals(3, dslContext.fetchCount(DSL.table(DSL.name("G_GRAVION_201704"))));
+
+        final List<GravionBean> seeded = gravionDao.getGravions(1L,
+                Timestamp.valueOf("2017-04-15 00:00:00"), Timestamp.valueOf("2017-04-16 00:00:00"));
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(seeded));
+
+        assertEquals(1, gravionDao.addGravions(Arrays.asList(gravion(1L, 2L, "2017-04-15 13:05:00"))));
+        final List<GravionBean> added = gravionDao.getGravions(1L,
+                Timestamp.valueOf("2017-04-15 13:05:00"), Timestamp.valueOf("2017-04-16 00:00:00"));
+        assertEquals(1, added.size());
+        assertTrue(added.get(0).getId() > 3L);
+    }
+
+    /**
+     * Tests partitioned writes and {@link GravionPartitions#plan(Date, Date)}.<p>
+     * Gravions should be routed to partitions of their months, queries should touch overlapping partitions only.
+     */
+    @Test
+    public void partitionedHistory() {
+        final List<GravionBean> gravions = Arrays.asList(
+                gravion(1L, 1L, "2017-05-01 00:00:00"),
+                gravion(1L, 2L, "2017-03-31 23:59:59"),
+                gravion(2L, 1L, "2017-05-20 10:00:00"),
+                gravion(1L, 2L, "2017-06-10 10:00:00"));
+        assertEquals(4, gravionDao.addGravions(gravions));
+        assertEquals(0, gravionDao.addGravions(gravions));
+
+        assertEquals(Arrays.asList(YearMonth.of(2017, 3), YearMonth.of(2017, 4), YearMonth.of(2017, 5),
+                YearMonth.of(2017, 6)), months(gravionPartitions.getPartitions()));
+        assertEquals(2, dslContext.fetchCount(DSL.table(DSL.name("G_GRAVION_201705"))));
+
+        assertEquals(Arrays.asList(YearMonth.of(2017, 4)), months(gravionPartitions.plan(
+                Timestamp.valueOf("2017-04-10 00:00:00"), Timestamp.valueOf("2017-05-01 00:00:00"))));
+        assertEquals(Arrays.asList(YearMonth.of(2017, 3), YearMonth.of(2017, 4), YearMonth.of(2017, 5)),
+                months(gravionPartitions.plan(
+                        Timestamp.valueOf("2017-03-31 00:00:00"), Timestamp.valueOf("2017-05-01 00:00:01"))));
+        assertTrue(gravionPartitions.plan(
+                Timestamp.valueOf("2017-07-01 00:00:00"), Timestamp.valueOf("2018-01-01 00:00:00")).isEmpty());
+
+        final List<GravionBean> history = gravionDao.getGravions(1L,
+                Timestamp.valueOf("2017-03-01 00:00:00"), Timestamp.valueOf("2017-06-01 00:00:00"));
+        assertEquals(5, history.size());
+        assertEquals(Timestamp.valueOf("2017-03-31 23:59:59").getTime(), history.get(0).getBegin().getTime());
+        assertEquals(Timestamp.valueOf("2017-05-01 00:00:00").getTime(), history.get(4).getBegin().getTime());
+
+        assertNull(gravionDao.getGravions(2L,
+                Timestamp.valueOf("2017-03-01 00:00:00"), Timestamp.valueOf("2017-05-20 10:00:00")));
+    }
+
+    /**
+     * Tests {@link GravionPartitions#archive(YearMonth)}.<p>
+     * Old partitions should be written to archive files and dropped, their rollups should survive rebuild.
+     */
+    @Test
+    public void archive() throws IOException {
+        gravionDao.addGravions(Arrays.asList(gravion(1L, 1L, "2017-03-10 10:00:00"),
+                gravion(1L, 2L, "2017-05-10 10:00:00")));
+
+        assertEquals(2, gravionPartitions.archive(YearMonth.of(2017, 5)));
+        assertEquals(0, gravionPartitions.archive(YearMonth.of(2017, 5)));
+
+        assertEquals(Arrays.asList(YearMonth.of(2017, 5)), months(gravionPartitions.getPartitions()));
+        assertNull(gravionDao.getGravions(1L,
+                Timestamp.valueOf("2017-03-01 00:00:00"), Timestamp.valueOf("2017-05-01 00:00:00")));
+        assertEquals(1, gravionDao.getGravions(1L,
+                Timestamp.valueOf("2017-03-01 00:00:00"), Timestamp.valueOf("2017-06-01 00:00:00")).size());
+        assertTrue(gravionPartitions.isArchived(YearMonth.of(2017, 4)));
+        assertFalse(gravionPartitions.isArchived(YearMonth.of(2017, 5)));
+
+        final List<Path> files;
+        try (Stream<Path> list = Files.list(ARCHIVE)) {
+            files = list.sorted().collect(Collectors.toList());
+        }
+        assertEquals(2, files.size());
+        final GravionArchiveFile.Mapped april = GravionArchiveFile.open(files.get(1));
+        assertEquals(3L, april.rows());
+        final long[] ids = new long[april.blockSize()];
+        final long[] begins = new long[april.blockSize()];
+        final int[] durations = new int[april.blockSize()];
+        assertEquals(3, april.decodeLongs(0, GravionArchiveFile.ID, ids));
+        april.decodeLongs(0, GravionArchiveFile.BEGIN, begins);
+        april.decodeInts(0, GravionArchiveFile.DURATION, durations);
+        assertEquals(1L, ids[0]);
+        assertEquals(Timestamp.valueOf("2017-04-15 12:44:00").getTime(), begins[0]);
+        assertEquals(548, durations[0]);
+
+        statsDao.rebuild(LocalDate.of(2017, 4, 1), LocalDate.of(2017, 5, 31));
+        assertEquals(3L, statsDao.getTopArtists(1L, LocalDate.of(2017, 4, 15), LocalDate.of(2017, 4, 15), 1)
+                .get(0).getPlays());
+    }
+
+    /**
+     * Tests {@link GravionPartitions#archive(YearMonth)} against concurrent writes.<p>
+     * Partition should not be archived while a writer holds its lock, gravions written meanwhile should
+     * be archived along with the rest. Writes to other months should not wait for archiving.
+     */
+    @Test
+    public void archiveWhileWriting() throws Exception {
+        gravionDao.addGravions(Arrays.asList(gravion(1L, 1L, "2017-03-10 10:00:00")));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<Integer> archived;
+        final NavigableMap<YearMonth, GravionPartitions.Partition> locked =
+                gravionPartitions.acquire(Arrays.asList(YearMonth.of(2017, 3)));
+        try {
+            archived = executor.submit(() -> gravionPartitions.archive(YearMonth.of(2017, 4)));
+            try {
+                archived.get(500L, TimeUnit.MILLISECONDS);
+                fail("Partition archived while written to");
+            }
+            catch (TimeoutException e) {
+                // expected
+            }
+            assertEquals(1, executor.submit(() -> gravionDao.addGravions(
+                    Arrays.asList(gravion(1L, 2L, "2017-06-11 10:00:00")))).get(10L, TimeUnit.SECONDS).intValue());
+            assertEquals(1, gravionDao.addGravions(Arrays.asList(gravion(1L, 2L, "2017-03-11 10:00:00"))));
+        }
+        finally {
+            gravionPartitions.release(locked.values());
+            executor.shutdown();
+        }
+
+        assertEquals(1, archived.get().intValue());
+        assertEquals(2L, dslContext.select(DSL.field(DSL.name("GRAVIONS"), Long.class))
+                .from(GravionPartitions.ARCHIVE)
+                .fetchOne().value1().longValue());
+    }
+
+    /**
+     * Tests {@link GravionPartitions#archive(YearMonth)} recovery.<p>
+     * Registered file of a partition that failed to be dropped should be replaced, not duplicated.
+     */
+    @Test
+    public void archiveRecovery() throws IOException {
+        gravionDao.addGravions(Arrays.asList(gravion(1L, 1L, "2017-03-10 10:00:00")));
+        final Long firstId = dslContext.select(DSL.min(DSL.field(DSL.name("ID"), Long.class)))
+                .from(DSL.table(DSL.name("G_GRAVION_201703")))
+                .fetchOne().value1();
+        final Path stale = ARCHIVE.resolve("G_GRAVION_201703-" + firstId + "-1.gra");
+        Files.createDirectories(ARCHIVE);
+        Files.createFile(stale);
+        dslContext.insertInto(GravionPartitions.ARCHIVE, DSL.field(DSL.name("PERIOD")), DSL.field(DSL.name("PATH")),
+                DSL.field(DSL.name("GRAVIONS")), DSL.field(DSL.name("ARCHIVED")))
+                .values(java.sql.Date.valueOf("2017-03-01"), stale.toAbsolutePath().toString(), 1L,
+                        new Timestamp(1L))
+                .execute();
+
+        assertEquals(1, gravionPartitions.archive(YearMonth.of(2017, 4)));
+
+        final List<String> paths = dslContext.select(DSL.field(DSL.name("PATH"), String.class))
+                .from(GravionPartitions.ARCHIVE)
+                .fetch().getValues(0, String.class);
+        assertEquals(1, paths.size());
+        assertFalse(paths.get(0).equals(stale.toAbsolutePath().toString()));
+        assertFalse(Files.exists(stale));
+        assertEquals(1L, GravionArchiveFile.open(Paths.get(paths.get(0))).rows());
+    }
+
+    /**
+     * Tests {@link GravionDao#addGravions(List)} of an archived month.<p>
+     * Gravion resubmitted after its month is archived should be skipped, new gravions of the month should be stored.
+     */
+    @Test
+    public void addArchivedGravions() throws IOException {
+        assertEquals(1, gravionDao.addGravions(Arrays.asList(gravion(1L, 1L, "2017-03-10 10:00:00"))));
+        assertEquals(1, gravionPartitions.archive(YearMonth.of(2017, 4)));
+
+        assertEquals(0, gravionDao.addGravions(Arrays.asList(gravion(1L, 1L, "2017-03-10 10:00:00"))));
+        assertEquals(1, gravionDao.addGravions(Arrays.asList(gravion(1L, 1L, "2017-03-10 11:00:00"))));
+        assertEquals(2, gravionDao.addGravions(Arrays.asList(gravion(1L, 2L, "2017-03-10 10:00:00"),
+                gravion(2L, 1L, "2017-03-10 10:00:00"), gravion(1L, 1L, "2017-03-10 10:00:00"))));
+
+        assertEquals(3, dslContext.fetchCount(DSL.table(DSL.name("G_GRAVION_201703"))));
+        assertEquals(1L, gravionArchive.scanPlays(1L, 2L, (userId, trackId, duration) -> { }));
+    }
+
+    private static List<YearMonth> months(List<GravionPartitions.Partition> partitions) {
+        final List<YearMonth> months = new ArrayList<>();
+        for (GravionPartitions.Partition partition : partitions) {
+            months.add(partition.month);
+        }
+        return months;
+    }
+
+    private static List<Long> ids(List<GravionBean> gravions) {
+        final List<Long> ids = new ArrayList<>();
+        for (GravionBean gravion : gravions) {
+            ids.add(gravion.getId());
+        }
+        return ids;
+    }
+
+    private static GravionBean gravion(Long userId, Long trackId, String begin) {
+        final Date start = Timestamp.valueOf(begin);
+        return new GravionBean(userId, trackId, start, new Date(start.getTime() + 300_000L), null);
+    }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.db;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.ArtistStatsBean;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.ListeningStatsBean;
+import org.gravidence.gravifon.web.model.TrackStatsBean;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * Integration tests for {@link StatsDao}.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StatsDaoTest extends TestCase {
+
+    private static final LocalDate DAY = LocalDate.of(2017, 4, 15);
+
+    @Autowired
+    private StatsDao statsDao;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private GravionPartitions gravionPartitions;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Tests {@link StatsDao#getListeningStats(Long, LocalDate, LocalDate, int)}.<p>
+     * Happy path.
+     */
+    @Test
+    public void getListeningStats() {
+        final ListeningStatsBean actual = statsDao.getListeningStats(1L, DAY, DAY, 10);
+
+        assertEquals(3L, actual.getPlays());
+        assertEquals(1943L, actual.getDuration());
+
+        assertEquals(1, actual.getTopArtists().size());
+        assertEquals(Long.valueOf(4L), actual.getTopArtists().get(0).getArtist().getId());
+        assertEquals("Vidna Obmana", actual.getTopArtists().get(0).getArtist().getTitle());
+        assertEquals(3L, actual.getTopArtists().get(0).getPlays());
+
+        assertEquals(2, actual.getTopTracks().size());
+        assertEquals(Long.valueOf(1L), actual.getTopTracks().get(0).getTrackId());
+        assertEquals(2L, actual.getTopTracks().get(0).getPlays());
+        assertEquals(1096L, actual.getTopTracks().get(0).getDuration());
+    }
+
+    /**
+     * Tests {@link StatsDao#getListeningStats(Long, LocalDate, LocalDate, int)}.<p>
+     * No data for the period.
+     */
+    @Test
+    public void getListeningStatsNotExist() {
+        final ListeningStatsBean actual = statsDao.getListeningStats(1L, DAY.plusDays(1), null, 10);
+
+        assertEquals(0L, actual.getPlays());
+        assertEquals(0L, actual.getDuration());
+        assertNull(actual.getTopArtists());
+        assertNull(actual.getTopTracks());
+    }
+
+    /**
+     * Tests {@link StatsDao#gravionsAdded(List)}.<p>
+     * Rollups are updated as gravions are written, existing rows are incremented, missing ones are added.
+     */
+    @Test
+    public void gravionsAdded() {
+        gravionDao.addGravions(Arrays.asList(
+                gravion(1L, 2L, "2017-04-15 20:00:00", 847),
+                gravion(1L, 2L, "2017-04-16 20:00:00", 800),
+                gravion(1L, 3L, "2017-04-16 21:00:00", null)));
+
+        ListeningStatsBean actual = statsDao.getListeningStats(1L, DAY, DAY, 10);
+        assertEquals(4L, actual.getPlays());
+        assertEquals(2790L, actual.getDuration());
+        assertEquals(4L, actual.getTopArtists().get(0).getPlays());
+
+        actual = statsDao.getListeningStats(1L, DAY.plusDays(1), DAY.plusDays(1), 1);
+        assertEquals(2L, actual.getPlays());
+        assertEquals(1400L, actual.getDuration()); // duration of last gravion is taken from its time span
+        assertEquals(1, actual.getTopTracks().size());
+        assertEquals(Long.valueOf(2L), actual.getTopTracks().get(0).getTrackId());
+    }
+
+    /**
+     * Tests {@link StatsDao#rebuild(LocalDate, LocalDate)}.<p>
+     * Rebuilt rollups should match incrementally maintained ones.
+     */
+    @Test
+    public void rebuild() {
+        gravionDao.addGravions(Arrays.asList(
+                gravion(1L, 2L, "2017-04-15 20:00:00", 847),
+                gravion(2L, 1L, "2017-04-16 20:00:00", 300),
+                gravion(2L, 3L, "2017-04-30 23:59:59", null)));
+        final List<ListeningStatsBean> expected = Arrays.asList(
+                statsDao.getListeningStats(1L, null, null, 10),
+                statsDao.getListeningStats(2L, null, null, 10));
+
+        statsDao.rebuild(DAY, DAY.plusDays(15));
+
+        final List<ListeningStatsBean> actual = Arrays.asList(
+                statsDao.getListeningStats(1L, null, null, 10),
+                statsDao.getListeningStats(2L, null, null, 10));
+        for (int i = 0; i < expected.size(); i++) {
+            assertStatsEqual(expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Tests {@link StatsDao#rebuild(LocalDate, LocalDate)}.<p>
+     * Duration fallback of sub-second time spans is truncated the same way as by incremental rollups.
+     */
+    @Test
+    public void rebuildSubSecond() {
+        final Date begin = new Date(Timestamp.valueOf("2017-04-16 20:00:00").getTime() + 700L);
+        gravionDao.addGravions(Arrays.asList(new GravionBean(2L, 1L, begin, new Date(begin.getTime() + 1400L), null)));
+        final ListeningStatsBean expected = statsDao.getListeningStats(2L, null, null, 10);
+        assertEquals(1L, expected.getDuration());
+
+        statsDao.rebuild(DAY, DAY.plusDays(15));
+
+        assertStatsEqual(expected, statsDao.getListeningStats(2L, null, null, 10));
+    }
+
+    /**
+     * Tests {@link StatsDao#gravionsAdded(List)}.<p>
+     * Concurrent writers of the same missing rollup row add up, the later one doesn't fail on duplicate key.
+     */
+    @Test
+    public void gravionsAddedConcurrently() throws Exception {
+        final LocalDate day = DAY.plusDays(30);
+        final List<GravionBean> gravions = Arrays.asList(
+                gravion(2L, 1L, day.toString() + " 20:00:00", 300));
+        final CountDownLatch added = new CountDownLatch(1);
+        final CountDownLatch commit = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<?> first = executor.submit(() -> dslContext.transaction(configuration -> {
+            statsDao.gravionsAdded(gravions);
+            added.countDown();
+            commit.await(10, TimeUnit.SECONDS);
+        }));
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        final Future<?> second = executor.submit(() -> statsDao.gravionsAdded(gravions));
+        Thread.sleep(200L);
+        commit.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        final ListeningStatsBean actual = statsDao.getListeningStats(2L, day, day, 10);
+        assertEquals(2L, actual.getPlays());
+        assertEquals(600L, actual.getDuration());
+        assertEquals(2L, actual.getTopTracks().get(0).getPlays());
+    }
+
+    /**
+     * Tests that top artists read from rollups match the same computed by raw gravion scan.
+     */
+    @Test
+    public void rollupMatchesScan() {
+        final int users = 2;
+        final int days = 3;
+        final int perDay = 20;
+
+        final long start = Timestamp.valueOf("2017-01-30 00:00:00").getTime();
+        for (int day = 0; day < days; day++) {
+            final List<GravionBean> gravions = new ArrayList<>(users * perDay);
+            for (int i = 0; i < users * perDay; i++) {
+                final long begin = start + day * 86_400_000L + i * 1000L;
+                gravions.add(new GravionBean(1L + i % users, 1L + i % 3, new Date(begin), new Date(begin + 1000L), 1));
+            }
+            gravionDao.addGravions(gravions);
+        }
+        final LocalDate from = LocalDate.of(2017, 1, 30);
+        final LocalDate to = from.plusDays(days - 1);
+
+        final List<ArtistStatsBean> rollup = statsDao.getTopArtists(1L, from, to, 10);
+
+        final Timestamp begin = Timestamp.valueOf(from.atStartOfDay());
+        final Timestamp end = Timestamp.valueOf(to.plusDays(1).atStartOfDay());
+        Select<Record1<Long>> raw = null;
+        for (GravionPartitions.Partition partition : gravionPartitions.plan(begin, end)) {
+            final Select<Record1<Long>> partial = dslContext.select(partition.trackId.as("TRACK_ID"))
+                    .from(partition.table)
+                    .where(partition.userId.eq(1L))
+                    .and(partition.begin.ge(begin))
+                    .and(partition.begin.lt(end));
+            raw = raw == null ? partial : raw.unionAll(partial);
+        }
+        final Table<Record1<Long>> gravions = raw.asTable("G");
+        final Field<Long> trackId = gravions.field("TRACK_ID", Long.class);
+        final Field<Integer> plays = DSL.count();
+        final List<Long> scan = dslContext.select(G_TRACK_ARTIST.ARTIST_ID, plays)
+                .from(gravions)
+                .join(G_TRACK_ARTIST).on(G_TRACK_ARTIST.TRACK_ID.eq(trackId))
+                .groupBy(G_TRACK_ARTIST.ARTIST_ID)
+                .orderBy(plays.desc(), G_TRACK_ARTIST.ARTIST_ID.asc())
+                .limit(10)
+                .fetch(plays).stream().map(Integer::longValue).collect(Collectors.toList());
+
+        assertFalse(scan.isEmpty());
+        final List<Long> rolledUp = new ArrayList<>();
+        for (ArtistStatsBean artist : rollup) {
+            rolledUp.add(artist.getPlays());
+        }
+        assertEquals(scan, rolledUp);
+    }
+
+    private static GravionBean gravion(Long userId, Long trackId, String begin, Integer duration) {
+        final Date start = Timestamp.valueOf(begin);
+        return new GravionBean(userId, trackId, start, new Date(start.getTime() + 600_000L), duration);
+    }
+
+    private static void assertStatsEqual(ListeningStatsBean expected, ListeningStatsBean actual) {
+        assertEquals(expected.getPlays(), actual.getPlays());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getTopArtists().size(), actual.getTopArtists().size());
+        for (int i = 0; i < expected.getTopArtists().size(); i++) {
+            final ArtistStatsBean e = expected.getTopArtists().get(i);
+            final ArtistStatsBean a = actual.getTopArtists().get(i);
+            assertEquals(e.getArtist().getId(), a.getArtist().getId());
+            assertEquals(e.getPlays(), a.getPlays());
+            assertEquals(e.getDuration(), a.getDuration());
+        }
+        assertEquals(expected.getTopTracks().size(), actual.getTopTracks().size());
+        for (int i = 0; i < expected.getTopTracks().size(); i++) {
+            final TrackStatsBean e = expected.getTopTracks().get(i);
+            final TrackStatsBean a = actual.getTopTracks().get(i);
+            assertEquals(e.getTrackId(), a.getTrackId());
+            assertEquals(e.getPlays(), a.getPlays());
+            assertEquals(e.getDuration(), a.getDuration());
+        }
+    }
+
+}
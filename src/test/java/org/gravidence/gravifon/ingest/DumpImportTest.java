@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.ArtistCatalogue;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST;
+import static org.gravidence.gravidat.model.Tables.G_ARTIST_ALIAS;
+import static org.gravidence.gravidat.model.Tables.G_RELEASE;
+import static org.gravidence.gravidat.model.Tables.G_RELEASE_ARTIST;
+import static org.gravidence.gravidat.model.Tables.G_RELEASE_GROUP;
+import static org.gravidence.gravidat.model.Tables.G_TRACK;
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * Integration tests for {@link DumpImport}.<p>
+ * H2 in-memory is used underneath. Batches and blocks are kept small, so every dump spans several of them.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "org.gravidence.gravifon.ingest.dump.threads=2",
+        "org.gravidence.gravifon.ingest.dump.block-size=3",
+        "org.gravidence.gravifon.ingest.dump.batch-size=2"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class DumpImportTest extends TestCase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private DumpImport dumpImport;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private ArtistCatalogue artistCatalogue;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    /**
+     * Tests {@link DumpImport#importDump(Path)}.<p>
+     * Dump IDs should be mapped to new database IDs (following existing ones), references should be resolved,
+     * bad lines should be rejected, artist catalogue should catch up.
+     */
+    @Test
+    public void importDump() throws IOException {
+        Path dump = folder.getRoot().toPath();
+        write(dump, "artist.tsv",
+                "100\tAlpha\t\\N\t103",
+                "101\tBeta\tfirst\\tsecond\t\\N",
+                "101\tBeta again\t\\N\t\\N",
+                "malformed line",
+                "103\tGamma\t\\N\t\\N");
+        write(dump, "artist_alias.tsv",
+                "100\t101",
+                "100\t999");
+        write(dump, "release_group.tsv",
+                "10\tAlbum\t1995-05-01");
+        write(dump, "release.tsv",
+                "20\t\\N\t10\tAlbum\t1995-05-01\t1",
+                "21\t20\t10\tAlbum (Reissue)\t\\N\t99");
+        write(dump, "release_artist.tsv",
+                "20\t100",
+                "21\t999");
+        write(dump, "track.tsv",
+                "30\t\\N\tIntro\t300\tA1\t20\t10",
+                "31\t30\tIntro\t301\t\\N\t21\t\\N");
+        write(dump, "track_artist.tsv",
+                "30\t101",
+                "30\t101",
+                "31\t100");
+
+        List<DumpImport.TableReport> reports = dumpImport.importDump(dump);
+
+        assertEquals(7, reports.size());
+        assertReport(reports.get(0), "artist.tsv", 5, 3, 2);
+        assertReport(reports.get(1), "artist_alias.tsv", 2, 1, 1);
+        assertReport(reports.get(2), "release_group.tsv", 1, 1, 0);
+        assertReport(reports.get(3), "release.tsv", 2, 2, 0);
+        assertReport(reports.get(4), "release_artist.tsv", 2, 1, 1);
+        assertReport(reports.get(5), "track.tsv", 2, 2, 0);
+        assertReport(reports.get(6), "track_artist.tsv", 3, 3, 0);
+
+        // artists get IDs after existing 8, by line number
+        Record alpha = dslContext.selectFrom(G_ARTIST).where(G_ARTIST.ID.eq(9L)).fetchOne();
+        assertEquals("Alpha", alpha.get(G_ARTIST.TITLE));
+        assertEquals(Long.valueOf(13L), alpha.get(G_ARTIST.MASTER_ID));
+        Record beta = dslContext.selectFrom(G_ARTIST).where(G_ARTIST.ID.eq(10L)).fetchOne();
+        assertEquals("first\tsecond", beta.get(G_ARTIST.DESCRIPTION));
+        assertEquals(11, dslContext.fetchCount(G_ARTIST));
+        assertEquals(Collections.singletonList(10L), dslContext.select(G_ARTIST_ALIAS.ALIAS_ID)
+                .from(G_ARTIST_ALIAS).where(G_ARTIST_ALIAS.MASTER_ID.eq(9L)).fetch(G_ARTIST_ALIAS.ALIAS_ID));
+
+        Record reissue = dslContext.selectFrom(G_RELEASE).where(G_RELEASE.ID.eq(4L)).fetchOne();
+        assertEquals(Long.valueOf(3L), reissue.get(G_RELEASE.MASTER_ID));
+        assertEquals(Long.valueOf(1L), reissue.get(G_RELEASE.RELEASE_GROUP_ID));
+        assertNull(reissue.get(G_RELEASE.TYPE_ID));
+        assertEquals(Byte.valueOf((byte) 1), dslContext.select(G_RELEASE.TYPE_ID).from(G_RELEASE)
+                .where(G_RELEASE.ID.eq(3L)).fetchOne().value1());
+        assertEquals(1, dslContext.fetchCount(G_RELEASE_GROUP));
+        assertEquals(1, dslContext.fetchCount(G_RELEASE_ARTIST));
+
+        Record track = dslContext.selectFrom(G_TRACK).where(G_TRACK.ID.eq(5L)).fetchOne();
+        assertEquals(Long.valueOf(4L), track.get(G_TRACK.MASTER_ID));
+        assertEquals(Long.valueOf(4L), track.get(G_TRACK.RELEASE_ID));
+        assertEquals(Arrays.asList(10L), dslContext.select(G_TRACK_ARTIST.ARTIST_ID).from(G_TRACK_ARTIST)
+                .where(G_TRACK_ARTIST.TRACK_ID.eq(4L)).fetch(G_TRACK_ARTIST.ARTIST_ID));
+
+        // identities are restarted after imported IDs
+        ArtistBean added = artistDao.addArtist(new ArtistBean(null, "Delta", null, null));
+        assertEquals(Long.valueOf(14L), added.getId());
+
+        assertEquals("Alpha", artistCatalogue.getTitle(9L));
+        assertEquals(13L, artistCatalogue.getMaster(9L));
+    }
+
+    /**
+     * Tests {@link DumpImport#importDump(Path)} resume.<p>
+     * Failed import should be resumed from the failed batch, without duplicates.
+     */
+    @Test
+    public void resumeImport() throws IOException {
+        Path dump = folder.getRoot().toPath();
+        write(dump, "artist.tsv",
+                "1\tA\t\\N\t\\N",
+                "2\tB\t\\N\t1",
+                "3\tC\t\\N\t\\N");
+        String[] tracks = {
+                "1\t\\N\tOne\t100\t\\N\t\\N\t\\N",
+                "2\t\\N\tTwo\t100\t\\N\t\\N\t\\N",
+                "3\t\\N\t" + String.join("", Collections.nCopies(501, "x")) + "\t100\t\\N\t\\N\t\\N",
+                "4\t\\N\tFour\t100\t\\N\t\\N\t\\N",
+                "5\t3\tFive\t100\t\\N\t\\N\t\\N"};
+        write(dump, "track.tsv", tracks);
+        write(dump, "track_artist.tsv",
+                "1\t1",
+                "5\t3");
+
+        try {
+            dumpImport.importDump(dump);
+            fail("Too long track title is expected to fail the import");
+        }
+        catch (DataAccessException e) {
+            // expected
+        }
+        assertEquals(11, dslContext.fetchCount(G_ARTIST));
+        assertEquals(5, dslContext.fetchCount(G_TRACK));
+
+        tracks[2] = "3\t\\N\tThree\t100\t\\N\t\\N\t\\N";
+        write(dump, "track.tsv", tracks);
+
+        List<DumpImport.TableReport> reports = dumpImport.importDump(dump);
+
+        assertEquals(3, reports.size());
+        assertReport(reports.get(0), "artist.tsv", 0, 0, 0);
+        assertReport(reports.get(1), "track.tsv", 3, 3, 0);
+        assertReport(reports.get(2), "track_artist.tsv", 2, 2, 0);
+
+        assertEquals(11, dslContext.fetchCount(G_ARTIST));
+        assertEquals(Long.valueOf(9L), dslContext.select(G_ARTIST.MASTER_ID).from(G_ARTIST)
+                .where(G_ARTIST.ID.eq(10L)).fetchOne().value1());
+        assertEquals(8, dslContext.fetchCount(G_TRACK));
+        assertEquals("Three", dslContext.select(G_TRACK.TITLE).from(G_TRACK)
+                .where(G_TRACK.ID.eq(6L)).fetchOne().value1());
+        assertEquals(Long.valueOf(6L), dslContext.select(G_TRACK.MASTER_ID).from(G_TRACK)
+                .where(G_TRACK.ID.eq(8L)).fetchOne().value1());
+        assertEquals(2, dslContext.fetchCount(G_TRACK_ARTIST, G_TRACK_ARTIST.TRACK_ID.gt(3L)));
+    }
+
+    private static void write(Path dump, String fileName, String... lines) throws IOException {
+        Files.write(dump.resolve(fileName), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static void assertReport(DumpImport.TableReport report, String fileName, long lines, long written,
+            long rejected) {
+        assertEquals(fileName, report.getFileName());
+        assertEquals(lines, report.getLines());
+        assertEquals(written, report.getWritten());
+        assertEquals(rejected, report.getRejected());
+    }
+
+}
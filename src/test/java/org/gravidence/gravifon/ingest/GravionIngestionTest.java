@@ -0,0 +1,265 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integration tests for {@link GravionIngestion}.<p>
+ * H2 in-memory is used underneath, ingestion runs in sync durability mode.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "org.gravidence.gravifon.ingest.durability=SYNC",
+        "org.gravidence.gravifon.ingest.queue-capacity=20000"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class GravionIngestionTest extends TestCase {
+
+    @Autowired
+    private GravionIngestion gravionIngestion;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private GravionDeduplicator gravionDeduplicator;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Happy path, gravions are committed once submission is complete.
+     */
+    @Test
+    public void submit() throws Exception {
+        final Date begin = new Date(1_500_000_000_000L);
+        final Date end = new Date(begin.getTime() + 548_000L);
+
+        final CompletableFuture<Void> actual = gravionIngestion.submit(Arrays.asList(
+                new GravionBean(2L, 1L, begin, end, 548),
+                new GravionBean(2L, 3L, end, new Date(end.getTime() + 548_000L), 548)));
+        assertNotNull(actual);
+        actual.get(10, TimeUnit.SECONDS);
+
+        final List<GravionBean> gravions = gravionDao.getGravions(2L, begin, new Date(end.getTime() + 1));
+        assertNotNull(gravions);
+        assertEquals(2, gravions.size());
+    }
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Broken submission fails on its own, other submissions of the same batch are committed.
+     */
+    @Test
+    public void submitBroken() throws Exception {
+        final Date now = new Date();
+
+        final CompletableFuture<Void> broken = gravionIngestion.submit(Arrays.asList(
+                new GravionBean(2L, Long.MAX_VALUE, now, now, 0)));
+        final CompletableFuture<Void> valid = gravionIngestion.submit(Arrays.asList(
+                new GravionBean(2L, 1L, now, now, 0)));
+
+        valid.get(10, TimeUnit.SECONDS);
+        try {
+            broken.get(10, TimeUnit.SECONDS);
+            fail("Execution exception is expected.");
+        }
+        catch (ExecutionException e) {
+            // expected
+        }
+        assertEquals(1L, gravionIngestion.getFailedCount());
+    }
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Submission that exceeds the queue capacity is illegal, as it would never fit.
+     */
+    @Test
+    public void submitOversized() {
+        final List<GravionBean> gravions = generate(2L, 0L, 20001);
+
+        try {
+            gravionIngestion.submit(gravions);
+            fail("Illegal argument exception is expected.");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(gravions.size(), gravionIngestion.getRejectedCount());
+    }
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Stopped ingestion rejects submissions, only gravions that were actually rejected are counted
+     * (in-memory duplicates are not).
+     */
+    @Test
+    public void submitRejectedCount() throws Exception {
+        final List<GravionBean> gravions = generate(2L, 0L, 10);
+        gravionIngestion.submit(gravions.subList(0, 5)).get(10, TimeUnit.SECONDS);
+
+        gravionIngestion.tearDown();
+        assertNull(gravionIngestion.submit(gravions));
+        assertEquals(5L, gravionIngestion.getRejectedCount());
+    }
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Resubmitted gravions are dropped in memory or skipped by the database, so they're stored once.
+     */
+    @Test
+    public void submitDuplicates() throws Exception {
+        final List<GravionBean> gravions = generate(2L, 0L, 10);
+
+        gravionIngestion.submit(gravions).get(10, TimeUnit.SECONDS);
+        gravionIngestion.submit(gravions.subList(0, 5)).get(10, TimeUnit.SECONDS);
+        gravionIngestion.submit(Arrays.asList(
+                new GravionBean(1L, 1L, Timestamp.valueOf("2017-04-15 12:44:00"), new Date(), 548)))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(10, gravionDao.getGravions(2L, new Date(0L), new Date()).size());
+        assertEquals(3, gravionDao.getGravions(1L, new Date(0L), new Date()).size());
+        assertEquals(10L, gravionIngestion.getFlushedCount());
+        assertEquals(5L, gravionDeduplicator.getDuplicateCount());
+        assertEquals(1L, gravionDeduplicator.getStoredCount());
+        assertEquals(5.0 / 6, gravionDeduplicator.getHitRate(), 1e-9);
+        assertEquals(5.0, registry.find("gravifon.ingest.dedup").tags("result", "duplicate").counter().count());
+    }
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Gravions of failed submission are not dropped as duplicates when resubmitted.
+     */
+    @Test
+    public void submitRetryFailed() throws Exception {
+        final Date now = new Date();
+        final List<GravionBean> broken = Arrays.asList(
+                new GravionBean(2L, 1L, now, now, 0),
+                new GravionBean(2L, Long.MAX_VALUE, now, now, 0));
+
+        try {
+            gravionIngestion.submit(broken).get(10, TimeUnit.SECONDS);
+            fail("Execution exception is expected.");
+        }
+        catch (ExecutionException e) {
+            // expected
+        }
+
+        gravionIngestion.submit(broken.subList(0, 1)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, gravionDao.getGravions(2L, new Date(0L), new Date(now.getTime() + 1)).size());
+        assertEquals(0L, gravionDeduplicator.getDuplicateCount());
+    }
+
+    /**
+     * Tests {@link GravionIngestion#submit(List)}.<p>
+     * Retry of a queued submission is dropped in memory, but it's acknowledged only once the original is committed,
+     * and fails if the original fails.
+     */
+    @Test
+    public void submitRetryQueued() throws Exception {
+        final Date now = new Date();
+        final List<GravionBean> valid = Arrays.asList(new GravionBean(2L, 1L, now, now, 0));
+        final List<GravionBean> broken = Arrays.asList(new GravionBean(2L, Long.MAX_VALUE, now, now, 0));
+
+        final CompletableFuture<Void> original = gravionIngestion.submit(valid);
+        final CompletableFuture<Void> retry = gravionIngestion.submit(valid);
+        retry.get(10, TimeUnit.SECONDS);
+        assertEquals(1, gravionDao.getGravions(2L, new Date(0L), new Date(now.getTime() + 1)).size());
+        original.get(10, TimeUnit.SECONDS);
+
+        final CompletableFuture<Void> brokenOriginal = gravionIngestion.submit(broken);
+        final CompletableFuture<Void> brokenRetry = gravionIngestion.submit(broken);
+        try {
+            brokenRetry.get(10, TimeUnit.SECONDS);
+            fail("Execution exception is expected.");
+        }
+        catch (ExecutionException e) {
+            // expected
+        }
+        try {
+            brokenOriginal.get(10, TimeUnit.SECONDS);
+            fail("Execution exception is expected.");
+        }
+        catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests {@link GravionDeduplicator#forget(List, CompletableFuture)}.<p>
+     * Failed submission doesn't forget gravions taken over by its retry, so a further retry is still dropped.
+     */
+    @Test
+    public void forgetTakenOver() {
+        final List<GravionBean> gravions = generate(2L, 0L, 1);
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        final CompletableFuture<Void> retry = new CompletableFuture<>();
+
+        assertEquals(1, gravionDeduplicator.check(gravions, failed).getGravions().size());
+        failed.completeExceptionally(new IllegalStateException());
+        assertEquals(1, gravionDeduplicator.check(gravions, retry).getGravions().size());
+        gravionDeduplicator.forget(gravions, failed);
+
+        final GravionDeduplicator.Verdict verdict = gravionDeduplicator.check(gravions, new CompletableFuture<>());
+        assertTrue(verdict.getGravions().isEmpty());
+        assertEquals(Arrays.asList(retry), verdict.getOriginals());
+
+        gravionDeduplicator.forget(gravions, retry);
+        assertEquals(1, gravionDeduplicator.check(gravions, new CompletableFuture<>()).getGravions().size());
+    }
+
+    private static List<GravionBean> generate(long user, long offset, int count) {
+        final List<GravionBean> gravions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final long begin = 1_500_000_000_000L + (offset + i) * 1000L;
+            gravions.add(new GravionBean(user, 1L + i % 3, new Date(begin), new Date(begin + 1000L), 1));
+        }
+
+        return gravions;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.gravidence.gravifon.web.AsyncRequests.performAsync;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for query and request metrics.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class MetricsTest extends TestCase {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    /**
+     * Queries are timed and tagged by DAO method, fetched rows and connection acquisition are recorded.
+     */
+    @Test
+    public void queryMetrics() {
+        artistDao.getArtistPage(null, null, 3);
+
+        final Timer latency = registry.find("gravifon.db.query").tags("operation", "ArtistDao.getArtistPage").timer();
+        assertNotNull(latency);
+        assertEquals(1L, latency.count());
+
+        final DistributionSummary rows = registry.find("gravifon.db.query.rows")
+                .tags("operation", "ArtistDao.getArtistPage").summary();
+        assertNotNull(rows);
+        assertEquals(4.0, rows.totalAmount()); // page size + 1
+
+        final Timer acquire = registry.find("gravifon.db.connection.acquire").timer();
+        assertNotNull(acquire);
+        assertTrue(acquire.count() > 0);
+    }
+
+    /**
+     * Cached queries are recorded as regular ones.
+     */
+    @Test
+    public void cachedQueryMetrics() {
+        artistDao.getArtist(1L);
+        artistDao.addArtist(new ArtistBean("Red Snapper"));
+
+        final Timer fetch = registry.find("gravifon.db.query").tags("operation", "ArtistDao.getArtist").timer();
+        assertNotNull(fetch);
+        assertEquals(1L, fetch.count());
+
+        final Timer insert = registry.find("gravifon.db.query").tags("operation", "ArtistDao.addArtist").timer();
+        assertNotNull(insert);
+        assertEquals(1L, insert.count());
+    }
+
+    /**
+     * Connection pool state is exposed.
+     */
+    @Test
+    public void poolMetrics() {
+        artistDao.getArtist(1L);
+
+        assertNotNull(registry.find("hikaricp.connections.active").gauge());
+        assertNotNull(registry.find("hikaricp.connections.pending").gauge());
+        assertNotNull(registry.find("hikaricp.connections.timeout").counter());
+    }
+
+    /**
+     * Requests are timed by URI pattern and exposed in Prometheus format.
+     */
+    @Test
+    public void requestMetrics() throws Exception {
+        performAsync(mockMvc, get("/v1/artists").param("limit", "2")).andExpect(status().isOk());
+
+        final String scrape = mockMvc.perform(get("/v1/metrics"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.contains("gravifon_http_requests_seconds_count{method=\"GET\",status=\"200\",uri=\"/v1/artists\",} 1.0"));
+        assertTrue(scrape.contains("gravifon_db_query_seconds_bucket{operation=\"ArtistDao.getArtistPage\""));
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.db.SessionDao;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.SessionBean;
+import org.jooq.DSLContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.gravidence.gravidat.model.Tables.G_RELEASE;
+import static org.gravidence.gravidat.model.Tables.G_TRACK;
+
+/**
+ * Integration tests for {@link ListeningSessions}.<p>
+ * H2 in-memory is used underneath. Release 3 of tracks 4, 5 and 6 (positions A1, A2 and A10) is added.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ListeningSessionsTest extends TestCase {
+
+    private static final long MINUTE = 60_000L;
+
+    private static final long T0 = Timestamp.valueOf("2017-05-01 20:00:00").getTime();
+
+    @Autowired
+    private ListeningSessions listeningSessions;
+
+    @Autowired
+    private SessionDao sessionDao;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    @Before
+    public void setUp() {
+        dslContext.insertInto(G_RELEASE, G_RELEASE.TITLE)
+                .values("Shrine")
+                .execute();
+        dslContext.insertInto(G_TRACK, G_TRACK.TITLE, G_TRACK.LENGTH, G_TRACK.POSITION, G_TRACK.RELEASE_ID)
+                .values("Lumen", 300, "A10", 3L)
+                .values("Halo", 300, "A1", 3L)
+                .values("Aura", 300, "A2", 3L)
+                .execute();
+    }
+
+    /**
+     * Tests {@link SessionDao#getTrackReleases(java.util.Collection)}.<p>
+     * Tracks are ordered by position naturally, releases with unknown positions are skipped.
+     */
+    @Test
+    public void getTrackReleases() {
+        assertEquals(Arrays.asList(3L, 2L, 3L), toList(sessionDao.getTrackReleases(Arrays.asList(4L, 1L)).get(4L)));
+        assertEquals(Arrays.asList(3L, 0L, 3L), toList(sessionDao.getTrackReleases(Arrays.asList(5L)).get(5L)));
+        assertNull(sessionDao.getTrackReleases(Arrays.asList(4L, 1L)).get(1L));
+    }
+
+    /**
+     * Tests {@link ListeningSessions#gravionsAdded(List)}.<p>
+     * Sessions are split by gap and stored as gravions come, album played in order is recognized,
+     * open session is continued by later writes.
+     */
+    @Test
+    public void incremental() throws Exception {
+        gravionDao.addGravions(Arrays.asList(
+                played(2L, 5L, T0),
+                played(2L, 6L, T0 + 5 * MINUTE),
+                played(2L, 4L, T0 + 10 * MINUTE),
+                played(2L, 1L, T0 + 120 * MINUTE)));
+        listeningSessions.await();
+
+        List<SessionBean> actual = sessionDao.getSessions(2L, new Date(T0), new Date(T0 + 1_000 * MINUTE));
+        assertNotNull(actual);
+        assertEquals(2, actual.size());
+        assertEquals(new Date(T0), actual.get(0).getBegin());
+        assertEquals(new Date(T0 + 15 * MINUTE), actual.get(0).getEnd());
+        assertEquals(3, actual.get(0).getGravions());
+        assertEquals(900L, actual.get(0).getDuration());
+        assertEquals(Collections.singletonList(3L), actual.get(0).getAlbums());
+        assertEquals(1, actual.get(1).getGravions());
+        assertNull(actual.get(1).getAlbums());
+
+        gravionDao.addGravions(Collections.singletonList(played(2L, 2L, T0 + 130 * MINUTE)));
+        listeningSessions.await();
+
+        SessionBean last = sessionDao.getLastSession(2L);
+        assertEquals(new Date(T0 + 120 * MINUTE), last.getBegin());
+        assertEquals(2, last.getGravions());
+        assertEquals(600L, last.getDuration());
+
+        assertNull(sessionDao.getSessions(1L, new Date(T0), new Date(T0 + 1_000 * MINUTE)));
+    }
+
+    /**
+     * Tests {@link ListeningSessions#backfill(int)}.<p>
+     * Stored history is rebuilt into sessions, incremental tracking resumes stored sessions afterwards.
+     */
+    @Test
+    public void backfill() throws Exception {
+        gravionDao.addGravions(Arrays.asList(
+                played(2L, 5L, T0),
+                played(2L, 6L, T0 + 5 * MINUTE),
+                played(2L, 4L, T0 + 10 * MINUTE),
+                played(2L, 1L, T0 + 120 * MINUTE),
+                played(2L, 1L, T0 + 31 * 24 * 60 * MINUTE)));
+        listeningSessions.await();
+        List<SessionBean> expected = sessionDao.getSessions(2L, new Date(0L), new Date(Long.MAX_VALUE / 2));
+
+        assertEquals(4L, listeningSessions.backfill(2));
+
+        List<SessionBean> actual = sessionDao.getSessions(2L, new Date(0L), new Date(Long.MAX_VALUE / 2));
+        assertEquals(3, actual.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getBegin(), actual.get(i).getBegin());
+            assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+            assertEquals(expected.get(i).getGravions(), actual.get(i).getGravions());
+            assertEquals(expected.get(i).getDuration(), actual.get(i).getDuration());
+            assertEquals(expected.get(i).getAlbums(), actual.get(i).getAlbums());
+        }
+
+        SessionBean history = sessionDao.getLastSession(1L);
+        assertEquals(Timestamp.valueOf("2017-04-15 12:44:00"), new Timestamp(history.getBegin().getTime()));
+        assertEquals(3, history.getGravions());
+        assertEquals(1943L, history.getDuration());
+
+        gravionDao.addGravions(Collections.singletonList(new GravionBean(1L, 3L,
+                Timestamp.valueOf("2017-04-15 13:20:00"), Timestamp.valueOf("2017-04-15 13:29:00"), 548)));
+        listeningSessions.await();
+
+        SessionBean resumed = sessionDao.getLastSession(1L);
+        assertEquals(history.getBegin(), resumed.getBegin());
+        assertEquals(4, resumed.getGravions());
+        assertEquals(2491L, resumed.getDuration());
+    }
+
+    private static GravionBean played(long userId, long trackId, long begin) {
+        return new GravionBean(userId, trackId, new Date(begin), new Date(begin + 5 * MINUTE), 300);
+    }
+
+    private static List<Long> toList(long[] values) {
+        return values == null ? null : Arrays.asList(values[0], values[1], values[2]);
+    }
+
+}
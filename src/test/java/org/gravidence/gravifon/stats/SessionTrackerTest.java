@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.SessionBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Unit tests for {@link SessionTracker}.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(JUnit4.class)
+public class SessionTrackerTest extends TestCase {
+
+    private static final long GAP = 1_800_000L;
+
+    private static final long T0 = 1_500_000_000_000L;
+
+    private static final long MINUTE = 60_000L;
+
+    /**
+     * Tests {@link SessionTracker#add(GravionBean, long[])}.<p>
+     * Gap longer than configured one splits sessions, totals are accumulated.
+     */
+    @Test
+    public void gapSplit() {
+        final SessionTracker tracker = new SessionTracker(1L, GAP, 3);
+
+        assertNull(tracker.add(played(T0, 5), null));
+        assertNull(tracker.add(played(T0 + 5 * MINUTE, 5), null));
+        assertNull(tracker.add(played(T0 + 40 * MINUTE, 5), null)); // exactly the gap after previous end
+
+        SessionBean closed = tracker.add(played(T0 + 76 * MINUTE, 5), null);
+        assertNotNull(closed);
+        assertEquals(Long.valueOf(1L), closed.getUserId());
+        assertEquals(new Date(T0), closed.getBegin());
+        assertEquals(new Date(T0 + 45 * MINUTE), closed.getEnd());
+        assertEquals(3, closed.getGravions());
+        assertEquals(900L, closed.getDuration());
+        assertNull(closed.getAlbums());
+
+        SessionBean current = tracker.current();
+        assertEquals(new Date(T0 + 76 * MINUTE), current.getBegin());
+        assertEquals(1, current.getGravions());
+        assertFalse(tracker.isExpired(T0 + 111 * MINUTE));
+        assertTrue(tracker.isExpired(T0 + 112 * MINUTE));
+
+        assertEquals(1, tracker.close().getGravions());
+        assertFalse(tracker.isOpen());
+        assertNull(tracker.close());
+    }
+
+    /**
+     * Tests {@link SessionTracker#add(GravionBean, long[])}.<p>
+     * Late gravions are counted within open session and dropped before it, album run is broken by them.
+     */
+    @Test
+    public void lateGravions() {
+        final SessionTracker tracker = new SessionTracker(1L, GAP, 2);
+
+        assertNull(tracker.add(played(T0 + 10 * MINUTE, 5), new long[] {7L, 0L, 2L}));
+        assertNull(tracker.add(played(T0 + 20 * MINUTE, 5), null));
+        assertNull(tracker.add(played(T0 + 15 * MINUTE, 5), new long[] {7L, 1L, 2L})); // late, within session
+        assertNull(tracker.add(played(T0, 5), null)); // late, before session
+
+        SessionBean current = tracker.current();
+        assertEquals(3, current.getGravions());
+        assertEquals(new Date(T0 + 10 * MINUTE), current.getBegin());
+        assertEquals(new Date(T0 + 25 * MINUTE), current.getEnd());
+        assertNull(current.getAlbums());
+    }
+
+    /**
+     * Tests {@link SessionTracker#add(GravionBean, long[])}.<p>
+     * Albums count once all their tracks are played in order, short releases and interrupted runs don't count.
+     */
+    @Test
+    public void albums() {
+        final SessionTracker tracker = new SessionTracker(1L, GAP, 3);
+
+        long time = T0;
+        // album 7 played start to finish
+        for (int i = 0; i < 3; i++) {
+            assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {7L, i, 3L}));
+        }
+        // single of 2 tracks
+        assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {8L, 0L, 2L}));
+        assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {8L, 1L, 2L}));
+        // album 9 interrupted by a track of unknown release, then restarted
+        assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {9L, 0L, 3L}));
+        assertNull(tracker.add(played(time += 5 * MINUTE, 5), null));
+        assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {9L, 1L, 3L}));
+        assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {9L, 2L, 3L}));
+        for (int i = 0; i < 3; i++) {
+            assertNull(tracker.add(played(time += 5 * MINUTE, 5), new long[] {9L, i, 3L}));
+        }
+
+        assertEquals(Arrays.asList(7L, 9L), tracker.current().getAlbums());
+
+        tracker.resume(new SessionBean(1L, new Date(T0), new Date(T0 + MINUTE), 1, 60L,
+                Collections.singletonList(5L)));
+        assertNull(tracker.add(played(T0 + 2 * MINUTE, 1), new long[] {7L, 2L, 3L})); // run isn't resumed
+        assertEquals(Collections.singletonList(5L), tracker.current().getAlbums());
+        assertEquals(2, tracker.current().getGravions());
+    }
+
+    private static GravionBean played(long begin, int minutes) {
+        return new GravionBean(1L, 1L, new Date(begin), new Date(begin + minutes * MINUTE), minutes * 60);
+    }
+
+}
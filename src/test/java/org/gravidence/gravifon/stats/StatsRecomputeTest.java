@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.ArtistGraphIndex;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.db.GravionPartitions;
+import org.gravidence.gravifon.db.StatsDao;
+import org.gravidence.gravifon.web.model.ArtistStatsBean;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.jooq.DSLContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.gravidence.gravidat.model.Tables.G_ARTIST_ALIAS;
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * Integration tests for {@link StatsRecompute}.<p>
+ * H2 in-memory is used underneath. Track 3 is additionally credited to Cane (alias of Funckarma),
+ * every user is processed by its own shard.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "org.gravidence.gravifon.gravion.archive.path=target/stats-recompute-test",
+        "org.gravidence.gravifon.stats.recompute.shard-size=1"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StatsRecomputeTest extends TestCase {
+
+    @Autowired
+    private StatsRecompute statsRecompute;
+
+    @Autowired
+    private StatsDao statsDao;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private GravionPartitions gravionPartitions;
+
+    @Autowired
+    private ArtistGraphIndex artistGraphIndex;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    @Before
+    public void setUp() {
+        dslContext.insertInto(G_TRACK_ARTIST, G_TRACK_ARTIST.TRACK_ID, G_TRACK_ARTIST.ARTIST_ID)
+                .values(3L, 7L)
+                .execute();
+    }
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(Paths.get("target/stats-recompute-test").toFile());
+    }
+
+    /**
+     * Tests {@link StatsRecompute#recompute(int)}.<p>
+     * Totals are maintained incrementally as gravions are written. Once Funckarma is merged into Vidna Obmana
+     * as an alias, recompute credits plays to the new principal artist, archived gravions are counted as well.
+     */
+    @Test
+    public void recompute() throws IOException {
+        gravionDao.addGravions(Arrays.asList(
+                played(3L, "2017-05-01 10:00:00"),
+                played(3L, "2017-05-01 10:10:00"),
+                played(2L, "2017-05-02 10:00:00")));
+
+        List<ArtistStatsBean> actual = statsDao.getAllTimeArtists(2L, 10);
+        assertNotNull(actual);
+        assertEquals(2, actual.size());
+        assertEquals(Long.valueOf(4L), actual.get(0).getArtist().getId());
+        assertEquals(3L, actual.get(0).getPlays());
+        assertEquals(Long.valueOf(6L), actual.get(1).getArtist().getId()); // Cane rolls up to Funckarma
+        assertEquals(2L, actual.get(1).getPlays());
+        assertEquals(600L, actual.get(1).getDuration());
+
+        assertEquals(1, gravionPartitions.archive(YearMonth.of(2017, 5)));
+        dslContext.insertInto(G_ARTIST_ALIAS, G_ARTIST_ALIAS.MASTER_ID, G_ARTIST_ALIAS.ALIAS_ID)
+                .values(4L, 6L)
+                .execute();
+        artistGraphIndex.aliasAdded(4L, 6L);
+
+        StatsRecompute.Report report = statsRecompute.recompute(2);
+        assertEquals(2L, report.getUsers());
+        assertEquals(6L, report.getGravions());
+        assertEquals(2L, report.getTotals());
+
+        actual = statsDao.getAllTimeArtists(2L, 10);
+        assertNotNull(actual);
+        assertEquals(1, actual.size());
+        assertEquals(Long.valueOf(4L), actual.get(0).getArtist().getId());
+        assertEquals(3L, actual.get(0).getPlays()); // a play is credited to an artist once
+        assertEquals(900L, actual.get(0).getDuration());
+
+        actual = statsDao.getAllTimeArtists(1L, 10); // archived history
+        assertNotNull(actual);
+        assertEquals(1, actual.size());
+        assertEquals(3L, actual.get(0).getPlays());
+        assertEquals(1943L, actual.get(0).getDuration());
+    }
+
+    /**
+     * Tests {@link StatsDao#getAllTimeArtists(Long, int)}.<p>
+     * User has no plays.
+     */
+    @Test
+    public void getAllTimeArtistsNotExist() {
+        assertNull(statsDao.getAllTimeArtists(2L, 10));
+    }
+
+    private static GravionBean played(long trackId, String begin) {
+        Timestamp time = Timestamp.valueOf(begin);
+        return new GravionBean(2L, trackId, time, new Timestamp(time.getTime() + 300_000L), 300);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.stats;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.gravidence.gravifon.web.model.TrendingArtistBean;
+import org.jooq.DSLContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.gravidence.gravidat.model.Tables.G_TRACK_ARTIST;
+
+/**
+ * Integration tests for {@link TrendingArtists}.<p>
+ * H2 in-memory is used underneath. Track 2 is additionally credited to Cane (alias of Funckarma),
+ * track 3 to V.O. (variation of Vidna Obmana).
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class TrendingArtistsTest extends TestCase {
+
+    @Autowired
+    private TrendingArtists trendingArtists;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    @Autowired
+    private DSLContext dslContext;
+
+    @Before
+    public void setUp() {
+        dslContext.insertInto(G_TRACK_ARTIST, G_TRACK_ARTIST.TRACK_ID, G_TRACK_ARTIST.ARTIST_ID)
+                .values(2L, 7L)
+                .values(3L, 8L)
+                .execute();
+    }
+
+    /**
+     * Tests {@link TrendingArtists#getTrendingArtists(TrendingArtists.Window, int)}.<p>
+     * Plays roll up to master artists, a play is credited to an artist once.
+     */
+    @Test
+    public void getTrendingArtists() {
+        final long now = System.currentTimeMillis();
+        gravionDao.addGravions(Arrays.asList(
+                played(1L, now),
+                played(1L, now - 1_000L),
+                played(1L, now - 2_000L),
+                played(2L, now),
+                played(2L, now - 1_000L),
+                played(3L, now), // Vidna Obmana and its variation
+                played(1L, now - TimeUnit.HOURS.toMillis(2))));
+
+        List<TrendingArtistBean> actual = trendingArtists.getTrendingArtists(TrendingArtists.Window.HOUR, 10);
+        assertNotNull(actual);
+        assertEquals(2, actual.size());
+        assertEquals(Long.valueOf(4L), actual.get(0).getArtist().getId());
+        assertEquals(6L, actual.get(0).getPlays());
+        assertEquals(Long.valueOf(6L), actual.get(1).getArtist().getId()); // Funckarma
+        assertEquals(2L, actual.get(1).getPlays());
+
+        actual = trendingArtists.getTrendingArtists(TrendingArtists.Window.DAY, 1);
+        assertNotNull(actual);
+        assertEquals(1, actual.size());
+        assertEquals(7L, actual.get(0).getPlays()); // play of 2 hours ago is within the day
+
+        assertEquals(6L, trendingArtists.getTrendingArtists(TrendingArtists.Window.FIVE_MINUTES, 1).get(0).getPlays());
+    }
+
+    /**
+     * Tests {@link TrendingArtists#getTrendingArtists(TrendingArtists.Window, int)}.<p>
+     * Nothing played recently.
+     */
+    @Test
+    public void getTrendingArtistsNotExist() {
+        // gravions of test data set are played long ago
+        gravionDao.addGravions(Collections.singletonList(played(1L, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2))));
+
+        assertNull(trendingArtists.getTrendingArtists(TrendingArtists.Window.DAY, 10));
+    }
+
+    /**
+     * Plays of rolled back writes are not counted.
+     */
+    @Test
+    public void rolledBackPlays() {
+        final long now = System.currentTimeMillis();
+        try {
+            gravionDao.addGravions(Arrays.asList(played(1L, now), new GravionBean(42L, 1L, new Date(now), new Date(now), 1)));
+            fail("Data integrity violation exception is expected.");
+        }
+        catch (DataIntegrityViolationException e) {
+            // expected, non-existing user
+        }
+
+        assertNull(trendingArtists.getTrendingArtists(TrendingArtists.Window.HOUR, 10));
+    }
+
+    private static GravionBean played(Long trackId, long time) {
+        return new GravionBean(1L, trackId, new Date(time - 60_000L), new Date(time), 60);
+    }
+
+}
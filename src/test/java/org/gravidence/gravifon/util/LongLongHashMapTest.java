@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link LongLongHashMap}.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(JUnit4.class)
+public class LongLongHashMapTest extends TestCase {
+
+    /**
+     * Tests {@link LongLongHashMap#put(long, long)} and {@link LongLongHashMap#get(long, long)}.<p>
+     * Zero key is a valid key.
+     */
+    @Test
+    public void putGet() {
+        final LongLongHashMap map = new LongLongHashMap();
+        map.put(0L, 42L);
+        map.put(-1L, 7L);
+        map.put(1L, 1L);
+        map.put(1L, 2L);
+
+        assertEquals(3, map.size());
+        assertEquals(42L, map.get(0L, -1L));
+        assertEquals(7L, map.get(-1L, -1L));
+        assertEquals(2L, map.get(1L, -1L));
+        assertEquals(-1L, map.get(2L, -1L));
+        assertFalse(map.containsKey(2L));
+    }
+
+    /**
+     * Tests {@link LongLongHashMap} against {@link HashMap} on random puts, increments and removals.
+     */
+    @Test
+    public void randomOperations() {
+        final LongLongHashMap map = new LongLongHashMap();
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            final long key = random.nextInt(5_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    map.put(key, i);
+                    expected.put(key, (long) i);
+                    break;
+                case 1:
+                    map.addTo(key, 3L);
+                    expected.merge(key, 3L, Long::sum);
+                    break;
+                default:
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().longValue(), map.get(entry.getKey(), Long.MIN_VALUE));
+        }
+        final int[] visited = new int[1];
+        map.forEach((key, value) -> {
+            assertEquals(expected.get(key).longValue(), value);
+            visited[0]++;
+        });
+        assertEquals(expected.size(), visited[0]);
+    }
+
+}
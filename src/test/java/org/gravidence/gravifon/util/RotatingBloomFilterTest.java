@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link RotatingBloomFilter}.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(JUnit4.class)
+public class RotatingBloomFilterTest extends TestCase {
+
+    /**
+     * Tests {@link RotatingBloomFilter#put(long)} and {@link RotatingBloomFilter#mightContain(long)}.<p>
+     * Put keys are always found, false positive rate stays within the configured one.
+     */
+    @Test
+    public void putMightContain() {
+        final RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.01);
+
+        for (long key = 0; key < 10_000; key++) {
+            filter.put(key);
+        }
+        for (long key = 0; key < 10_000; key++) {
+            assertTrue(filter.mightContain(key));
+        }
+
+        int positives = 0;
+        for (long key = 10_000; key < 110_000; key++) {
+            if (filter.mightContain(key)) {
+                positives++;
+            }
+        }
+        assertTrue(positives < 1_000);
+    }
+
+    /**
+     * Tests {@link RotatingBloomFilter#put(long)}.<p>
+     * Filter remembers at least <code>capacity</code> most recent keys, older ones are forgotten.
+     */
+    @Test
+    public void rotate() {
+        final RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.001);
+
+        for (long key = 0; key < 2_500; key++) {
+            filter.put(key);
+        }
+
+        for (long key = 1_500; key < 2_500; key++) {
+            assertTrue(filter.mightContain(key));
+        }
+        int positives = 0;
+        for (long key = 0; key < 1_000; key++) {
+            if (filter.mightContain(key)) {
+                positives++;
+            }
+        }
+        assertTrue(positives < 10);
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link SlidingCountMinSketch}.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(JUnit4.class)
+public class SlidingCountMinSketchTest extends TestCase {
+
+    private static final long NOW = 1_000_000_000L;
+
+    /**
+     * Tests {@link SlidingCountMinSketch#add(long, long, long, int)} and
+     * {@link SlidingCountMinSketch#estimate(long, long)}.<p>
+     * Few keys in a wide sketch are counted exactly.
+     */
+    @Test
+    public void addEstimate() {
+        final SlidingCountMinSketch sketch = new SlidingCountMinSketch(10, 1_000L, 4, 1024);
+
+        assertTrue(sketch.add(1L, NOW, NOW, 1));
+        assertTrue(sketch.add(1L, NOW - 5_000L, NOW, 2));
+        assertTrue(sketch.add(2L, NOW + 5_000L, NOW, 1)); // future events are counted as current
+
+        assertEquals(3L, sketch.estimate(1L, NOW));
+        assertEquals(1L, sketch.estimate(2L, NOW));
+        assertEquals(0L, sketch.estimate(3L, NOW));
+        assertEquals(10_000L, sketch.getWindowMillis());
+    }
+
+    /**
+     * Events leave the window as time passes, events older than the window are dropped.
+     */
+    @Test
+    public void slidingWindow() {
+        final SlidingCountMinSketch sketch = new SlidingCountMinSketch(10, 1_000L, 4, 1024);
+
+        assertTrue(sketch.add(1L, NOW - 9_000L, NOW, 1));
+        assertTrue(sketch.add(1L, NOW, NOW, 1));
+        assertFalse(sketch.add(1L, NOW - 10_000L, NOW, 1));
+        assertEquals(2L, sketch.estimate(1L, NOW));
+
+        assertEquals(1L, sketch.estimate(1L, NOW + 1_000L));
+        assertEquals(0L, sketch.estimate(1L, NOW + 10_000L));
+
+        // bucket of the oldest event is reused for a newer time span
+        assertTrue(sketch.add(1L, NOW + 1_000L, NOW + 1_000L, 5));
+        assertFalse(sketch.add(1L, NOW - 9_000L, NOW, 1));
+        assertEquals(6L, sketch.estimate(1L, NOW + 1_000L));
+    }
+
+    /**
+     * Estimates never undercount and stay within error bound on random keys.
+     */
+    @Test
+    public void estimateBounds() {
+        final SlidingCountMinSketch sketch = new SlidingCountMinSketch(4, 1_000L, 4, 256);
+        final LongLongHashMap actual = new LongLongHashMap();
+        final Random random = new Random(42);
+
+        long events = 0L;
+        for (int i = 0; i < 20_000; i++) {
+            final long key = random.nextInt(2_000);
+            // the oldest of 4 bucket spans has just expired, its events are dropped
+            if (sketch.add(key, NOW - random.nextInt(4_000), NOW, 1)) {
+                actual.addTo(key, 1L);
+                events++;
+            }
+        }
+
+        // error bound holds with probability of 1 - exp(-depth), i.e. ~98% of keys
+        final long bound = (long) Math.ceil(Math.E / 256 * events);
+        final int[] exceeded = {0};
+        actual.forEach((key, count) -> {
+            final long estimate = sketch.estimate(key, NOW);
+            assertTrue(estimate >= count);
+            if (estimate - count > bound) {
+                exceeded[0]++;
+            }
+        });
+        assertTrue(exceeded[0] <= actual.size() / 50);
+    }
+
+    /**
+     * Sketch dimensions must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDimensions() {
+        new SlidingCountMinSketch(10, 1_000L, 0, 1000);
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.ArtistDao;
+import org.gravidence.gravifon.web.model.ArtistBean;
+import org.gravidence.gravifon.web.model.StatusBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.gravidence.gravifon.web.AsyncRequests.performAsync;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for pre-encoded responses.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class EncodedPayloadTest extends TestCase {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    /**
+     * Application info is served with entity tag, conditional request is answered with 304.
+     */
+    @Test
+    public void applicationInfo() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/v1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        final String etag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertTrue(response.getContentAsString().startsWith("{\"ok\":true,\"entity\":{"));
+
+        response = mockMvc.perform(get("/v1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andReturn().getResponse();
+        assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        mockMvc.perform(get("/v1").header(HttpHeaders.IF_NONE_MATCH, "\"outdated\""))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * Encoded artist is served from cache until artist changes.
+     */
+    @Test
+    public void artist() throws Exception {
+        MockHttpServletResponse response = performAsync(mockMvc, get("/v1/artists/4"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        final String etag = response.getHeader(HttpHeaders.ETAG);
+        assertEquals(objectMapper.writeValueAsString(new StatusBean<>(artistDao.getArtist(4L))),
+                response.getContentAsString());
+
+        performAsync(mockMvc, get("/v1/artists/4").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        final ArtistBean artist = artistDao.getArtist(4L);
+        artist.setTitle("Vidna Obmana & Asmus Tietchens");
+        artistDao.updateArtist(artist);
+
+        response = performAsync(mockMvc, get("/v1/artists/4").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertFalse(etag.equals(response.getHeader(HttpHeaders.ETAG)));
+        assertTrue(response.getContentAsString().contains("Vidna Obmana & Asmus Tietchens"));
+
+        performAsync(mockMvc, get("/v1/artists/100")).andExpect(status().isNotFound());
+    }
+
+    /**
+     * Gzip variant is served only to clients accepting it and has its own entity tag.
+     */
+    @Test
+    public void gzip() throws Exception {
+        final List<ArtistBean> artists = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            artists.add(new ArtistBean(id, "Artist " + id, "Description of artist " + id));
+        }
+        final EncodedPayload payload = EncodedPayload.json(objectMapper, new StatusBean<>(artists));
+
+        final ResponseEntity<byte[]> identity = payload.toResponse(null, null);
+        assertEquals(HttpStatus.OK, identity.getStatusCode());
+        assertNull(identity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(Arrays.equals(payload.getBody(), identity.getBody()));
+
+        final ResponseEntity<byte[]> gzip = payload.toResponse(null, "deflate, gzip");
+        assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(gzip.getBody().length < payload.getBody().length);
+        assertFalse(payload.getEtag().equals(gzip.getHeaders().getETag()));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getBody()))) {
+            assertTrue(Arrays.equals(payload.getBody(), StreamUtils.copyToByteArray(in)));
+        }
+
+        assertNull(payload.toResponse(null, "gzip;q=0").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                payload.toResponse(gzip.getHeaders().getETag(), "gzip").getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                payload.toResponse("W/" + payload.getEtag(), null).getStatusCode());
+    }
+
+}
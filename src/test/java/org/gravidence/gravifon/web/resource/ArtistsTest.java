@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.gravidence.gravifon.web.AsyncRequests.performAsync;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for {@link Artists} resource.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ArtistsTest extends TestCase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    /**
+     * Artists are looked up by IDs and titles at once, each artist is returned once.
+     */
+    @Test
+    public void batchGet() throws Exception {
+        performAsync(mockMvc, post("/v1/artists:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ids\":[8,6,100],\"titles\":[\"Funckarma\",\"Autechre\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity[*].id", contains(8, 6, 1)))
+                .andExpect(jsonPath("$.entity[0].master.title").value("Vidna Obmana"))
+                .andExpect(jsonPath("$.entity[1].aliases.length()").value(2));
+    }
+
+    /**
+     * Empty or too large lookups are rejected.
+     */
+    @Test
+    public void batchGetInvalid() throws Exception {
+        performAsync(mockMvc, post("/v1/artists:batchGet")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.ok").value(false));
+    }
+
+    /**
+     * Artist relations are expanded on request.
+     */
+    @Test
+    public void getExpanded() throws Exception {
+        performAsync(mockMvc, get("/v1/artists/4").param("expand", "master,variations"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity.variations[*].id", contains(5, 8)))
+                .andExpect(jsonPath("$.entity.aliases").doesNotExist());
+        performAsync(mockMvc, get("/v1/artists/4").param("expand", "siblings"))
+                .andExpect(status().isBadRequest());
+        performAsync(mockMvc, get("/v1/artists/100").param("expand", "aliases"))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * Other artist resources are still mapped next to bulk lookup.
+     */
+    @Test
+    public void otherResources() throws Exception {
+        performAsync(mockMvc, get("/v1/artists").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity.artists[*].id", contains(1, 2)));
+        performAsync(mockMvc, get("/v1/artists/search").param("q", "autech"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity[0].id").value(1));
+        performAsync(mockMvc, get("/v1/artists/6"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity.title").value("Funckarma"));
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.GravionDao;
+import org.gravidence.gravifon.web.model.GravionBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.gravidence.gravifon.web.AsyncRequests.performAsync;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for {@link Charts} resource.<p>
+ * H2 in-memory is used underneath.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ChartsTest extends TestCase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private GravionDao gravionDao;
+
+    /**
+     * Trending artists are charted by window.
+     */
+    @Test
+    public void trending() throws Exception {
+        final long now = System.currentTimeMillis();
+        gravionDao.addGravions(Collections.singletonList(new GravionBean(1L, 1L, new Date(now), new Date(now), 1)));
+
+        performAsync(mockMvc, get("/v1/charts/trending").param("window", "5m"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity.window").value("5m"))
+                .andExpect(jsonPath("$.entity.artists[0].artist.title").value("Vidna Obmana"))
+                .andExpect(jsonPath("$.entity.artists[0].plays").value(1));
+    }
+
+    /**
+     * Unknown windows and out of range limits are rejected.
+     */
+    @Test
+    public void trendingInvalid() throws Exception {
+        performAsync(mockMvc, get("/v1/charts/trending").param("window", "1w"))
+                .andExpect(status().isBadRequest());
+        performAsync(mockMvc, get("/v1/charts/trending").param("limit", "1000"))
+                .andExpect(status().isBadRequest());
+    }
+
+}
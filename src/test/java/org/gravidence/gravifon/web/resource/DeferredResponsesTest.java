@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Gravidence.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gravidence.gravifon.web.resource;
+
+import junit.framework.TestCase;
+import org.gravidence.gravifon.db.DbExecutor;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.gravidence.gravifon.web.AsyncRequests.performAsync;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for {@link DeferredResponses}, covering overload and timeout of database executor.<p>
+ * Executor is limited to a single thread and a single queued call.
+ *
+ * @author Maksim Liauchuk <maksim_liauchuk@fastmail.fm>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK, properties = {
+        "org.gravidence.gravifon.db.executor.threads=1",
+        "org.gravidence.gravifon.db.executor.queue-capacity=1"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class DeferredResponsesTest extends TestCase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DbExecutor dbExecutor;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void releaseExecutor() {
+        release.countDown();
+    }
+
+    /**
+     * Requests are served while executor has capacity.
+     */
+    @Test
+    public void served() throws Exception {
+        performAsync(mockMvc, get("/v1/artists/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entity.title").value("Autechre"));
+    }
+
+    /**
+     * Requests are rejected right away once executor thread is busy and queue is full.
+     */
+    @Test
+    public void overloaded() throws Exception {
+        block();
+        // occupies the only queue slot
+        assertNotNull(dbExecutor.submit(() -> null));
+
+        performAsync(mockMvc, get("/v1/artists/1"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.error_description").value("Too many requests in progress."));
+    }
+
+    /**
+     * Requests not computed in time are answered with timeout response.
+     */
+    @Test
+    public void timedOut() throws Exception {
+        block();
+
+        MvcResult started = mockMvc.perform(get("/v1/artists/1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MockAsyncContext asyncContext = (MockAsyncContext) started.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.error_description").value("Response was not computed in time."));
+    }
+
+    /**
+     * Occupies the only executor thread until test completes.
+     */
+    private void block() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<Void> blocker = dbExecutor.submit(() -> {
+            running.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+
+        assertNotNull(blocker);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+    }
+
+}
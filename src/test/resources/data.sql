@@ -29,6 +29,11 @@ INSERT INTO G_TRACK(MASTER_ID, TITLE, "LENGTH", RELEASE_ID) VALUES
     (NULL, 'Ephemeral Vision', 847, 2),
     (NULL, 'The Angelic Appearance', 548, 1) ;
 
+INSERT INTO G_TRACK_ARTIST(TRACK_ID, ARTIST_ID) VALUES
+    (1, 4),
+    (2, 4),
+    (3, 4) ;
+
 INSERT INTO G_USER(USERNAME, EMAIL, CREATED, LAST_ACTIVITY) VALUES
     ('m2', 'maksim_liauchuk@fastmail.fm', CURRENT_TIMESTAMP(), CURRENT_TIMESTAMP()),
     ('i3', 'ina_liauchuk@fastmail.fm', CURRENT_TIMESTAMP(), CURRENT_TIMESTAMP()) ;
@@ -37,3 +42,13 @@ INSERT INTO G_GRAVION(USER_ID, TRACK_ID, "BEGIN", "END", DURATION) VALUES
     (1, 1, '2017-04-15 12:44:00', '2017-04-15 12:50:00', 548),
     (1, 2, '2017-04-15 12:50:00', '2017-04-15 12:59:00', 847),
     (1, 1, '2017-04-15 12:59:00', '2017-04-15 13:05:00', 548) ;
+
+INSERT INTO G_USER_ARTIST_DAILY(USER_ID, ARTIST_ID, "DAY", PLAYS, DURATION) VALUES
+    (1, 4, '2017-04-15', 3, 1943) ;
+
+INSERT INTO G_USER_TRACK_DAILY(USER_ID, TRACK_ID, "DAY", PLAYS, DURATION) VALUES
+    (1, 1, '2017-04-15', 2, 1096),
+    (1, 2, '2017-04-15', 1, 847) ;
+
+INSERT INTO G_USER_ARTIST_TOTAL(USER_ID, ARTIST_ID, PLAYS, DURATION) VALUES
+    (1, 4, 3, 1943) ;
@@ -3,13 +3,17 @@ DROP ALL OBJECTS ;
 CREATE SCHEMA IF NOT EXISTS GRAVIDAT ;
 USE GRAVIDAT ;
 
+CREATE ALIAS NORMALIZE_TITLE DETERMINISTIC FOR "org.gravidence.gravifon.db.ArtistTitles.normalize" ;
+
 CREATE TABLE G_ARTIST (
     ID IDENTITY,
     MASTER_ID BIGINT,
     TITLE VARCHAR(500) NOT NULL,
     DESCRIPTION VARCHAR(500),
+    TITLE_NORM VARCHAR(500) AS NORMALIZE_TITLE(TITLE),
     FOREIGN KEY (MASTER_ID) REFERENCES (ID)
 ) ;
+CREATE INDEX G_ARTIST_TITLE_NORM_IDX ON G_ARTIST(TITLE_NORM) ;
 
 CREATE TABLE G_ARTIST_ALIAS (
     MASTER_ID BIGINT,
@@ -19,6 +23,13 @@ CREATE TABLE G_ARTIST_ALIAS (
 ) ;
 CREATE UNIQUE INDEX G_ARTIST_ALIAS_IDX ON G_ARTIST_ALIAS(MASTER_ID, ALIAS_ID) ;
 
+CREATE TABLE G_ARTIST_CHANGE (
+    ID IDENTITY,
+    ARTIST_ID BIGINT NOT NULL,
+    CHANGED TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+) ;
+CREATE INDEX G_ARTIST_CHANGE_CHANGED_IDX ON G_ARTIST_CHANGE(CHANGED) ;
+
 CREATE TABLE G_RELEASE_TYPE (
     ID IDENTITY,
     TITLE VARCHAR(20) NOT NULL
@@ -92,3 +103,65 @@ CREATE TABLE G_GRAVION (
     FOREIGN KEY (USER_ID) REFERENCES G_USER(ID),
     FOREIGN KEY (TRACK_ID) REFERENCES G_TRACK(ID)
 ) ;
+CREATE UNIQUE INDEX G_GRAVION_IDX ON G_GRAVION(USER_ID, BEGIN, TRACK_ID) ;
+CREATE SEQUENCE G_GRAVION_SEQ ;
+
+CREATE TABLE G_GRAVION_ARCHIVE (
+    PERIOD DATE NOT NULL,
+    PATH VARCHAR(1024) NOT NULL,
+    GRAVIONS BIGINT NOT NULL,
+    ARCHIVED TIMESTAMP NOT NULL,
+    PRIMARY KEY (PERIOD, PATH)
+) ;
+
+CREATE TABLE G_LISTENING_SESSION (
+    USER_ID BIGINT NOT NULL,
+    BEGIN TIMESTAMP NOT NULL,
+    END TIMESTAMP NOT NULL,
+    GRAVIONS INTEGER NOT NULL,
+    DURATION BIGINT NOT NULL,
+    PRIMARY KEY (USER_ID, BEGIN),
+    FOREIGN KEY (USER_ID) REFERENCES G_USER(ID)
+) ;
+
+CREATE TABLE G_LISTENING_SESSION_ALBUM (
+    USER_ID BIGINT NOT NULL,
+    SESSION_BEGIN TIMESTAMP NOT NULL,
+    ORDINAL INTEGER NOT NULL,
+    RELEASE_ID BIGINT NOT NULL,
+    PRIMARY KEY (USER_ID, SESSION_BEGIN, ORDINAL),
+    FOREIGN KEY (USER_ID, SESSION_BEGIN) REFERENCES G_LISTENING_SESSION(USER_ID, BEGIN) ON DELETE CASCADE,
+    FOREIGN KEY (RELEASE_ID) REFERENCES G_RELEASE(ID)
+) ;
+
+CREATE TABLE G_USER_ARTIST_DAILY (
+    USER_ID BIGINT NOT NULL,
+    ARTIST_ID BIGINT NOT NULL,
+    DAY DATE NOT NULL,
+    PLAYS BIGINT NOT NULL,
+    DURATION BIGINT NOT NULL,
+    PRIMARY KEY (USER_ID, DAY, ARTIST_ID),
+    FOREIGN KEY (USER_ID) REFERENCES G_USER(ID),
+    FOREIGN KEY (ARTIST_ID) REFERENCES G_ARTIST(ID)
+) ;
+
+CREATE TABLE G_USER_TRACK_DAILY (
+    USER_ID BIGINT NOT NULL,
+    TRACK_ID BIGINT NOT NULL,
+    DAY DATE NOT NULL,
+    PLAYS BIGINT NOT NULL,
+    DURATION BIGINT NOT NULL,
+    PRIMARY KEY (USER_ID, DAY, TRACK_ID),
+    FOREIGN KEY (USER_ID) REFERENCES G_USER(ID),
+    FOREIGN KEY (TRACK_ID) REFERENCES G_TRACK(ID)
+) ;
+
+CREATE TABLE G_USER_ARTIST_TOTAL (
+    USER_ID BIGINT NOT NULL,
+    ARTIST_ID BIGINT NOT NULL,
+    PLAYS BIGINT NOT NULL,
+    DURATION BIGINT NOT NULL,
+    PRIMARY KEY (USER_ID, ARTIST_ID),
+    FOREIGN KEY (USER_ID) REFERENCES G_USER(ID),
+    FOREIGN KEY (ARTIST_ID) REFERENCES G_ARTIST(ID)
+) ;